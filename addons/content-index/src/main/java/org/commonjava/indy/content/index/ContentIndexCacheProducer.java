@@ -81,4 +81,29 @@ public class ContentIndexCacheProducer
     {
         return cacheProducer.getBasicCache( "content-index" );
     }
+
+    /**
+     * Cache which holds the index generation counters (see {@link ContentIndexGenerations}). It is tiny (one entry per
+     * store / origin / store-origin pair that was ever invalidated) and must not be evicted, otherwise stale index entries
+     * could become visible again.
+     */
+    @ContentIndexGenerationCache
+    @Produces
+    @ApplicationScoped
+    public BasicCacheHandle<String, Long> contentIndexGenerationCacheCfg()
+    {
+        return cacheProducer.getBasicCache( "content-index-generations" );
+    }
+
+    /**
+     * Cache which holds the negative group membership records (see {@link GroupMemberMissIndex}), keyed by path. Its
+     * expiration bounds how long a member (e.g. a remote) stays recorded as missing a path.
+     */
+    @GroupMemberMissCache
+    @Produces
+    @ApplicationScoped
+    public BasicCacheHandle<String, GroupMemberMissIndex.PathMisses> groupMemberMissCacheCfg()
+    {
+        return cacheProducer.getBasicCache( "content-index-group-misses" );
+    }
 }
@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.content.index;
+
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.subsys.infinispan.BasicCacheHandle;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the invalidation generations used by {@link DefaultContentIndexManager}. Every {@link IndexedStorePath} is
+ * stamped with the generation of its store, its origin store and the (store, origin) pair at the time it is written. An
+ * entry is only valid while all of those generations are still current, so invalidating every entry of a store (or of
+ * an origin, or of a pair) is a single counter bump instead of a query-and-remove over the whole index.
+ * <br/>
+ * The counters are persisted in the "content-index-generations" cache and mirrored in memory, since they are consulted
+ * on every index read.
+ */
+@ApplicationScoped
+public class ContentIndexGenerations
+{
+    private static final String STORE_PREFIX = "store:";
+
+    private static final String ORIGIN_PREFIX = "origin:";
+
+    private static final String PAIR_PREFIX = "pair:";
+
+    private static final String PAIR_SEPARATOR = "|";
+
+    @ContentIndexGenerationCache
+    @Inject
+    private BasicCacheHandle<String, Long> generationCache;
+
+    private final Map<String, Long> generations = new ConcurrentHashMap<>();
+
+    protected ContentIndexGenerations()
+    {
+    }
+
+    public ContentIndexGenerations( BasicCacheHandle<String, Long> generationCache )
+    {
+        this.generationCache = generationCache;
+    }
+
+    public long getStoreGeneration( StoreKey store )
+    {
+        return get( STORE_PREFIX + store );
+    }
+
+    public long getOriginGeneration( StoreKey origin )
+    {
+        return get( ORIGIN_PREFIX + origin );
+    }
+
+    public long getPairGeneration( StoreKey store, StoreKey origin )
+    {
+        return get( pairKey( store, origin ) );
+    }
+
+    /**
+     * Invalidate every index entry held for the given store.
+     */
+    public long bumpStore( StoreKey store )
+    {
+        return bump( STORE_PREFIX + store );
+    }
+
+    /**
+     * Invalidate every index entry pointing at the given origin store, whichever store holds it.
+     */
+    public long bumpOrigin( StoreKey origin )
+    {
+        return bump( ORIGIN_PREFIX + origin );
+    }
+
+    /**
+     * Invalidate every index entry held for the given store and pointing at the given origin store.
+     */
+    public long bumpPair( StoreKey store, StoreKey origin )
+    {
+        return bump( pairKey( store, origin ) );
+    }
+
+    /**
+     * Stamp the current generations onto an entry which is about to be written to the index. If an invalidation races
+     * with the write, the entry is stamped with the old generation and so is already stale once it lands.
+     */
+    public IndexedStorePath stamp( IndexedStorePath isp )
+    {
+        StoreKey store = isp.getStoreKey();
+        StoreKey origin = isp.getOriginStoreKey();
+
+        isp.setStoreGeneration( getStoreGeneration( store ) );
+        if ( origin != null )
+        {
+            isp.setOriginGeneration( getOriginGeneration( origin ) );
+            isp.setPairGeneration( getPairGeneration( store, origin ) );
+        }
+
+        return isp;
+    }
+
+    /**
+     * @return true if none of the generations the entry was stamped with have been bumped since.
+     */
+    public boolean isCurrent( IndexedStorePath isp )
+    {
+        StoreKey store = isp.getStoreKey();
+        if ( isp.getStoreGeneration() != getStoreGeneration( store ) )
+        {
+            return false;
+        }
+
+        StoreKey origin = isp.getOriginStoreKey();
+        return origin == null || ( isp.getOriginGeneration() == getOriginGeneration( origin )
+                && isp.getPairGeneration() == getPairGeneration( store, origin ) );
+    }
+
+    private long get( String key )
+    {
+        return generations.computeIfAbsent( key, k -> {
+            Long persisted = generationCache.get( k );
+            return persisted == null ? 0L : persisted;
+        } );
+    }
+
+    private long bump( String key )
+    {
+        return generations.compute( key, ( k, current ) -> {
+            Long base = current;
+            if ( base == null )
+            {
+                base = generationCache.get( k );
+            }
+
+            long next = ( base == null ? 0L : base ) + 1;
+            generationCache.put( k, next );
+            return next;
+        } );
+    }
+
+    private static String pairKey( StoreKey store, StoreKey origin )
+    {
+        return PAIR_PREFIX + store + PAIR_SEPARATOR + origin;
+    }
+}
@@ -15,6 +15,8 @@
  */
 package org.commonjava.indy.content.index;
 
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.WeftManaged;
 import org.commonjava.indy.action.BootupAction;
 import org.commonjava.indy.action.IndyLifecycleException;
 import org.commonjava.indy.action.ShutdownAction;
@@ -51,14 +53,20 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.function.Supplier;
 
 import static org.commonjava.indy.model.core.StoreKey.fromString;
 
 /**
  * Created by jdcasey on 5/2/16.
+ * <br/>
+ * Bulk invalidation (the clearAll* methods) doesn't remove entries inline. It bumps the matching generation in
+ * {@link ContentIndexGenerations}, which makes every entry stamped with the old generation invisible to reads right
+ * away, and leaves the physical removal to a background sweep.
  */
 @ApplicationScoped
 @Default
@@ -79,6 +87,9 @@ public class DefaultContentIndexManager
     @Inject
     private BasicCacheHandle<IndexedStorePath, IndexedStorePath> contentIndex;
 
+    @Inject
+    private ContentIndexGenerations generations;
+
     @Inject
     private NotFoundCache nfc;
 
@@ -88,6 +99,11 @@ public class DefaultContentIndexManager
     @Inject
     private Instance<PackageIndexingStrategy> indexingStrategyComponents;
 
+    @WeftManaged
+    @ExecutorConfig( named = "content-index-sweeper", priority = 2, threads = 1 )
+    @Inject
+    private ExecutorService sweepExecutor;
+
     private Map<String, PackageIndexingStrategy> indexingStrategies;
 
     private QueryFactory queryFactory;
@@ -98,14 +114,17 @@ public class DefaultContentIndexManager
 
     public DefaultContentIndexManager( StoreDataManager storeDataManager, SpecialPathManager specialPathManager,
                                 BasicCacheHandle<IndexedStorePath, IndexedStorePath> contentIndex,
+                                ContentIndexGenerations generations,
                                 Map<String, PackageIndexingStrategy> indexingStrategies,
-                                NotFoundCache nfc )
+                                NotFoundCache nfc, ExecutorService sweepExecutor )
     {
         this.storeDataManager = storeDataManager;
         this.specialPathManager = specialPathManager;
         this.contentIndex = contentIndex;
+        this.generations = generations;
         this.indexingStrategies = indexingStrategies;
         this.nfc = nfc;
+        this.sweepExecutor = sweepExecutor;
     }
 
     @PostConstruct
@@ -176,7 +195,8 @@ public class DefaultContentIndexManager
         String path = getStrategyPath( key, rawPath );
         IndexedStorePath topPath = new IndexedStorePath( key, path );
         logger.trace( "Attempting to remove indexed path: {}", topPath );
-        if ( contentIndex.remove( topPath ) != null )
+        IndexedStorePath removed = contentIndex.remove( topPath );
+        if ( removed != null && generations.isCurrent( removed ) )
         {
             if ( pathConsumer != null )
             {
@@ -220,6 +240,13 @@ public class DefaultContentIndexManager
         String path = getStrategyPath( key, rawPath );
         IndexedStorePath ispKey = new IndexedStorePath( key, path );
         IndexedStorePath val = contentIndex.get( ispKey );
+        if ( val != null && !generations.isCurrent( val ) )
+        {
+            // invalidated in bulk; the sweeper will remove it
+            logger.trace( "Get index (STALE), key: {}", ispKey );
+            return null;
+        }
+
         logger.trace( "Get index{}, key: {}", ( val == null ? " (NOT FOUND)" : "" ), ispKey );
         return val == null ? null : val.getOriginStoreKey();
     }
@@ -247,13 +274,13 @@ public class DefaultContentIndexManager
 
         IndexedStorePath origin = new IndexedStorePath( originKey, path );
         logger.trace( "Indexing path: {} in: {}", path, originKey );
-        contentIndex.put( origin, origin );
+        contentIndex.put( origin, generations.stamp( origin ) );
 
         Set<StoreKey> keySet = new HashSet<>( Arrays.asList( topKeys ) );
         keySet.forEach( ( key ) -> {
             IndexedStorePath isp = new IndexedStorePath( key, originKey, path );
             logger.trace( "Indexing path: {} in: {} via member: {}", path, key, originKey );
-            contentIndex.put( isp, isp );
+            contentIndex.put( isp, generations.stamp( isp ) );
         } );
     }
 
@@ -262,21 +289,22 @@ public class DefaultContentIndexManager
     public void clearAllIndexedPathInStore( ArtifactStore store )
     {
         StoreKey sk = store.getKey();
-
-        long total = iterateRemove( () -> queryFactory.from( IndexedStorePath.class )
-                                                      .maxResults( ITERATE_RESULT_SIZE )
-                                                      .having( "packageType" )
-                                                      .eq( sk.getPackageType() )
-                                                      .and()
-                                                      .having( "storeType" )
-                                                      .eq( sk.getType().name() )
-                                                      .and()
-                                                      .having( "storeName" )
-                                                      .eq( sk.getName() )
-                                                      .toBuilder()
-                                                      .build() );
-
-        logger.trace( "Cleared all indices with group: {}, size: {}", sk, total );
+        long generation = generations.bumpStore( sk );
+        logger.trace( "Invalidated all indices with group: {}, generation: {}", sk, generation );
+
+        sweep( sk, offset -> queryFactory.from( IndexedStorePath.class )
+                                         .startOffset( offset )
+                                         .maxResults( ITERATE_RESULT_SIZE )
+                                         .having( "packageType" )
+                                         .eq( sk.getPackageType() )
+                                         .and()
+                                         .having( "storeType" )
+                                         .eq( sk.getType().name() )
+                                         .and()
+                                         .having( "storeName" )
+                                         .eq( sk.getName() )
+                                         .toBuilder()
+                                         .build() );
     }
 
     @Override
@@ -284,72 +312,132 @@ public class DefaultContentIndexManager
     public void clearAllIndexedPathWithOriginalStore( ArtifactStore originalStore )
     {
         StoreKey osk = originalStore.getKey();
+        long generation = generations.bumpOrigin( osk );
+        logger.trace( "Invalidated all indices with origin: {}, generation: {}", osk, generation );
+
+        sweep( osk, offset -> queryFactory.from( IndexedStorePath.class )
+                                          .startOffset( offset )
+                                          .maxResults( ITERATE_RESULT_SIZE )
+                                          .having( "packageType" )
+                                          .eq( osk.getPackageType() )
+                                          .and()
+                                          .having( "originStoreType" )
+                                          .eq( osk.getType().name() )
+                                          .and()
+                                          .having( "originStoreName" )
+                                          .eq( osk.getName() )
+                                          .toBuilder()
+                                          .build() );
+    }
 
-        long total = iterateRemove( () -> queryFactory.from( IndexedStorePath.class )
-                                                      .maxResults( ITERATE_RESULT_SIZE )
-                                                      .having( "packageType" )
-                                                      .eq( osk.getPackageType() )
-                                                      .and()
-                                                      .having( "originStoreType" )
-                                                      .eq( osk.getType().name() )
-                                                      .and()
-                                                      .having( "originStoreName" )
-                                                      .eq( osk.getName() )
-                                                      .toBuilder()
-                                                      .build() );
-
-        logger.trace( "Cleared all indices with origin: {}, size: {}", osk, total );
+    @Override
+    @Measure
+    public void clearAllIndexedPathInStoreWithOriginal( ArtifactStore store, ArtifactStore originalStore )
+    {
+        StoreKey sk = store.getKey();
+        StoreKey osk = originalStore.getKey();
+        long generation = generations.bumpPair( sk, osk );
+        logger.trace( "Invalidated all indices with origin: {} and group: {}, generation: {}", osk, sk, generation );
+
+        sweep( sk, offset -> queryFactory.from( IndexedStorePath.class )
+                                         .startOffset( offset )
+                                         .maxResults( ITERATE_RESULT_SIZE )
+                                         .having( "packageType" )
+                                         .eq( osk.getPackageType() )
+                                         .and()
+                                         .having( "storeType" )
+                                         .eq( sk.getType().name() )
+                                         .and()
+                                         .having( "storeName" )
+                                         .eq( sk.getName() )
+                                         .and()
+                                         .having( "originStoreType" )
+                                         .eq( osk.getType().name() )
+                                         .and()
+                                         .having( "originStoreName" )
+                                         .eq( osk.getName() )
+                                         .toBuilder()
+                                         .build() );
     }
 
-    private long iterateRemove( final Supplier<Query> queryFunction )
+    /**
+     * Physically remove the entries a generation bump just invalidated. Readers already ignore them, so this runs in
+     * the background when an executor is available. Entries which have been re-indexed since the bump are current again
+     * and are skipped, so the sweep never removes live data.
+     */
+    private void sweep( final StoreKey key, final Function<Long, Query> queryFunction )
     {
-        long total = 0;
-        Query query;
-        long last = -1;
-        while( last != 0 )
+        Runnable sweep = () -> {
+            try
+            {
+                long total = sweepStale( queryFunction );
+                logger.trace( "Swept stale indices for: {}, size: {}", key, total );
+            }
+            catch ( RuntimeException e )
+            {
+                logger.error( String.format( "Failed to sweep stale content-index entries for: %s. Reason: %s", key,
+                                             e.getMessage() ), e );
+            }
+        };
+
+        if ( sweepExecutor == null )
         {
-            query = queryFunction.get();
+            sweep.run();
+            return;
+        }
 
-                    List<IndexedStorePath> all = query.list();
-            all.forEach( ( key ) -> {
-                logger.debug("Removing from content index: {}", key);
-                contentIndex.remove( key );
-            } );
+        try
+        {
+            sweepExecutor.execute( sweep );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            logger.warn( "Content-index sweep for: {} rejected; stale entries stay hidden until the next sweep. {}",
+                         key, e.getMessage() );
+        }
+    }
 
-            last = all.size();
-            total += last;
+    private long sweepStale( final Function<Long, Query> queryFunction )
+    {
+        long total = 0;
+        long offset = 0;
+        List<IndexedStorePath> page;
+        do
+        {
+            page = queryFunction.apply( offset ).list();
+            for ( IndexedStorePath isp : page )
+            {
+                if ( removeIfStale( isp ) )
+                {
+                    total++;
+                }
+                else
+                {
+                    // still in the index, so the next page starts after it
+                    offset++;
+                }
+            }
         }
+        while ( !page.isEmpty() );
 
         return total;
     }
 
-    @Override
-    @Measure
-    public void clearAllIndexedPathInStoreWithOriginal( ArtifactStore store, ArtifactStore originalStore )
+    private boolean removeIfStale( final IndexedStorePath isp )
     {
-        StoreKey sk = store.getKey();
-        StoreKey osk = originalStore.getKey();
+        AtomicBoolean removed = new AtomicBoolean( false );
+        contentIndex.execute( cache -> cache.computeIfPresent( isp, ( k, v ) -> {
+            if ( generations.isCurrent( v ) )
+            {
+                return v;
+            }
+
+            logger.debug( "Removing stale entry from content index: {}", k );
+            removed.set( true );
+            return null;
+        } ) );
 
-        long total = iterateRemove( () -> queryFactory.from( IndexedStorePath.class )
-                                                      .maxResults( ITERATE_RESULT_SIZE )
-                                                      .having( "packageType" )
-                                                      .eq( osk.getPackageType() )
-                                                      .and()
-                                                      .having( "storeType" )
-                                                      .eq( sk.getType().name() )
-                                                      .and()
-                                                      .having( "storeName" )
-                                                      .eq( sk.getName() )
-                                                      .and()
-                                                      .having( "originStoreType" )
-                                                      .eq( osk.getType().name() )
-                                                      .and()
-                                                      .having( "originStoreName" )
-                                                      .eq( osk.getName() )
-                                                      .toBuilder()
-                                                      .build() );
-
-        logger.trace( "Cleared all indices with origin: {} and group: {}, size: {}", osk, sk, total );
+        return removed.get();
     }
 
     /**
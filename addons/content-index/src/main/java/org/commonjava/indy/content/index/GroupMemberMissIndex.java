@@ -0,0 +1,238 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.content.index;
+
+import org.commonjava.indy.content.index.conf.ContentIndexConfig;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.subsys.infinispan.BasicCacheHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Negative side of the group content index: for a (group, path), which of the group's constituents are known NOT to
+ * contain the path. The positive side, the member that does have it, is the ordinary group entry kept by
+ * {@link ContentIndexManager}. When that entry is missing (e.g. after it was invalidated), the group walk in
+ * {@link IndexingContentManagerDecorator} uses this record to skip straight past members that already missed, instead
+ * of calling retrieve() and the NFC on each of them again.
+ * <br/>
+ * Records are keyed by path so a {@link org.commonjava.maven.galley.event.FileStorageEvent} can drop every group's
+ * record for that path at once, and the whole index is dropped when any store changes. A record only stays valid while
+ * the group's constituent list is the same as when it was written. Remote misses age out through the cache expiration.
+ */
+@ApplicationScoped
+public class GroupMemberMissIndex
+{
+    private static final int EPOCH_STRIPES = 1024;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @GroupMemberMissCache
+    @Inject
+    private BasicCacheHandle<String, PathMisses> missCache;
+
+    @Inject
+    private ContentIndexConfig config;
+
+    private final AtomicLong globalEpoch = new AtomicLong();
+
+    private final AtomicLongArray pathEpochs = new AtomicLongArray( EPOCH_STRIPES );
+
+    protected GroupMemberMissIndex()
+    {
+    }
+
+    public GroupMemberMissIndex( BasicCacheHandle<String, PathMisses> missCache, ContentIndexConfig config )
+    {
+        this.missCache = missCache;
+        this.config = config;
+    }
+
+    /**
+     * Start a walk over the group's constituents for the given path.
+     *
+     * @return the lookup to consult and fill in during the walk, or null if the miss index is disabled
+     */
+    public Lookup lookup( Group group, String path )
+    {
+        if ( config != null && !config.isGroupMissIndexEnabled() )
+        {
+            return null;
+        }
+
+        String key = keyOf( path );
+        int fingerprint = group.getConstituents().hashCode();
+        long epoch = epochOf( key );
+
+        BitSet known = null;
+        PathMisses pathMisses = missCache.get( key );
+        if ( pathMisses != null )
+        {
+            MissRecord record = pathMisses.records.get( group.getKey() );
+            if ( record != null && record.fingerprint == fingerprint )
+            {
+                known = record.missing;
+            }
+        }
+
+        return new Lookup( group.getKey(), key, fingerprint, epoch, known );
+    }
+
+    /**
+     * Store the misses found during a walk. If a file was stored at the path, or a store changed, after the walk
+     * started, the record is discarded: it might claim that a member which now has the path doesn't.
+     */
+    public void record( Lookup lookup )
+    {
+        if ( lookup == null || lookup.found.isEmpty() )
+        {
+            return;
+        }
+
+        BitSet missing = (BitSet) lookup.found.clone();
+        if ( lookup.known != null )
+        {
+            missing.or( lookup.known );
+        }
+
+        if ( epochOf( lookup.path ) != lookup.epoch )
+        {
+            return;
+        }
+
+        PathMisses pathMisses = missCache.computeIfAbsent( lookup.path, p -> new PathMisses() );
+        if ( pathMisses == null )
+        {
+            return;
+        }
+
+        MissRecord record = new MissRecord( lookup.fingerprint, missing );
+        pathMisses.records.put( lookup.groupKey, record );
+
+        // a clear may have run between the check above and the put; if so, take our record back out again
+        if ( epochOf( lookup.path ) != lookup.epoch )
+        {
+            pathMisses.records.remove( lookup.groupKey, record );
+        }
+
+        logger.trace( "Recorded {} missing members for: {} in: {}", missing.cardinality(), lookup.path,
+                      lookup.groupKey );
+    }
+
+    /**
+     * Content was stored at this path in some store, so any member recorded as missing it may now have it.
+     */
+    public void clearPath( String path )
+    {
+        String key = keyOf( path );
+        pathEpochs.incrementAndGet( stripeOf( key ) );
+        missCache.remove( key );
+    }
+
+    /**
+     * A store was changed or removed. Membership, enablement or the remote behind a member may have changed, so drop
+     * every record.
+     */
+    public void clearAll()
+    {
+        globalEpoch.incrementAndGet();
+        missCache.execute( cache -> {
+            cache.clear();
+            return null;
+        } );
+    }
+
+    private long epochOf( String path )
+    {
+        return globalEpoch.get() + pathEpochs.get( stripeOf( path ) );
+    }
+
+    private static String keyOf( String path )
+    {
+        return path.startsWith( "/" ) ? path.substring( 1 ) : path;
+    }
+
+    private static int stripeOf( String path )
+    {
+        return ( path.hashCode() & 0x7fffffff ) % EPOCH_STRIPES;
+    }
+
+    /**
+     * State of one walk over a group's constituents. Positions refer to the group's constituent list.
+     */
+    public static final class Lookup
+    {
+        private final StoreKey groupKey;
+
+        private final String path;
+
+        private final int fingerprint;
+
+        private final long epoch;
+
+        private final BitSet known;
+
+        private final BitSet found = new BitSet();
+
+        private Lookup( StoreKey groupKey, String path, int fingerprint, long epoch, BitSet known )
+        {
+            this.groupKey = groupKey;
+            this.path = path;
+            this.fingerprint = fingerprint;
+            this.epoch = epoch;
+            this.known = known;
+        }
+
+        public boolean isKnownMissing( int position )
+        {
+            return known != null && known.get( position );
+        }
+
+        public void markMissing( int position )
+        {
+            found.set( position );
+        }
+    }
+
+    /**
+     * All groups' miss records for one path.
+     */
+    public static final class PathMisses
+    {
+        private final Map<StoreKey, MissRecord> records = new ConcurrentHashMap<>();
+    }
+
+    private static final class MissRecord
+    {
+        private final int fingerprint;
+
+        private final BitSet missing;
+
+        private MissRecord( int fingerprint, BitSet missing )
+        {
+            this.fingerprint = fingerprint;
+            this.missing = missing;
+        }
+    }
+}
@@ -57,6 +57,13 @@ public class IndexedStorePath
     @Field( index = Index.YES, analyze = Analyze.NO )
     private String packageType;
 
+    // generations this entry was stamped with when indexed; see ContentIndexGenerations. Not part of equals/hashCode.
+    private long storeGeneration;
+
+    private long originGeneration;
+
+    private long pairGeneration;
+
     private transient StoreKey storeKey;
 
     private transient StoreKey originKey;
@@ -140,6 +147,36 @@ public class IndexedStorePath
         return packageType;
     }
 
+    public long getStoreGeneration()
+    {
+        return storeGeneration;
+    }
+
+    public void setStoreGeneration( long storeGeneration )
+    {
+        this.storeGeneration = storeGeneration;
+    }
+
+    public long getOriginGeneration()
+    {
+        return originGeneration;
+    }
+
+    public void setOriginGeneration( long originGeneration )
+    {
+        this.originGeneration = originGeneration;
+    }
+
+    public long getPairGeneration()
+    {
+        return pairGeneration;
+    }
+
+    public void setPairGeneration( long pairGeneration )
+    {
+        this.pairGeneration = pairGeneration;
+    }
+
     @Override
     public String toString()
     {
@@ -153,6 +190,7 @@ public class IndexedStorePath
                 "\n  originStoreType=" + originStoreType +
                 "\n  originStoreName=" + originStoreName +
                 "\n  path='" + path + '\'' +
+                "\n  generations=" + storeGeneration + "/" + originGeneration + "/" + pairGeneration +
                 "\n}";
         /* @formatter:on */
     }
@@ -223,6 +261,9 @@ public class IndexedStorePath
         }
         out.writeObject( path );
         out.writeObject( packageType );
+        out.writeLong( storeGeneration );
+        out.writeLong( originGeneration );
+        out.writeLong( pairGeneration );
     }
 
     @Override
@@ -245,6 +286,21 @@ public class IndexedStorePath
         {
             logger.warn( "Read packageType failed (probably reading an old data entry) and set to default 'maven', {}", e );
             packageType = MAVEN_PKG_KEY;
+            return;
+        }
+
+        try
+        {
+            storeGeneration = in.readLong();
+            originGeneration = in.readLong();
+            pairGeneration = in.readLong();
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Read index generations failed (probably reading an old data entry) and set to 0, {}", e );
+            storeGeneration = 0;
+            originGeneration = 0;
+            pairGeneration = 0;
         }
     }
 }
@@ -52,6 +52,7 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
+import static org.commonjava.indy.change.event.ContentBatchStoredEvent.isBatchStore;
 import static org.commonjava.indy.core.content.group.GroupMergeHelper.GROUP_METADATA_EXISTS;
 import static org.commonjava.indy.core.content.group.GroupMergeHelper.GROUP_METADATA_GENERATED;
 import static org.commonjava.indy.measure.annotation.MetricNamed.DEFAULT;
@@ -88,6 +89,9 @@ public abstract class IndexingContentManagerDecorator
     @Inject
     private ContentIndexConfig indexCfg;
 
+    @Inject
+    private GroupMemberMissIndex missIndex;
+
     protected IndexingContentManagerDecorator()
     {
     }
@@ -238,7 +242,11 @@ public abstract class IndexingContentManagerDecorator
             {
                 if ( PathMaskChecker.checkMask( store, path ) )
                 {
+                    GroupMemberMissIndex.Lookup misses =
+                            missIndex == null ? null : missIndex.lookup( (Group) store, path );
+
                     transfer = getTransferFromConstituents( ( (Group) store ).getConstituents(), resource, path, store,
+                                                            misses,
                                                             memberKey -> {
                                                                 try
                                                                 {
@@ -318,29 +326,57 @@ public abstract class IndexingContentManagerDecorator
     /**
      * Recursively fetching the transfer from group constituents, and only
      * indexing the transfer for first found repo and its parent groups.
+     * <br/>
+     * If misses is given, members it already knows to be missing the path are skipped, and members found missing it
+     * during this walk are recorded for next time.
      */
     private Transfer getTransferFromConstituents( Collection<StoreKey> constituents, ConcreteResource resource, String path,
-                                                  ArtifactStore parentStore, TransferSupplier<Transfer> transferSupplier )
+                                                  ArtifactStore parentStore, GroupMemberMissIndex.Lookup misses,
+                                                  TransferSupplier<Transfer> transferSupplier )
     {
         List<StoreKey> members = new ArrayList<>( constituents );
         Transfer transfer = null;
-        for ( StoreKey memberKey : members )
+        try
         {
-            try
-            {
-                transfer = transferSupplier.get( memberKey );
-            }
-            catch ( IndyWorkflowException e )
+            for ( int i = 0; i < members.size(); i++ )
             {
-                logger.error( String.format( "Failed to retrieve() for member path: %s:%s. Reason: %s", memberKey, path,
-                                             e.getMessage() ), e );
+                StoreKey memberKey = members.get( i );
+                if ( misses != null && misses.isKnownMissing( i ) )
+                {
+                    logger.trace( "Skipping {}, known not to contain: {}", memberKey, path );
+                    continue;
+                }
+
+                try
+                {
+                    transfer = transferSupplier.get( memberKey );
+                }
+                catch ( IndyWorkflowException e )
+                {
+                    logger.error( String.format( "Failed to retrieve() for member path: %s:%s. Reason: %s", memberKey,
+                                                 path, e.getMessage() ), e );
+                    // not a confirmed miss, so don't record it
+                    continue;
+                }
+
+                if ( exists( transfer ) )
+                {
+                    nfc.clearMissing( resource );
+                    logger.debug( "Got transfer from constituent: {} (will index)", transfer );
+                    indexManager.indexTransferIn( transfer, parentStore.getKey() );
+                    return transfer;
+                }
+                else if ( misses != null )
+                {
+                    misses.markMissing( i );
+                }
             }
-            if ( exists( transfer ) )
+        }
+        finally
+        {
+            if ( misses != null )
             {
-                nfc.clearMissing( resource );
-                logger.debug( "Got transfer from constituent: {} (will index)", transfer );
-                indexManager.indexTransferIn( transfer, parentStore.getKey() );
-                return transfer;
+                missIndex.record( misses );
             }
         }
 
@@ -459,7 +495,7 @@ public abstract class IndexingContentManagerDecorator
             {
                 logger.debug( "No group index hits. Devolving to member store indexes." );
                 transfer = getTransferFromConstituents( ( (Group) store ).getConstituents(), resource, path, store,
-                                                        memberKey -> {
+                                                        null, memberKey -> {
                                                             try
                                                             {
                                                                 ArtifactStore member =
@@ -690,8 +726,9 @@ public abstract class IndexingContentManagerDecorator
                 nfc.clearMissing( new ConcreteResource( LocationUtils.toLocation( store ), path ) );
             }
             // We should deIndex the path for all parent groups because the new content of the path
-            // may change the content index sequence based on the constituents sequence in parent groups
-            if ( store.getType() == StoreType.hosted )
+            // may change the content index sequence based on the constituents sequence in parent groups.
+            // Batched stores are handled once for the whole batch, see StoreChangeListener.batchStored(..)
+            if ( store.getType() == StoreType.hosted && !isBatchStore( eventMetadata ) )
             {
                 try
                 {
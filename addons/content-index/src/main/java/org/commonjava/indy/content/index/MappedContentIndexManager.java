@@ -0,0 +1,282 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.content.index;
+
+import org.commonjava.indy.action.IndyLifecycleException;
+import org.commonjava.indy.action.ShutdownAction;
+import org.commonjava.indy.content.index.mapped.MappedContentIndex;
+import org.commonjava.indy.measure.annotation.Measure;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.subsys.datafile.conf.DataFileConfiguration;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.spi.nfc.NotFoundCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Alternative;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * {@link ContentIndexManager} backed by a {@link MappedContentIndex} under <code>${indy.data}/content-index</code>
+ * instead of the LRU-capped, in-memory <code>content-index</code> Infinispan cache. The index is not evicted, keeps
+ * little on the heap, and survives restarts, so group-to-member resolutions don't have to be relearned.
+ * <p>
+ * To use this instead of {@link DefaultContentIndexManager}, select it as an alternative in beans.xml.
+ */
+@ApplicationScoped
+@Alternative
+public class MappedContentIndexManager
+        implements ContentIndexManager, ShutdownAction
+{
+    public static final String INDEX_DIR = "content-index";
+
+    private final Logger logger = LoggerFactory.getLogger( this.getClass() );
+
+    @Inject
+    private DataFileConfiguration dataConfig;
+
+    @Inject
+    private NotFoundCache nfc;
+
+    @Inject
+    private Instance<PackageIndexingStrategy> indexingStrategyComponents;
+
+    private Map<String, PackageIndexingStrategy> indexingStrategies;
+
+    private MappedContentIndex index;
+
+    protected MappedContentIndexManager()
+    {
+    }
+
+    public MappedContentIndexManager( MappedContentIndex index, Map<String, PackageIndexingStrategy> indexingStrategies,
+                                      NotFoundCache nfc )
+    {
+        this.index = index;
+        this.indexingStrategies = indexingStrategies;
+        this.nfc = nfc;
+    }
+
+    @PostConstruct
+    public void constructed()
+    {
+        if ( indexingStrategyComponents != null )
+        {
+            Map<String, PackageIndexingStrategy> strats = new HashMap<>();
+            indexingStrategyComponents.forEach( comp->{
+                strats.put( comp.getPackageType(), comp );
+            } );
+
+            this.indexingStrategies = Collections.unmodifiableMap( strats );
+        }
+
+        if ( index == null )
+        {
+            File dir = new File( dataConfig.getDataBasedir(), INDEX_DIR );
+            try
+            {
+                index = new MappedContentIndex( dir );
+            }
+            catch ( IOException e )
+            {
+                throw new IllegalStateException( "Cannot open content index in: " + dir, e );
+            }
+        }
+    }
+
+    @Override
+    public String getId()
+    {
+        return "Indy mapped ContentIndexManager";
+    }
+
+    @Override
+    public void stop()
+            throws IndyLifecycleException
+    {
+        logger.debug( "Shutdown content index" );
+        try
+        {
+            index.close();
+        }
+        catch ( IOException e )
+        {
+            throw new IndyLifecycleException( "Failed to close content index: %s", e, e.getMessage() );
+        }
+    }
+
+    @Override
+    public int getShutdownPriority()
+    {
+        return 95;
+    }
+
+    @Override
+    @Measure
+    public boolean removeIndexedStorePath( String rawPath, StoreKey key, Consumer<IndexedStorePath> pathConsumer )
+    {
+        String path = getStrategyPath( key, rawPath );
+        StoreKey origin = index.remove( key, path );
+        if ( origin != null )
+        {
+            if ( pathConsumer != null )
+            {
+                pathConsumer.accept( new IndexedStorePath( key, origin, path ) );
+            }
+            return true;
+        }
+
+        logger.trace( "Remove index (NOT FOUND), key: {}, path: {}", key, path );
+        return false;
+    }
+
+    @Override
+    @Measure
+    public void deIndexStorePath( final StoreKey key, final String rawPath )
+    {
+        String path = getStrategyPath( key, rawPath );
+        StoreKey origin = index.remove( key, path );
+        logger.trace( "De index{}, key: {}, path: {}", ( origin == null ? " (NOT FOUND)" : "" ), key, path );
+    }
+
+    @Override
+    @Measure
+    public StoreKey getIndexedStoreKey( final StoreKey key, final String rawPath )
+    {
+        String path = getStrategyPath( key, rawPath );
+        StoreKey origin = index.get( key, path );
+        logger.trace( "Get index{}, key: {}, path: {}", ( origin == null ? " (NOT FOUND)" : "" ), key, path );
+        return origin;
+    }
+
+    @Override
+    @Measure
+    public void indexTransferIn( Transfer transfer, StoreKey... topKeys )
+    {
+        if ( transfer != null && transfer.exists() )
+        {
+            StoreKey key = LocationUtils.getKey( transfer );
+            String path = getStrategyPath( key, transfer.getPath() );
+            indexPathInStores( path, key, topKeys );
+        }
+    }
+
+    @Override
+    @Measure
+    public void indexPathInStores( String rawPath, StoreKey originKey, StoreKey... topKeys )
+    {
+        String path = getStrategyPath( originKey, rawPath );
+        try
+        {
+            logger.trace( "Indexing path: {} in: {}", path, originKey );
+            index.put( originKey, path, originKey );
+
+            Set<StoreKey> keySet = new HashSet<>( Arrays.asList( topKeys ) );
+            for ( StoreKey key : keySet )
+            {
+                logger.trace( "Indexing path: {} in: {} via member: {}", path, key, originKey );
+                index.put( key, path, originKey );
+            }
+        }
+        catch ( IOException e )
+        {
+            logger.error( String.format( "Failed to index path: %s from: %s. Reason: %s", path, originKey,
+                                         e.getMessage() ), e );
+        }
+    }
+
+    @Override
+    @Measure
+    public void clearAllIndexedPathInStore( ArtifactStore store )
+    {
+        long total = index.removeStore( store.getKey() );
+        logger.trace( "Cleared all indices with group: {}, size: {}", store.getKey(), total );
+    }
+
+    @Override
+    @Measure
+    public void clearAllIndexedPathWithOriginalStore( ArtifactStore originalStore )
+    {
+        long total = index.removeOrigin( originalStore.getKey() );
+        logger.trace( "Cleared all indices with origin: {}, size: {}", originalStore.getKey(), total );
+    }
+
+    @Override
+    @Measure
+    public void clearAllIndexedPathInStoreWithOriginal( ArtifactStore store, ArtifactStore originalStore )
+    {
+        long total = index.removeStoreWithOrigin( store.getKey(), originalStore.getKey() );
+        logger.trace( "Cleared all indices with origin: {} and group: {}, size: {}", originalStore.getKey(),
+                      store.getKey(), total );
+    }
+
+    /**
+     * <b>NOT Recursive</b>. This assumes you've recursed the group membership structure beforehand.
+     */
+    @Override
+    @Measure
+    public void clearIndexedPathFrom( String rawPath, Set<Group> groups, Consumer<IndexedStorePath> pathConsumer )
+    {
+        if ( groups == null || groups.isEmpty() )
+        {
+            return;
+        }
+
+        groups.forEach( (group)->{
+            String path = getStrategyPath( group.getKey(), rawPath );
+
+            logger.debug( "Clearing path: '{}' from content index and storage of: {}", path, group.getName() );
+
+            // if we remove an indexed path, it SHOULD mean there was content. If not, we should delete the NFC entry.
+            if ( !removeIndexedStorePath( path, group.getKey(), pathConsumer ) )
+            {
+                ConcreteResource resource = new ConcreteResource( LocationUtils.toLocation( group ), path );
+                nfc.clearMissing( resource );
+            }
+        } );
+    }
+
+    @Override
+    public String getStrategyPath( final StoreKey key, final String rawPath )
+    {
+        PackageIndexingStrategy strategy = indexingStrategies.get( key.getPackageType() );
+        if ( strategy == null )
+        {
+            logger.trace( "Cannot find indexing strategy for package-type: {}. Using raw path for indexing.",
+                          key.getPackageType() );
+
+            return rawPath;
+        }
+
+        return strategy.getIndexPath( rawPath );
+    }
+}
@@ -16,15 +16,24 @@
 package org.commonjava.indy.content.index.change;
 
 import org.commonjava.indy.change.event.ArtifactStoreDeletePostEvent;
+import org.commonjava.indy.change.event.ArtifactStorePostUpdateEvent;
+import org.commonjava.indy.change.event.ContentBatchStoredEvent;
 import org.commonjava.indy.content.index.ContentIndexManager;
+import org.commonjava.indy.content.index.GroupMemberMissIndex;
 import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
 import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.maven.galley.event.FileStorageEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Observes;
 import javax.inject.Inject;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.commonjava.indy.change.event.ContentBatchStoredEvent.isBatchStore;
 
 @ApplicationScoped
 public class StoreChangeListener
@@ -34,9 +43,23 @@ public class StoreChangeListener
     @Inject
     private ContentIndexManager contentIndexManager;
 
+    @Inject
+    private GroupMemberMissIndex missIndex;
+
+    protected StoreChangeListener()
+    {
+    }
+
+    public StoreChangeListener( final ContentIndexManager contentIndexManager, final GroupMemberMissIndex missIndex )
+    {
+        this.contentIndexManager = contentIndexManager;
+        this.missIndex = missIndex;
+    }
+
     public void storeDeleted( @Observes final ArtifactStoreDeletePostEvent event )
     {
         logger.info( "Updating content index for removed stores." );
+        missIndex.clearAll();
         for ( final ArtifactStore store : event )
         {
             logger.info( "Updating content index for removal of: {}", store.getKey() );
@@ -44,6 +67,58 @@ public class StoreChangeListener
         }
     }
 
+    /**
+     * Any store change (membership, enablement, remote url...) may turn a member recorded as missing a path into one
+     * that has it.
+     */
+    public void storeUpdated( @Observes final ArtifactStorePostUpdateEvent event )
+    {
+        logger.trace( "Clearing group member misses for updated stores: {}", event.getStores() );
+        missIndex.clearAll();
+    }
+
+    /**
+     * Content stored at a path, in any store, may be visible through any group containing that store.
+     */
+    public void fileStored( @Observes final FileStorageEvent event )
+    {
+        if ( isBatchStore( event.getEventMetadata() ) )
+        {
+            // handled once for the whole batch in batchStored(..)
+            return;
+        }
+
+        missIndex.clearPath( event.getTransfer().getPath() );
+    }
+
+    /**
+     * Paths stored in a batch may change which member provides them through the affected groups. Each indexed path is
+     * dropped once per group here, instead of once per stored file; big batches invalidate the whole group instead.
+     */
+    public void batchStored( @Observes final ContentBatchStoredEvent event )
+    {
+        logger.debug( "Updating content index for: {}", event );
+        if ( event.isBulk() )
+        {
+            missIndex.clearAll();
+            event.getAffectedGroups().forEach( g -> contentIndexManager.clearAllIndexedPathInStore( g ) );
+            return;
+        }
+
+        event.getPaths().forEach( p -> missIndex.clearPath( p ) );
+
+        for ( final Group group : event.getAffectedGroups() )
+        {
+            // many stored files share an indexed path (e.g. the GA directory), so only remove each of those once
+            final StoreKey key = group.getKey();
+            final Map<String, String> rawByIndexPath = new HashMap<>();
+            event.getPaths().forEach( p -> rawByIndexPath.putIfAbsent( contentIndexManager.getStrategyPath( key, p ), p ) );
+
+            logger.trace( "De-indexing {} paths in: {}", rawByIndexPath.size(), key );
+            rawByIndexPath.values().forEach( p -> contentIndexManager.deIndexStorePath( key, p ) );
+        }
+    }
+
     private void processChanged( final ArtifactStore store )
     {
         final StoreKey key = store.getKey();
@@ -33,14 +33,32 @@ public class ContentIndexConfig
 
     public static final String ENABLE_INDEX_WARMER = "index.warmer.enable";
 
+    public static final String WARMER_BATCH_SIZE = "index.warmer.batch.size";
+
+    public static final String WARMER_FILES_PER_SECOND = "index.warmer.files.per.second";
+
+    public static final String ENABLE_GROUP_MISS_INDEX = "index.group.misses.enable";
+
     private static final Boolean DEFAULT_AUTHORITATIVE_INDEXES = Boolean.FALSE;
 
     private static final Boolean DEFAULT_WARMER_ENABLED = Boolean.FALSE;
 
+    private static final int DEFAULT_WARMER_BATCH_SIZE = 1000;
+
+    private static final int DEFAULT_WARMER_FILES_PER_SECOND = 0;
+
+    private static final Boolean DEFAULT_GROUP_MISS_INDEX_ENABLED = Boolean.TRUE;
+
     private Boolean authoritativeIndex;
 
     private Boolean warmerEnabled;
 
+    private Integer warmerBatchSize;
+
+    private Integer warmerFilesPerSecond;
+
+    private Boolean groupMissIndexEnabled;
+
     public ContentIndexConfig()
     {
     }
@@ -72,6 +90,42 @@ public class ContentIndexConfig
         this.warmerEnabled = warmerEnabled;
     }
 
+    public int getWarmerBatchSize()
+    {
+        return warmerBatchSize == null || warmerBatchSize < 1 ? DEFAULT_WARMER_BATCH_SIZE : warmerBatchSize;
+    }
+
+    @ConfigName( ContentIndexConfig.WARMER_BATCH_SIZE )
+    public void setWarmerBatchSize( Integer warmerBatchSize )
+    {
+        this.warmerBatchSize = warmerBatchSize;
+    }
+
+    /**
+     * Maximum number of files per second the warmer indexes, across all stores. 0 means no limit.
+     */
+    public int getWarmerFilesPerSecond()
+    {
+        return warmerFilesPerSecond == null ? DEFAULT_WARMER_FILES_PER_SECOND : warmerFilesPerSecond;
+    }
+
+    @ConfigName( ContentIndexConfig.WARMER_FILES_PER_SECOND )
+    public void setWarmerFilesPerSecond( Integer warmerFilesPerSecond )
+    {
+        this.warmerFilesPerSecond = warmerFilesPerSecond;
+    }
+
+    public Boolean isGroupMissIndexEnabled()
+    {
+        return groupMissIndexEnabled == null ? DEFAULT_GROUP_MISS_INDEX_ENABLED : groupMissIndexEnabled;
+    }
+
+    @ConfigName( ContentIndexConfig.ENABLE_GROUP_MISS_INDEX )
+    public void setGroupMissIndexEnabled( Boolean groupMissIndexEnabled )
+    {
+        this.groupMissIndexEnabled = groupMissIndexEnabled;
+    }
+
     @Override
     public String getDefaultConfigFileName()
     {
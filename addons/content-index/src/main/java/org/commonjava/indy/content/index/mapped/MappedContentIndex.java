@@ -0,0 +1,607 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.content.index.mapped;
+
+import org.commonjava.indy.core.util.PathHasher;
+import org.commonjava.indy.model.core.StoreKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Disk-backed map of (store, path) to origin store, for the content index.
+ * <p>
+ * Entries live in 64 memory-mapped segment files, each an open-addressed hash table of fixed 24-byte slots:
+ * <pre>
+ *     [ path hash, high 64 bits ][ path hash, low 64 bits ][ store id ][ origin store id ]
+ * </pre>
+ * Store keys are replaced by ids from a {@link StoreKeyDictionary}, and paths by a 128-bit {@link PathHasher} hash,
+ * so slot size does not depend on path length and the heap only holds the dictionary. A segment doubles (into a
+ * new file, atomically renamed over the old one) when it gets too full. There is no eviction.
+ * <p>
+ * Crash safety: a slot's store id is written last and removal only overwrites the store id, so a process crash never
+ * leaves a half-written entry visible. On open, slots referring to ids missing from the dictionary are dropped, and
+ * temporary files from an interrupted resize are deleted.
+ */
+public final class MappedContentIndex
+        implements Closeable
+{
+    public static final int DEFAULT_SEGMENT_CAPACITY = 1 << 14;
+
+    private static final String DICTIONARY_FILE = "stores.dat";
+
+    private static final String SEGMENT_FILE_FORMAT = "segment-%02d.idx";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int SEGMENTS = 64;
+
+    private static final int SEGMENT_SHIFT = 58;
+
+    private static final int MAGIC = 0x49435831;
+
+    private static final int HEADER_SIZE = 16;
+
+    private static final int SLOT_SIZE = 24;
+
+    private static final int STORE_OFFSET = 16;
+
+    private static final int ORIGIN_OFFSET = 20;
+
+    private static final int MAX_SEGMENT_CAPACITY = 1 << 26;
+
+    private static final int EMPTY = 0;
+
+    private static final int TOMBSTONE = -1;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final StoreKeyDictionary dictionary;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final ThreadLocal<long[]> hashes = ThreadLocal.withInitial( () -> new long[2] );
+
+    public MappedContentIndex( final File dir )
+            throws IOException
+    {
+        this( dir, DEFAULT_SEGMENT_CAPACITY );
+    }
+
+    public MappedContentIndex( final File dir, final int initialSegmentCapacity )
+            throws IOException
+    {
+        if ( !dir.isDirectory() && !dir.mkdirs() )
+        {
+            throw new IOException( "Cannot create content index directory: " + dir );
+        }
+
+        int capacity = Math.max( 16, Integer.highestOneBit( Math.min( initialSegmentCapacity, MAX_SEGMENT_CAPACITY ) ) );
+
+        dictionary = new StoreKeyDictionary( new File( dir, DICTIONARY_FILE ) );
+        for ( int i = 0; i < SEGMENTS; i++ )
+        {
+            segments[i] = new Segment( new File( dir, String.format( SEGMENT_FILE_FORMAT, i ) ), capacity );
+        }
+
+        logger.info( "Opened content index in: {} with {} entries", dir, size() );
+    }
+
+    public StoreKey get( final StoreKey key, final String path )
+    {
+        int storeId = dictionary.idOf( key );
+        if ( storeId == EMPTY )
+        {
+            return null;
+        }
+
+        long[] hash = hash( path );
+        int originId = segmentFor( hash ).get( storeId, hash[0], hash[1] );
+        return originId == EMPTY ? null : dictionary.keyOf( originId );
+    }
+
+    public void put( final StoreKey key, final String path, final StoreKey origin )
+            throws IOException
+    {
+        int storeId = dictionary.register( key );
+        int originId = dictionary.register( origin );
+
+        long[] hash = hash( path );
+        segmentFor( hash ).put( storeId, hash[0], hash[1], originId );
+    }
+
+    /**
+     * Remove the entry, returning the origin store it pointed at, or null if there was none.
+     */
+    public StoreKey remove( final StoreKey key, final String path )
+    {
+        int storeId = dictionary.idOf( key );
+        if ( storeId == EMPTY )
+        {
+            return null;
+        }
+
+        long[] hash = hash( path );
+        int originId = segmentFor( hash ).remove( storeId, hash[0], hash[1] );
+        return originId == EMPTY ? null : dictionary.keyOf( originId );
+    }
+
+    /**
+     * Remove all entries held for the store (which may be a group).
+     */
+    public long removeStore( final StoreKey key )
+    {
+        int storeId = dictionary.idOf( key );
+        return storeId == EMPTY ? 0 : removeMatching( storeId, EMPTY );
+    }
+
+    /**
+     * Remove all entries pointing at the origin store, whichever store they are held for.
+     */
+    public long removeOrigin( final StoreKey origin )
+    {
+        int originId = dictionary.idOf( origin );
+        return originId == EMPTY ? 0 : removeMatching( EMPTY, originId );
+    }
+
+    public long removeStoreWithOrigin( final StoreKey key, final StoreKey origin )
+    {
+        int storeId = dictionary.idOf( key );
+        int originId = dictionary.idOf( origin );
+        return storeId == EMPTY || originId == EMPTY ? 0 : removeMatching( storeId, originId );
+    }
+
+    public long size()
+    {
+        long size = 0;
+        for ( Segment segment : segments )
+        {
+            size += segment.live;
+        }
+
+        return size;
+    }
+
+    /**
+     * Force all segments to disk. Not needed to survive a process crash (the OS keeps the mapped pages), only to
+     * survive losing the machine.
+     */
+    public void flush()
+    {
+        for ( Segment segment : segments )
+        {
+            segment.flush();
+        }
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        flush();
+        for ( Segment segment : segments )
+        {
+            segment.close();
+        }
+
+        dictionary.close();
+    }
+
+    private long removeMatching( final int storeId, final int originId )
+    {
+        long total = 0;
+        for ( Segment segment : segments )
+        {
+            total += segment.removeMatching( storeId, originId );
+        }
+
+        return total;
+    }
+
+    private Segment segmentFor( final long[] hash )
+    {
+        return segments[(int) ( hash[0] >>> SEGMENT_SHIFT )];
+    }
+
+    private long[] hash( final String path )
+    {
+        long[] state = hashes.get();
+        PathHasher.hash( path, state );
+        return state;
+    }
+
+    private static int slotFor( final int storeId, final long lo, final int mask )
+    {
+        long h = lo ^ ( storeId * 0x9e3779b97f4a7c15L );
+        return (int) ( h ^ ( h >>> 32 ) ) & mask;
+    }
+
+    private static int position( final int slot )
+    {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private final class Segment
+    {
+        private final File file;
+
+        private final Lock readLock;
+
+        private final Lock writeLock;
+
+        private FileChannel channel;
+
+        private MappedByteBuffer buffer;
+
+        private int capacity;
+
+        private volatile int live;
+
+        // live entries plus tombstones; this is what drives resizing, since tombstones lengthen probe chains too.
+        private int used;
+
+        Segment( final File file, final int initialCapacity )
+                throws IOException
+        {
+            this.file = file;
+
+            ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+            readLock = lock.readLock();
+            writeLock = lock.writeLock();
+
+            File temp = new File( file.getPath() + TEMP_SUFFIX );
+            if ( temp.exists() && !temp.delete() )
+            {
+                logger.warn( "Cannot delete leftover content index file: {}", temp );
+            }
+
+            if ( file.exists() && openExisting() )
+            {
+                recover();
+            }
+            else
+            {
+                channel = FileChannel.open( file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
+                buffer = map( channel, initialCapacity );
+                capacity = initialCapacity;
+            }
+        }
+
+        int get( final int storeId, final long hi, final long lo )
+        {
+            readLock.lock();
+            try
+            {
+                int slot = find( buffer, capacity, storeId, hi, lo );
+                return slot < 0 ? EMPTY : buffer.getInt( position( slot ) + ORIGIN_OFFSET );
+            }
+            finally
+            {
+                readLock.unlock();
+            }
+        }
+
+        void put( final int storeId, final long hi, final long lo, final int originId )
+                throws IOException
+        {
+            writeLock.lock();
+            try
+            {
+                int slot = find( buffer, capacity, storeId, hi, lo );
+                if ( slot > -1 )
+                {
+                    buffer.putInt( position( slot ) + ORIGIN_OFFSET, originId );
+                    return;
+                }
+
+                if ( ( used + 1 ) * 4L > capacity * 3L && !resize() )
+                {
+                    logger.warn( "Content index segment: {} is full ({} entries). Not indexing new entry.", file,
+                                 live );
+                    return;
+                }
+
+                if ( insert( buffer, capacity, storeId, hi, lo, originId ) )
+                {
+                    used++;
+                }
+                live++;
+            }
+            finally
+            {
+                writeLock.unlock();
+            }
+        }
+
+        int remove( final int storeId, final long hi, final long lo )
+        {
+            writeLock.lock();
+            try
+            {
+                int slot = find( buffer, capacity, storeId, hi, lo );
+                if ( slot < 0 )
+                {
+                    return EMPTY;
+                }
+
+                int pos = position( slot );
+                int originId = buffer.getInt( pos + ORIGIN_OFFSET );
+                buffer.putInt( pos + STORE_OFFSET, TOMBSTONE );
+                live--;
+                return originId;
+            }
+            finally
+            {
+                writeLock.unlock();
+            }
+        }
+
+        long removeMatching( final int storeId, final int originId )
+        {
+            writeLock.lock();
+            try
+            {
+                long removed = 0;
+                for ( int slot = 0; slot < capacity; slot++ )
+                {
+                    int pos = position( slot );
+                    int sid = buffer.getInt( pos + STORE_OFFSET );
+                    if ( sid > EMPTY && ( storeId == EMPTY || sid == storeId ) && ( originId == EMPTY
+                            || buffer.getInt( pos + ORIGIN_OFFSET ) == originId ) )
+                    {
+                        buffer.putInt( pos + STORE_OFFSET, TOMBSTONE );
+                        removed++;
+                    }
+                }
+
+                live -= removed;
+                return removed;
+            }
+            finally
+            {
+                writeLock.unlock();
+            }
+        }
+
+        void flush()
+        {
+            readLock.lock();
+            try
+            {
+                buffer.force();
+            }
+            finally
+            {
+                readLock.unlock();
+            }
+        }
+
+        void close()
+                throws IOException
+        {
+            writeLock.lock();
+            try
+            {
+                channel.close();
+            }
+            finally
+            {
+                writeLock.unlock();
+            }
+        }
+
+        /**
+         * Rebuild into a new file, doubling the capacity unless most of the used slots are tombstones. Returns false if
+         * the segment is at maximum capacity and still full of live entries.
+         */
+        private boolean resize()
+                throws IOException
+        {
+            int newCapacity = capacity;
+            if ( ( live + 1 ) * 2L > capacity )
+            {
+                if ( capacity >= MAX_SEGMENT_CAPACITY )
+                {
+                    if ( ( live + 1 ) * 4L > capacity * 3L )
+                    {
+                        return false;
+                    }
+                }
+                else
+                {
+                    newCapacity = capacity * 2;
+                }
+            }
+
+            File temp = new File( file.getPath() + TEMP_SUFFIX );
+            FileChannel newChannel = FileChannel.open( temp.toPath(), StandardOpenOption.CREATE,
+                                                       StandardOpenOption.READ, StandardOpenOption.WRITE,
+                                                       StandardOpenOption.TRUNCATE_EXISTING );
+            MappedByteBuffer newBuffer;
+            try
+            {
+                newBuffer = map( newChannel, newCapacity );
+                for ( int slot = 0; slot < capacity; slot++ )
+                {
+                    int pos = position( slot );
+                    int sid = buffer.getInt( pos + STORE_OFFSET );
+                    if ( sid > EMPTY )
+                    {
+                        insert( newBuffer, newCapacity, sid, buffer.getLong( pos ), buffer.getLong( pos + 8 ),
+                                buffer.getInt( pos + ORIGIN_OFFSET ) );
+                    }
+                }
+
+                newBuffer.force();
+                Files.move( temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                            StandardCopyOption.REPLACE_EXISTING );
+            }
+            catch ( IOException | RuntimeException e )
+            {
+                newChannel.close();
+                Files.deleteIfExists( temp.toPath() );
+                throw e;
+            }
+
+            // the old mapping is released when the buffer is collected.
+            channel.close();
+            channel = newChannel;
+            buffer = newBuffer;
+            capacity = newCapacity;
+            used = live;
+
+            logger.debug( "Resized content index segment: {} to {} slots ({} entries)", file, capacity, live );
+            return true;
+        }
+
+        private boolean openExisting()
+                throws IOException
+        {
+            channel = FileChannel.open( file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE );
+            long size = channel.size();
+            if ( size >= HEADER_SIZE )
+            {
+                MappedByteBuffer existing = channel.map( FileChannel.MapMode.READ_WRITE, 0, size );
+                int existingCapacity = existing.getInt( 4 );
+                if ( existing.getInt( 0 ) == MAGIC && Integer.bitCount( existingCapacity ) == 1
+                        && existingCapacity <= MAX_SEGMENT_CAPACITY
+                        && size == HEADER_SIZE + (long) existingCapacity * SLOT_SIZE )
+                {
+                    buffer = existing;
+                    capacity = existingCapacity;
+                    return true;
+                }
+            }
+
+            logger.warn( "Discarding unreadable content index segment: {}", file );
+            channel.close();
+            return false;
+        }
+
+        /**
+         * Count entries, and drop any that refer to store ids the dictionary doesn't know about.
+         */
+        private void recover()
+        {
+            int dropped = 0;
+            for ( int slot = 0; slot < capacity; slot++ )
+            {
+                int pos = position( slot );
+                int sid = buffer.getInt( pos + STORE_OFFSET );
+                if ( sid == EMPTY )
+                {
+                    continue;
+                }
+
+                used++;
+                if ( sid == TOMBSTONE )
+                {
+                    continue;
+                }
+
+                if ( dictionary.keyOf( sid ) == null
+                        || dictionary.keyOf( buffer.getInt( pos + ORIGIN_OFFSET ) ) == null )
+                {
+                    buffer.putInt( pos + STORE_OFFSET, TOMBSTONE );
+                    dropped++;
+                }
+                else
+                {
+                    live++;
+                }
+            }
+
+            if ( dropped > 0 )
+            {
+                logger.warn( "Dropped {} unresolvable entries from content index segment: {}", dropped, file );
+            }
+        }
+    }
+
+    private static MappedByteBuffer map( final FileChannel channel, final int capacity )
+            throws IOException
+    {
+        MappedByteBuffer buffer =
+                channel.map( FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE );
+        buffer.putInt( 0, MAGIC );
+        buffer.putInt( 4, capacity );
+        return buffer;
+    }
+
+    /**
+     * Return the slot holding the entry, or -1.
+     */
+    private static int find( final MappedByteBuffer buffer, final int capacity, final int storeId, final long hi,
+                             final long lo )
+    {
+        int mask = capacity - 1;
+        int slot = slotFor( storeId, lo, mask );
+        for ( int probes = 0; probes < capacity; probes++ )
+        {
+            int pos = position( slot );
+            int sid = buffer.getInt( pos + STORE_OFFSET );
+            if ( sid == EMPTY )
+            {
+                return -1;
+            }
+
+            if ( sid == storeId && buffer.getLong( pos ) == hi && buffer.getLong( pos + 8 ) == lo )
+            {
+                return slot;
+            }
+
+            slot = ( slot + 1 ) & mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Write the entry into the first free slot of its probe chain (which must exist). The store id goes last, so the
+     * slot only becomes visible once it is complete. Returns true if the slot was never used before.
+     */
+    private static boolean insert( final MappedByteBuffer buffer, final int capacity, final int storeId, final long hi,
+                                   final long lo, final int originId )
+    {
+        int mask = capacity - 1;
+        int slot = slotFor( storeId, lo, mask );
+        int pos = position( slot );
+        int sid = buffer.getInt( pos + STORE_OFFSET );
+        while ( sid > EMPTY )
+        {
+            slot = ( slot + 1 ) & mask;
+            pos = position( slot );
+            sid = buffer.getInt( pos + STORE_OFFSET );
+        }
+
+        buffer.putLong( pos, hi );
+        buffer.putLong( pos + 8, lo );
+        buffer.putInt( pos + ORIGIN_OFFSET, originId );
+        buffer.putInt( pos + STORE_OFFSET, storeId );
+        return sid == EMPTY;
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.content.index.mapped;
+
+import org.commonjava.indy.model.core.StoreKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only mapping of {@link StoreKey}s to small integer ids, so index entries can refer to stores with a 4-byte
+ * id. Each new key is written as one <code>id TAB key</code> line and forced to disk before its id is handed out, so an
+ * id stored in the index is always resolvable after a restart. A partial trailing line left by a crash is discarded on
+ * open. Ids are never reused.
+ */
+final class StoreKeyDictionary
+        implements Closeable
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final FileChannel channel;
+
+    private final Map<StoreKey, Integer> ids = new ConcurrentHashMap<>();
+
+    // index = id; slot 0 is unused, so 0 can mean "empty" in the index.
+    private volatile StoreKey[] keys = new StoreKey[16];
+
+    private int nextId = 1;
+
+    StoreKeyDictionary( final File file )
+            throws IOException
+    {
+        channel = FileChannel.open( file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                    StandardOpenOption.WRITE );
+        load();
+    }
+
+    /**
+     * Return the id of the key, or 0 if the key has never been registered.
+     */
+    int idOf( final StoreKey key )
+    {
+        Integer id = ids.get( key );
+        return id == null ? 0 : id;
+    }
+
+    StoreKey keyOf( final int id )
+    {
+        StoreKey[] current = keys;
+        return id > 0 && id < current.length ? current[id] : null;
+    }
+
+    int register( final StoreKey key )
+            throws IOException
+    {
+        Integer id = ids.get( key );
+        if ( id != null )
+        {
+            return id;
+        }
+
+        synchronized ( this )
+        {
+            id = ids.get( key );
+            if ( id != null )
+            {
+                return id;
+            }
+
+            int next = nextId;
+            ByteBuffer line = ByteBuffer.wrap( ( next + "\t" + key + "\n" ).getBytes( StandardCharsets.UTF_8 ) );
+            while ( line.hasRemaining() )
+            {
+                channel.write( line, channel.size() );
+            }
+            channel.force( false );
+
+            add( next, key );
+            return next;
+        }
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        channel.close();
+    }
+
+    private void load()
+            throws IOException
+    {
+        long size = channel.size();
+        ByteBuffer buf = ByteBuffer.allocate( (int) size );
+        while ( buf.hasRemaining() )
+        {
+            if ( channel.read( buf, buf.position() ) < 0 )
+            {
+                break;
+            }
+        }
+
+        byte[] data = buf.array();
+        int lineStart = 0;
+        for ( int i = 0; i < data.length; i++ )
+        {
+            if ( data[i] != '\n' )
+            {
+                continue;
+            }
+
+            String line = new String( data, lineStart, i - lineStart, StandardCharsets.UTF_8 );
+            lineStart = i + 1;
+
+            int tab = line.indexOf( '\t' );
+            try
+            {
+                StoreKey key = tab < 0 ? null : StoreKey.fromString( line.substring( tab + 1 ) );
+                if ( key != null )
+                {
+                    add( Integer.parseInt( line.substring( 0, tab ) ), key );
+                    continue;
+                }
+            }
+            catch ( RuntimeException e )
+            {
+                logger.debug( "Failed to parse store-key dictionary entry: " + line, e );
+            }
+
+            logger.warn( "Skipping unreadable store-key dictionary entry: '{}'", line );
+        }
+
+        if ( lineStart < data.length )
+        {
+            logger.warn( "Discarding partial store-key dictionary entry ({} bytes) left by an unclean shutdown.",
+                         data.length - lineStart );
+            channel.truncate( lineStart );
+        }
+    }
+
+    private void add( final int id, final StoreKey key )
+    {
+        StoreKey[] current = keys;
+        if ( id >= current.length )
+        {
+            StoreKey[] grown = new StoreKey[Math.max( id + 1, current.length * 2 )];
+            System.arraycopy( current, 0, grown, 0, current.length );
+            current = grown;
+        }
+
+        current[id] = key;
+        keys = current;
+        ids.put( key, id );
+        nextId = Math.max( nextId, id + 1 );
+    }
+}
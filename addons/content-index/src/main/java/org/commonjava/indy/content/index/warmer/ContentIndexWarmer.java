@@ -15,9 +15,10 @@
  */
 package org.commonjava.indy.content.index.warmer;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import org.commonjava.cdi.util.weft.ExecutorConfig;
 import org.commonjava.cdi.util.weft.WeftManaged;
-import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.content.DownloadManager;
 import org.commonjava.indy.content.index.ContentIndexManager;
 import org.commonjava.indy.content.index.conf.ContentIndexConfig;
@@ -27,21 +28,50 @@ import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.Group;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.subsys.datafile.conf.DataFileConfiguration;
 import org.commonjava.maven.galley.model.Transfer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Rebuilds the content index from storage at startup.
+ * <p>
+ * Each concrete store's storage is walked lazily, depth-first, and its files are indexed in batches, so memory use
+ * depends on tree depth and batch size rather than on the number of files. Group entries are derived as each file is
+ * indexed: a group points at the file's store unless the index already points it at a store that comes earlier in the
+ * group's membership. Progress is checkpointed to <code>${indy.data}/content-index-warmer.properties</code>, and an
+ * interrupted warm-up resumes from there on the next start.
+ */
 @ApplicationScoped
 public class ContentIndexWarmer
 {
+    public static final String CHECKPOINT_FILE = "content-index-warmer.properties";
+
+    private static final int LOCK_STRIPES = 256;
+
     @Inject
     private ContentIndexManager indexManager;
 
@@ -54,6 +84,12 @@ public class ContentIndexWarmer
     @Inject
     private DownloadManager downloadManager;
 
+    @Inject
+    private DataFileConfiguration dataConfig;
+
+    @Inject
+    private Instance<MetricRegistry> metricRegistry;
+
     @WeftManaged
     @ExecutorConfig( named = "content-index-warmer", priority = 6, threads = 12 )
     @Inject
@@ -61,6 +97,37 @@ public class ContentIndexWarmer
 
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
+    // serializes check-then-index of a (strategy) path across the stores being walked concurrently
+    private final ReentrantLock[] pathLocks = new ReentrantLock[LOCK_STRIPES];
+
+    private final AtomicInteger storesTotal = new AtomicInteger();
+
+    private final AtomicInteger storesDone = new AtomicInteger();
+
+    private final AtomicLong filesIndexed = new AtomicLong();
+
+    private volatile long startNanos;
+
+    public ContentIndexWarmer()
+    {
+        for ( int i = 0; i < LOCK_STRIPES; i++ )
+        {
+            pathLocks[i] = new ReentrantLock();
+        }
+    }
+
+    @PostConstruct
+    public void registerMetrics()
+    {
+        if ( metricRegistry != null && !metricRegistry.isUnsatisfied() )
+        {
+            MetricRegistry registry = metricRegistry.get();
+            registry.register( name( getClass(), "stores", "total" ), (Gauge<Integer>) storesTotal::get );
+            registry.register( name( getClass(), "stores", "done" ), (Gauge<Integer>) storesDone::get );
+            registry.register( name( getClass(), "files", "indexed" ), (Gauge<Long>) filesIndexed::get );
+        }
+    }
+
     public void warmCaches()
     {
         if ( indexConfig.isWarmerEnabled() )
@@ -71,97 +138,12 @@ public class ContentIndexWarmer
                 indexConfig.setAuthoritativeIndex( false );
                 try
                 {
-                    Map<StoreKey, List<Transfer>> transferMap = new ConcurrentHashMap<>();
-
-                    try
-                    {
-                        List<ArtifactStore> concreteStores =
-                                storeDataManager.query().storeTypes( StoreType.hosted, StoreType.remote ).getAll();
-
-                        CountDownLatch latch = new CountDownLatch( concreteStores.size() );
-
-                        concreteStores.forEach( store -> executor.submit( () -> {
-                            try
-                            {
-                                List<Transfer> transfers =
-                                        downloadManager.listRecursively( store.getKey(), DownloadManager.ROOT_PATH );
-                                transferMap.put( store.getKey(), transfers );
-                                transfers.forEach( t -> indexManager.indexTransferIn( t, store.getKey() ) );
-                            }
-                            catch ( IndyWorkflowException e )
-                            {
-                                logger.warn( "Failed to retrieve root directory of storage for: " + store.getKey(), e );
-                            }
-                            finally
-                            {
-                                latch.countDown();
-                            }
-                        } ) );
-
-                        try
-                        {
-                            latch.await();
-                        }
-                        catch ( InterruptedException e )
-                        {
-                            logger.info(
-                                    "Manager thread interrupted while waiting for concrete store indexing to complete." );
-                            return;
-                        }
-
-                        List<Group> groups = storeDataManager.query().storeType( Group.class ).getAll();
-                        CountDownLatch groupLatch = new CountDownLatch( groups.size() );
-
-                        groups.forEach( g -> executor.submit( () -> {
-                            StoreKey gkey = g.getKey();
-
-                            try
-                            {
-                                List<ArtifactStore> stores = storeDataManager.query().getOrderedConcreteStoresInGroup( g.getName() );
-
-                                stores.forEach( s -> {
-                                    List<Transfer> txfrs = transferMap.get( s.getKey() );
-                                    txfrs.forEach( t -> {
-                                        if ( indexManager.getIndexedStoreKey( gkey, t.getPath() ) == null )
-                                        {
-                                            indexManager.indexTransferIn( t, gkey );
-                                        }
-                                    } );
-                                } );
-                            }
-                            catch ( IndyDataException e )
-                            {
-                                logger.warn( "Failed to get ordered concrete stores for group: " + g.getName(), e );
-                            }
-                            finally
-                            {
-                                groupLatch.countDown();
-                            }
-                        } ) );
-
-                        try
-                        {
-                            groupLatch.await();
-                        }
-                        catch ( InterruptedException e )
-                        {
-                            logger.info( "Manager thread interrupted while waiting for group indexing to complete." );
-                            return;
-                        }
-
-                    }
-                    catch ( IndyDataException e )
-                    {
-                        logger.warn( "Content index warm-up failed: %s", e, e.getMessage() );
-                    }
-
-                    logger.info( "Content index cache has been re-established." );
+                    warm( new WarmerCheckpoint( new File( dataConfig.getDataBasedir(), CHECKPOINT_FILE ) ) );
                 }
                 finally
                 {
                     indexConfig.setAuthoritativeIndex( oldAuthIdx );
                 }
-
             } );
         }
         else
@@ -169,4 +151,236 @@ public class ContentIndexWarmer
             logger.info( "Content index warmer is not enabled." );
         }
     }
+
+    private void warm( final WarmerCheckpoint checkpoint )
+    {
+        Map<StoreKey, List<GroupMembership>> memberships;
+        List<ArtifactStore> concreteStores;
+        try
+        {
+            memberships = getGroupMemberships();
+            concreteStores = storeDataManager.query().storeTypes( StoreType.hosted, StoreType.remote ).getAll();
+        }
+        catch ( IndyDataException e )
+        {
+            logger.warn( String.format( "Content index warm-up failed: %s", e.getMessage() ), e );
+            return;
+        }
+
+        if ( checkpoint.isResuming() )
+        {
+            logger.info( "Resuming interrupted content index warm-up." );
+        }
+
+        storesTotal.set( concreteStores.size() );
+        storesDone.set( 0 );
+        filesIndexed.set( 0 );
+        startNanos = System.nanoTime();
+
+        CountDownLatch latch = new CountDownLatch( concreteStores.size() );
+        concreteStores.forEach( store -> executor.submit( () -> {
+            try
+            {
+                if ( !checkpoint.isDone( store.getKey() ) )
+                {
+                    warmStore( store, memberships.getOrDefault( store.getKey(), Collections.emptyList() ),
+                               checkpoint );
+                }
+            }
+            catch ( IOException e )
+            {
+                logger.warn( "Failed to index storage of: " + store.getKey(), e );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                logger.info( "Content index warm-up of: {} interrupted.", store.getKey() );
+            }
+            finally
+            {
+                storesDone.incrementAndGet();
+                latch.countDown();
+            }
+        } ) );
+
+        try
+        {
+            latch.await();
+        }
+        catch ( InterruptedException e )
+        {
+            logger.info( "Manager thread interrupted while waiting for store indexing to complete." );
+            return;
+        }
+
+        checkpoint.finish();
+        logger.info( "Content index cache has been re-established: {} files from {} stores in {}s.", filesIndexed.get(),
+                     storesTotal.get(), TimeUnit.NANOSECONDS.toSeconds( System.nanoTime() - startNanos ) );
+    }
+
+    /**
+     * Walk the store's storage depth-first, children in sorted order, skipping whatever the checkpoint says was
+     * already indexed. Only the directories still to be visited are held in memory.
+     */
+    private void warmStore( final ArtifactStore store, final List<GroupMembership> groups,
+                            final WarmerCheckpoint checkpoint )
+            throws IOException, InterruptedException
+    {
+        StoreKey key = store.getKey();
+        String lastPath = checkpoint.getLastPath( key );
+        logger.debug( "Indexing storage of: {}{}", key, lastPath == null ? "" : " after: " + lastPath );
+
+        int batchSize = indexConfig.getWarmerBatchSize();
+        List<String> batch = new ArrayList<>( batchSize );
+        long files = 0;
+
+        Deque<Transfer> pending = new ArrayDeque<>();
+        pending.push( downloadManager.getStoreRootDirectory( store ) );
+        while ( !pending.isEmpty() )
+        {
+            if ( Thread.currentThread().isInterrupted() )
+            {
+                throw new InterruptedException( "Interrupted while indexing: " + key );
+            }
+
+            Transfer transfer = pending.pop();
+            if ( transfer.isDirectory() )
+            {
+                String[] children = transfer.list();
+                Arrays.sort( children );
+                for ( int i = children.length - 1; i > -1; i-- )
+                {
+                    Transfer child = transfer.getChild( children[i] );
+                    if ( !WarmerCheckpoint.isBefore( child.getPath(), lastPath ) )
+                    {
+                        pending.push( child );
+                    }
+                }
+            }
+            else if ( transfer.exists() )
+            {
+                batch.add( transfer.getPath() );
+                if ( batch.size() >= batchSize )
+                {
+                    files += indexBatch( key, batch, groups, checkpoint );
+                }
+            }
+        }
+
+        files += indexBatch( key, batch, groups, checkpoint );
+        checkpoint.markDone( key );
+
+        logger.info( "Indexed {} files from: {} ({} of {} stores done)", files, key, storesDone.get() + 1,
+                     storesTotal.get() );
+    }
+
+    private int indexBatch( final StoreKey key, final List<String> batch, final List<GroupMembership> groups,
+                            final WarmerCheckpoint checkpoint )
+            throws InterruptedException
+    {
+        if ( batch.isEmpty() )
+        {
+            return 0;
+        }
+
+        List<StoreKey> targets = new ArrayList<>( groups.size() );
+        for ( String path : batch )
+        {
+            String strategyPath = indexManager.getStrategyPath( key, path );
+            ReentrantLock lock = pathLocks[( strategyPath.hashCode() & Integer.MAX_VALUE ) % LOCK_STRIPES];
+            lock.lock();
+            try
+            {
+                targets.clear();
+                for ( GroupMembership membership : groups )
+                {
+                    StoreKey current = indexManager.getIndexedStoreKey( membership.group, path );
+                    if ( current == null || membership.rankOf( current ) > membership.rank )
+                    {
+                        targets.add( membership.group );
+                    }
+                }
+
+                indexManager.indexPathInStores( path, key, targets.toArray( new StoreKey[targets.size()] ) );
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        int count = batch.size();
+        checkpoint.update( key, batch.get( count - 1 ) );
+        batch.clear();
+
+        throttle( filesIndexed.addAndGet( count ) );
+        return count;
+    }
+
+    /**
+     * Sleep as needed to keep the overall indexing rate under the configured files-per-second limit.
+     */
+    private void throttle( final long indexed )
+            throws InterruptedException
+    {
+        int rate = indexConfig.getWarmerFilesPerSecond();
+        if ( rate < 1 )
+        {
+            return;
+        }
+
+        long due = startNanos + TimeUnit.SECONDS.toNanos( indexed ) / rate;
+        long wait = due - System.nanoTime();
+        if ( wait > 0 )
+        {
+            TimeUnit.NANOSECONDS.sleep( wait );
+        }
+    }
+
+    /**
+     * For each concrete store, the groups it is a (possibly indirect) member of, and its position in each.
+     */
+    private Map<StoreKey, List<GroupMembership>> getGroupMemberships()
+            throws IndyDataException
+    {
+        Map<StoreKey, List<GroupMembership>> result = new HashMap<>();
+        for ( Group group : storeDataManager.query().storeType( Group.class ).getAll() )
+        {
+            List<ArtifactStore> members = storeDataManager.query()
+                                                          .packageType( group.getPackageType() )
+                                                          .getOrderedConcreteStoresInGroup( group.getName() );
+
+            Map<StoreKey, Integer> ranks = new HashMap<>();
+            for ( ArtifactStore member : members )
+            {
+                ranks.putIfAbsent( member.getKey(), ranks.size() );
+            }
+
+            ranks.forEach( ( member, rank ) -> result.computeIfAbsent( member, k -> new ArrayList<>() )
+                                                     .add( new GroupMembership( group.getKey(), rank, ranks ) ) );
+        }
+
+        return result;
+    }
+
+    private static final class GroupMembership
+    {
+        private final StoreKey group;
+
+        private final int rank;
+
+        private final Map<StoreKey, Integer> ranks;
+
+        GroupMembership( final StoreKey group, final int rank, final Map<StoreKey, Integer> ranks )
+        {
+            this.group = group;
+            this.rank = rank;
+            this.ranks = ranks;
+        }
+
+        int rankOf( final StoreKey member )
+        {
+            return ranks.getOrDefault( member, Integer.MAX_VALUE );
+        }
+    }
 }
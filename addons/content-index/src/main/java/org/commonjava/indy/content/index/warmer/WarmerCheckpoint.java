@@ -0,0 +1,204 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.content.index.warmer;
+
+import org.commonjava.indy.model.core.StoreKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Progress of a content index warm-up, kept in a properties file so a warm-up interrupted by a restart can resume.
+ * For each store it records either that the store is done, or the last path indexed. Stores are walked depth-first
+ * with children in sorted order, so everything up to that path (in {@link #compare(String, String)} order) is done.
+ * The file is deleted when the warm-up finishes.
+ */
+final class WarmerCheckpoint
+{
+    private static final String DONE = "";
+
+    private static final long SAVE_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis( 10 );
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final File file;
+
+    private final Map<StoreKey, String> progress = new ConcurrentHashMap<>();
+
+    private long lastSave;
+
+    WarmerCheckpoint( final File file )
+    {
+        this.file = file;
+        if ( file.exists() )
+        {
+            Properties props = new Properties();
+            try (InputStream in = new FileInputStream( file ))
+            {
+                props.load( in );
+                props.stringPropertyNames().forEach( key -> {
+                    StoreKey storeKey = StoreKey.fromString( key );
+                    if ( storeKey != null )
+                    {
+                        progress.put( storeKey, props.getProperty( key ) );
+                    }
+                } );
+            }
+            catch ( IOException | RuntimeException e )
+            {
+                logger.warn( "Cannot read content index warmer progress from: {}. Starting over. Reason: {}", file,
+                             e.getMessage() );
+                progress.clear();
+            }
+        }
+    }
+
+    boolean isResuming()
+    {
+        return !progress.isEmpty();
+    }
+
+    boolean isDone( final StoreKey key )
+    {
+        return DONE.equals( progress.get( key ) );
+    }
+
+    /**
+     * Return the last path indexed for the store, or null if the store hasn't been started.
+     */
+    String getLastPath( final StoreKey key )
+    {
+        String last = progress.get( key );
+        return last == null || DONE.equals( last ) ? null : last;
+    }
+
+    void update( final StoreKey key, final String lastPath )
+    {
+        progress.put( key, lastPath );
+        synchronized ( this )
+        {
+            if ( System.currentTimeMillis() - lastSave >= SAVE_INTERVAL_MILLIS )
+            {
+                save();
+            }
+        }
+    }
+
+    void markDone( final StoreKey key )
+    {
+        progress.put( key, DONE );
+        synchronized ( this )
+        {
+            save();
+        }
+    }
+
+    void finish()
+    {
+        synchronized ( this )
+        {
+            progress.clear();
+            if ( file.exists() && !file.delete() )
+            {
+                logger.warn( "Cannot delete content index warmer progress file: {}", file );
+            }
+        }
+    }
+
+    private void save()
+    {
+        lastSave = System.currentTimeMillis();
+
+        Properties props = new Properties();
+        progress.forEach( ( key, value ) -> props.setProperty( key.toString(), value ) );
+
+        File temp = new File( file.getPath() + ".tmp" );
+        try
+        {
+            file.getParentFile().mkdirs();
+            try (OutputStream out = new FileOutputStream( temp ))
+            {
+                props.store( out, "Content index warmer progress" );
+            }
+
+            Files.move( temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING );
+        }
+        catch ( IOException e )
+        {
+            logger.warn( "Cannot save content index warmer progress to: {}. Reason: {}", file, e.getMessage() );
+        }
+    }
+
+    /**
+     * Compare paths in the order of a depth-first walk with children sorted by name: segment by segment, so that
+     * <code>a/b/c</code> comes before <code>a/b-x</code>.
+     */
+    static int compare( final String first, final String second )
+    {
+        int len = Math.min( first.length(), second.length() );
+        for ( int i = 0; i < len; i++ )
+        {
+            char a = first.charAt( i );
+            char b = second.charAt( i );
+            if ( a != b )
+            {
+                if ( a == '/' )
+                {
+                    return -1;
+                }
+
+                if ( b == '/' )
+                {
+                    return 1;
+                }
+
+                return a - b;
+            }
+        }
+
+        return first.length() - second.length();
+    }
+
+    /**
+     * Whether the walk can skip this path on resume, because it (and everything under it) was indexed before the
+     * checkpoint.
+     */
+    static boolean isBefore( final String path, final String lastPath )
+    {
+        if ( lastPath == null )
+        {
+            return false;
+        }
+
+        boolean ancestor = lastPath.length() > path.length() && lastPath.startsWith( path ) && (
+                path.endsWith( "/" ) || lastPath.charAt( path.length() ) == '/' );
+
+        return !ancestor && compare( path, lastPath ) <= 0;
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.content.index;
+
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.subsys.infinispan.BasicCacheHandle;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class ContentIndexGenerationsTest
+{
+    private static final String PATH = "/org/foo/bar/1.0";
+
+    private final StoreKey group = StoreKey.fromString( "maven:group:public" );
+
+    private final StoreKey hosted = StoreKey.fromString( "maven:hosted:local-deployments" );
+
+    private final StoreKey remote = StoreKey.fromString( "maven:remote:central" );
+
+    private Map<String, Long> backing;
+
+    private ContentIndexGenerations generations;
+
+    @Before
+    public void setup()
+    {
+        backing = new HashMap<>();
+        generations = new ContentIndexGenerations( new MapCacheHandle( backing ) );
+    }
+
+    @Test
+    public void storeBumpInvalidatesOnlyThatStore()
+    {
+        IndexedStorePath inGroup = generations.stamp( new IndexedStorePath( group, hosted, PATH ) );
+        IndexedStorePath inHosted = generations.stamp( new IndexedStorePath( hosted, PATH ) );
+
+        generations.bumpStore( group );
+
+        assertThat( generations.isCurrent( inGroup ), equalTo( false ) );
+        assertThat( generations.isCurrent( inHosted ), equalTo( true ) );
+
+        // re-indexing after the bump makes the entry visible again
+        assertThat( generations.isCurrent( generations.stamp( inGroup ) ), equalTo( true ) );
+    }
+
+    @Test
+    public void originBumpInvalidatesEntriesPointingAtIt()
+    {
+        IndexedStorePath viaHosted = generations.stamp( new IndexedStorePath( group, hosted, PATH ) );
+        IndexedStorePath viaRemote = generations.stamp( new IndexedStorePath( group, remote, PATH + "-remote" ) );
+        IndexedStorePath inHosted = generations.stamp( new IndexedStorePath( hosted, PATH ) );
+
+        generations.bumpOrigin( hosted );
+
+        assertThat( generations.isCurrent( viaHosted ), equalTo( false ) );
+        assertThat( generations.isCurrent( viaRemote ), equalTo( true ) );
+        assertThat( generations.isCurrent( inHosted ), equalTo( true ) );
+    }
+
+    @Test
+    public void pairBumpInvalidatesOnlyThatPair()
+    {
+        StoreKey other = StoreKey.fromString( "maven:group:other" );
+        IndexedStorePath inGroup = generations.stamp( new IndexedStorePath( group, hosted, PATH ) );
+        IndexedStorePath inOther = generations.stamp( new IndexedStorePath( other, hosted, PATH ) );
+
+        generations.bumpPair( group, hosted );
+
+        assertThat( generations.isCurrent( inGroup ), equalTo( false ) );
+        assertThat( generations.isCurrent( inOther ), equalTo( true ) );
+    }
+
+    @Test
+    public void generationsAreReadBackFromTheCache()
+    {
+        IndexedStorePath inGroup = generations.stamp( new IndexedStorePath( group, hosted, PATH ) );
+        generations.bumpStore( group );
+
+        ContentIndexGenerations restarted = new ContentIndexGenerations( new MapCacheHandle( backing ) );
+        assertThat( restarted.isCurrent( inGroup ), equalTo( false ) );
+        assertThat( restarted.getStoreGeneration( group ), equalTo( 1L ) );
+    }
+
+    @Test
+    public void generationsSurviveExternalizationButNotEquality()
+            throws Exception
+    {
+        generations.bumpStore( group );
+        generations.bumpPair( group, hosted );
+        IndexedStorePath isp = generations.stamp( new IndexedStorePath( group, hosted, PATH ) );
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream( baos ))
+        {
+            out.writeObject( isp );
+        }
+
+        IndexedStorePath read;
+        try (ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( baos.toByteArray() ) ))
+        {
+            read = (IndexedStorePath) in.readObject();
+        }
+
+        assertThat( read.getStoreGeneration(), equalTo( 1L ) );
+        assertThat( read.getPairGeneration(), equalTo( 1L ) );
+        assertThat( generations.isCurrent( read ), equalTo( true ) );
+        assertThat( read, equalTo( new IndexedStorePath( group, PATH ) ) );
+    }
+
+    private static final class MapCacheHandle
+            extends BasicCacheHandle<String, Long>
+    {
+        private final Map<String, Long> map;
+
+        MapCacheHandle( Map<String, Long> map )
+        {
+            this.map = map;
+        }
+
+        @Override
+        public Long get( String key )
+        {
+            return map.get( key );
+        }
+
+        @Override
+        public Long put( String key, Long value )
+        {
+            return map.put( key, value );
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.content.index;
+
+import org.commonjava.indy.content.index.conf.ContentIndexConfig;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.subsys.infinispan.BasicCacheHandle;
+import org.infinispan.commons.api.BasicCache;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class GroupMemberMissIndexTest
+{
+    private static final String PATH = "org/foo/bar/1.0/bar-1.0.pom";
+
+    private final StoreKey first = StoreKey.fromString( "maven:hosted:first" );
+
+    private final StoreKey second = StoreKey.fromString( "maven:remote:second" );
+
+    private final StoreKey third = StoreKey.fromString( "maven:remote:third" );
+
+    private Group group;
+
+    private ContentIndexConfig config;
+
+    private GroupMemberMissIndex missIndex;
+
+    @Before
+    public void setup()
+    {
+        group = new Group( MAVEN_PKG_KEY, "public", first, second, third );
+        config = new ContentIndexConfig();
+        missIndex = new GroupMemberMissIndex( new MapCacheHandle( new HashMap<>() ), config );
+    }
+
+    @Test
+    public void recordedMissesAreSkippedNextTime()
+    {
+        recordMisses( group, PATH, 0, 1 );
+
+        GroupMemberMissIndex.Lookup lookup = missIndex.lookup( group, PATH );
+        assertThat( lookup.isKnownMissing( 0 ), equalTo( true ) );
+        assertThat( lookup.isKnownMissing( 1 ), equalTo( true ) );
+        assertThat( lookup.isKnownMissing( 2 ), equalTo( false ) );
+    }
+
+    @Test
+    public void membershipChangeInvalidatesRecord()
+    {
+        recordMisses( group, PATH, 0 );
+
+        Group reordered = new Group( MAVEN_PKG_KEY, "public", second, first, third );
+        assertThat( missIndex.lookup( reordered, PATH ).isKnownMissing( 0 ), equalTo( false ) );
+    }
+
+    @Test
+    public void storingThePathClearsItsRecords()
+    {
+        recordMisses( group, PATH, 0 );
+        recordMisses( group, "org/foo/bar/1.0/bar-1.0.jar", 0 );
+
+        missIndex.clearPath( "/" + PATH );
+
+        assertThat( missIndex.lookup( group, PATH ).isKnownMissing( 0 ), equalTo( false ) );
+        assertThat( missIndex.lookup( group, "org/foo/bar/1.0/bar-1.0.jar" ).isKnownMissing( 0 ), equalTo( true ) );
+    }
+
+    @Test
+    public void storeChangeClearsAllRecords()
+    {
+        recordMisses( group, PATH, 0 );
+
+        missIndex.clearAll();
+
+        assertThat( missIndex.lookup( group, PATH ).isKnownMissing( 0 ), equalTo( false ) );
+    }
+
+    @Test
+    public void walkRacingWithStorageIsNotRecorded()
+    {
+        GroupMemberMissIndex.Lookup lookup = missIndex.lookup( group, PATH );
+        lookup.markMissing( 0 );
+
+        // the file lands in the first member while the walk is still going
+        missIndex.clearPath( PATH );
+        missIndex.record( lookup );
+
+        assertThat( missIndex.lookup( group, PATH ).isKnownMissing( 0 ), equalTo( false ) );
+    }
+
+    @Test
+    public void disabledIndexReturnsNoLookup()
+    {
+        config.setGroupMissIndexEnabled( false );
+        assertThat( missIndex.lookup( group, PATH ), nullValue() );
+    }
+
+    private void recordMisses( Group group, String path, int... positions )
+    {
+        GroupMemberMissIndex.Lookup lookup = missIndex.lookup( group, path );
+        for ( int position : positions )
+        {
+            lookup.markMissing( position );
+        }
+        missIndex.record( lookup );
+    }
+
+    private static final class MapCacheHandle
+            extends BasicCacheHandle<String, GroupMemberMissIndex.PathMisses>
+    {
+        private final Map<String, GroupMemberMissIndex.PathMisses> map;
+
+        MapCacheHandle( Map<String, GroupMemberMissIndex.PathMisses> map )
+        {
+            this.map = map;
+        }
+
+        @Override
+        public GroupMemberMissIndex.PathMisses get( String key )
+        {
+            return map.get( key );
+        }
+
+        @Override
+        public GroupMemberMissIndex.PathMisses computeIfAbsent( String key,
+                                                                Function<? super String, ? extends GroupMemberMissIndex.PathMisses> mappingFunction )
+        {
+            return map.computeIfAbsent( key, mappingFunction );
+        }
+
+        @Override
+        public GroupMemberMissIndex.PathMisses remove( String key )
+        {
+            return map.remove( key );
+        }
+
+        @Override
+        public <R> R execute( Function<BasicCache<String, GroupMemberMissIndex.PathMisses>, R> operation )
+        {
+            // only used for clear()
+            map.clear();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.content.index.change;
+
+import org.commonjava.indy.change.event.ContentBatchStoredEvent;
+import org.commonjava.indy.content.index.GroupMemberMissIndex;
+import org.commonjava.indy.content.index.MappedContentIndexManager;
+import org.commonjava.indy.content.index.PackageIndexingStrategy;
+import org.commonjava.indy.content.index.mapped.MappedContentIndex;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.maven.galley.nfc.MemoryNotFoundCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.commonjava.indy.change.event.ContentBatchStoredEvent.BULK_INVALIDATION_THRESHOLD;
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class StoreChangeListenerTest
+{
+    private static final String POM = "/org/foo/foo/1/foo-1.pom";
+
+    private static final String JAR = "/org/foo/foo/1/foo-1.jar";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private MappedContentIndex index;
+
+    private CountingIndexManager indexManager;
+
+    private RecordingMissIndex missIndex;
+
+    private StoreChangeListener listener;
+
+    private final HostedRepository target = new HostedRepository( MAVEN_PKG_KEY, "target" );
+
+    private final Group group = new Group( MAVEN_PKG_KEY, "public", target.getKey() );
+
+    private final Group other = new Group( MAVEN_PKG_KEY, "other", target.getKey() );
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        index = new MappedContentIndex( temp.newFolder( "index" ) );
+        indexManager = new CountingIndexManager( index );
+        missIndex = new RecordingMissIndex();
+        listener = new StoreChangeListener( indexManager, missIndex );
+
+        indexManager.indexPathInStores( POM, target.getKey(), group.getKey(), other.getKey() );
+    }
+
+    @After
+    public void teardown()
+            throws Exception
+    {
+        index.close();
+    }
+
+    @Test
+    public void batchStored_DeIndexesEachIndexPathOncePerAffectedGroup()
+    {
+        listener.batchStored( event( POM, JAR ) );
+
+        assertThat( indexManager.getIndexedStoreKey( group.getKey(), POM ), nullValue() );
+        assertThat( indexManager.getIndexedStoreKey( other.getKey(), POM ), equalTo( target.getKey() ) );
+        assertThat( indexManager.getIndexedStoreKey( target.getKey(), POM ), equalTo( target.getKey() ) );
+
+        // the pom and the jar share their index path
+        assertThat( indexManager.deIndexed, equalTo( Collections.singletonList( group.getKey() ) ) );
+
+        assertThat( new HashSet<>( missIndex.clearedPaths ), equalTo( new HashSet<>( Arrays.asList( POM, JAR ) ) ) );
+        assertThat( missIndex.clearedAll, equalTo( false ) );
+    }
+
+    @Test
+    public void batchStored_OverThreshold_ClearsWholeGroups()
+    {
+        Set<String> paths = new LinkedHashSet<>();
+        for ( int i = 0; i <= BULK_INVALIDATION_THRESHOLD; i++ )
+        {
+            paths.add( "/org/foo/foo/" + i + "/foo-" + i + ".pom" );
+        }
+
+        listener.batchStored( event( paths.toArray( new String[paths.size()] ) ) );
+
+        assertThat( indexManager.getIndexedStoreKey( group.getKey(), POM ), nullValue() );
+        assertThat( indexManager.getIndexedStoreKey( other.getKey(), POM ), equalTo( target.getKey() ) );
+        assertThat( indexManager.deIndexed.isEmpty(), equalTo( true ) );
+        assertThat( missIndex.clearedAll, equalTo( true ) );
+    }
+
+    private ContentBatchStoredEvent event( final String... paths )
+    {
+        return new ContentBatchStoredEvent( null, target, Collections.singleton( group ),
+                                            new LinkedHashSet<>( Arrays.asList( paths ) ) );
+    }
+
+    static final class ParentDirStrategy
+            implements PackageIndexingStrategy
+    {
+        @Override
+        public String getPackageType()
+        {
+            return MAVEN_PKG_KEY;
+        }
+
+        @Override
+        public String getIndexPath( final String rawPath )
+        {
+            return parent( rawPath );
+        }
+
+        static String parent( final String path )
+        {
+            return path.substring( 0, path.lastIndexOf( '/' ) );
+        }
+    }
+
+    private static final class CountingIndexManager
+            extends MappedContentIndexManager
+    {
+        private final List<StoreKey> deIndexed = new ArrayList<>();
+
+        CountingIndexManager( final MappedContentIndex index )
+        {
+            super( index, Collections.singletonMap( MAVEN_PKG_KEY, new ParentDirStrategy() ),
+                   new MemoryNotFoundCache() );
+        }
+
+        @Override
+        public void deIndexStorePath( final StoreKey key, final String rawPath )
+        {
+            deIndexed.add( key );
+            super.deIndexStorePath( key, rawPath );
+        }
+    }
+
+    private static final class RecordingMissIndex
+            extends GroupMemberMissIndex
+    {
+        private final List<String> clearedPaths = new ArrayList<>();
+
+        private boolean clearedAll;
+
+        @Override
+        public void clearPath( final String path )
+        {
+            clearedPaths.add( path );
+        }
+
+        @Override
+        public void clearAll()
+        {
+            clearedAll = true;
+        }
+    }
+}
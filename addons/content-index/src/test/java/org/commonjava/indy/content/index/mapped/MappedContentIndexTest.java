@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.content.index.mapped;
+
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class MappedContentIndexTest
+{
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final StoreKey group = new StoreKey( MAVEN_PKG_KEY, StoreType.group, "public" );
+
+    private final StoreKey central = new StoreKey( MAVEN_PKG_KEY, StoreType.remote, "central" );
+
+    private final StoreKey hosted = new StoreKey( MAVEN_PKG_KEY, StoreType.hosted, "local" );
+
+    @Test
+    public void putGetRemove()
+            throws Exception
+    {
+        try (MappedContentIndex index = new MappedContentIndex( temp.newFolder() ))
+        {
+            index.put( group, "org/foo/bar/1/", central );
+            index.put( central, "org/foo/bar/1/", central );
+
+            assertThat( index.get( group, "org/foo/bar/1/" ), equalTo( central ) );
+            assertThat( index.get( hosted, "org/foo/bar/1/" ), nullValue() );
+            assertThat( index.get( group, "org/foo/bar/2/" ), nullValue() );
+
+            index.put( group, "org/foo/bar/1/", hosted );
+            assertThat( index.get( group, "org/foo/bar/1/" ), equalTo( hosted ) );
+            assertThat( index.size(), equalTo( 2L ) );
+
+            assertThat( index.remove( group, "org/foo/bar/1/" ), equalTo( hosted ) );
+            assertThat( index.get( group, "org/foo/bar/1/" ), nullValue() );
+            assertThat( index.remove( group, "org/foo/bar/1/" ), nullValue() );
+        }
+    }
+
+    @Test
+    public void removeByStoreAndOrigin()
+            throws Exception
+    {
+        try (MappedContentIndex index = new MappedContentIndex( temp.newFolder() ))
+        {
+            for ( int i = 0; i < 100; i++ )
+            {
+                index.put( group, "org/foo/" + i + "/", i % 2 == 0 ? central : hosted );
+                index.put( central, "org/foo/" + i + "/", central );
+            }
+
+            assertThat( index.removeStoreWithOrigin( group, hosted ), equalTo( 50L ) );
+            assertThat( index.removeOrigin( central ), equalTo( 150L ) );
+            assertThat( index.size(), equalTo( 0L ) );
+
+            index.put( group, "org/foo/1/", hosted );
+            assertThat( index.removeStore( group ), equalTo( 1L ) );
+            assertThat( index.removeStore( new StoreKey( MAVEN_PKG_KEY, StoreType.group, "unknown" ) ), equalTo( 0L ) );
+        }
+    }
+
+    @Test
+    public void growsBeyondInitialCapacityAndSurvivesReopen()
+            throws Exception
+    {
+        File dir = temp.newFolder();
+        int count = 20000;
+        try (MappedContentIndex index = new MappedContentIndex( dir, 16 ))
+        {
+            for ( int i = 0; i < count; i++ )
+            {
+                index.put( group, path( i ), i % 3 == 0 ? hosted : central );
+            }
+
+            for ( int i = 0; i < count; i += 2 )
+            {
+                index.remove( group, path( i ) );
+            }
+        }
+
+        try (MappedContentIndex index = new MappedContentIndex( dir, 16 ))
+        {
+            assertThat( index.size(), equalTo( (long) count / 2 ) );
+            for ( int i = 0; i < count; i++ )
+            {
+                StoreKey expected = i % 2 == 0 ? null : ( i % 3 == 0 ? hosted : central );
+                assertThat( path( i ), index.get( group, path( i ) ), equalTo( expected ) );
+            }
+        }
+    }
+
+    @Test
+    public void reopenAfterCrashLeftovers()
+            throws Exception
+    {
+        File dir = temp.newFolder();
+        try (MappedContentIndex index = new MappedContentIndex( dir ))
+        {
+            index.put( group, "org/foo/bar/1/", central );
+        }
+
+        // a partial dictionary line and a half-finished segment resize, as left by a crash
+        try (FileOutputStream out = new FileOutputStream( new File( dir, "stores.dat" ), true ))
+        {
+            out.write( "3\tmaven:hos".getBytes( StandardCharsets.UTF_8 ) );
+        }
+        new File( dir, "segment-00.idx.tmp" ).createNewFile();
+
+        try (MappedContentIndex index = new MappedContentIndex( dir ))
+        {
+            assertThat( index.get( group, "org/foo/bar/1/" ), equalTo( central ) );
+
+            index.put( hosted, "org/foo/bar/2/", hosted );
+            assertThat( index.get( hosted, "org/foo/bar/2/" ), equalTo( hosted ) );
+        }
+
+        assertThat( new File( dir, "segment-00.idx.tmp" ).exists(), equalTo( false ) );
+    }
+
+    private String path( final int i )
+    {
+        return "org/commonjava/artifact-" + i + "/1." + i + "/";
+    }
+}
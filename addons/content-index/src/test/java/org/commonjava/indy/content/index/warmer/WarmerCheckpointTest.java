@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.content.index.warmer;
+
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class WarmerCheckpointTest
+{
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final StoreKey central = new StoreKey( MAVEN_PKG_KEY, StoreType.remote, "central" );
+
+    private final StoreKey hosted = new StoreKey( MAVEN_PKG_KEY, StoreType.hosted, "local" );
+
+    @Test
+    public void walkOrderComparesSegmentBySegment()
+    {
+        List<String> walkOrder = Arrays.asList( "/org/foo/bar/1/bar-1.jar", "/org/foo/bar/1/bar-1.pom",
+                                                "/org/foo/bar-baz/1/bar-baz-1.jar", "/org/foo/barx.txt",
+                                                "/org/foo2/x.jar" );
+
+        for ( int i = 1; i < walkOrder.size(); i++ )
+        {
+            assertThat( walkOrder.get( i ), WarmerCheckpoint.compare( walkOrder.get( i - 1 ), walkOrder.get( i ) ) < 0,
+                        equalTo( true ) );
+        }
+    }
+
+    @Test
+    public void skipsOnlyWhatWasIndexed()
+    {
+        String last = "/org/foo/bar/1/bar-1.pom";
+
+        assertThat( WarmerCheckpoint.isBefore( "/org/foo/bar/1/bar-1.jar", last ), equalTo( true ) );
+        assertThat( WarmerCheckpoint.isBefore( "/org/foo/bar/1/bar-1.pom", last ), equalTo( true ) );
+        assertThat( WarmerCheckpoint.isBefore( "/org/abc", last ), equalTo( true ) );
+
+        // directories on the way to the checkpoint still need walking
+        assertThat( WarmerCheckpoint.isBefore( "/org/foo", last ), equalTo( false ) );
+        assertThat( WarmerCheckpoint.isBefore( "/org/foo/bar/1", last ), equalTo( false ) );
+
+        assertThat( WarmerCheckpoint.isBefore( "/org/foo/bar-baz", last ), equalTo( false ) );
+        assertThat( WarmerCheckpoint.isBefore( "/org/foo/bar/2", last ), equalTo( false ) );
+        assertThat( WarmerCheckpoint.isBefore( "/org/abc", null ), equalTo( false ) );
+    }
+
+    @Test
+    public void progressSurvivesRestartUntilFinished()
+    {
+        File file = new File( temp.getRoot(), "warmer.properties" );
+
+        WarmerCheckpoint checkpoint = new WarmerCheckpoint( file );
+        assertThat( checkpoint.isResuming(), equalTo( false ) );
+
+        checkpoint.update( central, "/org/foo/bar/1/bar-1.pom" );
+        checkpoint.markDone( hosted );
+
+        checkpoint = new WarmerCheckpoint( file );
+        assertThat( checkpoint.isResuming(), equalTo( true ) );
+        assertThat( checkpoint.isDone( hosted ), equalTo( true ) );
+        assertThat( checkpoint.getLastPath( hosted ), nullValue() );
+        assertThat( checkpoint.isDone( central ), equalTo( false ) );
+        assertThat( checkpoint.getLastPath( central ), equalTo( "/org/foo/bar/1/bar-1.pom" ) );
+
+        checkpoint.finish();
+        assertThat( file.exists(), equalTo( false ) );
+        assertThat( new WarmerCheckpoint( file ).isResuming(), equalTo( false ) );
+    }
+}
@@ -27,7 +27,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.util.Set;
+import java.io.OutputStream;
 import java.util.function.Consumer;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -43,7 +43,7 @@ public class FoloUtils
     /**
      * Write sealed records to a zip file.
      */
-    public static void zipTrackedContent( File out, Set<TrackedContent> sealed ) throws IOException
+    public static void zipTrackedContent( File out, Iterable<TrackedContent> sealed ) throws IOException
     {
         logger.info( "Writing sealed zip to: '{}'", out.getAbsolutePath() );
 
@@ -60,15 +60,21 @@ public class FoloUtils
         }
     }
 
-    public static void backupTrackedContent( File dir, Set<TrackedContent> sealed ) throws IOException
+    public static void backupTrackedContent( File dir, Iterable<TrackedContent> sealed ) throws IOException
     {
-        logger.info( "Backup sealed to: '{}', size: {}", dir.getAbsolutePath(), sealed.size() );
+        logger.info( "Backup sealed to: '{}'", dir.getAbsolutePath() );
+        int count = 0;
         for ( TrackedContent f : sealed )
         {
             String name = f.getKey().getId();
             logger.trace( "Adding {} to {}", name, dir );
-            copy( toInputStream( f ), new FileOutputStream( new File( dir, name ) ) );
+            try (OutputStream out = new FileOutputStream( new File( dir, name ) ))
+            {
+                copy( toInputStream( f ), out );
+            }
+            count++;
         }
+        logger.info( "Backup sealed done, size: {}", count );
     }
 
     /**
@@ -0,0 +1,472 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.folo.change;
+
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.WeftManaged;
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.content.ContentDigester;
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.data.StoreDataManager;
+import org.commonjava.indy.folo.conf.FoloConfig;
+import org.commonjava.indy.folo.data.FoloContentException;
+import org.commonjava.indy.folo.data.FoloRecordCache;
+import org.commonjava.indy.folo.model.StoreEffect;
+import org.commonjava.indy.folo.model.TrackedContentEntry;
+import org.commonjava.indy.folo.model.TrackingKey;
+import org.commonjava.indy.model.core.AccessChannel;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.io.checksum.ContentDigest;
+import org.commonjava.maven.galley.io.checksum.TransferMetadata;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.util.UrlUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records tracked accesses off the request thread. {@link FoloTrackingListener} only enqueues a small
+ * {@link PendingEntry}, holding the accessed {@link Transfer} and, if the digests are already cached, its
+ * {@link TransferMetadata}. Worker tasks drain the queue in batches, compute any missing digests and insert the
+ * resulting {@link TrackedContentEntry} instances into the in-progress cache together.
+ * <br/>
+ * The queue is bounded. If it is full, the entry is recorded on the calling thread, so nothing is dropped under load.
+ * {@link FoloRecordCache#seal(TrackingKey)} calls {@link #flush(TrackingKey)} first, which does not return until every
+ * access queued for the key has been recorded, so a sealed record includes every access made before the seal was
+ * requested.
+ */
+@ApplicationScoped
+public class FoloAsyncRecorder
+{
+    private static final int DRAINERS = 4;
+
+    private static final long FLUSH_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis( 60 );
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private FoloConfig foloConfig;
+
+    @Inject
+    private FoloRecordCache recordManager;
+
+    @Inject
+    private StoreDataManager storeManager;
+
+    @Inject
+    private ContentDigester contentDigester;
+
+    @WeftManaged
+    @ExecutorConfig( named = "folo-recorder", threads = DRAINERS, priority = 7 )
+    @Inject
+    private ExecutorService executor;
+
+    private BlockingQueue<PendingEntry> queue;
+
+    private final Map<TrackingKey, AtomicInteger> pending = new ConcurrentHashMap<>();
+
+    private final AtomicInteger drainers = new AtomicInteger();
+
+    private final Object flushMonitor = new Object();
+
+    private long flushTimeoutMillis = FLUSH_TIMEOUT_MILLIS;
+
+    protected FoloAsyncRecorder()
+    {
+    }
+
+    public FoloAsyncRecorder( final FoloConfig foloConfig, final FoloRecordCache recordManager,
+                              final StoreDataManager storeManager, final ContentDigester contentDigester,
+                              final ExecutorService executor )
+    {
+        this.foloConfig = foloConfig;
+        this.recordManager = recordManager;
+        this.storeManager = storeManager;
+        this.contentDigester = contentDigester;
+        this.executor = executor;
+        init();
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        queue = new ArrayBlockingQueue<>( foloConfig.getAsyncRecordingQueueSize() );
+    }
+
+    /**
+     * Record an access to a tracked transfer. Returns as soon as the access is queued, unless asynchronous recording
+     * is disabled or the queue is full.
+     */
+    public void record( final TrackingKey trackingKey, final StoreKey affectedStore, final AccessChannel accessChannel,
+                        final Transfer transfer, final StoreEffect effect, final EventMetadata eventMetadata )
+    {
+        // digests cached by the transfer that fired the event describe the content as it was accessed; only a cache
+        // miss is left for the workers to calculate
+        PendingEntry entry = new PendingEntry( trackingKey, affectedStore, accessChannel, transfer, effect, eventMetadata,
+                                               contentDigester.getContentMetadata( transfer ) );
+        if ( !foloConfig.isAsyncRecordingEnabled() || executor == null )
+        {
+            recordNow( entry );
+            return;
+        }
+
+        // counters are only created and removed inside compute(), so a flush never sees a stale zero
+        pending.compute( trackingKey, ( k, count ) -> {
+            AtomicInteger c = count == null ? new AtomicInteger() : count;
+            c.incrementAndGet();
+            return c;
+        } );
+
+        if ( !queue.offer( entry ) )
+        {
+            logger.debug( "Folo recording queue is full. Recording on the calling thread: {}", entry );
+            recordNow( entry );
+            done( entry );
+            return;
+        }
+
+        startDrainer();
+    }
+
+    /**
+     * @return true if accesses for the given key are queued but not yet recorded
+     */
+    public boolean hasPending( final TrackingKey trackingKey )
+    {
+        AtomicInteger count = pending.get( trackingKey );
+        return count != null && count.get() > 0;
+    }
+
+    /**
+     * Wait until every access queued for the given key has been recorded. If the workers haven't got to them within
+     * the flush timeout, the ones still queued are recorded on the calling thread. This never returns while an access
+     * for the key is pending.
+     */
+    public void flush( final TrackingKey trackingKey )
+    {
+        boolean interrupted = false;
+        long deadline = System.currentTimeMillis() + flushTimeoutMillis;
+        synchronized ( flushMonitor )
+        {
+            while ( hasPending( trackingKey ) )
+            {
+                long remaining = deadline - System.currentTimeMillis();
+                if ( remaining <= 0 )
+                {
+                    break;
+                }
+
+                try
+                {
+                    flushMonitor.wait( remaining );
+                }
+                catch ( InterruptedException e )
+                {
+                    interrupted = true;
+                    break;
+                }
+            }
+        }
+
+        if ( hasPending( trackingKey ) )
+        {
+            logger.warn( "Queued accesses of: {} were not recorded within {}ms. Recording them on the calling thread.",
+                         trackingKey, flushTimeoutMillis );
+            recordQueued( trackingKey );
+
+            // whatever is still pending is in a batch a worker is recording right now
+            synchronized ( flushMonitor )
+            {
+                while ( hasPending( trackingKey ) )
+                {
+                    try
+                    {
+                        flushMonitor.wait( flushTimeoutMillis );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        interrupted = true;
+                    }
+
+                    if ( hasPending( trackingKey ) )
+                    {
+                        logger.warn( "Still waiting for a batch holding accesses of: {} to be recorded.",
+                                     trackingKey );
+                    }
+                }
+            }
+        }
+
+        if ( interrupted )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void setFlushTimeoutMillis( final long flushTimeoutMillis )
+    {
+        this.flushTimeoutMillis = flushTimeoutMillis;
+    }
+
+    /**
+     * Take the accesses of the given key that no worker has picked up yet out of the queue and record them here.
+     */
+    private void recordQueued( final TrackingKey trackingKey )
+    {
+        List<PendingEntry> batch = new ArrayList<>();
+        for ( Iterator<PendingEntry> it = queue.iterator(); it.hasNext(); )
+        {
+            PendingEntry entry = it.next();
+            // a worker may drain it concurrently; only the one that removes it records it
+            if ( entry.trackingKey.equals( trackingKey ) && queue.remove( entry ) )
+            {
+                batch.add( entry );
+            }
+        }
+
+        if ( !batch.isEmpty() )
+        {
+            recordBatch( batch );
+        }
+    }
+
+    private void startDrainer()
+    {
+        int current;
+        while ( ( current = drainers.get() ) < DRAINERS )
+        {
+            if ( drainers.compareAndSet( current, current + 1 ) )
+            {
+                try
+                {
+                    executor.execute( this::drain );
+                }
+                catch ( RejectedExecutionException e )
+                {
+                    drainers.decrementAndGet();
+                    logger.warn( "Folo recorder rejected a drain task. Draining on the calling thread. Reason: {}",
+                                 e.getMessage() );
+                    drainOnce();
+                }
+                return;
+            }
+        }
+    }
+
+    private void drain()
+    {
+        try
+        {
+            while ( drainOnce() )
+            {
+                // keep going while there is work
+            }
+        }
+        finally
+        {
+            drainers.decrementAndGet();
+
+            // an entry may have been queued after the last poll but before the decrement above
+            if ( !queue.isEmpty() )
+            {
+                startDrainer();
+            }
+        }
+    }
+
+    private boolean drainOnce()
+    {
+        List<PendingEntry> batch = new ArrayList<>();
+        queue.drainTo( batch, foloConfig.getAsyncRecordingBatchSize() );
+        if ( batch.isEmpty() )
+        {
+            return false;
+        }
+
+        recordBatch( batch );
+        return true;
+    }
+
+    private void recordBatch( final List<PendingEntry> batch )
+    {
+        try
+        {
+            List<TrackedContentEntry> entries = new ArrayList<>( batch.size() );
+            for ( PendingEntry pendingEntry : batch )
+            {
+                try
+                {
+                    entries.add( createEntry( pendingEntry ) );
+                }
+                catch ( IndyWorkflowException | RuntimeException e )
+                {
+                    logger.error( String.format( "Failed to record: %s. Reason: %s", pendingEntry, e.getMessage() ),
+                                  e );
+                }
+            }
+
+            logger.trace( "Recording batch of {} tracked accesses", entries.size() );
+            recordManager.recordArtifacts( entries );
+        }
+        catch ( FoloContentException | RuntimeException e )
+        {
+            logger.error( String.format( "Failed to record batch of tracked accesses. Reason: %s", e.getMessage() ),
+                          e );
+        }
+        finally
+        {
+            batch.forEach( this::done );
+        }
+    }
+
+    private void done( final PendingEntry entry )
+    {
+        AtomicInteger remaining = pending.computeIfPresent( entry.trackingKey,
+                                                            ( k, count ) -> count.decrementAndGet() <= 0 ? null : count );
+        if ( remaining == null )
+        {
+            synchronized ( flushMonitor )
+            {
+                flushMonitor.notifyAll();
+            }
+        }
+    }
+
+    private void recordNow( final PendingEntry pendingEntry )
+    {
+        try
+        {
+            recordManager.recordArtifact( createEntry( pendingEntry ) );
+        }
+        catch ( final FoloContentException | IndyWorkflowException e )
+        {
+            logger.error( String.format( "Failed to record: %s. Reason: %s", pendingEntry, e.getMessage() ), e );
+        }
+    }
+
+    private TrackedContentEntry createEntry( final PendingEntry pendingEntry )
+            throws IndyWorkflowException
+    {
+        final TrackingKey trackingKey = pendingEntry.trackingKey;
+        final StoreKey affectedStore = pendingEntry.affectedStore;
+        final Transfer transfer = pendingEntry.transfer;
+        final String path = transfer.getPath();
+
+        try
+        {
+            String remoteUrl = null;
+            if ( StoreType.remote == affectedStore.getType() )
+            {
+                final RemoteRepository repo = (RemoteRepository) storeManager.getArtifactStore( affectedStore );
+                if ( repo != null )
+                {
+                    remoteUrl = UrlUtils.buildUrl( repo.getUrl(), path );
+                }
+            }
+
+            TransferMetadata artifactData = pendingEntry.metadata;
+            if ( artifactData == null )
+            {
+                artifactData = contentDigester.digest( affectedStore, path, pendingEntry.eventMetadata );
+                if ( transfer.lastModified() != pendingEntry.lastModified )
+                {
+                    logger.warn( "{} changed after it was accessed by: {}. Recorded checksums are for its "
+                                         + "current content.", transfer, trackingKey );
+                }
+            }
+
+            Map<ContentDigest, String> digests = artifactData.getDigests();
+            //TODO: As localUrl needs a apiBaseUrl which is from REST service context, to avoid deep propagate
+            //      of it, this step will be done in REST layer. Will think better way in the future.
+            return new TrackedContentEntry( trackingKey, affectedStore, pendingEntry.accessChannel, remoteUrl, path,
+                                            pendingEntry.effect, artifactData.getSize(),
+                                            digests.get( ContentDigest.MD5 ), digests.get( ContentDigest.SHA_1 ),
+                                            digests.get( ContentDigest.SHA_256 ) );
+        }
+        catch ( final IndyDataException e )
+        {
+            throw new IndyWorkflowException(
+                    "Cannot retrieve RemoteRepository: %s to calculate remote URL for: %s. Reason: %s", e,
+                    trackingKey, path, e.getMessage() );
+        }
+        catch ( final MalformedURLException e )
+        {
+            throw new IndyWorkflowException( "Cannot format URL. Reason: %s", e, e.getMessage() );
+        }
+    }
+
+    /**
+     * What the event thread knows about a tracked access: the transfer itself, its modification time and any cached
+     * metadata. Everything expensive is resolved by the workers.
+     */
+    private static final class PendingEntry
+    {
+        private final TrackingKey trackingKey;
+
+        private final StoreKey affectedStore;
+
+        private final AccessChannel accessChannel;
+
+        private final Transfer transfer;
+
+        private final long lastModified;
+
+        private final StoreEffect effect;
+
+        private final EventMetadata eventMetadata;
+
+        private final TransferMetadata metadata;
+
+        private PendingEntry( final TrackingKey trackingKey, final StoreKey affectedStore,
+                              final AccessChannel accessChannel, final Transfer transfer, final StoreEffect effect,
+                              final EventMetadata eventMetadata, final TransferMetadata metadata )
+        {
+            this.trackingKey = trackingKey;
+            this.affectedStore = affectedStore;
+            this.accessChannel = accessChannel;
+            this.transfer = transfer;
+            this.lastModified = transfer.lastModified();
+            this.effect = effect;
+            this.eventMetadata = eventMetadata;
+            this.metadata = metadata;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "PendingEntry{" + trackingKey + ", " + affectedStore + ", " + transfer.getPath() + ", " + effect
+                    + "}";
+        }
+    }
+}
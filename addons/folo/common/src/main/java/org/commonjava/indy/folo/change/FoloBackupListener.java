@@ -39,6 +39,8 @@ import java.io.IOException;
  * outside the ISPN directory.
  *
  * Update: For now let's push it to disk somewhere and worry about more advanced things later.
+ *
+ * Sealed records are also written in columnar form, which is what the report endpoint streams from.
  */
 @Listener
 @ApplicationScoped
@@ -66,14 +68,7 @@ public class FoloBackupListener
             return;
         }
         logger.debug( "Cache entry with key {} added in cache {}", event.getKey(), event.getCache() );
-        try
-        {
-            adminController.saveToSerialized( event.getKey(), event.getValue() );
-        }
-        catch ( IOException e )
-        {
-            logger.warn( "[Folo] saveToSerialize fail", e );
-        }
+        save( event.getKey(), event.getValue() );
     }
 
     @CacheEntryModified
@@ -84,14 +79,7 @@ public class FoloBackupListener
             return;
         }
         logger.debug( "Cache entry with key {} updated in cache {}", event.getKey(), event.getCache() );
-        try
-        {
-            adminController.saveToSerialized( event.getKey(), event.getValue() );
-        }
-        catch ( IOException e )
-        {
-            logger.warn( "[Folo] saveToSerialize fail", e );
-        }
+        save( event.getKey(), event.getValue() );
     }
 
     @CacheEntryRemoved
@@ -106,6 +94,28 @@ public class FoloBackupListener
 
         logger.debug( "Cache entry with key {} removed in cache {}", key, event.getCache() );
         adminController.removeFromSerialized( key );
+        adminController.removeFromColumnar( key );
+    }
+
+    private void save( final TrackingKey key, final TrackedContent value )
+    {
+        try
+        {
+            adminController.saveToSerialized( key, value );
+        }
+        catch ( IOException e )
+        {
+            logger.warn( "[Folo] saveToSerialize fail", e );
+        }
+
+        try
+        {
+            adminController.saveToColumnar( key, value );
+        }
+        catch ( IOException e )
+        {
+            logger.warn( "[Folo] saveToColumnar fail", e );
+        }
     }
 
 }
@@ -15,40 +15,24 @@
  */
 package org.commonjava.indy.folo.change;
 
-import org.commonjava.indy.IndyWorkflowException;
-import org.commonjava.indy.content.ContentDigester;
-import org.commonjava.indy.content.DownloadManager;
-import org.commonjava.indy.data.IndyDataException;
-import org.commonjava.indy.data.StoreDataManager;
 import org.commonjava.indy.folo.conf.FoloConfig;
 import org.commonjava.indy.folo.ctl.FoloConstants;
-import org.commonjava.indy.folo.data.FoloContentException;
-import org.commonjava.indy.folo.data.FoloRecordCache;
 import org.commonjava.indy.folo.model.StoreEffect;
-import org.commonjava.indy.folo.model.TrackedContentEntry;
 import org.commonjava.indy.folo.model.TrackingKey;
 import org.commonjava.indy.model.core.AccessChannel;
-import org.commonjava.indy.model.core.RemoteRepository;
-import org.commonjava.indy.model.core.StoreKey;
-import org.commonjava.indy.model.core.StoreType;
 import org.commonjava.indy.model.galley.KeyedLocation;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.event.FileAccessEvent;
 import org.commonjava.maven.galley.event.FileStorageEvent;
-import org.commonjava.maven.galley.io.checksum.ContentDigest;
-import org.commonjava.maven.galley.io.checksum.TransferMetadata;
 import org.commonjava.maven.galley.model.Location;
 import org.commonjava.maven.galley.model.Transfer;
 import org.commonjava.maven.galley.model.TransferOperation;
-import org.commonjava.maven.galley.util.UrlUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Observes;
 import javax.inject.Inject;
-import java.net.MalformedURLException;
-import java.util.Map;
 
 import static org.commonjava.indy.model.core.StoreType.group;
 
@@ -62,16 +46,7 @@ public class FoloTrackingListener
     private FoloConfig foloConfig;
 
     @Inject
-    private FoloRecordCache recordManager;
-
-    @Inject
-    private StoreDataManager storeManager;
-
-    @Inject
-    private DownloadManager downloadManager;
-
-    @Inject
-    private ContentDigester contentDigester;
+    private FoloAsyncRecorder recorder;
 
     public void onFileAccess( @Observes final FileAccessEvent event )
     {
@@ -100,28 +75,20 @@ public class FoloTrackingListener
             return;
         }
 
-        try
+        final KeyedLocation keyedLocation = (KeyedLocation) location;
+        if ( !foloConfig.isGroupContentTracked() && keyedLocation.getKey().getType() == group )
         {
-            final KeyedLocation keyedLocation = (KeyedLocation) location;
-            if ( !foloConfig.isGroupContentTracked() && keyedLocation.getKey().getType() == group )
-            {
-                logger.trace(
-                        "NOT tracking content stored directly in group: {}. This content is generally aggregated metadata, and can be recalculated. Groups may not be stable in some build environments",
-                        keyedLocation.getKey() );
-                return;
-            }
+            logger.trace(
+                    "NOT tracking content stored directly in group: {}. This content is generally aggregated metadata, and can be recalculated. Groups may not be stable in some build environments",
+                    keyedLocation.getKey() );
+            return;
+        }
 
-            logger.trace( "Tracking report: {} += {} in {} (DOWNLOAD)", trackingKey, transfer.getPath(),
-                          keyedLocation.getKey() );
+        logger.trace( "Tracking report: {} += {} in {} (DOWNLOAD)", trackingKey, transfer.getPath(),
+                      keyedLocation.getKey() );
 
-            recordManager.recordArtifact(
-                    createEntry( trackingKey, keyedLocation.getKey(), accessChannel, transfer.getPath(),
-                                 StoreEffect.DOWNLOAD, event.getEventMetadata() ) );
-        }
-        catch ( final FoloContentException | IndyWorkflowException e )
-        {
-            logger.error( String.format( "Failed to record download: %s. Reason: %s", transfer, e.getMessage() ), e );
-        }
+        recorder.record( trackingKey, keyedLocation.getKey(), accessChannel, transfer, StoreEffect.DOWNLOAD,
+                         event.getEventMetadata() );
     }
 
     public void onFileUpload( @Observes final FileStorageEvent event )
@@ -186,67 +153,12 @@ public class FoloTrackingListener
             }
         }
 
-        try
-        {
-            final KeyedLocation keyedLocation = (KeyedLocation) location;
-            logger.trace( "Tracking report: {} += {} in {} ({})", trackingKey, transfer.getPath(),
-                          keyedLocation.getKey(), effect );
-
-            recordManager.recordArtifact(
-                    createEntry( trackingKey, keyedLocation.getKey(), accessChannel, transfer.getPath(), effect,
-                                 event.getEventMetadata() ) );
-        }
-        catch ( final FoloContentException | IndyWorkflowException e )
-        {
-            logger.error( String.format( "Failed to record download: %s. Reason: %s", transfer, e.getMessage() ), e );
-        }
-    }
-
-    private TrackedContentEntry createEntry( final TrackingKey trackingKey, final StoreKey affectedStore,
-                                             final AccessChannel accessChannel, final String path,
-                                             final StoreEffect effect, final EventMetadata eventMetadata )
-            throws IndyWorkflowException
-    {
-        TrackedContentEntry entry = null;
-        final Transfer txfr = downloadManager.getStorageReference( affectedStore, path );
-        if ( txfr != null )
-        {
-            try
-            {
-                String remoteUrl = null;
-                if ( StoreType.remote == affectedStore.getType() )
-                {
-                    final RemoteRepository repo = (RemoteRepository) storeManager.getArtifactStore( affectedStore );
-                    if ( repo != null )
-                    {
-                        remoteUrl = UrlUtils.buildUrl( repo.getUrl(), path );
-                    }
-                }
-
-                TransferMetadata artifactData =
-                        contentDigester.digest( affectedStore, path, eventMetadata );
-
-                Map<ContentDigest, String> digests = artifactData.getDigests();
-                //TODO: As localUrl needs a apiBaseUrl which is from REST service context, to avoid deep propagate
-                //      of it, this step will be done in REST layer. Will think better way in the future.
-                entry = new TrackedContentEntry( trackingKey, affectedStore, accessChannel, remoteUrl, path, effect,
-                                                 artifactData.getSize(), digests.get( ContentDigest.MD5 ),
-                                                 digests.get( ContentDigest.SHA_1 ),
-                                                 digests.get( ContentDigest.SHA_256 ) );
-            }
-            catch ( final IndyDataException e )
-            {
-                throw new IndyWorkflowException(
-                        "Cannot retrieve RemoteRepository: %s to calculate remote URL for: %s. Reason: %s", e,
-                        trackingKey, path, e.getMessage() );
-            }
-            catch ( final MalformedURLException e )
-            {
-                throw new IndyWorkflowException( "Cannot format URL. Reason: %s", e, e.getMessage() );
-            }
+        final KeyedLocation keyedLocation = (KeyedLocation) location;
+        logger.trace( "Tracking report: {} += {} in {} ({})", trackingKey, transfer.getPath(),
+                      keyedLocation.getKey(), effect );
 
-        }
-        return entry;
+        recorder.record( trackingKey, keyedLocation.getKey(), accessChannel, transfer, effect,
+                         event.getEventMetadata() );
     }
 
 }
@@ -31,10 +31,22 @@ public class FoloConfig
 
     public static final boolean DEFAULT_ENABLED = true;
 
+    public static final boolean DEFAULT_ASYNC_RECORDING_ENABLED = true;
+
+    public static final int DEFAULT_ASYNC_RECORDING_QUEUE_SIZE = 10000;
+
+    public static final int DEFAULT_ASYNC_RECORDING_BATCH_SIZE = 100;
+
     private Boolean enabled;
 
     private Boolean trackGroupContent;
 
+    private Boolean asyncRecordingEnabled;
+
+    private Integer asyncRecordingQueueSize;
+
+    private Integer asyncRecordingBatchSize;
+
     public FoloConfig()
     {
     }
@@ -71,6 +83,43 @@ public class FoloConfig
         return trackGroupContent;
     }
 
+    public boolean isAsyncRecordingEnabled()
+    {
+        return asyncRecordingEnabled == null ? DEFAULT_ASYNC_RECORDING_ENABLED : asyncRecordingEnabled;
+    }
+
+    @ConfigName( "async.recording.enabled" )
+    public void setAsyncRecordingEnabled( final Boolean asyncRecordingEnabled )
+    {
+        this.asyncRecordingEnabled = asyncRecordingEnabled;
+    }
+
+    public int getAsyncRecordingQueueSize()
+    {
+        return asyncRecordingQueueSize == null || asyncRecordingQueueSize < 1 ?
+                DEFAULT_ASYNC_RECORDING_QUEUE_SIZE :
+                asyncRecordingQueueSize;
+    }
+
+    @ConfigName( "async.recording.queue.size" )
+    public void setAsyncRecordingQueueSize( final Integer asyncRecordingQueueSize )
+    {
+        this.asyncRecordingQueueSize = asyncRecordingQueueSize;
+    }
+
+    public int getAsyncRecordingBatchSize()
+    {
+        return asyncRecordingBatchSize == null || asyncRecordingBatchSize < 1 ?
+                DEFAULT_ASYNC_RECORDING_BATCH_SIZE :
+                asyncRecordingBatchSize;
+    }
+
+    @ConfigName( "async.recording.batch.size" )
+    public void setAsyncRecordingBatchSize( final Integer asyncRecordingBatchSize )
+    {
+        this.asyncRecordingBatchSize = asyncRecordingBatchSize;
+    }
+
     @Override
     public String getDefaultConfigFileName()
     {
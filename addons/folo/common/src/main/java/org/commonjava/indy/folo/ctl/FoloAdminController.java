@@ -15,6 +15,10 @@
  */
 package org.commonjava.indy.folo.ctl;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import org.commonjava.cdi.util.weft.DrainingExecutorCompletionService;
 import org.commonjava.cdi.util.weft.ExecutorConfig;
 import org.commonjava.cdi.util.weft.SingleThreadedExecutorService;
@@ -27,6 +31,8 @@ import org.commonjava.indy.folo.conf.FoloConfig;
 import org.commonjava.indy.folo.data.FoloContentException;
 import org.commonjava.indy.folo.data.FoloFiler;
 import org.commonjava.indy.folo.data.FoloRecordCache;
+import org.commonjava.indy.folo.data.columnar.ColumnarRecordReader;
+import org.commonjava.indy.folo.data.columnar.ColumnarRecordWriter;
 import org.commonjava.indy.folo.dto.TrackedContentDTO;
 import org.commonjava.indy.folo.dto.TrackedContentEntryDTO;
 import org.commonjava.indy.folo.dto.TrackingIdsDTO;
@@ -55,6 +61,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.MalformedURLException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
@@ -140,7 +148,7 @@ public class FoloAdminController
 
     public File renderReportZip() throws IndyWorkflowException
     {
-        Set<TrackedContent> sealed = recordManager.getSealed(); // only care about sealed records
+        Iterable<TrackedContent> sealed = recordManager.getSealed(); // only care about sealed records
         try
         {
             File file = filer.getSealedZipFile().getDetachedFile();
@@ -162,7 +170,7 @@ public class FoloAdminController
 
     public void doInitialBackUpForSealed() throws IndyWorkflowException
     {
-        Set<TrackedContent> sealed = recordManager.getSealed();
+        Iterable<TrackedContent> sealed = recordManager.getSealed();
         File dir = filer.getBackupDir( SEALED.getValue() ).getDetachedFile(); // data/folo/bak/sealed
         try
         {
@@ -263,15 +271,91 @@ public class FoloAdminController
         }
     }
 
-    public TrackedContentDTO renderReport( final String id, final String apiBaseUrl )
+    /**
+     * Open the columnar copy of a sealed record, so the report can be streamed entry by entry. Records sealed before
+     * columnar files existed get theirs written on first access.
+     *
+     * @return null if there is no sealed record for the id
+     */
+    public ColumnarRecordReader openReport( final String id )
             throws IndyWorkflowException
     {
         final TrackingKey tk = new TrackingKey( id );
-        logger.debug( "Retrieving tracking record for: {}", tk );
-        final TrackedContentDTO record = constructContentDTO( recordManager.get( tk ), apiBaseUrl );
-        logger.debug( "Got: {}", record );
+        final File file = filer.getColumnarRecordFile( tk ).getDetachedFile();
+        try
+        {
+            if ( !file.exists() )
+            {
+                TrackedContent record = recordManager.get( tk );
+                if ( record == null )
+                {
+                    return null;
+                }
+
+                logger.debug( "Writing missing columnar record for: {}", tk );
+                saveToColumnar( tk, record );
+            }
 
-        return record;
+            return ColumnarRecordReader.open( file );
+        }
+        catch ( NoSuchFileException | FileNotFoundException e )
+        {
+            // deleted in the meantime
+            return null;
+        }
+        catch ( IOException e )
+        {
+            throw new IndyWorkflowException( "Failed to open columnar record for: %s. Reason: %s", e, id,
+                                             e.getMessage() );
+        }
+    }
+
+    /**
+     * Write the report of an opened columnar record as JSON, in the same shape as {@link TrackedContentDTO}, one entry
+     * at a time.
+     */
+    public void writeReport( final ColumnarRecordReader reader, final String apiBaseUrl, final ObjectMapper mapper,
+                             final OutputStream out )
+            throws IOException
+    {
+        // flushing after every entry would turn the response into one chunk per entry
+        final ObjectWriter writer = mapper.writer().without( SerializationFeature.FLUSH_AFTER_WRITE_VALUE );
+
+        final JsonGenerator generator = mapper.getFactory().createGenerator( out );
+        generator.disable( JsonGenerator.Feature.AUTO_CLOSE_TARGET );
+        if ( mapper.isEnabled( SerializationFeature.INDENT_OUTPUT ) )
+        {
+            generator.useDefaultPrettyPrinter();
+        }
+
+        generator.writeStartObject();
+        generator.writeFieldName( "key" );
+        writer.writeValue( generator, reader.getTrackingKey() );
+
+        // empty sets are left out, as the mapper does for TrackedContentDTO
+        writeReportEntries( "uploads", reader.getUploadCount(), reader, apiBaseUrl, writer, generator );
+        writeReportEntries( "downloads", reader.getDownloadCount(), reader, apiBaseUrl, writer, generator );
+
+        generator.writeEndObject();
+        generator.close();
+    }
+
+    private void writeReportEntries( final String field, final int count, final ColumnarRecordReader reader,
+                                     final String apiBaseUrl, final ObjectWriter writer,
+                                     final JsonGenerator generator )
+            throws IOException
+    {
+        if ( count < 1 )
+        {
+            return;
+        }
+
+        generator.writeArrayFieldStart( field );
+        for ( int i = 0; i < count; i++ )
+        {
+            writer.writeValue( generator, constructContentEntryDTO( reader.next(), apiBaseUrl ) );
+        }
+        generator.writeEndArray();
     }
 
     public TrackedContentDTO getRecord( final String id, String baseUrl )
@@ -475,6 +559,25 @@ public class FoloAdminController
         }
     }
 
+    public void saveToColumnar( TrackingKey key, TrackedContent value ) throws IOException
+    {
+        ColumnarRecordWriter.write( value, filer.getColumnarRecordFile( key ).getDetachedFile() );
+    }
+
+    public void removeFromColumnar( TrackingKey key )
+    {
+        File file = filer.getColumnarRecordFile( key ).getDetachedFile();
+        try
+        {
+            Files.deleteIfExists( file.toPath() );
+        }
+        catch ( IOException e )
+        {
+            logger.error( String.format( "Failed to delete columnar record: %s of removed tracking record: %s. "
+                                                 + "Reason: %s", file, key, e.getMessage() ), e );
+        }
+    }
+
     public void removeFromSerialized( TrackingKey key )
     {
         File dir = filer.getBackupDir( SEALED.getValue() ).getDetachedFile();
@@ -35,6 +35,10 @@ public class FoloFiler
 
     public static final String FOLO_SEALED_DAT = "folo-sealed.dat";
 
+    public static final String COLUMNAR_DIR = "sealed";
+
+    public static final String COLUMNAR_EXT = "fcr";
+
     @Inject
     private DataFileManager dataFileManager;
 
@@ -61,6 +65,15 @@ public class FoloFiler
         return getDataFile( key, FoloFileTypes.REPO_ZIP );
     }
 
+    /**
+     * Columnar copy of a sealed record (see ColumnarRecordWriter), used to stream reports without loading the record.
+     */
+    public DataFile getColumnarRecordFile( final TrackingKey key )
+    {
+        final String fname = String.format( "%s.%s", key.getId(), COLUMNAR_EXT );
+        return dataFileManager.getDataFile( FOLO_DIR, COLUMNAR_DIR, fname ); // data/folo/sealed/<id>.fcr
+    }
+
     public DataFile getSealedZipFile()
     {
         return dataFileManager.getDataFile( FOLO_DIR, FOLO_SEALED_ZIP );
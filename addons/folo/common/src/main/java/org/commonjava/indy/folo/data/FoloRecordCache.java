@@ -16,6 +16,7 @@
 package org.commonjava.indy.folo.data;
 
 import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.folo.change.FoloAsyncRecorder;
 import org.commonjava.indy.folo.change.FoloBackupListener;
 import org.commonjava.indy.folo.model.StoreEffect;
 import org.commonjava.indy.folo.model.TrackedContent;
@@ -36,20 +37,52 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.BiFunction;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static org.commonjava.indy.measure.annotation.MetricNamed.DEFAULT;
 
+/**
+ * Tracking records are guarded per {@link TrackingKey} rather than by one monitor on this singleton. Recording entries
+ * takes the shared side of the key's lock, so concurrent downloads for the same build don't wait for each other, while
+ * sealing or deleting a record takes the exclusive side, which gives it an atomic snapshot of that key's entries.
+ * Locks are striped by key hash, so unrelated builds only contend on a stripe collision.
+ */
 @ApplicationScoped
 public class FoloRecordCache
 {
 
+    private static final int LOCK_STRIPES = 256;
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
+    private final ReadWriteLock[] locks = new ReadWriteLock[LOCK_STRIPES];
+
+    {
+        for ( int i = 0; i < LOCK_STRIPES; i++ )
+        {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    /**
+     * Tracking keys which have in-progress entries, so {@link #hasInProgressRecord(TrackingKey)} doesn't need to query
+     * the in-progress cache.
+     */
+    private final Set<TrackingKey> inProgressKeys = ConcurrentHashMap.newKeySet();
+
     @FoloInprogressCache
     @Inject
     private CacheHandle<TrackedContentEntry, TrackedContentEntry> inProgressRecordCache;
@@ -65,6 +98,9 @@ public class FoloRecordCache
     @Inject
     private FoloBackupListener foloBackupListener;
 
+    @Inject
+    private FoloAsyncRecorder asyncRecorder;
+
     @PostConstruct
     private void init()
     {
@@ -72,6 +108,8 @@ public class FoloRecordCache
             cache.addListener( foloBackupListener );
             return null;
         } );
+
+        inProgressKeys.addAll( getInProgressTrackingKey() );
     }
 
     public FoloRecordCache( final Cache<TrackedContentEntry, TrackedContentEntry> inProgressRecordCache,
@@ -79,6 +117,7 @@ public class FoloRecordCache
     {
         this.inProgressRecordCache = new CacheHandle("folo-in-progress", inProgressRecordCache);
         this.sealedRecordCache = new CacheHandle( "folo-sealed", sealedRecordCache );
+        inProgressKeys.addAll( getInProgressTrackingKey() );
     }
 
     /**
@@ -88,52 +127,111 @@ public class FoloRecordCache
      * @return True if a new record was stored, otherwise false
      */
     @Measure( timers = @MetricNamed( DEFAULT ) )
-    public synchronized boolean recordArtifact( final TrackedContentEntry entry )
+    public boolean recordArtifact( final TrackedContentEntry entry )
             throws FoloContentException,IndyWorkflowException
     {
-        if ( sealedRecordCache.containsKey( entry.getTrackingKey() ) )
+        TrackingKey key = entry.getTrackingKey();
+        ReadWriteLock lock = lockFor( key );
+        lock.readLock().lock();
+        try
         {
-            throw new FoloContentException( "Tracking record: {} is already sealed!", entry.getTrackingKey() );
+            if ( sealedRecordCache.containsKey( key ) )
+            {
+                throw new FoloContentException( "Tracking record: {} is already sealed!", key );
+            }
+
+            logger.debug( "Adding tracking entry: {}", entry );
+            inProgressRecordCache.put( entry, entry );
+            inProgressKeys.add( key );
+            return true;
         }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
 
-        Logger logger = LoggerFactory.getLogger( getClass() );
-        logger.debug( "Adding tracking entry: {}", entry );
-        inProgressRecordCache.put( entry, entry );
-        return true;
+    /**
+     * Batch form of {@link #recordArtifact(TrackedContentEntry)}, used by {@link FoloAsyncRecorder}. Entries are
+     * inserted with one putAll per tracking key. Entries whose record is already sealed are skipped and reported in
+     * the exception thrown after everything else has been recorded.
+     */
+    @Measure( timers = @MetricNamed( DEFAULT ) )
+    public void recordArtifacts( final Collection<TrackedContentEntry> entries )
+            throws FoloContentException
+    {
+        Map<TrackingKey, Map<TrackedContentEntry, TrackedContentEntry>> byKey = new HashMap<>();
+        entries.forEach( entry -> byKey.computeIfAbsent( entry.getTrackingKey(), k -> new HashMap<>() )
+                                       .put( entry, entry ) );
+
+        Set<TrackingKey> alreadySealed = new HashSet<>();
+        byKey.forEach( ( key, batch ) -> {
+            ReadWriteLock lock = lockFor( key );
+            lock.readLock().lock();
+            try
+            {
+                if ( sealedRecordCache.containsKey( key ) )
+                {
+                    alreadySealed.add( key );
+                    return;
+                }
+
+                logger.debug( "Adding {} tracking entries to: {}", batch.size(), key );
+                inProgressRecordCache.execute( cache -> {
+                    cache.putAll( batch );
+                    return null;
+                } );
+                inProgressKeys.add( key );
+            }
+            finally
+            {
+                lock.readLock().unlock();
+            }
+        } );
+
+        if ( !alreadySealed.isEmpty() )
+        {
+            throw new FoloContentException( "Tracking records: {} are already sealed!", alreadySealed );
+        }
     }
 
     @Measure( timers = @MetricNamed( DEFAULT ) )
-    public synchronized void delete( final TrackingKey key )
+    public void delete( final TrackingKey key )
     {
-        sealedRecordCache.remove( key );
-        inProgressByTrackingKey( key, (qb, ch)->{
-            qb.build().list().forEach( item -> ch.execute( cache -> cache.remove( item ) ) );
-            return false;
+        withExclusiveLock( key, () -> {
+            sealedRecordCache.remove( key );
+            inProgressByTrackingKey( key, ( qb, ch ) -> {
+                qb.build().list().forEach( item -> ch.execute( cache -> cache.remove( item ) ) );
+                return false;
+            } );
+            inProgressKeys.remove( key );
+            return null;
         } );
     }
 
-    public synchronized void replaceTrackingRecord( final TrackedContent record )
+    public void replaceTrackingRecord( final TrackedContent record )
     {
-        sealedRecordCache.put( record.getKey(), record );
+        withExclusiveLock( record.getKey(), () -> sealedRecordCache.put( record.getKey(), record ) );
     }
 
-    public synchronized boolean hasRecord( final TrackingKey key )
+    public boolean hasRecord( final TrackingKey key )
     {
         return hasSealedRecord( key ) || hasInProgressRecord( key );
     }
 
-    public synchronized boolean hasSealedRecord( final TrackingKey key )
+    public boolean hasSealedRecord( final TrackingKey key )
     {
         return sealedRecordCache.containsKey( key );
     }
 
     @Measure( timers = @MetricNamed( DEFAULT ) )
-    public synchronized boolean hasInProgressRecord( final TrackingKey key )
+    public boolean hasInProgressRecord( final TrackingKey key )
     {
-        return !sealedRecordCache.containsKey( key ) && inProgressByTrackingKey( key, (qb, cacheHandle)->qb.build().getResultSize() > 0);
+        return ( inProgressKeys.contains( key ) || ( asyncRecorder != null && asyncRecorder.hasPending( key ) ) )
+                && !sealedRecordCache.containsKey( key );
     }
 
-    public synchronized TrackedContent get( final TrackingKey key )
+    public TrackedContent get( final TrackingKey key )
     {
         return sealedRecordCache.get( key );
     }
@@ -150,35 +248,60 @@ public class FoloRecordCache
             return record;
         }
 
-        logger.debug( "Listing unsealed tracking record entries for: {}...", trackingKey );
-        return inProgressByTrackingKey( trackingKey, (qb, cacheHandle)-> {
-            Query query = qb.build();
-            List<TrackedContentEntry> results = query.list();
-            TrackedContent created = null;
-            if ( results != null )
+        if ( asyncRecorder != null )
+        {
+            // accesses queued before the seal request belong to this record
+            asyncRecorder.flush( trackingKey );
+        }
+
+        // recordArtifact() calls for this key wait until the snapshot is sealed; other keys are not blocked
+        return withExclusiveLock( trackingKey, () -> {
+            TrackedContent sealed = sealedRecordCache.get( trackingKey );
+            if ( sealed != null )
             {
-                logger.debug( "Adding {} entries to record: {}", results.size(), trackingKey );
-                Set<TrackedContentEntry> uploads = new TreeSet<>();
-                Set<TrackedContentEntry> downloads = new TreeSet<>();
-                results.forEach( ( result ) -> {
-                    if ( StoreEffect.DOWNLOAD == result.getEffect() )
-                    {
-                        downloads.add( result );
-                    }
-                    else if ( StoreEffect.UPLOAD == result.getEffect() )
-                    {
-                        uploads.add( result );
-                    }
-                    logger.trace( "Removing in-progress entry: {}", result );
-                    inProgressRecordCache.remove( result );
-                } );
-                created = new TrackedContent( trackingKey, uploads, downloads );
+                logger.debug( "Tracking record: {} sealed concurrently! Returning sealed record.", trackingKey );
+                return sealed;
             }
 
-            logger.debug( "Sealing record for: {}", trackingKey );
-            sealedRecordCache.put( trackingKey, created );
-            return created;
-        });
+            logger.debug( "Listing unsealed tracking record entries for: {}...", trackingKey );
+            return inProgressByTrackingKey( trackingKey, ( qb, cacheHandle ) -> {
+                Query query = qb.build();
+                List<TrackedContentEntry> results = query.list();
+                TrackedContent created = null;
+                if ( results != null )
+                {
+                    logger.debug( "Adding {} entries to record: {}", results.size(), trackingKey );
+                    Set<TrackedContentEntry> uploads = new TreeSet<>();
+                    Set<TrackedContentEntry> downloads = new TreeSet<>();
+                    results.forEach( ( result ) -> {
+                        if ( StoreEffect.DOWNLOAD == result.getEffect() )
+                        {
+                            downloads.add( result );
+                        }
+                        else if ( StoreEffect.UPLOAD == result.getEffect() )
+                        {
+                            uploads.add( result );
+                        }
+                    } );
+                    created = new TrackedContent( trackingKey, uploads, downloads );
+                }
+
+                logger.debug( "Sealing record for: {}", trackingKey );
+                sealedRecordCache.put( trackingKey, created );
+                inProgressKeys.remove( trackingKey );
+
+                // the sealed record is visible before the in-progress entries go away, so hasRecord() never blinks
+                if ( results != null )
+                {
+                    results.forEach( ( result ) -> {
+                        logger.trace( "Removing in-progress entry: {}", result );
+                        inProgressRecordCache.remove( result );
+                    } );
+                }
+
+                return created;
+            } );
+        } );
     }
 
     public Set<TrackingKey> getInProgressTrackingKey()
@@ -194,9 +317,16 @@ public class FoloRecordCache
         return sealedRecordCache.execute( BasicCache::keySet );
     }
 
-    public Set<TrackedContent> getSealed()
+    /**
+     * Sealed records are fetched one at a time while iterating, so listing them never holds more than one record (and
+     * the key set) in memory.
+     */
+    public Iterable<TrackedContent> getSealed()
     {
-        return sealedRecordCache.execute( BasicCache::entrySet ).stream().map( (et) -> et.getValue() ).collect( Collectors.toSet() );
+        return () -> getSealedTrackingKey().stream()
+                                           .map( sealedRecordCache::get )
+                                           .filter( Objects::nonNull )
+                                           .iterator();
     }
 
     private <R> R inProgressByTrackingKey( final TrackingKey key, final BiFunction<QueryBuilder, CacheHandle<TrackedContentEntry, TrackedContentEntry>, R> operation )
@@ -216,6 +346,25 @@ public class FoloRecordCache
 
     public void addSealedRecord( TrackedContent record )
     {
-        sealedRecordCache.put( record.getKey(), record );
+        withExclusiveLock( record.getKey(), () -> sealedRecordCache.put( record.getKey(), record ) );
+    }
+
+    private <R> R withExclusiveLock( final TrackingKey key, final Supplier<R> operation )
+    {
+        ReadWriteLock lock = lockFor( key );
+        lock.writeLock().lock();
+        try
+        {
+            return operation.get();
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private ReadWriteLock lockFor( final TrackingKey key )
+    {
+        return locks[( key.hashCode() & 0x7fffffff ) % LOCK_STRIPES];
     }
 }
@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.folo.data.columnar;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Layout constants and primitive encodings shared by {@link ColumnarRecordWriter} and {@link ColumnarRecordReader}.
+ * <br/>
+ * A columnar record file holds one sealed tracking record:
+ * <pre>
+ *   header:     magic, version, tracking id, upload count, download count
+ *   dictionary: store keys, access channels, origin URL bases
+ *   directory:  column count, then (offset, length) of each column
+ *   columns:    one per entry attribute, each holding that attribute for every entry, uploads first
+ * </pre>
+ * Entries are stored in report order (store key, access channel, path), so paths are front-coded against the previous
+ * entry, and checksums are stored as raw bytes instead of hex strings. Since every column has its own offset, a reader
+ * walks all of them side by side with positional reads and never holds more than one entry at a time.
+ */
+final class ColumnarFormat
+{
+    static final int MAGIC = 0x464f4c4f; // "FOLO"
+
+    static final byte VERSION = 1;
+
+    static final int COL_STORE = 0;
+
+    static final int COL_CHANNEL = 1;
+
+    static final int COL_PATH = 2;
+
+    static final int COL_ORIGIN = 3;
+
+    static final int COL_SIZE = 4;
+
+    static final int COL_MD5 = 5;
+
+    static final int COL_SHA1 = 6;
+
+    static final int COL_SHA256 = 7;
+
+    static final int COLUMNS = 8;
+
+    static final byte CHECKSUM_NONE = 0;
+
+    static final byte CHECKSUM_HEX = 1;
+
+    static final byte CHECKSUM_TEXT = 2;
+
+    private ColumnarFormat()
+    {
+    }
+
+    static void writeVarLong( final DataOutput out, long value )
+            throws IOException
+    {
+        while ( ( value & ~0x7FL ) != 0 )
+        {
+            out.writeByte( (int) ( ( value & 0x7F ) | 0x80 ) );
+            value >>>= 7;
+        }
+        out.writeByte( (int) value );
+    }
+
+    static long readVarLong( final DataInput in )
+            throws IOException
+    {
+        long value = 0;
+        for ( int shift = 0; shift < 64; shift += 7 )
+        {
+            byte b = in.readByte();
+            value |= (long) ( b & 0x7F ) << shift;
+            if ( ( b & 0x80 ) == 0 )
+            {
+                return value;
+            }
+        }
+        throw new IOException( "Malformed variable-length number in columnar record" );
+    }
+
+    static void writeVarInt( final DataOutput out, final int value )
+            throws IOException
+    {
+        writeVarLong( out, value & 0xFFFFFFFFL );
+    }
+
+    static int readVarInt( final DataInput in )
+            throws IOException
+    {
+        return (int) readVarLong( in );
+    }
+}
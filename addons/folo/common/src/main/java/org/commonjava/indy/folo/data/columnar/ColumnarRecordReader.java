@@ -0,0 +1,342 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.folo.data.columnar;
+
+import org.commonjava.indy.folo.model.StoreEffect;
+import org.commonjava.indy.folo.model.TrackedContentEntry;
+import org.commonjava.indy.folo.model.TrackingKey;
+import org.commonjava.indy.model.core.AccessChannel;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.CHECKSUM_HEX;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.CHECKSUM_NONE;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.CHECKSUM_TEXT;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.COLUMNS;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.COL_CHANNEL;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.COL_MD5;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.COL_ORIGIN;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.COL_PATH;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.COL_SHA1;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.COL_SHA256;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.COL_SIZE;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.COL_STORE;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.MAGIC;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.VERSION;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.readVarInt;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.readVarLong;
+
+/**
+ * Reads a record written by {@link ColumnarRecordWriter} one entry at a time, in report order: all uploads first, then
+ * all downloads. Only the dictionaries and one small buffer per column are held in memory, whatever the record size.
+ */
+public final class ColumnarRecordReader
+        implements Closeable
+{
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final FileChannel channel;
+
+    private final TrackingKey trackingKey;
+
+    private final int uploadCount;
+
+    private final int downloadCount;
+
+    private final StoreKey[] stores;
+
+    private final AccessChannel[] channels;
+
+    private final String[] origins;
+
+    private final DataInputStream[] columns = new DataInputStream[COLUMNS];
+
+    private int position;
+
+    private String lastPath = "";
+
+    private ColumnarRecordReader( final FileChannel channel )
+            throws IOException
+    {
+        this.channel = channel;
+
+        DataInputStream header = new DataInputStream( new ColumnInputStream( channel, 0, channel.size() ) );
+        if ( header.readInt() != MAGIC )
+        {
+            throw new IOException( "Not a columnar folo record" );
+        }
+
+        byte version = header.readByte();
+        if ( version != VERSION )
+        {
+            throw new IOException( "Unsupported columnar folo record version: " + version );
+        }
+
+        trackingKey = new TrackingKey( header.readUTF() );
+        uploadCount = header.readInt();
+        downloadCount = header.readInt();
+
+        stores = new StoreKey[readVarInt( header )];
+        for ( int i = 0; i < stores.length; i++ )
+        {
+            String packageType = header.readUTF();
+            StoreType type = StoreType.valueOf( header.readUTF() );
+            stores[i] = new StoreKey( packageType, type, header.readUTF() );
+        }
+
+        channels = new AccessChannel[readVarInt( header )];
+        for ( int i = 0; i < channels.length; i++ )
+        {
+            channels[i] = AccessChannel.valueOf( header.readUTF() );
+        }
+
+        origins = new String[readVarInt( header )];
+        for ( int i = 0; i < origins.length; i++ )
+        {
+            origins[i] = header.readUTF();
+        }
+
+        int count = header.readUnsignedByte();
+        if ( count < COLUMNS )
+        {
+            throw new IOException( "Columnar folo record has " + count + " columns, expected " + COLUMNS );
+        }
+
+        for ( int i = 0; i < count; i++ )
+        {
+            long offset = header.readLong();
+            long length = header.readLong();
+            if ( i < COLUMNS )
+            {
+                columns[i] = new DataInputStream( new ColumnInputStream( channel, offset, length ) );
+            }
+        }
+    }
+
+    public static ColumnarRecordReader open( final File file )
+            throws IOException
+    {
+        FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ );
+        try
+        {
+            return new ColumnarRecordReader( channel );
+        }
+        catch ( IOException | RuntimeException e )
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public TrackingKey getTrackingKey()
+    {
+        return trackingKey;
+    }
+
+    public int getUploadCount()
+    {
+        return uploadCount;
+    }
+
+    public int getDownloadCount()
+    {
+        return downloadCount;
+    }
+
+    public boolean hasNext()
+    {
+        return position < uploadCount + downloadCount;
+    }
+
+    /**
+     * @return the next entry; uploads come first, so {@link TrackedContentEntry#getEffect()} switches from
+     * {@link StoreEffect#UPLOAD} to {@link StoreEffect#DOWNLOAD} exactly once.
+     */
+    public TrackedContentEntry next()
+            throws IOException
+    {
+        if ( !hasNext() )
+        {
+            throw new NoSuchElementException( "No more entries in columnar record: " + trackingKey );
+        }
+
+        StoreEffect effect = position < uploadCount ? StoreEffect.UPLOAD : StoreEffect.DOWNLOAD;
+        position++;
+
+        StoreKey storeKey = stores[readVarInt( columns[COL_STORE] )];
+
+        int channelCode = readVarInt( columns[COL_CHANNEL] );
+        AccessChannel accessChannel = channelCode == 0 ? null : channels[channelCode - 1];
+
+        int shared = readVarInt( columns[COL_PATH] );
+        String path = lastPath.substring( 0, shared ) + columns[COL_PATH].readUTF();
+        lastPath = path;
+
+        int originCode = readVarInt( columns[COL_ORIGIN] );
+        String originUrl = null;
+        if ( originCode != 0 )
+        {
+            originCode--;
+            originUrl = origins[originCode >>> 1];
+            if ( ( originCode & 1 ) != 0 )
+            {
+                originUrl += path;
+            }
+        }
+
+        long sizeCode = readVarLong( columns[COL_SIZE] );
+        Long size = null;
+        if ( sizeCode != 0 )
+        {
+            sizeCode--;
+            size = ( sizeCode >>> 1 ) ^ -( sizeCode & 1 );
+        }
+
+        String md5 = readChecksum( columns[COL_MD5] );
+        String sha1 = readChecksum( columns[COL_SHA1] );
+        String sha256 = readChecksum( columns[COL_SHA256] );
+
+        return new TrackedContentEntry( trackingKey, storeKey, accessChannel, originUrl, path, effect, size, md5, sha1,
+                                        sha256 );
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        channel.close();
+    }
+
+    private static String readChecksum( final DataInputStream in )
+            throws IOException
+    {
+        byte kind = in.readByte();
+        switch ( kind )
+        {
+            case CHECKSUM_NONE:
+                return null;
+            case CHECKSUM_HEX:
+            {
+                int len = readVarInt( in );
+                char[] hex = new char[len * 2];
+                for ( int i = 0; i < len; i++ )
+                {
+                    int b = in.readUnsignedByte();
+                    hex[i * 2] = HEX[b >>> 4];
+                    hex[i * 2 + 1] = HEX[b & 0xF];
+                }
+                return new String( hex );
+            }
+            case CHECKSUM_TEXT:
+                return in.readUTF();
+            default:
+                throw new IOException( "Unknown checksum encoding in columnar record: " + kind );
+        }
+    }
+
+    /**
+     * Buffered view of one column, using positional reads so that all columns can be consumed side by side from a
+     * single channel.
+     */
+    private static final class ColumnInputStream
+            extends InputStream
+    {
+        private final FileChannel channel;
+
+        private final long end;
+
+        private long next;
+
+        private final ByteBuffer buffer;
+
+        private ColumnInputStream( final FileChannel channel, final long offset, final long length )
+        {
+            this.channel = channel;
+            this.next = offset;
+            this.end = offset + length;
+            this.buffer = ByteBuffer.allocate( (int) Math.min( BUFFER_SIZE, Math.max( length, 1 ) ) );
+            this.buffer.limit( 0 );
+        }
+
+        @Override
+        public int read()
+                throws IOException
+        {
+            if ( !fill() )
+            {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read( final byte[] b, final int off, final int len )
+                throws IOException
+        {
+            if ( len == 0 )
+            {
+                return 0;
+            }
+            if ( !fill() )
+            {
+                return -1;
+            }
+
+            int n = Math.min( len, buffer.remaining() );
+            buffer.get( b, off, n );
+            return n;
+        }
+
+        private boolean fill()
+                throws IOException
+        {
+            if ( buffer.hasRemaining() )
+            {
+                return true;
+            }
+            if ( next >= end )
+            {
+                return false;
+            }
+
+            buffer.clear();
+            buffer.limit( (int) Math.min( buffer.capacity(), end - next ) );
+            while ( buffer.hasRemaining() )
+            {
+                int read = channel.read( buffer, next + buffer.position() );
+                if ( read < 0 )
+                {
+                    throw new IOException( "Columnar folo record is truncated" );
+                }
+            }
+            next += buffer.position();
+            buffer.flip();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.folo.data.columnar;
+
+import org.commonjava.indy.folo.model.TrackedContent;
+import org.commonjava.indy.folo.model.TrackedContentEntry;
+import org.commonjava.indy.model.core.AccessChannel;
+import org.commonjava.indy.model.core.StoreKey;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.CHECKSUM_HEX;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.CHECKSUM_NONE;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.CHECKSUM_TEXT;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.COLUMNS;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.COL_CHANNEL;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.COL_MD5;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.COL_ORIGIN;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.COL_PATH;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.COL_SHA1;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.COL_SHA256;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.COL_SIZE;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.COL_STORE;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.MAGIC;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.VERSION;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.writeVarInt;
+import static org.commonjava.indy.folo.data.columnar.ColumnarFormat.writeVarLong;
+
+/**
+ * Writes a sealed {@link TrackedContent} record in the columnar layout described in {@link ColumnarFormat}. Store keys,
+ * access channels and origin URL bases are dictionary-encoded, paths are front-coded and checksums are packed into
+ * bytes, so the file is a fraction of the serialized record.
+ */
+public final class ColumnarRecordWriter
+{
+    /**
+     * Report order, see TrackedContentEntryDTO.compareTo(..)
+     */
+    private static final Comparator<TrackedContentEntry> REPORT_ORDER =
+            Comparator.comparing( TrackedContentEntry::getStoreKey )
+                      .thenComparing( TrackedContentEntry::getAccessChannel,
+                                      Comparator.nullsFirst( Comparator.naturalOrder() ) )
+                      .thenComparing( TrackedContentEntry::getPath );
+
+    private ColumnarRecordWriter()
+    {
+    }
+
+    /**
+     * Write the record to the given file. The file is written next to its final location and moved into place, so
+     * readers never see a partial record.
+     */
+    public static void write( final TrackedContent record, final File file )
+            throws IOException
+    {
+        File dir = file.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+
+        File tmp = File.createTempFile( file.getName(), ".tmp", dir );
+        try
+        {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream( new FileOutputStream( tmp ) ) ))
+            {
+                write( record, out );
+            }
+
+            Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE );
+        }
+        finally
+        {
+            tmp.delete();
+        }
+    }
+
+    static void write( final TrackedContent record, final DataOutputStream out )
+            throws IOException
+    {
+        List<TrackedContentEntry> uploads = sorted( record.getUploads() );
+        List<TrackedContentEntry> downloads = sorted( record.getDownloads() );
+
+        Map<StoreKey, Integer> stores = new LinkedHashMap<>();
+        Map<AccessChannel, Integer> channels = new LinkedHashMap<>();
+        Map<String, Integer> origins = new LinkedHashMap<>();
+
+        ColumnBuffer[] columns = new ColumnBuffer[COLUMNS];
+        for ( int i = 0; i < COLUMNS; i++ )
+        {
+            columns[i] = new ColumnBuffer();
+        }
+
+        String lastPath = "";
+        for ( List<TrackedContentEntry> entries : Arrays.asList( uploads, downloads ) )
+        {
+            for ( TrackedContentEntry entry : entries )
+            {
+                writeVarInt( columns[COL_STORE].data, code( stores, entry.getStoreKey() ) );
+                writeVarInt( columns[COL_CHANNEL].data,
+                             entry.getAccessChannel() == null ? 0 : code( channels, entry.getAccessChannel() ) + 1 );
+
+                String path = entry.getPath();
+                int shared = sharedPrefix( lastPath, path );
+                writeVarInt( columns[COL_PATH].data, shared );
+                columns[COL_PATH].data.writeUTF( path.substring( shared ) );
+                lastPath = path;
+
+                writeOrigin( columns[COL_ORIGIN].data, origins, entry.getOriginUrl(), path );
+
+                Long size = entry.getSize();
+                writeVarLong( columns[COL_SIZE].data, size == null ? 0 : zigzag( size ) + 1 );
+
+                writeChecksum( columns[COL_MD5].data, entry.getMd5() );
+                writeChecksum( columns[COL_SHA1].data, entry.getSha1() );
+                writeChecksum( columns[COL_SHA256].data, entry.getSha256() );
+            }
+        }
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream( headerBytes );
+        header.writeInt( MAGIC );
+        header.writeByte( VERSION );
+        header.writeUTF( record.getKey().getId() );
+        header.writeInt( uploads.size() );
+        header.writeInt( downloads.size() );
+
+        writeVarInt( header, stores.size() );
+        for ( StoreKey key : stores.keySet() )
+        {
+            header.writeUTF( key.getPackageType() );
+            header.writeUTF( key.getType().name() );
+            header.writeUTF( key.getName() );
+        }
+
+        writeVarInt( header, channels.size() );
+        for ( AccessChannel channel : channels.keySet() )
+        {
+            header.writeUTF( channel.name() );
+        }
+
+        writeVarInt( header, origins.size() );
+        for ( String origin : origins.keySet() )
+        {
+            header.writeUTF( origin );
+        }
+        header.flush();
+
+        // the column directory itself: count + (offset, length) per column
+        long offset = headerBytes.size() + 1 + COLUMNS * 16L;
+
+        out.write( headerBytes.toByteArray() );
+        out.writeByte( COLUMNS );
+        for ( ColumnBuffer column : columns )
+        {
+            column.data.flush();
+            out.writeLong( offset );
+            out.writeLong( column.bytes.size() );
+            offset += column.bytes.size();
+        }
+
+        for ( ColumnBuffer column : columns )
+        {
+            column.bytes.writeTo( out );
+        }
+    }
+
+    private static List<TrackedContentEntry> sorted( final Collection<TrackedContentEntry> entries )
+    {
+        List<TrackedContentEntry> result = new ArrayList<>();
+        if ( entries == null )
+        {
+            return result;
+        }
+
+        result.addAll( entries );
+        result.sort( REPORT_ORDER );
+
+        // the report holds at most one entry per (store, channel, path), the first one in report order
+        List<TrackedContentEntry> unique = new ArrayList<>( result.size() );
+        TrackedContentEntry last = null;
+        for ( TrackedContentEntry entry : result )
+        {
+            if ( last == null || REPORT_ORDER.compare( last, entry ) != 0 )
+            {
+                unique.add( entry );
+                last = entry;
+            }
+        }
+
+        return unique;
+    }
+
+    private static void writeOrigin( final DataOutputStream out, final Map<String, Integer> origins,
+                                     final String originUrl, final String path )
+            throws IOException
+    {
+        if ( originUrl == null )
+        {
+            writeVarInt( out, 0 );
+            return;
+        }
+
+        // most origin URLs are the remote repository URL followed by the path, so only the base goes in the dictionary
+        boolean withPath = !path.isEmpty() && originUrl.endsWith( path );
+        String base = withPath ? originUrl.substring( 0, originUrl.length() - path.length() ) : originUrl;
+        writeVarInt( out, ( ( code( origins, base ) << 1 ) | ( withPath ? 1 : 0 ) ) + 1 );
+    }
+
+    private static void writeChecksum( final DataOutputStream out, final String checksum )
+            throws IOException
+    {
+        if ( checksum == null )
+        {
+            out.writeByte( CHECKSUM_NONE );
+        }
+        else if ( isLowerHex( checksum ) )
+        {
+            out.writeByte( CHECKSUM_HEX );
+            writeVarInt( out, checksum.length() / 2 );
+            for ( int i = 0; i < checksum.length(); i += 2 )
+            {
+                out.writeByte( Character.digit( checksum.charAt( i ), 16 ) << 4
+                                       | Character.digit( checksum.charAt( i + 1 ), 16 ) );
+            }
+        }
+        else
+        {
+            out.writeByte( CHECKSUM_TEXT );
+            out.writeUTF( checksum );
+        }
+    }
+
+    private static boolean isLowerHex( final String value )
+    {
+        if ( value.isEmpty() || value.length() % 2 != 0 )
+        {
+            return false;
+        }
+
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            char c = value.charAt( i );
+            if ( ( c < '0' || c > '9' ) && ( c < 'a' || c > 'f' ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static <T> int code( final Map<T, Integer> dictionary, final T value )
+    {
+        return dictionary.computeIfAbsent( value, v -> dictionary.size() );
+    }
+
+    private static int sharedPrefix( final String previous, final String current )
+    {
+        int max = Math.min( previous.length(), current.length() );
+        int i = 0;
+        while ( i < max && previous.charAt( i ) == current.charAt( i ) )
+        {
+            i++;
+        }
+        return i;
+    }
+
+    private static long zigzag( final long value )
+    {
+        return ( value << 1 ) ^ ( value >> 63 );
+    }
+
+    private static final class ColumnBuffer
+    {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private final DataOutputStream data = new DataOutputStream( bytes );
+    }
+}
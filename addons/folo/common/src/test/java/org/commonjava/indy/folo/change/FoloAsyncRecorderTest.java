@@ -0,0 +1,303 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.folo.change;
+
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.content.ContentDigester;
+import org.commonjava.indy.folo.conf.FoloConfig;
+import org.commonjava.indy.folo.data.FoloContentException;
+import org.commonjava.indy.folo.data.FoloRecordCache;
+import org.commonjava.indy.folo.model.StoreEffect;
+import org.commonjava.indy.folo.model.TrackedContentEntry;
+import org.commonjava.indy.folo.model.TrackingKey;
+import org.commonjava.indy.model.core.AccessChannel;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.model.galley.CacheOnlyLocation;
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.HashedLocationPathGenerator;
+import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.checksum.ContentDigest;
+import org.commonjava.maven.galley.io.checksum.TransferMetadata;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Transfer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class FoloAsyncRecorderTest
+{
+    private static final StoreKey HOSTED = new StoreKey( "maven", StoreType.hosted, "build" );
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private FileCacheProvider cacheProvider;
+
+    private FoloConfig config;
+
+    private RecordingCache recordCache;
+
+    private ExecutorService executor;
+
+    private FoloAsyncRecorder recorder;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        cacheProvider = new FileCacheProvider( temp.newFolder(), new HashedLocationPathGenerator(),
+                                               new NoOpFileEventManager(), new NoOpTransferDecorator() );
+
+        config = new FoloConfig();
+        config.setAsyncRecordingEnabled( true );
+        config.setAsyncRecordingBatchSize( 1 );
+
+        recordCache = new RecordingCache();
+    }
+
+    @After
+    public void teardown()
+    {
+        recordCache.release.countDown();
+        if ( executor != null )
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void recordOnCallingThreadWhenQueueIsFull()
+            throws Exception
+    {
+        config.setAsyncRecordingQueueSize( 1 );
+        recordCache.blockFirstBatch();
+        recorder = newRecorder( Executors.newSingleThreadExecutor() );
+
+        TrackingKey key = new TrackingKey( "full" );
+        record( key, "/a.jar" );
+        recordCache.batchStarted.await( 5, TimeUnit.SECONDS );
+
+        // the only worker is blocked on the first batch and the queue takes one more, so the third is recorded here
+        record( key, "/b.jar" );
+        record( key, "/c.jar" );
+        assertThat( recordCache.recordedBy( "/c.jar" ), equalTo( Thread.currentThread().getName() ) );
+
+        recordCache.release.countDown();
+        recorder.flush( key );
+        assertThat( recordCache.recorded.size(), equalTo( 3 ) );
+        assertThat( recorder.hasPending( key ), equalTo( false ) );
+    }
+
+    @Test
+    public void flushWaitsForQueuedAccesses()
+            throws Exception
+    {
+        recordCache.delayMillis = 20;
+        recorder = newRecorder();
+
+        TrackingKey key = new TrackingKey( "flush" );
+        for ( int i = 0; i < 20; i++ )
+        {
+            record( key, "/path/" + i + ".jar" );
+        }
+
+        recorder.flush( key );
+        assertThat( recorder.hasPending( key ), equalTo( false ) );
+        assertThat( recordCache.recorded.size(), equalTo( 20 ) );
+    }
+
+    @Test
+    public void flushRecordsQueuedAccessesItselfAfterTimeoutAndWaitsForInFlightOnes()
+            throws Exception
+    {
+        recordCache.blockFirstBatch();
+        recorder = newRecorder( Executors.newSingleThreadExecutor() );
+        recorder.setFlushTimeoutMillis( 100 );
+
+        TrackingKey key = new TrackingKey( "stuck" );
+        record( key, "/in-flight.jar" );
+        recordCache.batchStarted.await( 5, TimeUnit.SECONDS );
+
+        // the only worker is blocked, so these stay queued
+        record( key, "/queued-1.jar" );
+        record( key, "/queued-2.jar" );
+
+        Thread flusher = new Thread( () -> recorder.flush( key ) );
+        flusher.start();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while ( recordCache.recordedBy( "/queued-2.jar" ) == null && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 20 );
+        }
+        assertThat( recordCache.recordedBy( "/queued-1.jar" ), equalTo( flusher.getName() ) );
+        assertThat( recordCache.recordedBy( "/queued-2.jar" ), equalTo( flusher.getName() ) );
+
+        // the in-flight batch still holds an access of the key, so the seal can't go ahead yet
+        flusher.join( 300 );
+        assertThat( flusher.isAlive(), equalTo( true ) );
+
+        recordCache.release.countDown();
+        flusher.join( 5000 );
+        assertThat( flusher.isAlive(), equalTo( false ) );
+        assertThat( recordCache.recordedBy( "/in-flight.jar" ) != null, equalTo( true ) );
+        assertThat( recorder.hasPending( key ), equalTo( false ) );
+    }
+
+    @Test
+    public void drainerRestartsAfterFailure()
+            throws Exception
+    {
+        recordCache.failures.set( 1 );
+        recorder = newRecorder();
+
+        TrackingKey key = new TrackingKey( "fail" );
+        record( key, "/lost.jar" );
+        recorder.flush( key );
+        assertThat( recorder.hasPending( key ), equalTo( false ) );
+
+        for ( int i = 0; i < 10; i++ )
+        {
+            record( key, "/after/" + i + ".jar" );
+        }
+        recorder.flush( key );
+        assertThat( recorder.hasPending( key ), equalTo( false ) );
+        assertThat( recordCache.recorded.size(), equalTo( 10 ) );
+    }
+
+    private FoloAsyncRecorder newRecorder()
+    {
+        return newRecorder( Executors.newFixedThreadPool( 4 ) );
+    }
+
+    private FoloAsyncRecorder newRecorder( final ExecutorService executor )
+    {
+        this.executor = executor;
+        return new FoloAsyncRecorder( config, recordCache, null, new CachedDigester(), executor );
+    }
+
+    private void record( final TrackingKey key, final String path )
+    {
+        Transfer transfer = cacheProvider.getTransfer( new ConcreteResource( new CacheOnlyLocation( HOSTED ), path ) );
+        recorder.record( key, HOSTED, AccessChannel.MAVEN_REPO, transfer, StoreEffect.DOWNLOAD, new EventMetadata() );
+    }
+
+    private static final class RecordingCache
+            extends FoloRecordCache
+    {
+        private final List<String[]> recorded = new CopyOnWriteArrayList<>();
+
+        private final CountDownLatch batchStarted = new CountDownLatch( 1 );
+
+        private final AtomicInteger failures = new AtomicInteger();
+
+        private final CountDownLatch release = new CountDownLatch( 1 );
+
+        private final AtomicBoolean blockFirst = new AtomicBoolean();
+
+        private volatile long delayMillis;
+
+        void blockFirstBatch()
+        {
+            blockFirst.set( true );
+        }
+
+        String recordedBy( final String path )
+        {
+            return recorded.stream().filter( r -> r[0].equals( path ) ).map( r -> r[1] ).findFirst().orElse( null );
+        }
+
+        @Override
+        public boolean recordArtifact( final TrackedContentEntry entry )
+        {
+            recorded.add( new String[] { entry.getPath(), Thread.currentThread().getName() } );
+            return true;
+        }
+
+        @Override
+        public void recordArtifacts( final Collection<TrackedContentEntry> entries )
+                throws FoloContentException
+        {
+            batchStarted.countDown();
+            if ( failures.getAndDecrement() > 0 )
+            {
+                // not caught by the worker, so the drain task dies
+                throw new AssertionError( "Test failure" );
+            }
+
+            try
+            {
+                Thread.sleep( delayMillis );
+                if ( blockFirst.compareAndSet( true, false ) )
+                {
+                    release.await();
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+            entries.forEach( this::recordArtifact );
+        }
+    }
+
+    private static final class CachedDigester
+            implements ContentDigester
+    {
+        @Override
+        public TransferMetadata getContentMetadata( final Transfer transfer )
+        {
+            return new TransferMetadata( Collections.singletonMap( ContentDigest.MD5, "md5" ), 1L );
+        }
+
+        @Override
+        public TransferMetadata digest( final StoreKey affectedStore, final String s,
+                                        final EventMetadata eventMetadata )
+                throws IndyWorkflowException
+        {
+            return getContentMetadata( null );
+        }
+
+        @Override
+        public void addMetadata( final Transfer transfer, final TransferMetadata transferMetadata )
+        {
+        }
+
+        @Override
+        public void removeMetadata( final Transfer transfer )
+        {
+        }
+    }
+}
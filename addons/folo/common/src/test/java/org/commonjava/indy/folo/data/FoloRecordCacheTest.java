@@ -31,12 +31,19 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 public class FoloRecordCacheTest
 {
@@ -163,6 +170,82 @@ public class FoloRecordCacheTest
         assertThat( cache.hasRecord( key ), equalTo( false ) );
     }
 
+    @Test
+    public void concurrentRecordingForSeveralKeysKeepsEveryEntry()
+            throws Exception
+    {
+        final TrackingKey first = new TrackingKey( "first" );
+        final TrackingKey second = new TrackingKey( "second" );
+        final int perKey = 50;
+
+        ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try
+        {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for ( int i = 0; i < perKey; i++ )
+            {
+                for ( TrackingKey key : new TrackingKey[] { first, second } )
+                {
+                    final String path = "/path/" + i;
+                    futures.add( executor.submit( () -> cache.recordArtifact(
+                            new TrackedContentEntry( key, new StoreKey( StoreType.remote, "foo" ),
+                                                     AccessChannel.MAVEN_REPO, "", path, StoreEffect.DOWNLOAD, 1L,
+                                                     "", "", "" ) ) ) );
+                }
+            }
+
+            for ( Future<Boolean> future : futures )
+            {
+                assertThat( future.get(), equalTo( true ) );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        assertThat( cache.hasInProgressRecord( first ), equalTo( true ) );
+        assertThat( cache.seal( first ).getDownloads().size(), equalTo( perKey ) );
+        assertThat( cache.hasInProgressRecord( first ), equalTo( false ) );
+
+        assertThat( cache.hasInProgressRecord( second ), equalTo( true ) );
+        assertThat( cache.seal( second ).getDownloads().size(), equalTo( perKey ) );
+
+        cache.delete( second );
+        assertThat( cache.hasRecord( second ), equalTo( false ) );
+    }
+
+    @Test
+    public void recordArtifactsInsertsBatchAndSkipsSealedRecords()
+            throws Exception
+    {
+        final TrackingKey open = new TrackingKey( "open" );
+        final TrackingKey closed = new TrackingKey( "closed" );
+        cache.recordArtifact( newEntry( closed, "/path/0" ) );
+        cache.seal( closed );
+
+        try
+        {
+            cache.recordArtifacts( Arrays.asList( newEntry( open, "/path/1" ), newEntry( open, "/path/2" ),
+                                                  newEntry( closed, "/path/3" ) ) );
+            fail( "Recording into a sealed record should fail" );
+        }
+        catch ( FoloContentException e )
+        {
+            // expected; the entries for the open record are still recorded
+        }
+
+        assertThat( cache.hasInProgressRecord( open ), equalTo( true ) );
+        assertThat( cache.seal( open ).getDownloads().size(), equalTo( 2 ) );
+        assertThat( cache.get( closed ).getDownloads().size(), equalTo( 1 ) );
+    }
+
+    private TrackedContentEntry newEntry( final TrackingKey key, final String path )
+    {
+        return new TrackedContentEntry( key, new StoreKey( StoreType.remote, "foo" ), AccessChannel.MAVEN_REPO, "",
+                                        path, StoreEffect.DOWNLOAD, 1L, "", "", "" );
+    }
+
     private TrackingKey newKey()
     {
         final String id = "track";
@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.folo.data.columnar;
+
+import org.commonjava.indy.folo.model.StoreEffect;
+import org.commonjava.indy.folo.model.TrackedContent;
+import org.commonjava.indy.folo.model.TrackedContentEntry;
+import org.commonjava.indy.folo.model.TrackingKey;
+import org.commonjava.indy.model.core.AccessChannel;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class ColumnarRecordTest
+{
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final TrackingKey key = new TrackingKey( "build-1" );
+
+    private final StoreKey hosted = new StoreKey( MAVEN_PKG_KEY, StoreType.hosted, "build-1" );
+
+    private final StoreKey central = new StoreKey( MAVEN_PKG_KEY, StoreType.remote, "central" );
+
+    @Test
+    public void roundTripPreservesEntriesInReportOrder()
+            throws Exception
+    {
+        TrackedContentEntry upload =
+                new TrackedContentEntry( key, hosted, AccessChannel.MAVEN_REPO, null, "/org/foo/foo/1/foo-1.jar",
+                                         StoreEffect.UPLOAD, 42L, "0123456789abcdef0123456789abcdef",
+                                         "da39a3ee5e6b4b0d3255bfef95601890afd80709", null );
+
+        TrackedContentEntry download2 =
+                new TrackedContentEntry( key, central, AccessChannel.MAVEN_REPO,
+                                         "http://repo.example.com/maven2/org/bar/bar/1/bar-1.pom",
+                                         "/org/bar/bar/1/bar-1.pom", StoreEffect.DOWNLOAD, 0L, "NOT-HEX", "", null );
+
+        TrackedContentEntry download1 =
+                new TrackedContentEntry( key, central, AccessChannel.MAVEN_REPO,
+                                         "http://repo.example.com/maven2/org/bar/bar/1/bar-1.jar",
+                                         "/org/bar/bar/1/bar-1.jar", StoreEffect.DOWNLOAD, null, null, null,
+                                         "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855" );
+
+        TrackedContentEntry download3 =
+                new TrackedContentEntry( key, hosted, AccessChannel.GENERIC_PROXY, "http://elsewhere/x",
+                                         "/org/bar/bar/1/bar-1.jar", StoreEffect.DOWNLOAD, -1L, null, null, null );
+
+        TrackedContent record = new TrackedContent( key, new HashSet<>( Arrays.asList( upload ) ),
+                                                    new HashSet<>( Arrays.asList( download2, download3, download1 ) ) );
+
+        File file = new File( temp.newFolder(), "build-1.fcr" );
+        ColumnarRecordWriter.write( record, file );
+
+        List<TrackedContentEntry> read = new ArrayList<>();
+        try (ColumnarRecordReader reader = ColumnarRecordReader.open( file ))
+        {
+            assertThat( reader.getTrackingKey(), equalTo( key ) );
+            assertThat( reader.getUploadCount(), equalTo( 1 ) );
+            assertThat( reader.getDownloadCount(), equalTo( 3 ) );
+
+            while ( reader.hasNext() )
+            {
+                read.add( reader.next() );
+            }
+        }
+
+        assertThat( read, equalTo( Arrays.asList( upload, download1, download2, download3 ) ) );
+        for ( int i = 0; i < read.size(); i++ )
+        {
+            assertSameEntry( read.get( i ), Arrays.asList( upload, download1, download2, download3 ).get( i ) );
+        }
+    }
+
+    @Test
+    public void roundTripLargeRecord()
+            throws Exception
+    {
+        Set<TrackedContentEntry> downloads = new HashSet<>();
+        for ( int i = 0; i < 20000; i++ )
+        {
+            String path = String.format( "/org/foo/lib-%d/1.%d/lib-%d-1.%d.jar", i % 97, i, i % 97, i );
+            downloads.add( new TrackedContentEntry( key, central, AccessChannel.MAVEN_REPO,
+                                                    "http://repo.example.com/maven2" + path, path,
+                                                    StoreEffect.DOWNLOAD, (long) i, String.format( "%032x", i ),
+                                                    String.format( "%040x", i ), String.format( "%064x", i ) ) );
+        }
+
+        File file = new File( temp.newFolder(), "big.fcr" );
+        ColumnarRecordWriter.write( new TrackedContent( key, new HashSet<>(), downloads ), file );
+
+        Set<TrackedContentEntry> read = new HashSet<>();
+        try (ColumnarRecordReader reader = ColumnarRecordReader.open( file ))
+        {
+            while ( reader.hasNext() )
+            {
+                TrackedContentEntry entry = reader.next();
+                assertThat( entry.getOriginUrl(), equalTo( "http://repo.example.com/maven2" + entry.getPath() ) );
+                assertThat( entry.getSha256(), equalTo( String.format( "%064x", entry.getSize() ) ) );
+                read.add( entry );
+            }
+        }
+
+        assertThat( read, equalTo( downloads ) );
+    }
+
+    private void assertSameEntry( final TrackedContentEntry actual, final TrackedContentEntry expected )
+    {
+        assertThat( actual.getEffect(), equalTo( expected.getEffect() ) );
+        assertThat( actual.getOriginUrl(), equalTo( expected.getOriginUrl() ) );
+        assertThat( actual.getSize(), equalTo( expected.getSize() ) );
+        assertThat( actual.getMd5(), equalTo( expected.getMd5() ) );
+        assertThat( actual.getSha1(), equalTo( expected.getSha1() ) );
+        assertThat( actual.getSha256(), equalTo( expected.getSha256() ) );
+    }
+}
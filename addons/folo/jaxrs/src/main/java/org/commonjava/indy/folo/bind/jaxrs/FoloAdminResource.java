@@ -26,6 +26,7 @@ import org.commonjava.indy.core.ctl.ContentController;
 import org.commonjava.indy.folo.ctl.FoloAdminController;
 import org.commonjava.indy.folo.ctl.FoloConstants;
 import org.commonjava.indy.folo.data.FoloContentException;
+import org.commonjava.indy.folo.data.columnar.ColumnarRecordReader;
 import org.commonjava.indy.folo.dto.TrackedContentDTO;
 import org.commonjava.indy.folo.dto.TrackingIdsDTO;
 import org.commonjava.indy.model.core.io.IndyObjectMapper;
@@ -45,6 +46,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 import java.io.File;
 import java.io.IOException;
@@ -58,6 +60,7 @@ import static org.commonjava.indy.bind.jaxrs.util.ResponseUtils.throwError;
 import static org.commonjava.indy.folo.ctl.FoloConstants.ALL;
 import static org.commonjava.indy.folo.ctl.FoloConstants.TRACKING_TYPE.IN_PROGRESS;
 import static org.commonjava.indy.folo.ctl.FoloConstants.TRACKING_TYPE.SEALED;
+import static org.commonjava.indy.util.ApplicationContent.application_json;
 import static org.commonjava.indy.util.ApplicationContent.application_zip;
 
 @Api( value = "FOLO Tracking Record Access", description = "Manages FOLO tracking records." )
@@ -152,15 +155,23 @@ public class FoloAdminResource
         {
             final String baseUrl = uriInfo.getBaseUriBuilder().path( "api" ).build().toString();
 
-            final TrackedContentDTO report = controller.renderReport( id, baseUrl );
+            final ColumnarRecordReader reader = controller.openReport( id );
 
-            if ( report == null )
+            if ( reader == null )
             {
                 response = Response.status( Status.NOT_FOUND ).build();
             }
             else
             {
-                response = formatOkResponseWithJsonEntity( report, objectMapper );
+                // stream the report entry by entry instead of building the whole DTO in memory
+                final StreamingOutput report = ( out ) -> {
+                    try (ColumnarRecordReader r = reader)
+                    {
+                        controller.writeReport( r, baseUrl, objectMapper, out );
+                    }
+                };
+
+                response = Response.ok( report ).type( application_json ).build();
             }
         }
         catch ( final IndyWorkflowException e )
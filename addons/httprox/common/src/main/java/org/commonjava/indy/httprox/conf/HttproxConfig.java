@@ -49,6 +49,22 @@ public class HttproxConfig
 
     private static final int DEFAULT_MITM_SO_TIMEOUT_MINUTES = 30;
 
+    private static final int DEFAULT_MITM_WORKERS = 50;
+
+    private static final int DEFAULT_MITM_KEYPAIR_POOL_SIZE = 8;
+
+    private static final int DEFAULT_MITM_KEYSTORE_CACHE_MAX = 10000;
+
+    private static final boolean DEFAULT_TUNNEL_ENABLED = false;
+
+    private static final int DEFAULT_TUNNEL_SELECTOR_THREADS = 2;
+
+    private static final int DEFAULT_TUNNEL_BUFFER_POOL_SIZE = 512;
+
+    private static final int DEFAULT_TUNNEL_IDLE_TIMEOUT_MINUTES = 30;
+
+    private static final String DEFAULT_TUNNEL_ALLOWED_PORTS = "443";
+
     private String proxyRealm;
 
     private Boolean enabled;
@@ -73,6 +89,26 @@ public class HttproxConfig
 
     private Integer MITMSoTimeoutMinutes;
 
+    private Integer MITMWorkers;
+
+    private Integer MITMKeyPairPoolSize;
+
+    private String MITMKeyStoreCacheDir;
+
+    private Integer MITMKeyStoreCacheMax;
+
+    private Boolean tunnelEnabled;
+
+    private Integer tunnelSelectorThreads;
+
+    private Integer tunnelBufferPoolSize;
+
+    private Integer tunnelIdleTimeoutMinutes;
+
+    private String tunnelAllowedPorts; // if multiple ports, split by comma
+
+    private String tunnelAllowedHosts; // if multiple hosts, split by comma
+
     public TrackingType getTrackingType()
     {
         return TrackingType.valueOf( trackingType == null ? DEFAULT_TRACKING_TYPE : trackingType.toUpperCase() );
@@ -223,4 +259,117 @@ public class HttproxConfig
     {
         this.MITMSoTimeoutMinutes = MITMSoTimeoutMinutes;
     }
+
+    public Integer getMITMWorkers()
+    {
+        return MITMWorkers == null ? DEFAULT_MITM_WORKERS : MITMWorkers;
+    }
+
+    @ConfigName( "MITM.workers" )
+    public void setMITMWorkers( Integer MITMWorkers )
+    {
+        this.MITMWorkers = MITMWorkers;
+    }
+
+    public Integer getMITMKeyPairPoolSize()
+    {
+        return MITMKeyPairPoolSize == null ? DEFAULT_MITM_KEYPAIR_POOL_SIZE : MITMKeyPairPoolSize;
+    }
+
+    @ConfigName( "MITM.keypair.pool.size" )
+    public void setMITMKeyPairPoolSize( Integer MITMKeyPairPoolSize )
+    {
+        this.MITMKeyPairPoolSize = MITMKeyPairPoolSize;
+    }
+
+    public String getMITMKeyStoreCacheDir()
+    {
+        return MITMKeyStoreCacheDir;
+    }
+
+    @ConfigName( "MITM.keystore.cache.dir" )
+    public void setMITMKeyStoreCacheDir( String MITMKeyStoreCacheDir )
+    {
+        this.MITMKeyStoreCacheDir = MITMKeyStoreCacheDir;
+    }
+
+    public Integer getMITMKeyStoreCacheMax()
+    {
+        return MITMKeyStoreCacheMax == null ? DEFAULT_MITM_KEYSTORE_CACHE_MAX : MITMKeyStoreCacheMax;
+    }
+
+    @ConfigName( "MITM.keystore.cache.max" )
+    public void setMITMKeyStoreCacheMax( Integer MITMKeyStoreCacheMax )
+    {
+        this.MITMKeyStoreCacheMax = MITMKeyStoreCacheMax;
+    }
+
+    public boolean isTunnelEnabled()
+    {
+        return tunnelEnabled == null ? DEFAULT_TUNNEL_ENABLED : tunnelEnabled;
+    }
+
+    @ConfigName( "tunnel.enabled" )
+    public void setTunnelEnabled( Boolean tunnelEnabled )
+    {
+        this.tunnelEnabled = tunnelEnabled;
+    }
+
+    public Integer getTunnelSelectorThreads()
+    {
+        return tunnelSelectorThreads == null ? DEFAULT_TUNNEL_SELECTOR_THREADS : tunnelSelectorThreads;
+    }
+
+    @ConfigName( "tunnel.selector.threads" )
+    public void setTunnelSelectorThreads( Integer tunnelSelectorThreads )
+    {
+        this.tunnelSelectorThreads = tunnelSelectorThreads;
+    }
+
+    public Integer getTunnelBufferPoolSize()
+    {
+        return tunnelBufferPoolSize == null ? DEFAULT_TUNNEL_BUFFER_POOL_SIZE : tunnelBufferPoolSize;
+    }
+
+    @ConfigName( "tunnel.buffer.pool.size" )
+    public void setTunnelBufferPoolSize( Integer tunnelBufferPoolSize )
+    {
+        this.tunnelBufferPoolSize = tunnelBufferPoolSize;
+    }
+
+    public Integer getTunnelIdleTimeoutMinutes()
+    {
+        return tunnelIdleTimeoutMinutes == null ? DEFAULT_TUNNEL_IDLE_TIMEOUT_MINUTES : tunnelIdleTimeoutMinutes;
+    }
+
+    @ConfigName( "tunnel.idle.timeout.minutes" )
+    public void setTunnelIdleTimeoutMinutes( Integer tunnelIdleTimeoutMinutes )
+    {
+        this.tunnelIdleTimeoutMinutes = tunnelIdleTimeoutMinutes;
+    }
+
+    public String getTunnelAllowedPorts()
+    {
+        return tunnelAllowedPorts == null ? DEFAULT_TUNNEL_ALLOWED_PORTS : tunnelAllowedPorts;
+    }
+
+    @ConfigName( "tunnel.allowed.ports" )
+    public void setTunnelAllowedPorts( String tunnelAllowedPorts )
+    {
+        this.tunnelAllowedPorts = tunnelAllowedPorts;
+    }
+
+    /**
+     * @return the hosts passthrough tunnels may be opened to (e.g. "github.com, *.example.com"), or null for any host
+     */
+    public String getTunnelAllowedHosts()
+    {
+        return tunnelAllowedHosts;
+    }
+
+    @ConfigName( "tunnel.allowed.hosts" )
+    public void setTunnelAllowedHosts( String tunnelAllowedHosts )
+    {
+        this.tunnelAllowedHosts = tunnelAllowedHosts;
+    }
 }
@@ -34,8 +34,13 @@ import org.xnio.channels.AcceptingChannel;
 import org.xnio.conduits.ConduitStreamSinkChannel;
 import org.xnio.conduits.ConduitStreamSourceChannel;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by jdcasey on 8/13/15.
@@ -77,6 +82,14 @@ public class ProxyAcceptHandler
     @Inject
     private CacheProducer cacheProducer;
 
+    @Inject
+    private ProxyMITMSSLContextCache mitmSSLContexts;
+
+    @Inject
+    private ProxyTunnelEngine tunnelEngine;
+
+    private ExecutorService mitmWorkers;
+
     protected ProxyAcceptHandler()
     {
     }
@@ -97,6 +110,38 @@ public class ProxyAcceptHandler
         this.metricsConfig = metricsConfig;
         this.metricRegistry = metricRegistry;
         this.cacheProducer = cacheProducer;
+        this.mitmSSLContexts =
+                new ProxyMITMSSLContextCache( config, new ProxyMITMCertificateService( config, null, null ) );
+        this.mitmWorkers = newMITMWorkers( config );
+        this.tunnelEngine = new ProxyTunnelEngine( config );
+    }
+
+    @PostConstruct
+    public void startMITMWorkers()
+    {
+        mitmWorkers = newMITMWorkers( config );
+    }
+
+    @PreDestroy
+    public void stopMITMWorkers()
+    {
+        if ( mitmWorkers != null )
+        {
+            mitmWorkers.shutdownNow();
+        }
+    }
+
+    /**
+     * Sized by MITM.workers, since the threads are busy for as long as the MITM'ed clients take to read the responses.
+     */
+    private static ExecutorService newMITMWorkers( final HttproxConfig config )
+    {
+        final AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool( config.getMITMWorkers(), ( r ) -> {
+            Thread t = new Thread( r, "httprox-mitm-" + count.getAndIncrement() );
+            t.setDaemon( true );
+            return t;
+        } );
     }
 
     public ProxyRepositoryCreator createRepoCreator()
@@ -148,7 +193,8 @@ public class ProxyAcceptHandler
         final ProxyResponseWriter writer =
                         new ProxyResponseWriter( config, storeManager, contentController, proxyAuthenticator,
                                                  cacheProvider, mdcManager, creator, accepted,
-                                                 metricsConfig, metricRegistry, cacheProducer );
+                                                 metricsConfig, metricRegistry, cacheProducer, mitmSSLContexts,
+                                                 mitmWorkers, tunnelEngine );
 
         logger.debug( "Setting writer: {}", writer );
         sink.getWriteSetter().set( writer );
@@ -0,0 +1,594 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.httprox.handler;
+
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.WeftManaged;
+import org.commonjava.indy.httprox.conf.HttproxConfig;
+import org.commonjava.indy.httprox.util.CertificateAndKeys;
+import org.commonjava.indy.subsys.datafile.DataFileManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.commonjava.indy.httprox.util.CertUtils.createKeyStore;
+import static org.commonjava.indy.httprox.util.CertUtils.createSignedCertificateAndKey;
+import static org.commonjava.indy.httprox.util.CertUtils.generateKeyPair;
+import static org.commonjava.indy.httprox.util.CertUtils.getPrivateKey;
+import static org.commonjava.indy.httprox.util.CertUtils.loadKeyStore;
+import static org.commonjava.indy.httprox.util.CertUtils.loadX509Certificate;
+
+/**
+ * Issues the certificates of MITM'ed hosts. The CA key and certificate are loaded once, RSA key pairs are generated
+ * ahead of time in the background, and the keystore issued for a host is kept on disk (one directory per host, one
+ * file per keystore, named after its expiration time) so it is reused until it expires, even across restarts.
+ */
+@ApplicationScoped
+public class ProxyMITMCertificateService
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    public static final String KEYSTORE_PASSWORD = "password"; // keystore password can not be null
+
+    private static final String KEYSTORE_CACHE_DIR = "httprox/mitm-keystores";
+
+    private static final String KEYSTORE_SUFFIX = ".jks";
+
+    private static final long RENEW_BEFORE_MILLIS = TimeUnit.DAYS.toMillis( 1 );
+
+    private static final int HOST_LOCK_STRIPES = 64;
+
+    @Inject
+    private HttproxConfig config;
+
+    @Inject
+    private DataFileManager dataFileManager;
+
+    @WeftManaged
+    @ExecutorConfig( named = "httprox-mitm-keygen", threads = 2, priority = 2 )
+    @Inject
+    private ExecutorService keyPairGenerators;
+
+    private File cacheDir;
+
+    private volatile CertificateAuthority ca;
+
+    private final BlockingQueue<KeyPair> keyPairs = new LinkedBlockingQueue<>();
+
+    private final AtomicInteger pendingKeyPairs = new AtomicInteger();
+
+    private final AtomicInteger cachedHosts = new AtomicInteger();
+
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    private final Object[] hostLocks = newLocks( HOST_LOCK_STRIPES );
+
+    protected ProxyMITMCertificateService()
+    {
+    }
+
+    /**
+     * @param cacheDir where to keep issued keystores, or null to not keep them at all
+     * @param keyPairGenerators runs the key pair generation, or null to generate them only when needed
+     */
+    public ProxyMITMCertificateService( final HttproxConfig config, final File cacheDir,
+                                        final ExecutorService keyPairGenerators )
+    {
+        this.config = config;
+        this.cacheDir = cacheDir;
+        this.keyPairGenerators = keyPairGenerators;
+        init();
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        if ( cacheDir == null && dataFileManager != null )
+        {
+            cacheDir = config.getMITMKeyStoreCacheDir() != null ?
+                    new File( config.getMITMKeyStoreCacheDir() ) :
+                    new File( dataFileManager.getDetachedDataBasedir(), KEYSTORE_CACHE_DIR );
+        }
+
+        if ( config.isMITMEnabled() )
+        {
+            fillKeyPairPool();
+            if ( cacheDir != null )
+            {
+                submit( this::sweep );
+            }
+        }
+    }
+
+    /**
+     * Get a keystore holding the host key and certificate (signed by the CA) under the host alias, issuing it if no
+     * valid one is cached.
+     */
+    public HostKeyStore getKeyStore( final String host )
+            throws Exception
+    {
+        synchronized ( lockFor( hostLocks, host ) )
+        {
+            HostKeyStore cached = loadCached( host );
+            if ( cached != null )
+            {
+                logger.debug( "Use cached keystore for {}, expires: {}", host, cached.getNotAfter() );
+                return cached;
+            }
+
+            HostKeyStore issued = issue( host );
+            store( host, issued );
+            return issued;
+        }
+    }
+
+    /**
+     * Whether a certificate is close enough to its expiration that a new one should be issued instead.
+     */
+    public static boolean needsRenewal( final Date notAfter )
+    {
+        return notAfter.getTime() - System.currentTimeMillis() < RENEW_BEFORE_MILLIS;
+    }
+
+    /**
+     * Delete the expired keystores in the cache directory, then the ones expiring first if there are still more hosts
+     * than configured.
+     */
+    public void sweep()
+    {
+        if ( cacheDir == null || !sweeping.compareAndSet( false, true ) )
+        {
+            return;
+        }
+
+        try
+        {
+            File[] hostDirs = cacheDir.listFiles( File::isDirectory );
+            if ( hostDirs == null )
+            {
+                return;
+            }
+
+            List<File> valid = new ArrayList<>();
+            for ( File hostDir : hostDirs )
+            {
+                File latest = null;
+                for ( File f : listKeyStores( hostDir ) )
+                {
+                    if ( latest == null || expiration( f ) > expiration( latest ) )
+                    {
+                        if ( latest != null )
+                        {
+                            delete( latest );
+                        }
+                        latest = f;
+                    }
+                    else
+                    {
+                        delete( f );
+                    }
+                }
+
+                if ( latest != null && needsRenewal( new Date( expiration( latest ) ) ) )
+                {
+                    delete( latest );
+                    latest = null;
+                }
+
+                if ( latest == null )
+                {
+                    delete( hostDir );
+                }
+                else
+                {
+                    valid.add( latest );
+                }
+            }
+
+            int max = config.getMITMKeyStoreCacheMax();
+            if ( valid.size() > max )
+            {
+                // evict down to 90% so we don't sweep again on the next few issued hosts
+                valid.sort( Comparator.comparingLong( this::expiration ) );
+                int evict = valid.size() - ( max - max / 10 );
+                for ( File f : valid.subList( 0, evict ) )
+                {
+                    delete( f );
+                    delete( f.getParentFile() );
+                }
+                logger.info( "Evicted {} MITM keystores expiring first, max: {}", evict, max );
+                valid = valid.subList( evict, valid.size() );
+            }
+
+            cachedHosts.set( valid.size() );
+        }
+        finally
+        {
+            sweeping.set( false );
+        }
+    }
+
+    private HostKeyStore loadCached( final String host )
+    {
+        if ( cacheDir == null )
+        {
+            return null;
+        }
+
+        File hostDir = hostDir( host );
+        if ( hostDir == null )
+        {
+            return null;
+        }
+
+        File latest = null;
+        for ( File f : listKeyStores( hostDir ) )
+        {
+            if ( latest == null || expiration( f ) > expiration( latest ) )
+            {
+                latest = f;
+            }
+        }
+
+        if ( latest == null || needsRenewal( new Date( expiration( latest ) ) ) )
+        {
+            return null;
+        }
+
+        try
+        {
+            KeyStore ks = loadKeyStore( latest, KEYSTORE_PASSWORD );
+            X509Certificate cert = (X509Certificate) ks.getCertificate( host );
+            if ( cert == null )
+            {
+                return null;
+            }
+
+            cert.verify( getCA().certificate.getPublicKey() ); // the CA may have been replaced
+            return new HostKeyStore( ks, cert.getNotAfter() );
+        }
+        catch ( Exception e )
+        {
+            logger.debug( "Ignore cached keystore {}, {}", latest, e.toString() );
+            delete( latest );
+            return null;
+        }
+    }
+
+    private HostKeyStore issue( final String host )
+            throws Exception
+    {
+        CertificateAuthority ca = getCA();
+        String dn = config.getMITMDNTemplate().replace( "<host>", host ); // e.g., "CN=<host>, O=Test Org"
+
+        CertificateAndKeys certificateAndKeys =
+                createSignedCertificateAndKey( dn, takeKeyPair(), ca.certificate, ca.privateKey, false );
+        X509Certificate signedCertificate = (X509Certificate) certificateAndKeys.getCertificate();
+        logger.debug( "Create signed cert:\n" + signedCertificate.toString() );
+
+        KeyStore ks = createKeyStore();
+        ks.setKeyEntry( host, certificateAndKeys.getPrivateKey(), KEYSTORE_PASSWORD.toCharArray(),
+                        new Certificate[] { signedCertificate, ca.certificate } );
+        return new HostKeyStore( ks, signedCertificate.getNotAfter() );
+    }
+
+    private void store( final String host, final HostKeyStore hostKeyStore )
+    {
+        if ( cacheDir == null )
+        {
+            return;
+        }
+
+        File hostDir = hostDir( host );
+        if ( hostDir == null )
+        {
+            return;
+        }
+
+        boolean newHost = !hostDir.isDirectory();
+        File target = new File( hostDir, hostKeyStore.getNotAfter().getTime() + KEYSTORE_SUFFIX );
+        try
+        {
+            Files.createDirectories( hostDir.toPath(), ownerOnly( "rwx------" ) );
+            // the host private key is in there, never readable by others, not even before the move
+            Path tmp = Files.createTempFile( hostDir.toPath(), "keystore", ".tmp", ownerOnly( "rw-------" ) );
+            try (OutputStream out = Files.newOutputStream( tmp ))
+            {
+                hostKeyStore.getKeyStore().store( out, KEYSTORE_PASSWORD.toCharArray() );
+            }
+            Files.move( tmp, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch ( Exception e )
+        {
+            logger.warn( "Failed to store MITM keystore for {} in {}, {}", host, hostDir, e.toString() );
+            return;
+        }
+
+        // drop the ones this replaced
+        for ( File f : listKeyStores( hostDir ) )
+        {
+            if ( !f.equals( target ) )
+            {
+                delete( f );
+            }
+        }
+
+        if ( newHost && cachedHosts.incrementAndGet() > config.getMITMKeyStoreCacheMax() )
+        {
+            submit( this::sweep );
+        }
+    }
+
+    private KeyPair takeKeyPair()
+            throws Exception
+    {
+        KeyPair pair = keyPairs.poll();
+        fillKeyPairPool();
+        if ( pair == null )
+        {
+            logger.debug( "No pre-generated key pair available, generating one" );
+            pair = generateKeyPair();
+        }
+        return pair;
+    }
+
+    private void fillKeyPairPool()
+    {
+        if ( keyPairGenerators == null )
+        {
+            return;
+        }
+
+        int poolSize = config.getMITMKeyPairPoolSize();
+        while ( keyPairs.size() + pendingKeyPairs.get() < poolSize )
+        {
+            pendingKeyPairs.incrementAndGet();
+            if ( !submit( () -> {
+                try
+                {
+                    keyPairs.offer( generateKeyPair() );
+                }
+                catch ( Exception e )
+                {
+                    logger.warn( "Failed to generate key pair", e );
+                }
+                finally
+                {
+                    pendingKeyPairs.decrementAndGet();
+                }
+            } ) )
+            {
+                pendingKeyPairs.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private boolean submit( final Runnable task )
+    {
+        if ( keyPairGenerators == null )
+        {
+            task.run();
+            return true;
+        }
+
+        try
+        {
+            keyPairGenerators.execute( task );
+            return true;
+        }
+        catch ( RejectedExecutionException e )
+        {
+            logger.debug( "MITM key generation executor rejected task, {}", e.toString() );
+            return false;
+        }
+    }
+
+    private CertificateAuthority getCA()
+            throws Exception
+    {
+        CertificateAuthority result = ca;
+        if ( result == null )
+        {
+            synchronized ( this )
+            {
+                result = ca;
+                if ( result == null )
+                {
+                    PrivateKey caKey = getPrivateKey( config.getMITMCAKey() );
+                    X509Certificate caCert = loadX509Certificate( new File( config.getMITMCACert() ) );
+                    ca = result = new CertificateAuthority( caKey, caCert );
+                }
+            }
+        }
+        return result;
+    }
+
+    private List<File> listKeyStores( final File hostDir )
+    {
+        File[] files = hostDir.listFiles( ( dir, name ) -> name.endsWith( KEYSTORE_SUFFIX ) );
+        List<File> result = new ArrayList<>();
+        if ( files != null )
+        {
+            for ( File f : files )
+            {
+                if ( expiration( f ) > 0 )
+                {
+                    result.add( f );
+                }
+            }
+        }
+        return result;
+    }
+
+    private long expiration( final File keyStoreFile )
+    {
+        String name = keyStoreFile.getName();
+        try
+        {
+            return Long.parseLong( name.substring( 0, name.length() - KEYSTORE_SUFFIX.length() ) );
+        }
+        catch ( NumberFormatException e )
+        {
+            return -1;
+        }
+    }
+
+    private void delete( final File file )
+    {
+        try
+        {
+            Files.deleteIfExists( file.toPath() );
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Failed to delete {}, {}", file, e.toString() );
+        }
+    }
+
+    /**
+     * The keystore directory of a host, or null if the host can't be cached. The host comes from the client's CONNECT
+     * line, so it must not name anything but a direct child of the cache directory.
+     */
+    private File hostDir( final String host )
+    {
+        String name = toDirName( host );
+        if ( name == null )
+        {
+            logger.warn( "Not caching MITM keystore for invalid host: '{}'", host );
+            return null;
+        }
+
+        File hostDir = new File( cacheDir, name );
+        Path parent = hostDir.toPath().toAbsolutePath().normalize().getParent();
+        if ( parent == null || !parent.equals( cacheDir.toPath().toAbsolutePath().normalize() ) )
+        {
+            logger.warn( "Not caching MITM keystore for host: '{}', {} is outside of {}", host, hostDir, cacheDir );
+            return null;
+        }
+
+        return hostDir;
+    }
+
+    /**
+     * @return the host with anything but [a-z0-9.-] replaced, or null for an empty host, a host made only of dots or one
+     * containing "..", which would resolve to the cache directory or its parent
+     */
+    static String toDirName( final String host )
+    {
+        String name = host.toLowerCase().replaceAll( "[^a-z0-9.\\-]", "_" );
+        if ( name.isEmpty() || name.contains( ".." ) || name.replace( ".", "" ).isEmpty() )
+        {
+            return null;
+        }
+        return name;
+    }
+
+    /**
+     * Posix permissions for a new file or directory, or none where the file system has no such thing.
+     */
+    private static FileAttribute<?>[] ownerOnly( final String permissions )
+    {
+        if ( !FileSystems.getDefault().supportedFileAttributeViews().contains( "posix" ) )
+        {
+            return new FileAttribute<?>[0];
+        }
+        return new FileAttribute<?>[] {
+                PosixFilePermissions.asFileAttribute( PosixFilePermissions.fromString( permissions ) ) };
+    }
+
+    static Object[] newLocks( final int stripes )
+    {
+        Object[] locks = new Object[stripes];
+        for ( int i = 0; i < stripes; i++ )
+        {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+
+    /**
+     * A fixed set of locks shared by all the hosts, so there is nothing to keep per host.
+     */
+    static Object lockFor( final Object[] locks, final String host )
+    {
+        return locks[Math.floorMod( host.hashCode(), locks.length )];
+    }
+
+    public static final class HostKeyStore
+    {
+        private final KeyStore keyStore;
+
+        private final Date notAfter;
+
+        HostKeyStore( final KeyStore keyStore, final Date notAfter )
+        {
+            this.keyStore = keyStore;
+            this.notAfter = notAfter;
+        }
+
+        public KeyStore getKeyStore()
+        {
+            return keyStore;
+        }
+
+        public Date getNotAfter()
+        {
+            return notAfter;
+        }
+    }
+
+    private static final class CertificateAuthority
+    {
+        private final PrivateKey privateKey;
+
+        private final X509Certificate certificate;
+
+        CertificateAuthority( final PrivateKey privateKey, final X509Certificate certificate )
+        {
+            this.privateKey = privateKey;
+            this.certificate = certificate;
+        }
+    }
+}
@@ -0,0 +1,489 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.httprox.handler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static javax.net.ssl.SSLEngineResult.HandshakeStatus.NEED_TASK;
+import static javax.net.ssl.SSLEngineResult.HandshakeStatus.NEED_WRAP;
+
+/**
+ * Terminates the TLS connection of a MITM'ed CONNECT tunnel in-process, with a non-blocking {@link SSLEngine}. Raw
+ * bytes from the client are handed to {@link #receive(ByteBuffer)} (from the I/O thread); the handshake, decryption
+ * and request handling then run on the given executor, one task at a time per engine. Each complete plaintext request
+ * head is passed to the {@link RequestHandler}, which writes its response to a plaintext stream encrypted on the fly.
+ * Requests are served one after the other for as long as the handler keeps the connection alive.
+ * <p>
+ * Buffering is bounded: once more than {@link #MAX_RECEIVED_SIZE} encrypted bytes are waiting, reads from the client
+ * are suspended through the {@link Network}, and resumed when the processing thread has caught up.
+ */
+public class ProxyMITMEngine
+{
+    /**
+     * Serves one request of the tunnel.
+     */
+    public interface RequestHandler
+    {
+        /**
+         * @param head the request line and headers, including the terminating empty line
+         * @param out plaintext response stream
+         * @return true if the response was complete and framed so the connection can serve another request
+         */
+        boolean handle( byte[] head, OutputStream out )
+                throws IOException;
+    }
+
+    /**
+     * Where the encrypted bytes go (the client connection).
+     */
+    public interface Network
+    {
+        /**
+         * Write all of the buffer, blocking until the client takes it.
+         */
+        void write( ByteBuffer buffer )
+                throws IOException;
+
+        /**
+         * Stop reading from the client until {@link #resumeReads()}.
+         */
+        void suspendReads();
+
+        void resumeReads();
+
+        void close();
+    }
+
+    public static final int MAX_REQUEST_HEAD_SIZE = 64 * 1024;
+
+    public static final int MAX_RECEIVED_SIZE = 256 * 1024;
+
+    private static final byte[] HEAD_END = { '\r', '\n', '\r', '\n' };
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate( 0 );
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final SSLEngine engine;
+
+    private final Network network;
+
+    private final Executor executor;
+
+    private final RequestHandler handler;
+
+    private final Object receivedLock = new Object();
+
+    private ByteBuffer received;
+
+    private boolean readsSuspended;
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private ByteBuffer netIn;
+
+    private ByteBuffer appIn;
+
+    private ByteBuffer netOut;
+
+    private final OutputStream output = new EngineOutputStream();
+
+    private volatile boolean closed;
+
+    private volatile long lastActivity = System.currentTimeMillis();
+
+    public ProxyMITMEngine( final SSLEngine engine, final Network network, final Executor executor,
+                            final RequestHandler handler )
+    {
+        this.engine = engine;
+        this.network = network;
+        this.executor = executor;
+        this.handler = handler;
+
+        engine.setUseClientMode( false );
+        final int packetSize = engine.getSession().getPacketBufferSize();
+        this.received = ByteBuffer.allocate( packetSize );
+        this.netIn = ByteBuffer.allocate( packetSize );
+        this.netOut = ByteBuffer.allocate( packetSize );
+        this.appIn = ByteBuffer.allocate( engine.getSession().getApplicationBufferSize() );
+    }
+
+    /**
+     * Queue encrypted bytes read from the client and make sure they get processed. Does not block.
+     */
+    public void receive( final ByteBuffer bytes )
+    {
+        if ( closed )
+        {
+            return;
+        }
+
+        synchronized ( receivedLock )
+        {
+            received = ensureRemaining( received, bytes.remaining() );
+            received.put( bytes );
+            if ( !readsSuspended && received.position() >= MAX_RECEIVED_SIZE )
+            {
+                logger.debug( "MITM tunnel has {} bytes waiting, suspending client reads", received.position() );
+                readsSuspended = true;
+                network.suspendReads();
+            }
+        }
+
+        lastActivity = System.currentTimeMillis();
+        schedule();
+    }
+
+    /**
+     * @return true while requests are being processed or served
+     */
+    public boolean isBusy()
+    {
+        return scheduled.get();
+    }
+
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+    public long getLastActivity()
+    {
+        return lastActivity;
+    }
+
+    /**
+     * Abort the connection, e.g. when the client is gone or the tunnel idled out. No close_notify is sent, since a
+     * request may be in progress on another thread.
+     */
+    public void close()
+    {
+        if ( !closed )
+        {
+            closed = true;
+            network.close();
+        }
+    }
+
+    private void schedule()
+    {
+        if ( !closed && scheduled.compareAndSet( false, true ) )
+        {
+            try
+            {
+                executor.execute( this::drain );
+            }
+            catch ( RejectedExecutionException e )
+            {
+                logger.warn( "MITM workers rejected the tunnel, closing it. Reason: {}", e.getMessage() );
+                scheduled.set( false );
+                close();
+            }
+        }
+    }
+
+    private void drain()
+    {
+        try
+        {
+            while ( !closed && takeReceived() )
+            {
+                unwrap();
+                serve();
+            }
+        }
+        catch ( IOException | RuntimeException e )
+        {
+            logger.debug( "MITM tunnel failed, closing it. Reason: {}", e.toString() );
+            close();
+        }
+        finally
+        {
+            scheduled.set( false );
+        }
+
+        boolean pending;
+        synchronized ( receivedLock )
+        {
+            pending = received.position() > 0;
+        }
+
+        if ( pending )
+        {
+            // arrived after the last check of the loop above
+            schedule();
+        }
+    }
+
+    private boolean takeReceived()
+    {
+        synchronized ( receivedLock )
+        {
+            if ( received.position() == 0 )
+            {
+                return false;
+            }
+
+            // netIn only ever holds about one TLS record, the rest waits here
+            received.flip();
+            final int count = Math.min( received.remaining(), netIn.remaining() );
+            final ByteBuffer chunk = received.duplicate();
+            chunk.limit( chunk.position() + count );
+            netIn.put( chunk );
+            received.position( received.position() + count );
+            received.compact();
+
+            if ( readsSuspended && received.position() < MAX_RECEIVED_SIZE / 2 )
+            {
+                readsSuspended = false;
+                network.resumeReads();
+            }
+            return count > 0;
+        }
+    }
+
+    private void unwrap()
+            throws IOException
+    {
+        while ( !closed )
+        {
+            SSLEngineResult.HandshakeStatus hs = engine.getHandshakeStatus();
+            if ( hs == NEED_TASK )
+            {
+                Runnable task;
+                while ( ( task = engine.getDelegatedTask() ) != null )
+                {
+                    task.run();
+                }
+                continue;
+            }
+
+            if ( hs == NEED_WRAP )
+            {
+                wrap( EMPTY );
+                continue;
+            }
+
+            netIn.flip();
+            final SSLEngineResult result;
+            try
+            {
+                result = engine.unwrap( netIn, appIn );
+            }
+            finally
+            {
+                netIn.compact();
+            }
+
+            switch ( result.getStatus() )
+            {
+                case BUFFER_OVERFLOW:
+                {
+                    if ( appIn.position() >= MAX_REQUEST_HEAD_SIZE )
+                    {
+                        // make room by serving what is there, or give up on an oversized head
+                        serve();
+                    }
+                    appIn = ensureRemaining( appIn, engine.getSession().getApplicationBufferSize() );
+                    break;
+                }
+                case BUFFER_UNDERFLOW:
+                {
+                    // wait for the rest of the record
+                    netIn = ensureRemaining( netIn, engine.getSession().getPacketBufferSize() - netIn.position() );
+                    return;
+                }
+                case CLOSED:
+                {
+                    logger.debug( "Client closed the MITM tunnel" );
+                    shutdown();
+                    return;
+                }
+                default:
+                {
+                    if ( result.bytesConsumed() == 0 && result.bytesProduced() == 0
+                            && engine.getHandshakeStatus() != NEED_TASK && engine.getHandshakeStatus() != NEED_WRAP )
+                    {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private void serve()
+            throws IOException
+    {
+        while ( !closed )
+        {
+            final byte[] head = takeHead();
+            if ( head == null )
+            {
+                if ( appIn.position() > MAX_REQUEST_HEAD_SIZE )
+                {
+                    logger.warn( "MITM request head is larger than {} bytes, closing the tunnel",
+                                 MAX_REQUEST_HEAD_SIZE );
+                    shutdown();
+                }
+                return;
+            }
+
+            final boolean keepAlive = handler.handle( head, output );
+            lastActivity = System.currentTimeMillis();
+            if ( !keepAlive )
+            {
+                shutdown();
+                return;
+            }
+        }
+    }
+
+    private byte[] takeHead()
+    {
+        final int end = indexOf( appIn, HEAD_END );
+        if ( end < 0 )
+        {
+            return null;
+        }
+
+        appIn.flip();
+        final byte[] head = new byte[end + HEAD_END.length];
+        appIn.get( head );
+        appIn.compact();
+        return head;
+    }
+
+    private void wrap( final ByteBuffer src )
+            throws IOException
+    {
+        do
+        {
+            netOut.clear();
+            final SSLEngineResult result = engine.wrap( src, netOut );
+            if ( result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW )
+            {
+                netOut = ByteBuffer.allocate( netOut.capacity() + engine.getSession().getPacketBufferSize() );
+                continue;
+            }
+
+            netOut.flip();
+            if ( netOut.hasRemaining() )
+            {
+                network.write( netOut );
+            }
+
+            if ( result.getStatus() == SSLEngineResult.Status.CLOSED )
+            {
+                if ( src.hasRemaining() )
+                {
+                    throw new SSLException( "MITM tunnel closed while writing the response" );
+                }
+                return;
+            }
+        }
+        while ( src.hasRemaining() );
+    }
+
+    /**
+     * Orderly close from the processing thread: send close_notify, then close the connection.
+     */
+    private void shutdown()
+    {
+        if ( closed )
+        {
+            return;
+        }
+
+        try
+        {
+            engine.closeOutbound();
+            while ( !engine.isOutboundDone() )
+            {
+                wrap( EMPTY );
+            }
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Failed to send close_notify to MITM client: {}", e.toString() );
+        }
+        close();
+    }
+
+    private static int indexOf( final ByteBuffer buffer, final byte[] pattern )
+    {
+        final int limit = buffer.position() - pattern.length;
+        for ( int i = 0; i <= limit; i++ )
+        {
+            int j = 0;
+            while ( j < pattern.length && buffer.get( i + j ) == pattern[j] )
+            {
+                j++;
+            }
+            if ( j == pattern.length )
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static ByteBuffer ensureRemaining( final ByteBuffer buffer, final int needed )
+    {
+        if ( buffer.remaining() >= needed )
+        {
+            return buffer;
+        }
+
+        final ByteBuffer bigger = ByteBuffer.allocate( Math.max( buffer.capacity() * 2, buffer.position() + needed ) );
+        buffer.flip();
+        bigger.put( buffer );
+        return bigger;
+    }
+
+    private final class EngineOutputStream
+            extends OutputStream
+    {
+        @Override
+        public void write( final int b )
+                throws IOException
+        {
+            write( new byte[] { (byte) b }, 0, 1 );
+        }
+
+        @Override
+        public void write( final byte[] b, final int off, final int len )
+                throws IOException
+        {
+            if ( closed )
+            {
+                throw new IOException( "MITM tunnel is closed" );
+            }
+            wrap( ByteBuffer.wrap( b, off, len ) );
+            lastActivity = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.httprox.handler;
+
+import org.commonjava.indy.httprox.conf.HttproxConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.commonjava.indy.httprox.handler.ProxyMITMCertificateService.KEYSTORE_PASSWORD;
+import static org.commonjava.indy.httprox.handler.ProxyMITMCertificateService.lockFor;
+import static org.commonjava.indy.httprox.handler.ProxyMITMCertificateService.needsRenewal;
+import static org.commonjava.indy.httprox.handler.ProxyMITMCertificateService.newLocks;
+
+/**
+ * Server-side {@link SSLContext} per MITM'ed host. We create server crt based on the host name and use a CA crt to sign
+ * it (see {@link ProxyMITMCertificateService}). We send the CA crt to client and they use it when connecting through
+ * the proxy. The context (and its key managers) is built once per host, then shared by all the tunnels to that host
+ * until its certificate is about to expire. At most MITM.keystore.cache.max contexts are kept, the least recently used
+ * ones are dropped.
+ */
+@ApplicationScoped
+public class ProxyMITMSSLContextCache
+{
+    private static final int HOST_LOCK_STRIPES = 64;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private HttproxConfig config;
+
+    @Inject
+    private ProxyMITMCertificateService certificateService;
+
+    private final Object[] hostLocks = newLocks( HOST_LOCK_STRIPES );
+
+    private Map<String, HostContext> contexts; // key: hostname
+
+    protected ProxyMITMSSLContextCache()
+    {
+    }
+
+    public ProxyMITMSSLContextCache( final HttproxConfig config,
+                                     final ProxyMITMCertificateService certificateService )
+    {
+        this.config = config;
+        this.certificateService = certificateService;
+        init();
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        final int max = config.getMITMKeyStoreCacheMax();
+        contexts = Collections.synchronizedMap( new LinkedHashMap<String, HostContext>( 16, 0.75f, true )
+        {
+            @Override
+            protected boolean removeEldestEntry( final Map.Entry<String, HostContext> eldest )
+            {
+                return size() > max;
+            }
+        } );
+    }
+
+    public SSLContext getSSLContext( final String host )
+            throws Exception
+    {
+        HostContext current = contexts.get( host );
+        if ( current != null && !needsRenewal( current.notAfter ) )
+        {
+            return current.context;
+        }
+
+        synchronized ( lockFor( hostLocks, host ) )
+        {
+            current = contexts.get( host );
+            if ( current != null && !needsRenewal( current.notAfter ) )
+            {
+                return current.context; // renewed by another thread meanwhile
+            }
+
+            HostContext created = createSSLContext( host );
+            contexts.put( host, created );
+            return created.context;
+        }
+    }
+
+    private HostContext createSSLContext( final String host )
+            throws Exception
+    {
+        ProxyMITMCertificateService.HostKeyStore hostKeyStore = certificateService.getKeyStore( host );
+        logger.debug( "Create SSL context for {}, cert expires: {}", host, hostKeyStore.getNotAfter() );
+
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance( KeyManagerFactory.getDefaultAlgorithm() );
+        kmf.init( hostKeyStore.getKeyStore(), KEYSTORE_PASSWORD.toCharArray() );
+
+        SSLContext sc = SSLContext.getInstance( "TLS" );
+        sc.init( kmf.getKeyManagers(), null, null );
+        return new HostContext( sc, hostKeyStore.getNotAfter() );
+    }
+
+    private static final class HostContext
+    {
+        private final SSLContext context;
+
+        private final Date notAfter;
+
+        HostContext( final SSLContext context, final Date notAfter )
+        {
+            this.context = context;
+            this.notAfter = notAfter;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.httprox.handler;
+
+import org.apache.http.Header;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.config.MessageConstraints;
+import org.apache.http.impl.DefaultHttpRequestFactory;
+import org.apache.http.impl.io.DefaultHttpRequestParser;
+import org.apache.http.impl.io.HttpTransportMetricsImpl;
+import org.apache.http.impl.io.SessionInputBufferImpl;
+import org.apache.http.message.BasicLineParser;
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.core.ctl.ContentController;
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.httprox.conf.HttproxConfig;
+import org.commonjava.indy.httprox.util.HttpConduitWrapper;
+import org.commonjava.indy.httprox.util.OutputStreamSinkChannel;
+import org.commonjava.indy.httprox.util.ProxyResponseHelper;
+import org.commonjava.indy.httprox.util.ResponseFramingTracker;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.subsys.http.util.UserPass;
+import org.commonjava.indy.util.ApplicationStatus;
+import org.commonjava.maven.galley.spi.cache.CacheProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xnio.XnioExecutor;
+import org.xnio.conduits.ConduitStreamSinkChannel;
+import org.xnio.conduits.ConduitStreamSourceChannel;
+
+import javax.net.ssl.SSLContext;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.commonjava.indy.httprox.util.ChannelUtils.DEFAULT_READ_BUF_SIZE;
+import static org.commonjava.indy.httprox.util.HttpProxyConstants.GET_METHOD;
+import static org.commonjava.indy.httprox.util.HttpProxyConstants.HEAD_METHOD;
+
+/**
+ * MITM side of an HTTPS CONNECT: the TLS connection from the client is terminated on the accepted channel itself (see
+ * {@link ProxyMITMEngine}), and every GET / HEAD request sent through it is served like a plain proxy request, with
+ * the content of the CONNECT target host. The connection is kept open between requests as long as the responses are
+ * framed with a Content-Length and nobody asks for it to be closed.
+ */
+public class ProxyMITMSession
+        implements ProxyMITMEngine.RequestHandler
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final String host;
+
+    private final int port;
+
+    private final String trackingId;
+
+    private final UserPass proxyUserPass;
+
+    private final Function<HttpRequest, ProxyResponseHelper> responseHelpers;
+
+    private final ContentController contentController;
+
+    private final CacheProvider cacheProvider;
+
+    private final ConduitStreamSourceChannel sourceChannel;
+
+    private final ConduitStreamSinkChannel sinkChannel;
+
+    private final ProxyMITMEngine engine;
+
+    private final long idleTimeoutMillis;
+
+    private volatile XnioExecutor.Key idleCheck;
+
+    public ProxyMITMSession( String host, int port, String trackingId, UserPass proxyUserPass,
+                             Function<HttpRequest, ProxyResponseHelper> responseHelpers, ContentController contentController,
+                             CacheProvider cacheProvider, HttproxConfig config, SSLContext sslContext,
+                             ConduitStreamSourceChannel sourceChannel, ConduitStreamSinkChannel sinkChannel,
+                             Executor workers )
+    {
+        this.host = host;
+        this.port = port;
+        this.trackingId = trackingId;
+        this.proxyUserPass = proxyUserPass;
+        this.responseHelpers = responseHelpers;
+        this.contentController = contentController;
+        this.cacheProvider = cacheProvider;
+        this.sourceChannel = sourceChannel;
+        this.sinkChannel = sinkChannel;
+        this.idleTimeoutMillis = TimeUnit.MINUTES.toMillis( config.getMITMSoTimeoutMinutes() );
+        this.engine = new ProxyMITMEngine( sslContext.createSSLEngine( host, port ), new SinkNetwork(), workers,
+                                           this );
+
+        scheduleIdleCheck( idleTimeoutMillis );
+    }
+
+    /**
+     * Encrypted bytes read from the client.
+     */
+    public void receive( final byte[] bytes )
+    {
+        engine.receive( ByteBuffer.wrap( bytes ) );
+    }
+
+    public void close()
+    {
+        XnioExecutor.Key key = idleCheck;
+        if ( key != null )
+        {
+            key.remove();
+        }
+        engine.close();
+    }
+
+    @Override
+    public boolean handle( final byte[] head, final OutputStream out )
+            throws IOException
+    {
+        final HttpRequest request;
+        try
+        {
+            request = parse( head );
+        }
+        catch ( HttpException e )
+        {
+            logger.debug( "MITM server failed to parse request from client: {}", e.getMessage() );
+            writeStatusAndClose( out, ApplicationStatus.BAD_REQUEST );
+            return false;
+        }
+
+        logger.debug( "MITM request: {}", request.getRequestLine() );
+
+        final String method = request.getRequestLine().getMethod().toUpperCase();
+        if ( !GET_METHOD.equals( method ) && !HEAD_METHOD.equals( method ) ) // only care about GET/HEAD
+        {
+            writeStatusAndClose( out, ApplicationStatus.METHOD_NOT_ALLOWED );
+            return false;
+        }
+
+        final ResponseFramingTracker tracker = new ResponseFramingTracker( out );
+        final OutputStream response = new BufferedOutputStream( tracker, DEFAULT_READ_BUF_SIZE );
+        try
+        {
+            transferRemote( request, method, response );
+        }
+        catch ( IndyWorkflowException | IndyDataException | URISyntaxException e )
+        {
+            logger.error( "Transfer remote failed", e );
+            if ( !tracker.isCommitted() )
+            {
+                writeStatusAndClose( response, ApplicationStatus.SERVER_ERROR );
+            }
+            response.flush();
+            return false;
+        }
+
+        response.flush();
+        return tracker.isReusable() && !isConnectionClose( request );
+    }
+
+    private void transferRemote( final HttpRequest request, final String method, final OutputStream out )
+            throws URISyntaxException, IOException, IndyWorkflowException, IndyDataException
+    {
+        String protocol = "https";
+        String auth = null;
+        String query = null;
+        String fragment = null;
+        String path = request.getRequestLine().getUri();
+        URI uri = new URI( protocol, auth, host, port, path, query, fragment );
+        URL remoteUrl = uri.toURL();
+        logger.debug( "Requesting remote URL: {}", remoteUrl.toString() );
+
+        // a helper serves only one transfer
+        ProxyResponseHelper proxyResponseHelper = responseHelpers.apply( request );
+        ArtifactStore store = proxyResponseHelper.getArtifactStore( trackingId, remoteUrl );
+
+        HttpConduitWrapper http =
+                new HttpConduitWrapper( new OutputStreamSinkChannel( out ), request, contentController,
+                                        cacheProvider );
+        proxyResponseHelper.transfer( http, store, remoteUrl.getPath(), GET_METHOD.equals( method ), proxyUserPass );
+    }
+
+    private HttpRequest parse( final byte[] head )
+            throws IOException, HttpException
+    {
+        SessionInputBufferImpl inbuf = new SessionInputBufferImpl( new HttpTransportMetricsImpl(), 1024 );
+        inbuf.bind( new ByteArrayInputStream( head ) );
+        return new DefaultHttpRequestParser( inbuf, new BasicLineParser(), new DefaultHttpRequestFactory(),
+                                             MessageConstraints.DEFAULT ).parse();
+    }
+
+    private boolean isConnectionClose( final HttpRequest request )
+    {
+        Header connection = request.getFirstHeader( "Connection" );
+        return connection != null && connection.getValue().toLowerCase().contains( "close" );
+    }
+
+    private void writeStatusAndClose( final OutputStream out, final ApplicationStatus status )
+            throws IOException
+    {
+        out.write( String.format( "HTTP/1.1 %d %s\r\nContent-Length: 0\r\nConnection: close\r\n\r\n", status.code(),
+                                  status.message() ).getBytes() );
+        out.flush();
+    }
+
+    private void scheduleIdleCheck( final long delayMillis )
+    {
+        if ( sinkChannel.getIoThread() == null )
+        {
+            return;
+        }
+
+        idleCheck = sinkChannel.getIoThread().executeAfter( () -> {
+            if ( engine.isClosed() )
+            {
+                return;
+            }
+
+            long idle = System.currentTimeMillis() - engine.getLastActivity();
+            if ( !engine.isBusy() && idle >= idleTimeoutMillis )
+            {
+                logger.debug( "MITM tunnel to {}:{} idle for {}ms, closing it", host, port, idle );
+                close();
+            }
+            else
+            {
+                scheduleIdleCheck( engine.isBusy() ? idleTimeoutMillis : idleTimeoutMillis - idle );
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Runs on the MITM workers, so it may block while the client is slow to read; a client that takes nothing for the
+     * whole idle timeout fails the tunnel rather than losing part of a response.
+     */
+    private final class SinkNetwork
+            implements ProxyMITMEngine.Network
+    {
+        @Override
+        public void write( final ByteBuffer buffer )
+                throws IOException
+        {
+            while ( buffer.hasRemaining() )
+            {
+                if ( sinkChannel.write( buffer ) == 0 )
+                {
+                    awaitWritable();
+                }
+            }
+
+            while ( !sinkChannel.flush() )
+            {
+                awaitWritable();
+            }
+        }
+
+        @Override
+        public void suspendReads()
+        {
+            sourceChannel.suspendReads();
+        }
+
+        @Override
+        public void resumeReads()
+        {
+            sourceChannel.resumeReads();
+        }
+
+        @Override
+        public void close()
+        {
+            try
+            {
+                // not waiting for a client which may be gone already
+                sinkChannel.flush();
+                sinkChannel.shutdownWrites();
+                sinkChannel.close();
+            }
+            catch ( IOException e )
+            {
+                logger.debug( "Close MITM tunnel, {}", e.toString() );
+            }
+        }
+
+        private void awaitWritable()
+                throws IOException
+        {
+            final long start = System.currentTimeMillis();
+            sinkChannel.awaitWritable( idleTimeoutMillis, TimeUnit.MILLISECONDS );
+            if ( !sinkChannel.isOpen() )
+            {
+                throw new IOException( "MITM client connection is closed" );
+            }
+            if ( System.currentTimeMillis() - start >= idleTimeoutMillis )
+            {
+                throw new IOException( "MITM client did not read for " + idleTimeoutMillis + "ms" );
+            }
+        }
+    }
+}
@@ -15,7 +15,6 @@
  */
 package org.commonjava.indy.httprox.handler;
 
-import org.apache.commons.codec.binary.Hex;
 import org.apache.http.ConnectionClosedException;
 import org.apache.http.HttpException;
 import org.apache.http.HttpRequest;
@@ -67,7 +66,9 @@ public final class ProxyRequestReader
 
     private final ConduitStreamSinkChannel sinkChannel;
 
-    private ProxySSLTunnel sslTunnel;
+    private ProxyMITMSession mitmSession;
+
+    private ProxyTunnel tunnel;
 
     private List<Character> lastFour = new ArrayList<>();
 
@@ -82,6 +83,12 @@ public final class ProxyRequestReader
     @Override
     public void handleEvent( final ConduitStreamSourceChannel sourceChannel )
     {
+        if ( tunnel != null )
+        {
+            tunnel.clientReadable(); // passthrough, read straight into the tunnel buffers
+            return;
+        }
+
         boolean sendResponse = false;
         try
         {
@@ -90,18 +97,23 @@ public final class ProxyRequestReader
             if ( read <= 0 )
             {
                 logger.debug( "Reads: {} ", read );
+                if ( read < 0 && mitmSession != null )
+                {
+                    logger.debug( "Client closed MITM connection" );
+                    sourceChannel.suspendReads();
+                    mitmSession.close();
+                }
                 return;
             }
 
-            byte[] bytes = bReq.toByteArray();
-
-            if ( sslTunnel != null )
+            if ( mitmSession != null )
             {
-                logger.debug( "Send to ssl tunnel, {}, bytes:\n\n {}\n", new String( bytes ), Hex.encodeHexString( bytes ) );
-                directTo( sslTunnel );
+                directTo( mitmSession );
                 return;
             }
 
+            byte[] bytes = bReq.toByteArray();
+
             logger.debug( "Request in progress is:\n\n{}", new String( bytes ) );
 
             if ( headDone )
@@ -156,16 +168,21 @@ public final class ProxyRequestReader
         }
     }
 
-    public void setProxySSLTunnel( ProxySSLTunnel sslTunnel )
+    public void setMITMSession( ProxyMITMSession mitmSession )
+    {
+        this.mitmSession = mitmSession;
+    }
+
+    public void setTunnel( ProxyTunnel tunnel )
     {
-        this.sslTunnel = sslTunnel;
+        this.tunnel = tunnel;
     }
 
-    private void directTo( ProxySSLTunnel sslTunnel ) throws IOException
+    private void directTo( ProxyMITMSession mitmSession )
     {
         byte[] bytes = bReq.toByteArray();
-        logger.trace( "Write client data to ssl tunnel, size: {}", bytes.length );
-        sslTunnel.write( bytes );
+        logger.trace( "Direct client data to MITM session, size: {}", bytes.length );
+        mitmSession.receive( bytes );
     }
 
     private int doRead( final ConduitStreamSourceChannel channel )
@@ -43,17 +43,17 @@ import org.commonjava.maven.galley.spi.cache.CacheProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xnio.ChannelListener;
+import org.xnio.IoUtils;
 import org.xnio.StreamConnection;
 import org.xnio.conduits.ConduitStreamSinkChannel;
 import org.xnio.conduits.ConduitStreamSourceChannel;
 
+import javax.net.ssl.SSLContext;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.URL;
-import java.nio.channels.SocketChannel;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 import static com.codahale.metrics.MetricRegistry.name;
@@ -84,7 +84,9 @@ public final class ProxyResponseWriter
 
     private final SocketAddress peerAddress;
 
-    private ProxySSLTunnel sslTunnel;
+    private ProxyMITMSession mitmSession;
+
+    private ProxyTunnel tunnel;
 
     private boolean directed = false;
 
@@ -114,15 +116,20 @@ public final class ProxyResponseWriter
 
     private final String cls; // short class name for metrics
 
-    private final ThreadPoolExecutor tunnelAndMITMExecutor = (ThreadPoolExecutor) Executors.newCachedThreadPool();
-                    // run short-living tunnels and MITM servers
+    private final ProxyMITMSSLContextCache mitmSSLContexts;
+
+    private final Executor mitmWorkers; // run TLS and requests of MITM'ed connections
+
+    private final ProxyTunnelEngine tunnelEngine;
 
     public ProxyResponseWriter( final HttproxConfig config, final StoreDataManager storeManager,
                                 final ContentController contentController,
                                 final KeycloakProxyAuthenticator proxyAuthenticator, final CacheProvider cacheProvider,
                                 final MDCManager mdcManager, final ProxyRepositoryCreator repoCreator,
                                 final StreamConnection accepted, final IndyMetricsConfig metricsConfig,
-                                final MetricRegistry metricRegistry, final CacheProducer cacheProducer )
+                                final MetricRegistry metricRegistry, final CacheProducer cacheProducer,
+                                final ProxyMITMSSLContextCache mitmSSLContexts, final Executor mitmWorkers,
+                                final ProxyTunnelEngine tunnelEngine )
     {
         this.config = config;
         this.contentController = contentController;
@@ -137,6 +144,9 @@ public final class ProxyResponseWriter
         this.metricRegistry = metricRegistry;
         this.cls = ClassUtils.getAbbreviatedName( getClass().getName(), 1 ); // e.g., foo.bar.ClassA -> f.b.ClassA
         this.proxyAuthCache = cacheProducer.getCache( HTTP_PROXY_AUTH_CACHE );
+        this.mitmSSLContexts = mitmSSLContexts;
+        this.mitmWorkers = mitmWorkers;
+        this.tunnelEngine = tunnelEngine;
     }
 
     public void setProxyRequestReader( ProxyRequestReader proxyRequestReader )
@@ -206,10 +216,15 @@ public final class ProxyResponseWriter
             restLogger.info( "END {} (from: {})", httpRequest.getRequestLine(), peerAddress );
             logger.trace("Sink channel closing.");
             Thread.currentThread().setName( oldThreadName );
-            if ( sslTunnel != null )
+            if ( mitmSession != null )
             {
-                logger.trace("Close ssl tunnel");
-                sslTunnel.close();
+                logger.trace("Close MITM session");
+                mitmSession.close();
+            }
+            if ( tunnel != null )
+            {
+                logger.trace("Close tunnel");
+                tunnel.close();
             }
         } );
 
@@ -305,9 +320,10 @@ public final class ProxyResponseWriter
                             }
                             case CONNECT_METHOD:
                             {
-                                if ( !config.isMITMEnabled() )
+                                if ( !config.isMITMEnabled() && !config.isTunnelEnabled() )
                                 {
-                                    logger.debug( "CONNECT method not supported unless MITM-proxying is enabled." );
+                                    logger.debug( "CONNECT method not supported unless MITM-proxying or tunneling "
+                                                          + "is enabled." );
                                     http.writeStatus( ApplicationStatus.BAD_REQUEST );
                                     break;
                                 }
@@ -319,35 +335,58 @@ public final class ProxyResponseWriter
                                 String host = toks[0];
                                 int port = Integer.parseInt( toks[1] );
 
-                                directed = true;
-
-                                // After this, the proxy simply opens a plain socket to the target server and relays
-                                // everything between the initial client and the target server (including the TLS handshake).
-
-                                SocketChannel socketChannel;
-
-                                ProxyMITMSSLServer svr =
-                                                new ProxyMITMSSLServer( host, port, trackingId, proxyUserPass,
-                                                                        proxyResponseHelper, contentController,
-                                                                        cacheProvider, config );
-                                tunnelAndMITMExecutor.submit( svr );
-                                socketChannel = svr.getSocketChannel();
-
-                                if ( socketChannel == null )
+                                if ( !config.isMITMEnabled() )
                                 {
-                                    logger.debug( "Failed to get MITM socket channel" );
-                                    http.writeStatus( ApplicationStatus.SERVER_ERROR );
-                                    svr.stop();
+                                    if ( !tunnelEngine.isAllowed( host, port ) )
+                                    {
+                                        logger.info( "Refuse to open tunnel to {}, not in tunnel.allowed.ports / "
+                                                             + "tunnel.allowed.hosts", uri );
+                                        http.writeStatus( 403, "Forbidden" );
+                                        break;
+                                    }
+
+                                    // passthrough, relay the bytes as they are (including the TLS handshake)
+                                    try
+                                    {
+                                        tunnelEngine.open( host, port, sourceChannel, sinkChannel,
+                                                           new TunnelConnectListener( sinkChannel, http, uri ) );
+                                    }
+                                    catch ( IOException e )
+                                    {
+                                        logger.debug( "Failed to open tunnel to {}, {}", uri, e.toString() );
+                                        http.writeStatus( 502, "Bad Gateway" );
+                                        break;
+                                    }
+
+                                    // the response is written once the target is connected, see the listener
+                                    directed = true;
                                     break;
                                 }
 
-                                sslTunnel = new ProxySSLTunnel( sinkChannel, socketChannel, config );
-                                tunnelAndMITMExecutor.submit( sslTunnel );
-                                proxyRequestReader.setProxySSLTunnel( sslTunnel ); // client input will be directed to target socket
+                                SSLContext sslContext = mitmSSLContexts.getSSLContext( host );
+
+                                directed = true;
 
-                                // When all is ready, send the 200 to client. Client send the SSL handshake to reader,
-                                // reader direct it to tunnel to MITM. MITM finish the handshake and read the request data,
-                                // retrieve remote content and send back to tunnel to client. 
+                                // After this, the TLS connection from client is terminated on this channel. Reader
+                                // directs the encrypted bytes to the session, which decrypts them, serves each request
+                                // on the MITM workers and writes the encrypted responses back to the sink channel.
+                                mitmSession = new ProxyMITMSession( host, port, trackingId, proxyUserPass,
+                                                                    ( request ) -> new ProxyResponseHelper( request,
+                                                                                                            config,
+                                                                                                            contentController,
+                                                                                                            repoCreator,
+                                                                                                            storeManager,
+                                                                                                            metricsConfig,
+                                                                                                            metricRegistry,
+                                                                                                            cls ),
+                                                                    contentController, cacheProvider, config,
+                                                                    sslContext, sourceChannel, sinkChannel,
+                                                                    mitmWorkers );
+                                proxyRequestReader.setMITMSession( mitmSession );
+
+                                // When all is ready, send the 200 to client. Client sends the SSL handshake to reader,
+                                // reader directs it to the MITM session, which finishes the handshake, reads the
+                                // requests, retrieves remote content and sends it back to client.
                                 http.writeStatus( ApplicationStatus.OK );
                                 http.writeHeader( "Status", "200 OK\n" );
 
@@ -395,6 +434,73 @@ public final class ProxyResponseWriter
         }
     }
 
+    /**
+     * Answers a passthrough CONNECT once the tunnel engine is done connecting to the target, back on the I/O thread of
+     * the client connection.
+     */
+    private final class TunnelConnectListener
+            implements ProxyTunnelEngine.ConnectListener
+    {
+        private final ConduitStreamSinkChannel sinkChannel;
+
+        private final HttpConduitWrapper http;
+
+        private final String uri;
+
+        TunnelConnectListener( final ConduitStreamSinkChannel sinkChannel, final HttpConduitWrapper http,
+                               final String uri )
+        {
+            this.sinkChannel = sinkChannel;
+            this.http = http;
+            this.uri = uri;
+        }
+
+        @Override
+        public void connected( final ProxyTunnel connected )
+        {
+            sinkChannel.getIoThread().execute( () -> {
+                if ( !sinkChannel.isOpen() )
+                {
+                    logger.debug( "Client is gone before tunnel to {} was connected", uri );
+                    connected.close();
+                    return;
+                }
+
+                tunnel = connected;
+                proxyRequestReader.setTunnel( connected );
+                try
+                {
+                    http.writeStatus( ApplicationStatus.OK );
+                    http.writeHeader( "Status", "200 OK\n" );
+                    connected.start();
+                }
+                catch ( IOException e )
+                {
+                    logger.debug( "Failed to answer CONNECT to {}, {}", uri, e.toString() );
+                    connected.close();
+                }
+            } );
+        }
+
+        @Override
+        public void failed( final IOException error )
+        {
+            sinkChannel.getIoThread().execute( () -> {
+                logger.debug( "Failed to open tunnel to {}, {}", uri, error.toString() );
+                try
+                {
+                    http.writeStatus( 502, "Bad Gateway" );
+                    http.close();
+                }
+                catch ( IOException e )
+                {
+                    logger.debug( "Failed to answer CONNECT to {}, {}", uri, e.toString() );
+                    IoUtils.safeClose( sinkChannel );
+                }
+            } );
+        }
+    }
+
     private String generateAuthCacheKey( UserPass proxyUserPass )
     {
         return sha256Hex( proxyUserPass.getUser() + ":" + proxyUserPass.getPassword() );
@@ -0,0 +1,359 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.httprox.handler;
+
+import org.commonjava.indy.httprox.util.DirectBufferPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xnio.IoUtils;
+import org.xnio.conduits.ConduitStreamSinkChannel;
+import org.xnio.conduits.ConduitStreamSourceChannel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Passthrough tunnel of a CONNECT request, relaying bytes as they are between the client connection (XNIO) and the
+ * target socket (owned by one of the {@link ProxyTunnelEngine} selector threads).
+ * <p>
+ * Each direction holds at most one pending buffer. While a buffer is not fully written, reading from the other side
+ * stops (client reads suspended, or target OP_READ cleared) until the slow side catches up.
+ */
+public final class ProxyTunnel
+{
+    private static final int MAX_READS_PER_EVENT = 16; // so one busy tunnel does not starve the others on its selector
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final String target;
+
+    private final SocketChannel targetChannel;
+
+    private final ConduitStreamSourceChannel clientSource;
+
+    private final ConduitStreamSinkChannel clientSink;
+
+    private final ProxyTunnelEngine.Loop loop;
+
+    private final DirectBufferPool buffers;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private volatile long lastActivity = System.currentTimeMillis();
+
+    private SelectionKey key;
+
+    private ByteBuffer toTarget;
+
+    private ByteBuffer toClient;
+
+    private boolean clientEof;
+
+    private boolean targetEof;
+
+    ProxyTunnel( final String target, final SocketChannel targetChannel, final ConduitStreamSourceChannel clientSource,
+                 final ConduitStreamSinkChannel clientSink, final ProxyTunnelEngine.Loop loop,
+                 final DirectBufferPool buffers )
+    {
+        this.target = target;
+        this.targetChannel = targetChannel;
+        this.clientSource = clientSource;
+        this.clientSink = clientSink;
+        this.loop = loop;
+        this.buffers = buffers;
+    }
+
+    /**
+     * Start relaying, once the response to CONNECT is sent to the client.
+     */
+    public void start()
+    {
+        clientSink.getWriteSetter().set( ( c ) -> clientWritable() );
+        loop.register( this );
+        clientSource.resumeReads();
+    }
+
+    /**
+     * Client sent bytes (called on the XNIO thread of the client connection).
+     */
+    public synchronized void clientReadable()
+    {
+        if ( closed.get() || toTarget != null )
+        {
+            clientSource.suspendReads();
+            return;
+        }
+
+        ByteBuffer buffer = buffers.acquire();
+        try
+        {
+            int read = 0;
+            for ( int i = 0; i < MAX_READS_PER_EVENT && ( read = clientSource.read( buffer ) ) > 0; i++ )
+            {
+                touch();
+                buffer.flip();
+                targetChannel.write( buffer );
+                if ( buffer.hasRemaining() )
+                {
+                    // target is slow, stop reading from client until it drains
+                    toTarget = buffer;
+                    buffer = null;
+                    clientSource.suspendReads();
+                    loop.execute( () -> setInterest( SelectionKey.OP_WRITE, true ) );
+                    return;
+                }
+                buffer.clear();
+            }
+
+            if ( read < 0 )
+            {
+                clientEof();
+            }
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Tunnel to {} failed reading from client, {}", target, e.toString() );
+            close();
+        }
+        finally
+        {
+            buffers.release( buffer );
+        }
+    }
+
+    /**
+     * Client connection can take more bytes (called on the XNIO thread of the client connection).
+     */
+    synchronized void clientWritable()
+    {
+        if ( toClient == null )
+        {
+            clientSink.suspendWrites();
+            return;
+        }
+
+        try
+        {
+            clientSink.write( toClient );
+            clientSink.flush();
+            touch();
+            if ( toClient.hasRemaining() )
+            {
+                return;
+            }
+
+            buffers.release( toClient );
+            toClient = null;
+            clientSink.suspendWrites();
+            if ( targetEof )
+            {
+                close();
+            }
+            else
+            {
+                loop.execute( () -> setInterest( SelectionKey.OP_READ, true ) );
+            }
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Tunnel to {} failed writing to client, {}", target, e.toString() );
+            close();
+        }
+    }
+
+    /**
+     * Target sent bytes (called on the selector thread).
+     */
+    synchronized void targetReadable()
+    {
+        if ( toClient != null )
+        {
+            setInterest( SelectionKey.OP_READ, false );
+            return;
+        }
+
+        ByteBuffer buffer = buffers.acquire();
+        try
+        {
+            int read = 0;
+            for ( int i = 0; i < MAX_READS_PER_EVENT && ( read = targetChannel.read( buffer ) ) > 0; i++ )
+            {
+                touch();
+                buffer.flip();
+                clientSink.write( buffer );
+                clientSink.flush();
+                if ( buffer.hasRemaining() )
+                {
+                    // client is slow, stop reading from target until it drains
+                    toClient = buffer;
+                    buffer = null;
+                    setInterest( SelectionKey.OP_READ, false );
+                    clientSink.resumeWrites();
+                    return;
+                }
+                buffer.clear();
+            }
+
+            if ( read < 0 )
+            {
+                targetEof();
+            }
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Tunnel to {} failed reading from target, {}", target, e.toString() );
+            close();
+        }
+        finally
+        {
+            buffers.release( buffer );
+        }
+    }
+
+    /**
+     * Target socket can take more bytes (called on the selector thread).
+     */
+    synchronized void targetWritable()
+    {
+        if ( toTarget == null )
+        {
+            setInterest( SelectionKey.OP_WRITE, false );
+            return;
+        }
+
+        try
+        {
+            targetChannel.write( toTarget );
+            touch();
+            if ( toTarget.hasRemaining() )
+            {
+                return;
+            }
+
+            buffers.release( toTarget );
+            toTarget = null;
+            setInterest( SelectionKey.OP_WRITE, false );
+            if ( clientEof )
+            {
+                targetChannel.shutdownOutput();
+            }
+            else
+            {
+                clientSource.resumeReads();
+            }
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Tunnel to {} failed writing to target, {}", target, e.toString() );
+            close();
+        }
+    }
+
+    public void close()
+    {
+        if ( !closed.compareAndSet( false, true ) )
+        {
+            return;
+        }
+
+        logger.debug( "Close tunnel to {}", target );
+        loop.unregister( this );
+        if ( key != null )
+        {
+            key.cancel();
+        }
+        IoUtils.safeClose( targetChannel, clientSource, clientSink );
+
+        synchronized ( this )
+        {
+            buffers.release( toTarget );
+            buffers.release( toClient );
+            toTarget = toClient = null;
+        }
+    }
+
+    boolean isClosed()
+    {
+        return closed.get();
+    }
+
+    long getLastActivity()
+    {
+        return lastActivity;
+    }
+
+    SocketChannel getTargetChannel()
+    {
+        return targetChannel;
+    }
+
+    void setKey( final SelectionKey key )
+    {
+        this.key = key;
+    }
+
+    String getTarget()
+    {
+        return target;
+    }
+
+    private void clientEof()
+            throws IOException
+    {
+        logger.debug( "Client closed tunnel to {}", target );
+        clientEof = true;
+        clientSource.suspendReads();
+        if ( targetEof )
+        {
+            close();
+        }
+        else if ( toTarget == null )
+        {
+            targetChannel.shutdownOutput();
+        }
+    }
+
+    private void targetEof()
+    {
+        logger.debug( "Target {} closed tunnel", target );
+        targetEof = true;
+        setInterest( SelectionKey.OP_READ, false );
+        if ( toClient == null )
+        {
+            close();
+        }
+    }
+
+    /**
+     * Only called on the selector thread.
+     */
+    private void setInterest( final int op, final boolean on )
+    {
+        if ( key == null || !key.isValid() )
+        {
+            return;
+        }
+        key.interestOps( on ? key.interestOps() | op : key.interestOps() & ~op );
+    }
+
+    private void touch()
+    {
+        lastActivity = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,536 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.httprox.handler;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.commonjava.indy.httprox.conf.HttproxConfig;
+import org.commonjava.indy.httprox.util.DirectBufferPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xnio.IoUtils;
+import org.xnio.conduits.ConduitStreamSinkChannel;
+import org.xnio.conduits.ConduitStreamSourceChannel;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.commonjava.indy.httprox.util.ChannelUtils.DEFAULT_READ_BUF_SIZE;
+
+/**
+ * Relays passthrough CONNECT tunnels. All target sockets are multiplexed on a small fixed set of selector threads, and
+ * the bytes go through pooled direct buffers (see {@link ProxyTunnel}). Tunnels with no traffic for
+ * tunnel.idle.timeout.minutes are closed.
+ * <p>
+ * Nothing blocks the caller's (XNIO) thread: the target host is resolved on a small pool of resolver threads, and the
+ * connection is then established non-blocking on the selector thread the tunnel will belong to.
+ */
+@ApplicationScoped
+public class ProxyTunnelEngine
+{
+    private static final long CONNECT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis( 30 );
+
+    private static final long SELECT_TIMEOUT_MILLIS = 1000;
+
+    private static final int RESOLVER_THREADS = 8;
+
+    /**
+     * Told the outcome of {@link #open} on one of the engine threads, so implementations must not block.
+     */
+    public interface ConnectListener
+    {
+        /**
+         * The target is connected. The tunnel relays nothing until it is {@link ProxyTunnel#start() started}, so the
+         * response to CONNECT can be written first.
+         */
+        void connected( ProxyTunnel tunnel );
+
+        void failed( IOException error );
+    }
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private HttproxConfig config;
+
+    @Inject
+    private Instance<MetricRegistry> metricRegistry;
+
+    private volatile Loop[] loops;
+
+    private DirectBufferPool buffers;
+
+    private ThreadPoolExecutor resolvers;
+
+    private long idleTimeoutMillis;
+
+    private final AtomicInteger nextLoop = new AtomicInteger();
+
+    private final AtomicInteger activeTunnels = new AtomicInteger();
+
+    private final AtomicLong openedTunnels = new AtomicLong();
+
+    private final AtomicLong idleTimeouts = new AtomicLong();
+
+    protected ProxyTunnelEngine()
+    {
+    }
+
+    public ProxyTunnelEngine( final HttproxConfig config )
+    {
+        this.config = config;
+    }
+
+    ProxyTunnelEngine( final HttproxConfig config, final long idleTimeoutMillis )
+    {
+        this.config = config;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    @PostConstruct
+    public void registerMetrics()
+    {
+        if ( metricRegistry != null && !metricRegistry.isUnsatisfied() )
+        {
+            MetricRegistry registry = metricRegistry.get();
+            registry.register( name( getClass(), "tunnels", "active" ), (Gauge<Integer>) activeTunnels::get );
+            registry.register( name( getClass(), "tunnels", "opened" ), (Gauge<Long>) openedTunnels::get );
+            registry.register( name( getClass(), "tunnels", "idle-timeouts" ), (Gauge<Long>) idleTimeouts::get );
+            registry.register( name( getClass(), "buffers", "pooled" ),
+                               (Gauge<Integer>) () -> buffers == null ? 0 : buffers.getPooled() );
+            registry.register( name( getClass(), "buffers", "in-use" ),
+                               (Gauge<Integer>) () -> buffers == null ? 0 : buffers.getInUse() );
+        }
+    }
+
+    /**
+     * Whether a passthrough tunnel may be opened to the target, i.e. its port is one of tunnel.allowed.ports and, when
+     * tunnel.allowed.hosts is set, its host is one of those. Without this, the proxy relays to any host and port.
+     */
+    public boolean isAllowed( final String host, final int port )
+    {
+        boolean portAllowed = false;
+        for ( String allowed : config.getTunnelAllowedPorts().split( "," ) )
+        {
+            String trimmed = allowed.trim();
+            if ( !trimmed.isEmpty() && trimmed.equals( String.valueOf( port ) ) )
+            {
+                portAllowed = true;
+                break;
+            }
+        }
+
+        if ( !portAllowed )
+        {
+            return false;
+        }
+
+        String hosts = config.getTunnelAllowedHosts();
+        if ( hosts == null || hosts.trim().isEmpty() )
+        {
+            return true;
+        }
+
+        String target = host.trim().toLowerCase();
+        for ( String allowed : hosts.split( "," ) )
+        {
+            if ( hostMatches( target, allowed.trim().toLowerCase() ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param allowed a host name, or "*.domain" for any subdomain of the domain (not the domain itself)
+     */
+    private static boolean hostMatches( final String host, final String allowed )
+    {
+        if ( allowed.startsWith( "*." ) )
+        {
+            String suffix = allowed.substring( 1 ); // keep the dot
+            return host.length() > suffix.length() && host.endsWith( suffix );
+        }
+        return !allowed.isEmpty() && allowed.equals( host );
+    }
+
+    /**
+     * Start connecting to the target of a CONNECT request, and return right away. The listener gets the tunnel once
+     * the target is connected, or the error if it could not be within 30 seconds.
+     */
+    public void open( final String host, final int port, final ConduitStreamSourceChannel clientSource,
+                      final ConduitStreamSinkChannel clientSink, final ConnectListener listener )
+            throws IOException
+    {
+        Loop[] current = start();
+        Loop loop = current[Math.floorMod( nextLoop.getAndIncrement(), current.length )];
+
+        try
+        {
+            resolvers.execute( () -> {
+                InetSocketAddress address = new InetSocketAddress( host, port );
+                if ( address.isUnresolved() )
+                {
+                    listener.failed( new UnknownHostException( host ) );
+                    return;
+                }
+                loop.connect( new Connecting( host + ":" + port, address, clientSource, clientSink, listener ) );
+            } );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            throw new IOException( "Tunnel engine is shut down", e );
+        }
+    }
+
+    public int getActiveTunnels()
+    {
+        return activeTunnels.get();
+    }
+
+    public long getIdleTimeouts()
+    {
+        return idleTimeouts.get();
+    }
+
+    @PreDestroy
+    public synchronized void shutdown()
+    {
+        if ( loops != null )
+        {
+            for ( Loop loop : loops )
+            {
+                loop.stop();
+            }
+            resolvers.shutdownNow();
+            loops = null;
+        }
+    }
+
+    private Loop[] start()
+            throws IOException
+    {
+        Loop[] current = loops;
+        if ( current != null )
+        {
+            return current;
+        }
+
+        synchronized ( this )
+        {
+            if ( loops == null )
+            {
+                buffers = new DirectBufferPool( DEFAULT_READ_BUF_SIZE, config.getTunnelBufferPoolSize() );
+                if ( idleTimeoutMillis <= 0 )
+                {
+                    idleTimeoutMillis = TimeUnit.MINUTES.toMillis( config.getTunnelIdleTimeoutMinutes() );
+                }
+
+                AtomicInteger resolverCount = new AtomicInteger();
+                resolvers = new ThreadPoolExecutor( RESOLVER_THREADS, RESOLVER_THREADS, 60, TimeUnit.SECONDS,
+                                                    new LinkedBlockingQueue<>(), ( r ) -> {
+                    Thread t = new Thread( r, "httprox-tunnel-resolver-" + resolverCount.getAndIncrement() );
+                    t.setDaemon( true );
+                    return t;
+                } );
+                resolvers.allowCoreThreadTimeOut( true );
+
+                int threads = config.getTunnelSelectorThreads();
+                Loop[] started = new Loop[threads];
+                for ( int i = 0; i < threads; i++ )
+                {
+                    started[i] = new Loop( Selector.open() );
+                    Thread t = new Thread( started[i], "httprox-tunnel-" + i );
+                    t.setDaemon( true );
+                    t.start();
+                }
+                logger.info( "Started {} httprox tunnel selector threads", threads );
+                loops = started;
+            }
+            return loops;
+        }
+    }
+
+    /**
+     * One selector thread and the tunnels whose target socket is registered with it.
+     */
+    final class Loop
+            implements Runnable
+    {
+        private final Selector selector;
+
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        private final Set<ProxyTunnel> tunnels = ConcurrentHashMap.newKeySet();
+
+        private final Set<Connecting> connecting = ConcurrentHashMap.newKeySet();
+
+        private volatile boolean running = true;
+
+        private long lastIdleCheck = System.currentTimeMillis();
+
+        Loop( final Selector selector )
+        {
+            this.selector = selector;
+        }
+
+        /**
+         * Run the task on the selector thread.
+         */
+        void execute( final Runnable task )
+        {
+            tasks.add( task );
+            selector.wakeup();
+        }
+
+        void register( final ProxyTunnel tunnel )
+        {
+            tunnels.add( tunnel );
+            activeTunnels.incrementAndGet();
+            openedTunnels.incrementAndGet();
+            execute( () -> {
+                try
+                {
+                    tunnel.setKey( tunnel.getTargetChannel().register( selector, SelectionKey.OP_READ, tunnel ) );
+                }
+                catch ( ClosedChannelException e )
+                {
+                    tunnel.close();
+                }
+            } );
+        }
+
+        void connect( final Connecting target )
+        {
+            execute( () -> {
+                try
+                {
+                    target.channel = SocketChannel.open();
+                    target.channel.configureBlocking( false );
+                    target.channel.socket().setTcpNoDelay( true );
+                    if ( target.channel.connect( target.address ) )
+                    {
+                        connected( target, target.channel.register( selector, 0 ) );
+                    }
+                    else
+                    {
+                        connecting.add( target );
+                        target.channel.register( selector, SelectionKey.OP_CONNECT, target );
+                    }
+                }
+                catch ( IOException e )
+                {
+                    failed( target, e );
+                }
+            } );
+        }
+
+        void unregister( final ProxyTunnel tunnel )
+        {
+            if ( tunnels.remove( tunnel ) )
+            {
+                activeTunnels.decrementAndGet();
+            }
+        }
+
+        void stop()
+        {
+            running = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run()
+        {
+            while ( running )
+            {
+                try
+                {
+                    selector.select( SELECT_TIMEOUT_MILLIS );
+
+                    Runnable task;
+                    while ( ( task = tasks.poll() ) != null )
+                    {
+                        task.run();
+                    }
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while ( it.hasNext() )
+                    {
+                        SelectionKey key = it.next();
+                        it.remove();
+
+                        if ( key.attachment() instanceof Connecting )
+                        {
+                            finishConnect( (Connecting) key.attachment(), key );
+                            continue;
+                        }
+
+                        ProxyTunnel tunnel = (ProxyTunnel) key.attachment();
+                        if ( key.isValid() && key.isReadable() )
+                        {
+                            tunnel.targetReadable();
+                        }
+                        if ( key.isValid() && key.isWritable() )
+                        {
+                            tunnel.targetWritable();
+                        }
+                    }
+
+                    closeIdle();
+                }
+                catch ( Throwable e )
+                {
+                    logger.error( "Tunnel selector loop error", e );
+                }
+            }
+
+            for ( ProxyTunnel tunnel : tunnels )
+            {
+                tunnel.close();
+            }
+            for ( Connecting target : connecting )
+            {
+                failed( target, new IOException( "Tunnel engine is shut down" ) );
+            }
+            try
+            {
+                selector.close();
+            }
+            catch ( IOException e )
+            {
+                logger.debug( "Failed to close tunnel selector, {}", e.toString() );
+            }
+        }
+
+        private void closeIdle()
+        {
+            long now = System.currentTimeMillis();
+            if ( now - lastIdleCheck < SELECT_TIMEOUT_MILLIS )
+            {
+                return;
+            }
+            lastIdleCheck = now;
+
+            for ( ProxyTunnel tunnel : tunnels )
+            {
+                if ( now - tunnel.getLastActivity() > idleTimeoutMillis )
+                {
+                    logger.debug( "Tunnel to {} idle for more than {}ms, closing it", tunnel.getTarget(),
+                                  idleTimeoutMillis );
+                    idleTimeouts.incrementAndGet();
+                    tunnel.close();
+                }
+            }
+
+            for ( Connecting target : connecting )
+            {
+                if ( now - target.started > CONNECT_TIMEOUT_MILLIS )
+                {
+                    failed( target, new SocketTimeoutException( "Connect to " + target.target + " timed out" ) );
+                }
+            }
+        }
+
+        private void finishConnect( final Connecting target, final SelectionKey key )
+        {
+            try
+            {
+                if ( key.isValid() && key.isConnectable() && target.channel.finishConnect() )
+                {
+                    connecting.remove( target );
+                    connected( target, key );
+                }
+            }
+            catch ( IOException e )
+            {
+                failed( target, e );
+            }
+        }
+
+        private void connected( final Connecting target, final SelectionKey key )
+        {
+            // same key for the tunnel, registered for OP_READ once it is started
+            key.interestOps( 0 );
+            ProxyTunnel tunnel = new ProxyTunnel( target.target, target.channel, target.clientSource,
+                                                  target.clientSink, this, buffers );
+            key.attach( tunnel );
+            target.listener.connected( tunnel );
+        }
+
+        private void failed( final Connecting target, final IOException error )
+        {
+            connecting.remove( target );
+            IoUtils.safeClose( target.channel );
+            logger.debug( "Failed to connect tunnel to {}, {}", target.target, error.toString() );
+            target.listener.failed( error );
+        }
+    }
+
+    /**
+     * A target being connected, owned by the selector thread.
+     */
+    private static final class Connecting
+    {
+        private final String target;
+
+        private final InetSocketAddress address;
+
+        private final ConduitStreamSourceChannel clientSource;
+
+        private final ConduitStreamSinkChannel clientSink;
+
+        private final ConnectListener listener;
+
+        private final long started = System.currentTimeMillis();
+
+        private SocketChannel channel;
+
+        Connecting( final String target, final InetSocketAddress address, final ConduitStreamSourceChannel clientSource,
+                    final ConduitStreamSinkChannel clientSink, final ConnectListener listener )
+        {
+            this.target = target;
+            this.address = address;
+            this.clientSource = clientSource;
+            this.clientSink = clientSink;
+            this.listener = listener;
+        }
+    }
+}
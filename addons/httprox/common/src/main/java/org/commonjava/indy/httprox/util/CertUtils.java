@@ -135,7 +135,10 @@ public class CertUtils
     {
         String keyStoreType = KeyStore.getDefaultType(); // jks
         KeyStore keyStore = KeyStore.getInstance( keyStoreType );
-        keyStore.load( new FileInputStream( file ), passwd.toCharArray() );
+        try (InputStream in = new FileInputStream( file ))
+        {
+            keyStore.load( in, passwd.toCharArray() );
+        }
         return keyStore;
     }
 
@@ -196,9 +199,19 @@ public class CertUtils
         X509Certificate cert = gen.getSelfCertificate(new X500Name(dn), TimeUnit.DAYS.toMillis( DEFAULT_CERT_EXPIRATION_DAYS ));
         */
 
-        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance( KEY_TYPE_RSA );
-        KeyPair pair = keyPairGenerator.generateKeyPair();
+        return createSignedCertificateAndKey( dn, generateKeyPair(), issuerCertificate, issuerPrivateKey,
+                                              isIntermediate );
+    }
 
+    /**
+     * Same as {@link #createSignedCertificateAndKey(String, X509Certificate, PrivateKey, boolean)}, but with a key
+     * pair generated beforehand. Generating the RSA key pair is by far the most expensive part.
+     */
+    public static CertificateAndKeys createSignedCertificateAndKey( String dn, KeyPair pair,
+                                                                    X509Certificate issuerCertificate,
+                                                                    PrivateKey issuerPrivateKey,
+                                                                    boolean isIntermediate ) throws Exception
+    {
         X509Certificate cert = generateX509Certificate( pair, dn, DEFAULT_CERT_EXPIRATION_DAYS, DEFAULT_SIGN_ALGORITHM );
 
         X509Certificate signedCertificate =
@@ -208,4 +221,10 @@ public class CertUtils
         return new CertificateAndKeys( signedCertificate, privateKey, publicKey );
     }
 
+    public static KeyPair generateKeyPair() throws NoSuchAlgorithmException
+    {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance( KEY_TYPE_RSA );
+        return keyPairGenerator.generateKeyPair();
+    }
+
 }
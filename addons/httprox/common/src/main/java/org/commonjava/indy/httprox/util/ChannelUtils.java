@@ -20,8 +20,11 @@ import org.slf4j.LoggerFactory;
 import org.xnio.channels.StreamSinkChannel;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by ruhan on 11/5/18.
@@ -69,6 +72,53 @@ public class ChannelUtils
         while ( written < size );
     }
 
+    /**
+     * Copy the stream to the channel through one reusable heap buffer.
+     *
+     * @return the number of bytes copied
+     */
+    public static long copy( InputStream in, WritableByteChannel channel ) throws IOException
+    {
+        ByteBuffer bbuf = ByteBuffer.allocate( DEFAULT_READ_BUF_SIZE );
+        byte[] buf = bbuf.array();
+        long total = 0;
+        int read;
+        while ( ( read = in.read( buf ) ) > -1 )
+        {
+            logger.trace( "Read transfer and write to channel, size: {}", read );
+            bbuf.clear();
+            bbuf.limit( read );
+            write( channel, bbuf );
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Send count bytes of the file to the channel without copying them through the heap. For a socket channel the
+     * sink hands the file to the kernel (sendfile), so the content never leaves the page cache.
+     */
+    public static void transfer( FileChannel src, StreamSinkChannel channel, long count ) throws IOException
+    {
+        long position = 0;
+        while ( position < count )
+        {
+            long sent = channel.transferFrom( src, position, count - position );
+            if ( sent > 0 )
+            {
+                position += sent;
+            }
+            else if ( src.size() < count )
+            {
+                throw new IOException( "File truncated while sending it, size: " + src.size() + ", expected: " + count );
+            }
+            else
+            {
+                channel.awaitWritable( 100, TimeUnit.MILLISECONDS );
+            }
+        }
+    }
+
     private static void wait( int milliseconds )
     {
         logger.debug( "Waiting for channel to flush..." );
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.httprox.util;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of direct buffers of one size, so relaying bytes between sockets neither allocates per read nor copies through
+ * the heap. Buffers released when the pool is already full are left to the GC.
+ */
+public class DirectBufferPool
+{
+    private final int bufferSize;
+
+    private final int maxPooled;
+
+    private final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    private final AtomicInteger allocated = new AtomicInteger();
+
+    public DirectBufferPool( final int bufferSize, final int maxPooled )
+    {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    public ByteBuffer acquire()
+    {
+        ByteBuffer buffer = pool.poll();
+        if ( buffer == null )
+        {
+            allocated.incrementAndGet();
+            return ByteBuffer.allocateDirect( bufferSize );
+        }
+
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    public void release( final ByteBuffer buffer )
+    {
+        if ( buffer == null )
+        {
+            return;
+        }
+
+        if ( pooled.incrementAndGet() <= maxPooled )
+        {
+            buffer.clear();
+            pool.offer( buffer );
+        }
+        else
+        {
+            pooled.decrementAndGet();
+            allocated.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return buffers waiting in the pool
+     */
+    public int getPooled()
+    {
+        return pooled.get();
+    }
+
+    /**
+     * @return buffers acquired and not released yet
+     */
+    public int getInUse()
+    {
+        return allocated.get() - pooled.get();
+    }
+}
@@ -33,23 +33,22 @@ import org.commonjava.maven.galley.spi.cache.CacheProvider;
 import org.commonjava.maven.galley.transport.htcli.model.HttpExchangeMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xnio.channels.Channels;
 import org.xnio.channels.StreamSinkChannel;
 import org.xnio.conduits.ConduitStreamSinkChannel;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
-import static org.commonjava.indy.httprox.util.ChannelUtils.DEFAULT_READ_BUF_SIZE;
+import static org.commonjava.indy.httprox.util.ChannelUtils.copy;
 import static org.commonjava.indy.httprox.util.ChannelUtils.flush;
-import static org.commonjava.indy.httprox.util.ChannelUtils.write;
+import static org.commonjava.indy.httprox.util.ChannelUtils.transfer;
 
 /**
  * Created by jdcasey on 9/1/15.
@@ -57,7 +56,6 @@ import static org.commonjava.indy.httprox.util.ChannelUtils.write;
 public class HttpConduitWrapper
         implements org.commonjava.indy.subsys.http.HttpWrapper
 {
-
     private final StreamSinkChannel sinkChannel;
 
     private HttpRequest httpRequest;
@@ -148,7 +146,7 @@ public class HttpConduitWrapper
                 writeStatus( metadata.getResponseStatusCode(), metadata.getResponseStatusMessage() );
             }
 
-            String contentType = metadata.getContentType();
+            String contentType = metadata != null ? metadata.getContentType() : null;
             writeHeader( ApplicationHeader.content_type,
                          contentType != null ? contentType : contentController.getContentType( path ) );
             for ( final Map.Entry<String, List<String>> headerSet : metadata.getResponseHeaders().entrySet() )
@@ -205,7 +203,7 @@ public class HttpConduitWrapper
                 writeHeader( ApplicationHeader.last_modified, lastMod );
             }
 
-            String contentType = metadata.getContentType();
+            String contentType = metadata != null ? metadata.getContentType() : null;
             writeHeader( ApplicationHeader.content_type,
                          contentType != null ? contentType : contentController.getContentType( path ) );
 
@@ -214,18 +212,19 @@ public class HttpConduitWrapper
             {
                 sinkChannel.write( ByteBuffer.wrap( "\r\n".getBytes() ) );
 
-                int capacity = DEFAULT_READ_BUF_SIZE;
-                ByteBuffer bbuf = ByteBuffer.allocate( capacity );
-                byte[] buf = new byte[capacity];
-                int read = -1;
-                logger.trace( "Read transfer..." );
-                while ( ( read = in.read( buf ) ) > -1 )
+                File file = getZeroCopyFile( txfr, in, bytes );
+                if ( file != null )
+                {
+                    logger.trace( "Send transfer file {} to channel, size: {}", file, bytes );
+                    try (FileChannel fileChannel = FileChannel.open( file.toPath(), StandardOpenOption.READ ))
+                    {
+                        transfer( fileChannel, sinkChannel, bytes );
+                    }
+                }
+                else
                 {
-                    logger.trace( "Read transfer and write to channel, size: {}", read );
-                    bbuf.clear();
-                    bbuf.put( buf, 0, read );
-                    bbuf.flip();
-                    write( sinkChannel, bbuf );
+                    logger.trace( "Read transfer..." );
+                    copy( in, sinkChannel );
                 }
             }
         }
@@ -237,6 +236,38 @@ public class HttpConduitWrapper
         logger.debug( "Write transfer DONE." );
     }
 
+    /**
+     * The cached file can be sent as it is (zero-copy) when we write straight to the client connection (plain HTTP,
+     * no TLS in between), it is complete, i.e. not still being downloaded by another request, and nothing decorates the
+     * content read from it. Otherwise we return null and the content is copied from the stream.
+     */
+    private File getZeroCopyFile( Transfer txfr, InputStream in, long bytes )
+            throws IOException
+    {
+        if ( !( sinkChannel instanceof ConduitStreamSinkChannel ) || bytes < 1 )
+        {
+            return null;
+        }
+
+        File file = txfr.getDetachedFile();
+        if ( file == null || file.length() != bytes )
+        {
+            return null;
+        }
+
+        // transfer decorators (e.g., checksumming or contents filtering) wrap the stream of the cache provider, so the
+        // stream only carries the file as it is if it's of the very type the cache provider hands out
+        try (InputStream raw = cacheProvider.openInputStream( txfr.getResource() ))
+        {
+            if ( raw == null || raw.getClass() != in.getClass() )
+            {
+                return null;
+            }
+        }
+
+        return file;
+    }
+
     @Override
     public boolean isOpen()
     {
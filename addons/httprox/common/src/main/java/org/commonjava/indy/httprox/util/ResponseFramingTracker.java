@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.httprox.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Watches an HTTP response as it is written, to tell whether the connection can be reused for another request
+ * afterwards. That is only the case when the response head was complete, declared a Content-Length, did not ask
+ * for the connection to be closed, and exactly that many body bytes followed.
+ */
+public class ResponseFramingTracker
+        extends FilterOutputStream
+{
+    private static final int MAX_HEAD_SIZE = 64 * 1024;
+
+    private final StringBuilder head = new StringBuilder();
+
+    private boolean headDone;
+
+    private long contentLength = -1;
+
+    private boolean connectionClose;
+
+    private long bodyBytes;
+
+    private long written;
+
+    public ResponseFramingTracker( final OutputStream out )
+    {
+        super( out );
+    }
+
+    @Override
+    public void write( final int b )
+            throws IOException
+    {
+        track( b );
+        out.write( b );
+    }
+
+    @Override
+    public void write( final byte[] b, final int off, final int len )
+            throws IOException
+    {
+        int i = off;
+        final int end = off + len;
+        while ( !headDone && i < end )
+        {
+            track( b[i++] );
+        }
+        if ( i < end )
+        {
+            bodyBytes += end - i;
+            written += end - i;
+        }
+        out.write( b, off, len );
+    }
+
+    /**
+     * @return true once anything was written, i.e. an error status can not be sent anymore
+     */
+    public boolean isCommitted()
+    {
+        return written > 0;
+    }
+
+    public boolean isReusable()
+    {
+        return headDone && !connectionClose && contentLength >= 0 && bodyBytes == contentLength;
+    }
+
+    private void track( final int b )
+    {
+        written++;
+        if ( headDone )
+        {
+            bodyBytes++;
+            return;
+        }
+
+        if ( head.length() >= MAX_HEAD_SIZE )
+        {
+            // not a response we understand, don't reuse the connection
+            connectionClose = true;
+            return;
+        }
+
+        head.append( (char) ( b & 0xff ) );
+        final int len = head.length();
+        if ( len >= 4 && head.charAt( len - 1 ) == '\n' && head.charAt( len - 2 ) == '\r'
+                && head.charAt( len - 3 ) == '\n' && head.charAt( len - 4 ) == '\r' )
+        {
+            headDone = true;
+            parseHead();
+        }
+    }
+
+    private void parseHead()
+    {
+        final String[] lines = head.toString().split( "\r\n" );
+        for ( int i = 1; i < lines.length; i++ )
+        {
+            final int colon = lines[i].indexOf( ':' );
+            if ( colon < 1 )
+            {
+                continue;
+            }
+
+            final String name = lines[i].substring( 0, colon ).trim();
+            final String value = lines[i].substring( colon + 1 ).trim();
+            if ( "Content-Length".equalsIgnoreCase( name ) )
+            {
+                try
+                {
+                    contentLength = Long.parseLong( value );
+                }
+                catch ( NumberFormatException e )
+                {
+                    connectionClose = true;
+                }
+            }
+            else if ( "Connection".equalsIgnoreCase( name ) && value.toLowerCase().contains( "close" ) )
+            {
+                connectionClose = true;
+            }
+        }
+    }
+}
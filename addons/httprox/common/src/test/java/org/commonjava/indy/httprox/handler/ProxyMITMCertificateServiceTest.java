@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.httprox.handler;
+
+import org.commonjava.indy.httprox.conf.HttproxConfig;
+import org.commonjava.indy.httprox.util.CertUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.net.ssl.SSLContext;
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+
+import static org.commonjava.indy.httprox.util.CertUtils.DEFAULT_SIGN_ALGORITHM;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class ProxyMITMCertificateServiceTest
+{
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private HttproxConfig config;
+
+    private File cacheDir;
+
+    private X509Certificate caCert;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        KeyPair caPair = CertUtils.generateKeyPair();
+        caCert = CertUtils.generateX509Certificate( caPair, "CN=Test CA", 30, DEFAULT_SIGN_ALGORITHM );
+
+        File caKeyFile = temp.newFile( "ca.der" );
+        Files.write( caKeyFile.toPath(), caPair.getPrivate().getEncoded() );
+        File caCertFile = temp.newFile( "ca.crt" );
+        Files.write( caCertFile.toPath(), caCert.getEncoded() );
+
+        config = new HttproxConfig();
+        config.setMITMEnabled( true );
+        config.setMITMCAKey( caKeyFile.getAbsolutePath() );
+        config.setMITMCACert( caCertFile.getAbsolutePath() );
+        config.setMITMDNTemplate( "CN=<host>, O=Test Org" );
+
+        cacheDir = temp.newFolder( "keystores" );
+    }
+
+    @Test
+    public void issuedKeyStoreIsReusedAfterRestart()
+            throws Exception
+    {
+        ProxyMITMCertificateService.HostKeyStore issued =
+                new ProxyMITMCertificateService( config, cacheDir, null ).getKeyStore( "repo.example.com" );
+
+        X509Certificate cert = (X509Certificate) issued.getKeyStore().getCertificate( "repo.example.com" );
+        assertThat( cert, notNullValue() );
+        cert.verify( caCert.getPublicKey() );
+
+        ProxyMITMCertificateService.HostKeyStore cached =
+                new ProxyMITMCertificateService( config, cacheDir, null ).getKeyStore( "repo.example.com" );
+
+        assertThat( cached.getKeyStore().getCertificate( "repo.example.com" ), equalTo( cert ) );
+        assertThat( cached.getNotAfter(), equalTo( issued.getNotAfter() ) );
+    }
+
+    @Test
+    public void expiredKeyStoreIsSweptAndReissued()
+            throws Exception
+    {
+        File hostDir = new File( cacheDir, "repo.example.com" );
+        hostDir.mkdirs();
+        File expired = new File( hostDir, "1000.jks" );
+        Files.write( expired.toPath(), new byte[] { 1, 2, 3 } );
+
+        ProxyMITMCertificateService service = new ProxyMITMCertificateService( config, cacheDir, null );
+        assertThat( expired.exists(), equalTo( false ) );
+        assertThat( hostDir.exists(), equalTo( false ) );
+
+        ProxyMITMCertificateService.HostKeyStore issued = service.getKeyStore( "repo.example.com" );
+        assertThat( ProxyMITMCertificateService.needsRenewal( issued.getNotAfter() ), equalTo( false ) );
+        assertThat( hostDir.list().length, equalTo( 1 ) );
+    }
+
+    @Test
+    public void keyStoresExpiringFirstAreEvictedAboveMax()
+            throws Exception
+    {
+        config.setMITMKeyStoreCacheMax( 1 );
+        ProxyMITMCertificateService service = new ProxyMITMCertificateService( config, cacheDir, null );
+
+        service.getKeyStore( "first.example.com" );
+        Thread.sleep( 5 ); // make sure the second one expires later
+        service.getKeyStore( "second.example.com" );
+
+        assertThat( new File( cacheDir, "first.example.com" ).exists(), equalTo( false ) );
+        assertThat( new File( cacheDir, "second.example.com" ).exists(), equalTo( true ) );
+    }
+
+    @Test
+    public void storedKeyStoreIsOnlyReadableByOwner()
+            throws Exception
+    {
+        assumeTrue( FileSystems.getDefault().supportedFileAttributeViews().contains( "posix" ) );
+
+        new ProxyMITMCertificateService( config, cacheDir, null ).getKeyStore( "repo.example.com" );
+
+        File[] stored = new File( cacheDir, "repo.example.com" ).listFiles();
+        assertThat( stored.length, equalTo( 1 ) );
+        assertThat( PosixFilePermissions.toString( Files.getPosixFilePermissions( stored[0].toPath() ) ),
+                    equalTo( "rw-------" ) );
+    }
+
+    @Test
+    public void hostsResolvingOutsideTheCacheDirAreNotCached()
+            throws Exception
+    {
+        File marker = new File( cacheDir.getParentFile(), "marker" );
+        Files.write( marker.toPath(), new byte[] { 1 } );
+
+        ProxyMITMCertificateService service = new ProxyMITMCertificateService( config, cacheDir, null );
+        for ( String host : new String[] { "..", ".", "...", "a..b", "../marker" } )
+        {
+            assertThat( host, ProxyMITMCertificateService.toDirName( host ), nullValue() );
+            assertThat( host, service.getKeyStore( host ), notNullValue() );
+        }
+
+        assertThat( cacheDir.list().length, equalTo( 0 ) );
+        assertThat( cacheDir.getParentFile().list( ( dir, name ) -> name.endsWith( ".jks" ) ).length, equalTo( 0 ) );
+        assertThat( marker.exists(), equalTo( true ) );
+    }
+
+    @Test
+    public void hostNamesAreEscaped()
+    {
+        assertThat( ProxyMITMCertificateService.toDirName( "Repo.Example.com" ), equalTo( "repo.example.com" ) );
+        assertThat( ProxyMITMCertificateService.toDirName( "a/b\\c" ), equalTo( "a_b_c" ) );
+        assertThat( ProxyMITMCertificateService.toDirName( ".hidden" ), equalTo( ".hidden" ) );
+    }
+
+    @Test
+    public void leastRecentlyUsedSSLContextIsDroppedAboveMax()
+            throws Exception
+    {
+        config.setMITMKeyStoreCacheMax( 1 );
+        ProxyMITMSSLContextCache contexts =
+                new ProxyMITMSSLContextCache( config, new ProxyMITMCertificateService( config, null, null ) );
+
+        SSLContext first = contexts.getSSLContext( "first.example.com" );
+        assertThat( contexts.getSSLContext( "first.example.com" ), sameInstance( first ) );
+
+        contexts.getSSLContext( "second.example.com" );
+        assertThat( contexts.getSSLContext( "first.example.com" ), not( sameInstance( first ) ) );
+    }
+}
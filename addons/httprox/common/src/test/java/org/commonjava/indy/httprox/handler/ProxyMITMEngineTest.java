@@ -0,0 +1,324 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.httprox.handler;
+
+import org.commonjava.indy.httprox.util.CertUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static javax.net.ssl.SSLEngineResult.HandshakeStatus.FINISHED;
+import static javax.net.ssl.SSLEngineResult.HandshakeStatus.NEED_TASK;
+import static javax.net.ssl.SSLEngineResult.HandshakeStatus.NEED_UNWRAP;
+import static javax.net.ssl.SSLEngineResult.HandshakeStatus.NEED_WRAP;
+import static javax.net.ssl.SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
+import static org.commonjava.indy.httprox.util.CertUtils.DEFAULT_SIGN_ALGORITHM;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Drives {@link ProxyMITMEngine} with a real client {@link SSLEngine}, the encrypted bytes going through memory.
+ */
+public class ProxyMITMEngineTest
+{
+    private static final String RESPONSE = "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello";
+
+    private static final char[] PASSWORD = "password".toCharArray();
+
+    private SSLContext serverContext;
+
+    private SSLContext clientContext;
+
+    private ExecutorService workers;
+
+    private final MemoryNetwork network = new MemoryNetwork();
+
+    private final List<String> heads = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        KeyPair pair = CertUtils.generateKeyPair();
+        X509Certificate cert = CertUtils.generateX509Certificate( pair, "CN=repo.example.com", 1, DEFAULT_SIGN_ALGORITHM );
+
+        KeyStore keyStore = CertUtils.createKeyStore();
+        keyStore.setKeyEntry( "repo.example.com", pair.getPrivate(), PASSWORD, new Certificate[] { cert } );
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance( KeyManagerFactory.getDefaultAlgorithm() );
+        kmf.init( keyStore, PASSWORD );
+        serverContext = SSLContext.getInstance( "TLS" );
+        serverContext.init( kmf.getKeyManagers(), null, null );
+
+        KeyStore trustStore = CertUtils.createKeyStore();
+        trustStore.setCertificateEntry( "repo.example.com", cert );
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance( TrustManagerFactory.getDefaultAlgorithm() );
+        tmf.init( trustStore );
+        clientContext = SSLContext.getInstance( "TLS" );
+        clientContext.init( null, tmf.getTrustManagers(), null );
+
+        workers = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void teardown()
+    {
+        workers.shutdownNow();
+    }
+
+    @Test
+    public void handshakeThenTwoKeepAliveRequests()
+            throws Exception
+    {
+        ProxyMITMEngine engine = newEngine( ( head, out ) -> {
+            heads.add( new String( head ) );
+            out.write( RESPONSE.getBytes() );
+            return true;
+        } );
+        Client client = new Client( engine );
+        client.handshake();
+
+        client.send( "GET /first.pom HTTP/1.1\r\nHost: repo.example.com\r\n\r\n" );
+        assertThat( client.read( RESPONSE.length() ), equalTo( RESPONSE ) );
+
+        client.send( "GET /second.pom HTTP/1.1\r\nHost: repo.example.com\r\n\r\n" );
+        assertThat( client.read( RESPONSE.length() ), equalTo( RESPONSE ) );
+
+        assertThat( heads.size(), equalTo( 2 ) );
+        assertThat( heads.get( 0 ), containsString( "GET /first.pom" ) );
+        assertThat( heads.get( 1 ), containsString( "GET /second.pom" ) );
+        assertThat( engine.isClosed(), equalTo( false ) );
+        assertThat( network.closed, equalTo( false ) );
+    }
+
+    @Test
+    public void clientReadsSuspendedWhileRequestsPileUp()
+            throws Exception
+    {
+        CountDownLatch release = new CountDownLatch( 1 );
+        ProxyMITMEngine engine = newEngine( ( head, out ) -> {
+            heads.add( new String( head ) );
+            try
+            {
+                release.await( 10, TimeUnit.SECONDS );
+            }
+            catch ( InterruptedException e )
+            {
+                throw new IOException( e );
+            }
+            out.write( RESPONSE.getBytes() );
+            return true;
+        } );
+        Client client = new Client( engine );
+        client.handshake();
+
+        char[] padding = new char[10 * 1024];
+        Arrays.fill( padding, 'x' );
+        int count = ProxyMITMEngine.MAX_RECEIVED_SIZE / padding.length + 5;
+        for ( int i = 0; i < count; i++ )
+        {
+            client.send( "GET /" + i + " HTTP/1.1\r\nX-Padding: " + new String( padding ) + "\r\n\r\n" );
+        }
+
+        assertThat( network.suspends, equalTo( 1 ) );
+        assertThat( network.resumes, equalTo( 0 ) );
+
+        release.countDown();
+        client.read( RESPONSE.length() * count );
+
+        assertThat( heads.size(), equalTo( count ) );
+        assertThat( network.resumes, equalTo( 1 ) );
+        assertThat( engine.isClosed(), equalTo( false ) );
+    }
+
+    private ProxyMITMEngine newEngine( final ProxyMITMEngine.RequestHandler handler )
+    {
+        return new ProxyMITMEngine( serverContext.createSSLEngine( "repo.example.com", 443 ), network, workers,
+                                    handler );
+    }
+
+    /**
+     * Client side of the connection, run by the test thread.
+     */
+    private final class Client
+    {
+        private final ProxyMITMEngine server;
+
+        private final SSLEngine engine;
+
+        private ByteBuffer netIn;
+
+        private final ByteBuffer appIn;
+
+        private final ByteBuffer netOut;
+
+        private final ByteArrayOutputStream plain = new ByteArrayOutputStream();
+
+        Client( final ProxyMITMEngine server )
+        {
+            this.server = server;
+            this.engine = clientContext.createSSLEngine( "repo.example.com", 443 );
+            engine.setUseClientMode( true );
+            netIn = ByteBuffer.allocate( engine.getSession().getPacketBufferSize() );
+            appIn = ByteBuffer.allocate( engine.getSession().getApplicationBufferSize() );
+            netOut = ByteBuffer.allocate( engine.getSession().getPacketBufferSize() );
+        }
+
+        void handshake()
+                throws Exception
+        {
+            engine.beginHandshake();
+            SSLEngineResult.HandshakeStatus hs = engine.getHandshakeStatus();
+            while ( hs != FINISHED && hs != NOT_HANDSHAKING )
+            {
+                if ( hs == NEED_TASK )
+                {
+                    Runnable task;
+                    while ( ( task = engine.getDelegatedTask() ) != null )
+                    {
+                        task.run();
+                    }
+                }
+                else if ( hs == NEED_WRAP )
+                {
+                    wrap( ByteBuffer.allocate( 0 ) );
+                }
+                else if ( hs == NEED_UNWRAP )
+                {
+                    unwrap();
+                }
+                hs = engine.getHandshakeStatus();
+            }
+        }
+
+        void send( final String request )
+                throws Exception
+        {
+            wrap( ByteBuffer.wrap( request.getBytes() ) );
+        }
+
+        String read( final int length )
+                throws Exception
+        {
+            while ( plain.size() < length )
+            {
+                unwrap();
+            }
+            String read = new String( plain.toByteArray() );
+            plain.reset();
+            return read;
+        }
+
+        private void wrap( final ByteBuffer src )
+                throws Exception
+        {
+            do
+            {
+                netOut.clear();
+                engine.wrap( src, netOut );
+                netOut.flip();
+                server.receive( netOut );
+            }
+            while ( src.hasRemaining() );
+        }
+
+        private void unwrap()
+                throws Exception
+        {
+            netIn.flip();
+            SSLEngineResult result = engine.unwrap( netIn, appIn );
+            netIn.compact();
+
+            if ( result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW )
+            {
+                byte[] bytes = network.written.poll( 10, TimeUnit.SECONDS );
+                assertThat( "no response from the MITM engine", bytes == null, equalTo( false ) );
+                if ( netIn.remaining() < bytes.length )
+                {
+                    ByteBuffer bigger = ByteBuffer.allocate( netIn.position() + bytes.length );
+                    netIn.flip();
+                    bigger.put( netIn );
+                    netIn = bigger;
+                }
+                netIn.put( bytes );
+            }
+
+            appIn.flip();
+            plain.write( appIn.array(), appIn.position(), appIn.remaining() );
+            appIn.clear();
+        }
+    }
+
+    private static final class MemoryNetwork
+            implements ProxyMITMEngine.Network
+    {
+        private final BlockingQueue<byte[]> written = new LinkedBlockingQueue<>();
+
+        private volatile int suspends;
+
+        private volatile int resumes;
+
+        private volatile boolean closed;
+
+        @Override
+        public void write( final ByteBuffer buffer )
+        {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get( bytes );
+            written.add( bytes );
+        }
+
+        @Override
+        public void suspendReads()
+        {
+            suspends++;
+        }
+
+        @Override
+        public void resumeReads()
+        {
+            resumes++;
+        }
+
+        @Override
+        public void close()
+        {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.httprox.handler;
+
+import org.commonjava.indy.httprox.conf.HttproxConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import org.xnio.StreamConnection;
+import org.xnio.Xnio;
+import org.xnio.XnioWorker;
+import org.xnio.channels.AcceptingChannel;
+import org.xnio.conduits.ConduitStreamSinkChannel;
+import org.xnio.conduits.ConduitStreamSourceChannel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Relays through a real {@link ProxyTunnelEngine}: the client connection is accepted by XNIO (as in
+ * {@link ProxyAcceptHandler}), the target echoes what it gets and says bye once the client is done sending.
+ */
+public class ProxyTunnelEngineTest
+{
+    private static final byte[] BYE = "bye".getBytes();
+
+    private XnioWorker worker;
+
+    private AcceptingChannel<StreamConnection> proxy;
+
+    private ServerSocket target;
+
+    private volatile int targetPort;
+
+    private ProxyTunnelEngine engine;
+
+    private final BlockingQueue<Object> outcomes = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        target = new ServerSocket( 0, 50, null );
+        targetPort = target.getLocalPort();
+        Thread acceptor = new Thread( this::serveTarget, "tunnel-target" );
+        acceptor.setDaemon( true );
+        acceptor.start();
+
+        worker = Xnio.getInstance().createWorker( OptionMap.EMPTY );
+        proxy = worker.createStreamConnectionServer( new InetSocketAddress( "127.0.0.1", 0 ), ( channel ) -> {
+            try
+            {
+                StreamConnection accepted = channel.accept();
+                if ( accepted != null )
+                {
+                    openTunnel( accepted.getSourceChannel(), accepted.getSinkChannel() );
+                }
+            }
+            catch ( IOException e )
+            {
+                outcomes.add( e );
+            }
+        }, OptionMap.EMPTY );
+        proxy.resumeAccepts();
+    }
+
+    @After
+    public void teardown()
+            throws Exception
+    {
+        if ( engine != null )
+        {
+            engine.shutdown();
+        }
+        IoUtils.safeClose( proxy, target );
+        worker.shutdownNow();
+    }
+
+    @Test
+    public void slowReaderGetsEverything()
+            throws Exception
+    {
+        HttproxConfig config = new HttproxConfig();
+        config.setTunnelBufferPoolSize( 4 );
+        engine = new ProxyTunnelEngine( config, TimeUnit.MINUTES.toMillis( 1 ) );
+
+        byte[] data = new byte[8 * 1024 * 1024];
+        new Random( 1 ).nextBytes( data );
+
+        try (Socket client = connectClient())
+        {
+            Thread sender = new Thread( () -> {
+                try
+                {
+                    client.getOutputStream().write( data );
+                    client.shutdownOutput();
+                }
+                catch ( IOException e )
+                {
+                    e.printStackTrace();
+                }
+            } );
+            sender.start();
+
+            // much slower than the target, so the tunnel has to stop reading from it
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            InputStream in = client.getInputStream();
+            byte[] buf = new byte[16 * 1024];
+            int read;
+            while ( ( read = in.read( buf ) ) >= 0 )
+            {
+                received.write( buf, 0, read );
+                if ( received.size() % ( 512 * 1024 ) < read )
+                {
+                    Thread.sleep( 20 );
+                }
+            }
+            sender.join();
+
+            byte[] expected = Arrays.copyOf( data, data.length + BYE.length );
+            System.arraycopy( BYE, 0, expected, data.length, BYE.length );
+            assertThat( Arrays.equals( received.toByteArray(), expected ), equalTo( true ) );
+        }
+
+        assertThat( awaitNoActiveTunnels(), equalTo( true ) );
+    }
+
+    @Test
+    public void clientHalfCloseReachesTarget()
+            throws Exception
+    {
+        engine = new ProxyTunnelEngine( new HttproxConfig(), TimeUnit.MINUTES.toMillis( 1 ) );
+
+        try (Socket client = connectClient())
+        {
+            OutputStream out = client.getOutputStream();
+            out.write( "hello".getBytes() );
+            out.flush();
+            client.shutdownOutput();
+
+            // the target only says bye once it saw the end of the client stream
+            assertThat( new String( readAll( client.getInputStream() ) ), equalTo( "hellobye" ) );
+        }
+
+        assertThat( awaitNoActiveTunnels(), equalTo( true ) );
+    }
+
+    @Test
+    public void idleTunnelIsClosed()
+            throws Exception
+    {
+        engine = new ProxyTunnelEngine( new HttproxConfig(), 200 );
+
+        try (Socket client = connectClient())
+        {
+            assertThat( outcomes.poll( 10, TimeUnit.SECONDS ), instanceOf( ProxyTunnel.class ) );
+
+            // nothing sent either way, the selector closes the tunnel on its next idle check
+            client.setSoTimeout( 10000 );
+            assertThat( client.getInputStream().read(), equalTo( -1 ) );
+        }
+
+        assertThat( engine.getIdleTimeouts(), equalTo( 1L ) );
+        assertThat( awaitNoActiveTunnels(), equalTo( true ) );
+    }
+
+    @Test
+    public void unreachableTargetFailsWithoutTunnel()
+            throws Exception
+    {
+        engine = new ProxyTunnelEngine( new HttproxConfig(), TimeUnit.MINUTES.toMillis( 1 ) );
+
+        try (ServerSocket closed = new ServerSocket( 0 ))
+        {
+            targetPort = closed.getLocalPort();
+        }
+
+        try (Socket ignored = connectClient())
+        {
+            assertThat( outcomes.poll( 10, TimeUnit.SECONDS ), instanceOf( ConnectException.class ) );
+        }
+        assertThat( engine.getActiveTunnels(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void onlyAllowedPortsByDefault()
+    {
+        engine = new ProxyTunnelEngine( new HttproxConfig() );
+
+        assertThat( engine.isAllowed( "github.com", 443 ), equalTo( true ) );
+        assertThat( engine.isAllowed( "github.com", 22 ), equalTo( false ) );
+        assertThat( engine.isAllowed( "127.0.0.1", 25 ), equalTo( false ) );
+    }
+
+    @Test
+    public void onlyAllowedHostsAndPortsWhenConfigured()
+    {
+        HttproxConfig config = new HttproxConfig();
+        config.setTunnelAllowedPorts( "443, 8443" );
+        config.setTunnelAllowedHosts( "github.com, *.example.com" );
+        engine = new ProxyTunnelEngine( config );
+
+        assertThat( engine.isAllowed( "github.com", 8443 ), equalTo( true ) );
+        assertThat( engine.isAllowed( "GitHub.com", 443 ), equalTo( true ) );
+        assertThat( engine.isAllowed( "repo.example.com", 443 ), equalTo( true ) );
+        assertThat( engine.isAllowed( "example.com", 443 ), equalTo( false ) );
+        assertThat( engine.isAllowed( "badexample.com", 443 ), equalTo( false ) );
+        assertThat( engine.isAllowed( "api.github.com", 443 ), equalTo( false ) );
+        assertThat( engine.isAllowed( "github.com", 80 ), equalTo( false ) );
+    }
+
+    private Socket connectClient()
+            throws IOException
+    {
+        return new Socket( "127.0.0.1", proxy.getLocalAddress( InetSocketAddress.class ).getPort() );
+    }
+
+    /**
+     * Same as the passthrough CONNECT in {@link ProxyResponseWriter}, without the HTTP part.
+     */
+    private void openTunnel( final ConduitStreamSourceChannel source, final ConduitStreamSinkChannel sink )
+            throws IOException
+    {
+        engine.open( "127.0.0.1", targetPort, source, sink, new ProxyTunnelEngine.ConnectListener()
+        {
+            @Override
+            public void connected( final ProxyTunnel tunnel )
+            {
+                sink.getIoThread().execute( () -> {
+                    source.getReadSetter().set( ( c ) -> tunnel.clientReadable() );
+                    tunnel.start();
+                    outcomes.add( tunnel );
+                } );
+            }
+
+            @Override
+            public void failed( final IOException error )
+            {
+                outcomes.add( error );
+                IoUtils.safeClose( source, sink );
+            }
+        } );
+    }
+
+    private boolean awaitNoActiveTunnels()
+            throws InterruptedException
+    {
+        for ( int i = 0; i < 100 && engine.getActiveTunnels() > 0; i++ )
+        {
+            Thread.sleep( 50 );
+        }
+        return engine.getActiveTunnels() == 0;
+    }
+
+    private void serveTarget()
+    {
+        while ( !target.isClosed() )
+        {
+            try
+            {
+                Socket socket = target.accept();
+                Thread echo = new Thread( () -> {
+                    try (Socket s = socket)
+                    {
+                        InputStream in = s.getInputStream();
+                        OutputStream out = s.getOutputStream();
+                        byte[] buf = new byte[8192];
+                        int read;
+                        while ( ( read = in.read( buf ) ) >= 0 )
+                        {
+                            out.write( buf, 0, read );
+                        }
+                        out.write( BYE );
+                        s.shutdownOutput();
+                    }
+                    catch ( IOException e )
+                    {
+                        // client or tunnel gone
+                    }
+                } );
+                echo.setDaemon( true );
+                echo.start();
+            }
+            catch ( IOException e )
+            {
+                return;
+            }
+        }
+    }
+
+    private static byte[] readAll( final InputStream in )
+            throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int read;
+        while ( ( read = in.read( buf ) ) >= 0 )
+        {
+            out.write( buf, 0, read );
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.httprox.util;
+
+import org.xnio.XnioIoThread;
+import org.xnio.XnioWorker;
+import org.xnio.channels.StreamSourceChannel;
+import org.xnio.conduits.StreamSinkConduit;
+import org.xnio.conduits.WriteReadyHandler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Blocking sink conduit over a plain channel, so tests can write through a
+ * {@link org.xnio.conduits.ConduitStreamSinkChannel} without an XNIO worker. Files are sent with
+ * {@link FileChannel#transferTo}, like the XNIO socket conduit does.
+ */
+class ChannelSinkConduit
+        implements StreamSinkConduit
+{
+    private final WritableByteChannel channel;
+
+    private int fileTransfers;
+
+    private boolean shutdown;
+
+    ChannelSinkConduit( final WritableByteChannel channel )
+    {
+        this.channel = channel;
+    }
+
+    /**
+     * @return how many times a file was sent to this conduit
+     */
+    int getFileTransfers()
+    {
+        return fileTransfers;
+    }
+
+    @Override
+    public long transferFrom( final FileChannel src, final long position, final long count )
+            throws IOException
+    {
+        fileTransfers++;
+        return src.transferTo( position, count, channel );
+    }
+
+    @Override
+    public long transferFrom( final StreamSourceChannel source, final long count, final ByteBuffer throughBuffer )
+            throws IOException
+    {
+        throw new UnsupportedOperationException( "Not used by the proxy" );
+    }
+
+    @Override
+    public int write( final ByteBuffer src )
+            throws IOException
+    {
+        return channel.write( src );
+    }
+
+    @Override
+    public long write( final ByteBuffer[] srcs, final int offs, final int len )
+            throws IOException
+    {
+        long written = 0;
+        for ( int i = offs; i < offs + len; i++ )
+        {
+            written += channel.write( srcs[i] );
+        }
+        return written;
+    }
+
+    @Override
+    public int writeFinal( final ByteBuffer src )
+            throws IOException
+    {
+        int written = write( src );
+        terminateWrites();
+        return written;
+    }
+
+    @Override
+    public long writeFinal( final ByteBuffer[] srcs, final int offs, final int len )
+            throws IOException
+    {
+        long written = write( srcs, offs, len );
+        terminateWrites();
+        return written;
+    }
+
+    @Override
+    public void terminateWrites()
+    {
+        shutdown = true;
+    }
+
+    @Override
+    public boolean isWriteShutdown()
+    {
+        return shutdown;
+    }
+
+    @Override
+    public void resumeWrites()
+    {
+    }
+
+    @Override
+    public void suspendWrites()
+    {
+    }
+
+    @Override
+    public void wakeupWrites()
+    {
+    }
+
+    @Override
+    public boolean isWriteResumed()
+    {
+        return false;
+    }
+
+    @Override
+    public void awaitWritable()
+    {
+    }
+
+    @Override
+    public void awaitWritable( final long time, final TimeUnit timeUnit )
+    {
+    }
+
+    @Override
+    public XnioIoThread getWriteThread()
+    {
+        return null;
+    }
+
+    @Override
+    public void setWriteReadyHandler( final WriteReadyHandler handler )
+    {
+    }
+
+    @Override
+    public void truncateWrites()
+    {
+        terminateWrites();
+    }
+
+    @Override
+    public boolean flush()
+    {
+        return true;
+    }
+
+    @Override
+    public XnioWorker getWorker()
+    {
+        return null;
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.httprox.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class DirectBufferPoolTest
+{
+    @Test
+    public void releasedBufferIsReusedCleared()
+    {
+        DirectBufferPool pool = new DirectBufferPool( 1024, 2 );
+
+        ByteBuffer first = pool.acquire();
+        assertThat( first.isDirect(), equalTo( true ) );
+        assertThat( first.capacity(), equalTo( 1024 ) );
+        first.put( (byte) 1 );
+
+        pool.release( first );
+        assertThat( pool.getPooled(), equalTo( 1 ) );
+        assertThat( pool.getInUse(), equalTo( 0 ) );
+
+        ByteBuffer second = pool.acquire();
+        assertThat( second, sameInstance( first ) );
+        assertThat( second.position(), equalTo( 0 ) );
+        assertThat( pool.getInUse(), equalTo( 1 ) );
+    }
+
+    @Test
+    public void poolKeepsAtMostMaxBuffers()
+    {
+        DirectBufferPool pool = new DirectBufferPool( 1024, 2 );
+
+        ByteBuffer a = pool.acquire();
+        ByteBuffer b = pool.acquire();
+        ByteBuffer c = pool.acquire();
+        assertThat( pool.getInUse(), equalTo( 3 ) );
+
+        pool.release( a );
+        pool.release( b );
+        pool.release( c );
+        pool.release( null );
+
+        assertThat( pool.getPooled(), equalTo( 2 ) );
+        assertThat( pool.getInUse(), equalTo( 0 ) );
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.httprox.util;
+
+import org.commonjava.indy.core.change.event.IndyFileEventManager;
+import org.commonjava.indy.core.ctl.ContentController;
+import org.commonjava.indy.content.IndyPathGenerator;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.galley.RepositoryLocation;
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.io.AbstractTransferDecorator;
+import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.spi.io.TransferDecorator;
+import org.commonjava.maven.galley.transport.htcli.model.HttpExchangeMetadata;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xnio.conduits.ConduitStreamSinkChannel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Sends cached files through {@link HttpConduitWrapper#writeExistingTransfer} to a
+ * {@link ConduitStreamSinkChannel}, checking when the file is handed to the conduit as it is (zero-copy) and when it's
+ * copied from the transfer's stream instead.
+ */
+public class HttpConduitWrapperTest
+{
+    private static final String PATH = "org/foo/bar/1/bar-1.jar";
+
+    private static final int SIZE = 100 * 1024;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private ByteArrayOutputStream out;
+
+    private ChannelSinkConduit conduit;
+
+    @Before
+    public void setup()
+    {
+        out = new ByteArrayOutputStream();
+        conduit = new ChannelSinkConduit( Channels.newChannel( out ) );
+    }
+
+    @Test
+    public void completeUndecoratedFileIsSentAsItIs()
+            throws Exception
+    {
+        FileCacheProvider cacheProvider = cacheProvider( new NoOpTransferDecorator() );
+        byte[] content = content();
+
+        byte[] body = write( cacheProvider, store( cacheProvider, content ), null );
+
+        assertThat( conduit.getFileTransfers() > 0, equalTo( true ) );
+        assertThat( Arrays.equals( body, content ), equalTo( true ) );
+    }
+
+    @Test
+    public void decoratedStreamIsCopied()
+            throws Exception
+    {
+        FileCacheProvider cacheProvider = cacheProvider( new AbstractTransferDecorator()
+        {
+            @Override
+            public InputStream decorateRead( final InputStream stream, final Transfer transfer,
+                                             final EventMetadata eventMetadata )
+            {
+                // like checksumming: same bytes, but the decorator has to see them
+                return new FilterInputStream( stream )
+                {
+                };
+            }
+        } );
+        byte[] content = content();
+
+        byte[] body = write( cacheProvider, store( cacheProvider, content ), null );
+
+        assertThat( conduit.getFileTransfers(), equalTo( 0 ) );
+        assertThat( Arrays.equals( body, content ), equalTo( true ) );
+    }
+
+    @Test
+    public void fileShorterThanContentLengthIsCopied()
+            throws Exception
+    {
+        FileCacheProvider cacheProvider = cacheProvider( new NoOpTransferDecorator() );
+        byte[] content = content();
+
+        // upstream announced more than what is in the cache so far, i.e. it's still being downloaded
+        HttpExchangeMetadata metadata = new HttpExchangeMetadata()
+        {
+            @Override
+            public Long getContentLength()
+            {
+                return SIZE * 2L;
+            }
+        };
+
+        byte[] body = write( cacheProvider, store( cacheProvider, content ), metadata );
+
+        assertThat( conduit.getFileTransfers(), equalTo( 0 ) );
+        assertThat( Arrays.equals( body, content ), equalTo( true ) );
+    }
+
+    /**
+     * @return the response body written by {@link HttpConduitWrapper#writeExistingTransfer}, after the headers
+     */
+    private byte[] write( final FileCacheProvider cacheProvider, final Transfer transfer,
+                          final HttpExchangeMetadata metadata )
+            throws Exception
+    {
+        ContentController contentController = new ContentController()
+        {
+            @Override
+            public HttpExchangeMetadata getHttpMetadata( final Transfer txfr )
+            {
+                return metadata;
+            }
+
+            @Override
+            public String getContentType( final String path )
+            {
+                return "application/java-archive";
+            }
+        };
+
+        new HttpConduitWrapper( new ConduitStreamSinkChannel( null, conduit ), null, contentController,
+                                cacheProvider ).writeExistingTransfer( transfer, true, PATH, new EventMetadata() );
+
+        byte[] response = out.toByteArray();
+        for ( int i = 0; i + 3 < response.length; i++ )
+        {
+            if ( response[i] == '\r' && response[i + 1] == '\n' && response[i + 2] == '\r' && response[i + 3] == '\n' )
+            {
+                return Arrays.copyOfRange( response, i + 4, response.length );
+            }
+        }
+        throw new AssertionError( "No end of headers in: " + new String( response ) );
+    }
+
+    private FileCacheProvider cacheProvider( final TransferDecorator decorator )
+            throws Exception
+    {
+        return new FileCacheProvider( temp.newFolder( "cache" ), new IndyPathGenerator(), new IndyFileEventManager(),
+                                      decorator );
+    }
+
+    private Transfer store( final FileCacheProvider cacheProvider, final byte[] content )
+            throws Exception
+    {
+        RemoteRepository remote = new RemoteRepository( MAVEN_PKG_KEY, "central", "http://repo.example.com/" );
+        Transfer transfer = cacheProvider.getTransfer( new ConcreteResource( new RepositoryLocation( remote ), PATH ) );
+
+        File file = transfer.getDetachedFile();
+        file.getParentFile().mkdirs();
+        Files.write( file.toPath(), content );
+        return transfer;
+    }
+
+    private byte[] content()
+    {
+        byte[] content = new byte[SIZE];
+        for ( int i = 0; i < content.length; i++ )
+        {
+            content[i] = (byte) i;
+        }
+        return content;
+    }
+}
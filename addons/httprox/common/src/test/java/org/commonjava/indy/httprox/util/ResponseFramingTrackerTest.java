@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.httprox.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class ResponseFramingTrackerTest
+{
+    @Test
+    public void completeResponseWithContentLengthIsReusable()
+            throws IOException
+    {
+        ResponseFramingTracker tracker = write( "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\n", "hello" );
+
+        assertThat( tracker.isCommitted(), equalTo( true ) );
+        assertThat( tracker.isReusable(), equalTo( true ) );
+    }
+
+    @Test
+    public void shortBodyIsNotReusable()
+            throws IOException
+    {
+        ResponseFramingTracker tracker = write( "HTTP/1.1 200 OK\r\nContent-Length: 10\r\n\r\n", "hello" );
+
+        assertThat( tracker.isReusable(), equalTo( false ) );
+    }
+
+    @Test
+    public void connectionCloseOrMissingLengthIsNotReusable()
+            throws IOException
+    {
+        assertThat( write( "HTTP/1.1 200 OK\r\nContent-Length: 5\r\nConnection: close\r\n\r\n", "hello" ).isReusable(),
+                    equalTo( false ) );
+        assertThat( write( "HTTP/1.1 404 Not Found\r\n\r\n", "" ).isReusable(), equalTo( false ) );
+    }
+
+    @Test
+    public void nothingWrittenIsNotCommitted()
+    {
+        ResponseFramingTracker tracker = new ResponseFramingTracker( new ByteArrayOutputStream() );
+
+        assertThat( tracker.isCommitted(), equalTo( false ) );
+        assertThat( tracker.isReusable(), equalTo( false ) );
+    }
+
+    private ResponseFramingTracker write( String head, String body )
+            throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResponseFramingTracker tracker = new ResponseFramingTracker( out );
+        byte[] headBytes = head.getBytes();
+        tracker.write( headBytes[0] ); // single byte, then the rest in bulk
+        tracker.write( headBytes, 1, headBytes.length - 1 );
+        tracker.write( body.getBytes() );
+        tracker.flush();
+
+        assertThat( new String( out.toByteArray() ), equalTo( head + body ) );
+        return tracker;
+    }
+}
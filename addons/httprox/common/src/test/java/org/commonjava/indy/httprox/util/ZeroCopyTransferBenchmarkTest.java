@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.httprox.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xnio.channels.StreamSinkChannel;
+import org.xnio.conduits.ConduitStreamSinkChannel;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares sending a cached file to a client socket with the buffered copy ({@link ChannelUtils#copy}) and with
+ * {@link ChannelUtils#transfer}, both through a {@link ConduitStreamSinkChannel} whose conduit sends files with
+ * {@link FileChannel#transferTo}, like the XNIO socket conduit does. It takes a while, so it only runs with
+ * -Dhttprox.benchmark=true, e.g.:
+ * <pre>
+ * mvn test -Dtest=ZeroCopyTransferBenchmarkTest -Dhttprox.benchmark=true
+ * </pre>
+ */
+public class ZeroCopyTransferBenchmarkTest
+{
+    private static final long FILE_SIZE = 64 * 1024 * 1024;
+
+    private static final int ROUNDS = 20;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void compareBufferedCopyAndZeroCopy()
+            throws Exception
+    {
+        assumeTrue( Boolean.getBoolean( "httprox.benchmark" ) );
+
+        File file = temp.newFile( "artifact.jar" );
+        try (RandomAccessFile raf = new RandomAccessFile( file, "rw" ))
+        {
+            byte[] chunk = new byte[1024 * 1024];
+            for ( int i = 0; i < chunk.length; i++ )
+            {
+                chunk[i] = (byte) i;
+            }
+            for ( long written = 0; written < FILE_SIZE; written += chunk.length )
+            {
+                raf.write( chunk );
+            }
+        }
+
+        // warm up both paths first
+        run( file, false, 2 );
+        run( file, true, 2 );
+
+        long buffered = run( file, false, ROUNDS );
+        long zeroCopy = run( file, true, ROUNDS );
+
+        double mb = FILE_SIZE * ROUNDS / ( 1024.0 * 1024.0 );
+        logger.info( "Buffered copy: {} MB/s, zero-copy: {} MB/s", String.format( "%.1f", mb * 1e9 / buffered ),
+                     String.format( "%.1f", mb * 1e9 / zeroCopy ) );
+    }
+
+    /**
+     * @return nanoseconds spent sending the file rounds times to a loopback socket
+     */
+    private long run( final File file, final boolean zeroCopy, final int rounds )
+            throws Exception
+    {
+        ExecutorService drainer = Executors.newSingleThreadExecutor();
+        try (ServerSocketChannel server = ServerSocketChannel.open())
+        {
+            server.bind( new InetSocketAddress( "127.0.0.1", 0 ) );
+            try (SocketChannel client = SocketChannel.open( server.getLocalAddress() );
+                 SocketChannel accepted = server.accept())
+            {
+                Future<Long> received = drainer.submit( () -> drain( accepted ) );
+                StreamSinkChannel sink = new ConduitStreamSinkChannel( null, new ChannelSinkConduit( client ) );
+
+                long start = System.nanoTime();
+                for ( int i = 0; i < rounds; i++ )
+                {
+                    if ( zeroCopy )
+                    {
+                        try (FileChannel fileChannel = FileChannel.open( file.toPath(), StandardOpenOption.READ ))
+                        {
+                            ChannelUtils.transfer( fileChannel, sink, FILE_SIZE );
+                        }
+                    }
+                    else
+                    {
+                        try (InputStream in = new FileInputStream( file ))
+                        {
+                            ChannelUtils.copy( in, sink );
+                        }
+                    }
+                }
+                client.shutdownOutput();
+
+                assertThat( received.get(), equalTo( FILE_SIZE * rounds ) );
+                return System.nanoTime() - start;
+            }
+        }
+        finally
+        {
+            drainer.shutdownNow();
+        }
+    }
+
+    private long drain( final SocketChannel channel )
+            throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocateDirect( 256 * 1024 );
+        long total = 0;
+        int read;
+        while ( ( read = channel.read( buf ) ) > -1 )
+        {
+            total += read;
+            buf.clear();
+        }
+        return total;
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.commonjava.indy.pkg.maven.change;
 
+import org.commonjava.indy.change.event.ContentBatchStoredEvent;
 import org.commonjava.indy.content.DownloadManager;
 import org.commonjava.indy.core.change.event.IndyFileEventManager;
 import org.commonjava.indy.core.content.group.GroupMergeHelper;
@@ -24,9 +25,8 @@ import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.Group;
 import org.commonjava.indy.model.core.HostedRepository;
 import org.commonjava.indy.model.core.StoreKey;
-import org.commonjava.indy.pkg.maven.content.cache.MavenVersionMetadataCache;
+import org.commonjava.indy.pkg.maven.content.cache.MavenMetadataCacheManager;
 import org.commonjava.indy.pkg.maven.content.group.MavenMetadataMerger;
-import org.commonjava.indy.subsys.infinispan.CacheHandle;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.event.FileDeletionEvent;
 import org.commonjava.maven.galley.event.FileEvent;
@@ -38,9 +38,10 @@ import org.slf4j.LoggerFactory;
 import javax.enterprise.event.Observes;
 import javax.inject.Inject;
 import java.io.IOException;
-import java.util.Map;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
+import static org.commonjava.indy.change.event.ContentBatchStoredEvent.isBatchStore;
 import static org.commonjava.indy.model.core.StoreType.hosted;
 import static org.commonjava.indy.util.LocationUtils.getKey;
 import static org.commonjava.maven.galley.util.PathUtils.normalize;
@@ -62,8 +63,21 @@ public class MetadataMergePomChangeListener
     private IndyFileEventManager fileEvent;
 
     @Inject
-    @MavenVersionMetadataCache
-    private CacheHandle<StoreKey, Map> versionMetadataCache;
+    private MavenMetadataCacheManager cacheManager;
+
+    protected MetadataMergePomChangeListener()
+    {
+    }
+
+    public MetadataMergePomChangeListener( final StoreDataManager dataManager, final DownloadManager fileManager,
+                                           final IndyFileEventManager fileEvent,
+                                           final MavenMetadataCacheManager cacheManager )
+    {
+        this.dataManager = dataManager;
+        this.fileManager = fileManager;
+        this.fileEvent = fileEvent;
+        this.cacheManager = cacheManager;
+    }
 
     /**
      * this listener observes {@link org.commonjava.maven.galley.event.FileStorageEvent}
@@ -72,9 +86,66 @@ public class MetadataMergePomChangeListener
      */
     public void onPomStorageEvent( @Observes final FileStorageEvent event )
     {
+        if ( isBatchStore( event.getEventMetadata() ) )
+        {
+            // handled once for the whole batch in onBatchStoredEvent(..)
+            return;
+        }
+
         metaClear( event );
     }
 
+    /**
+     * this listener observes {@link ContentBatchStoredEvent} (e.g. after a promotion), which means the
+     * maven-metadata.xml of every GA with a stored pom will be cleared. Each GA is only cleared once per
+     * store / group, however many versions of it were stored.
+     */
+    public void onBatchStoredEvent( @Observes final ContentBatchStoredEvent event )
+    {
+        final ArtifactStore store = event.getStore();
+        if ( hosted != store.getKey().getType() )
+        {
+            return;
+        }
+
+        final Set<String> clearPaths = new LinkedHashSet<>();
+        event.getPaths().stream().filter( path -> path.endsWith( ".pom" ) ).forEach( path -> {
+            final String versionPath = normalize( parentPath( path ) );
+            clearPaths.add( normalize( normalize( parentPath( versionPath ) ), MavenMetadataMerger.METADATA_NAME ) );
+        } );
+
+        if ( clearPaths.isEmpty() )
+        {
+            return;
+        }
+
+        logger.debug( "Clearing merged metadata of {} GAs for: {}", clearPaths.size(), event );
+        doClearAll( store, clearPaths );
+        event.getAffectedGroups().forEach( group -> doClearAll( group, clearPaths ) );
+    }
+
+    private void doClearAll( final ArtifactStore store, final Set<String> clearPaths )
+    {
+        boolean cleared = false;
+        for ( final String clearPath : clearPaths )
+        {
+            try
+            {
+                cleared = doClear( store, clearPath ) || cleared;
+            }
+            catch ( final IOException e )
+            {
+                logger.error( String.format( "Failed to delete: %s from: %s when pom versions changed. Error: %s",
+                                             clearPath, store.getKey(), e.getMessage() ), e );
+            }
+        }
+
+        if ( cleared )
+        {
+            cacheManager.removeAll( store.getKey() );
+        }
+    }
+
     /**
      * this listener observes {@link org.commonjava.maven.galley.event.FileDeletionEvent}
      * for a pom file, which means maven-metadata.xml will be cleared
@@ -106,7 +177,7 @@ public class MetadataMergePomChangeListener
                 {
                     if ( doClear( hosted, clearPath ) )
                     {
-                        versionMetadataCache.remove( hosted.getKey() );
+                        cacheManager.removeAll( hosted.getKey() );
                     }
                 }
                 catch ( final IOException e )
@@ -125,7 +196,7 @@ public class MetadataMergePomChangeListener
                         {
                             if ( doClear( group, clearPath ) )
                             {
-                                versionMetadataCache.remove( group.getKey() );
+                                cacheManager.removeAll( group.getKey() );
                             }
                         }
                         catch ( final IOException e )
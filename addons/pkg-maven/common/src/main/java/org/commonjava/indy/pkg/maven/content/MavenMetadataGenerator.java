@@ -20,11 +20,13 @@ import org.apache.maven.artifact.repository.metadata.Metadata;
 import org.apache.maven.artifact.repository.metadata.Versioning;
 import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Reader;
 import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Writer;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
 import org.commonjava.cdi.util.weft.ExecutorConfig;
 import org.commonjava.cdi.util.weft.Locker;
 import org.commonjava.cdi.util.weft.WeftExecutorService;
 import org.commonjava.cdi.util.weft.WeftManaged;
 import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.content.DirectContentAccess;
 import org.commonjava.indy.content.StoreResource;
 import org.commonjava.indy.core.content.AbstractMergedContentGenerator;
@@ -39,9 +41,9 @@ import org.commonjava.indy.data.StoreDataManager;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.Group;
 import org.commonjava.indy.model.core.StoreType;
-import org.commonjava.indy.pkg.maven.content.cache.MavenVersionMetadataCache;
+import org.commonjava.indy.pkg.maven.content.cache.MavenHostedVersionIndex;
+import org.commonjava.indy.pkg.maven.content.cache.MavenMetadataCacheManager;
 import org.commonjava.indy.pkg.maven.content.group.MavenMetadataProvider;
-import org.commonjava.indy.subsys.infinispan.CacheHandle;
 import org.commonjava.indy.util.LocationUtils;
 import org.commonjava.atlas.maven.ident.ref.SimpleTypeAndClassifier;
 import org.commonjava.atlas.maven.ident.ref.TypeAndClassifier;
@@ -75,6 +77,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -125,8 +128,13 @@ public class MavenMetadataGenerator
     private static final String CLASSIFIER = "classifier";
 
     @Inject
-    @MavenVersionMetadataCache
-    private CacheHandle<StoreKey, Map> versionMetadataCache;
+    private MavenMetadataCacheManager cacheManager;
+
+    @Inject
+    private MavenHostedVersionIndex versionIndex;
+
+    @Inject
+    private IndyConfiguration config;
 
     private static final Set<String> HANDLED_FILENAMES = Collections.unmodifiableSet( new HashSet<String>()
     {
@@ -225,6 +233,21 @@ public class MavenMetadataGenerator
                                        .getParent()
                                        .toString();
 
+        String toGenPath = path;
+        if ( !path.endsWith( MavenMetadataMerger.METADATA_NAME ) )
+        {
+            toGenPath = normalize( normalize( parentPath( toGenPath ) ), MavenMetadataMerger.METADATA_NAME );
+        }
+
+        if ( isIncrementalVersionMetadata( store, parentPath ) )
+        {
+            logger.debug( "Generating maven-metadata.xml for releases from version index, store: {}", store.getKey() );
+            generated = writeIndexedVersionMetadata( store, parentPath, toGenPath, eventMetadata );
+
+            logger.debug( "[Result] Generating maven-metadata.xml for store: {}, result: {}", store.getKey(), generated );
+            return generated ? fileManager.getTransfer( store, path ) : null;
+        }
+
         List<StoreResource> firstLevel;
         try
         {
@@ -243,12 +266,6 @@ public class MavenMetadataGenerator
         //            return null;
         //        }
 
-        String toGenPath = path;
-        if ( !path.endsWith( MavenMetadataMerger.METADATA_NAME ) )
-        {
-            toGenPath = normalize( normalize( parentPath( toGenPath ) ), MavenMetadataMerger.METADATA_NAME );
-        }
-
         ArtifactPathInfo snapshotPomInfo = null;
 
         if ( parentPath.endsWith( SnapshotUtils.LOCAL_SNAPSHOT_VERSION_PART ) )
@@ -407,39 +424,41 @@ public class MavenMetadataGenerator
                             "Regenerated Metadata for group {} of path {}: latest version: {}, versioning versions:{}",
                             group.getKey(), mergePath, versioning != null ? versioning.getLatest() : null,
                             versioning != null ? versioning.getVersions() : null );
-                    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
                     try
                     {
                         logger.trace( "Metadata file lost for group {} of path {}, will regenerate.", group.getKey(),
                                       path );
-                        new MetadataXpp3Writer().write( baos, md );
-
-                        final byte[] merged = baos.toByteArray();
-                        if ( merged != null )
+                        final byte[] merged = isStreamingMetadataMerge() ? null : renderMetadata( md );
+                        OutputStream fos = null;
+                        try
                         {
-                            OutputStream fos = null;
-                            try
+                            fos = target.openOutputStream( TransferOperation.GENERATE, true, eventMetadata );
+                            if ( merged != null )
                             {
-                                fos = target.openOutputStream( TransferOperation.GENERATE, true, eventMetadata );
                                 fos.write( merged );
                             }
-                            catch ( final IOException e )
+                            else
                             {
-                                throw new IndyWorkflowException( "Failed to write merged metadata to: {}.\nError: {}",
-                                                                 e, target, e.getMessage() );
-                            }
-                            finally
-                            {
-                                closeQuietly( fos );
+                                // serialize straight into the transfer rather than buffering the whole document
+                                new MetadataXpp3Writer().write( fos, md );
                             }
+                        }
+                        catch ( final IOException e )
+                        {
+                            throw new IndyWorkflowException( "Failed to write merged metadata to: {}.\nError: {}",
+                                                             e, target, e.getMessage() );
+                        }
+                        finally
+                        {
+                            closeQuietly( fos );
+                        }
 
-                            String mergeInfo = writeGroupMergeInfo( md, group, contributing, mergePath );
-                            eventMetadata.set( GROUP_METADATA_GENERATED, true );
-                            MetadataInfo info = new MetadataInfo( md );
-                            info.setMetadataMergeInfo( mergeInfo );
+                        String mergeInfo = writeGroupMergeInfo( md, group, contributing, mergePath );
+                        eventMetadata.set( GROUP_METADATA_GENERATED, true );
+                        MetadataInfo info = new MetadataInfo( md );
+                        info.setMetadataMergeInfo( mergeInfo );
 
-                            putToMetadataCache( group.getKey(), mergePath, info );
-                        }
+                        putToMetadataCache( group.getKey(), mergePath, info );
                     }
                     catch ( final IOException e )
                     {
@@ -659,26 +678,22 @@ public class MavenMetadataGenerator
         logger.trace( "Metadata: {} in group: {} was generated from members: {}", toMergePath, group.getKey(),
                       contributingMembers );
 
-        merger.mergeFromMetadatas( master, metas, group, toMergePath );
+        if ( isStreamingMetadataMerge() )
+        {
+            merger.mergeFromMetadatasIndexed( master, metas, group, toMergePath );
+        }
+        else
+        {
+            merger.mergeFromMetadatas( master, metas, group, toMergePath );
+        }
+
         return newMissing;
     }
 
     @Measure
     private void putToMetadataCache( StoreKey key, String toMergePath, MetadataInfo meta )
     {
-        synchronized ( versionMetadataCache )
-        {
-            Map<String, MetadataInfo> cacheMap = versionMetadataCache.get( key );
-            if ( cacheMap == null )
-            {
-                cacheMap = new HashMap<>();
-            }
-
-            cacheMap.put( toMergePath, meta );
-            versionMetadataCache.put( key, cacheMap );
-
-            logger.trace( "Cached metadata: {} for: {}", toMergePath, key );
-        }
+        cacheManager.put( key, toMergePath, meta );
     }
 
     @Measure
@@ -709,12 +724,9 @@ public class MavenMetadataGenerator
 
                     if ( exists( memberMetaTxfr ) )
                     {
-                        final MetadataXpp3Reader reader = new MetadataXpp3Reader();
-
                         try (InputStream in = memberMetaTxfr.openInputStream())
                         {
-                            String content = IOUtils.toString( in );
-                            Metadata memberMeta = reader.read( new StringReader( content ), false );
+                            Metadata memberMeta = readMetadata( in );
                             memberMetas.put( store.getKey(), memberMeta );
 
                             putToMetadataCache( store.getKey(), toMergePath, new MetadataInfo( memberMeta ) );
@@ -849,12 +861,9 @@ public class MavenMetadataGenerator
 
                     if ( exists( memberMetaTxfr ) )
                     {
-                        final MetadataXpp3Reader reader = new MetadataXpp3Reader();
-
                         try (InputStream in = memberMetaTxfr.openInputStream())
                         {
-                            String content = IOUtils.toString( in );
-                            Metadata memberMeta = reader.read( new StringReader( content ), false );
+                            Metadata memberMeta = readMetadata( in );
                             memberMetas.put( store.getKey(), memberMeta );
 
                             putToMetadataCache( store.getKey(), toMergePath, new MetadataInfo( memberMeta ) );
@@ -930,14 +939,7 @@ public class MavenMetadataGenerator
 
     private MetadataInfo getMetaInfoFromCache( final StoreKey key, final String path )
     {
-        Map<String, MetadataInfo> metadataMap = versionMetadataCache.get( key );
-
-        if ( metadataMap != null && !metadataMap.isEmpty() )
-        {
-            return metadataMap.get( path );
-        }
-
-        return null;
+        return cacheManager.get( key, path );
     }
 
     @Override
@@ -968,17 +970,102 @@ public class MavenMetadataGenerator
         return MavenMetadataMerger.METADATA_NAME;
     }
 
-    private boolean writeVersionMetadata( final List<StoreResource> firstLevelFiles, final ArtifactStore store,
-                                          final String path, final EventMetadata eventMetadata )
+    private boolean isStreamingMetadataMerge()
+    {
+        return config != null && config.isStreamingMetadataMerge();
+    }
+
+    /**
+     * Parse member metadata. In streaming mode the pull parser reads the transfer directly; otherwise the content is
+     * buffered into a String first, as it always has been.
+     */
+    private Metadata readMetadata( final InputStream in )
+            throws IOException, XmlPullParserException
+    {
+        final MetadataXpp3Reader reader = new MetadataXpp3Reader();
+        if ( isStreamingMetadataMerge() )
+        {
+            return reader.read( in, false );
+        }
+
+        String content = IOUtils.toString( in );
+        return reader.read( new StringReader( content ), false );
+    }
+
+    private byte[] renderMetadata( final Metadata md )
+            throws IOException
+    {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new MetadataXpp3Writer().write( baos, md );
+        return baos.toByteArray();
+    }
+
+    private boolean isIncrementalVersionMetadata( final ArtifactStore store, final String parentPath )
+    {
+        return config != null && versionIndex != null && config.isHostedMetadataIncremental()
+                && StoreType.hosted == store.getKey().getType()
+                && !parentPath.endsWith( SnapshotUtils.LOCAL_SNAPSHOT_VERSION_PART )
+                && StringUtils.strip( parentPath, "/" ).contains( "/" );
+    }
+
+    /**
+     * Write release-level metadata for a hosted GA from the version index, rebuilding the GA's index entry from a
+     * directory listing first if there isn't one.
+     */
+    private boolean writeIndexedVersionMetadata( final ArtifactStore store, final String gaPath, final String path,
+                                                 final EventMetadata eventMetadata )
         throws IndyWorkflowException
     {
-        ArtifactPathInfo samplePomInfo = null;
+        Set<String> known = versionIndex.getVersions( store.getKey(), gaPath );
+        if ( known == null )
+        {
+            logger.debug( "No indexed versions for: {} in: {}; rebuilding from disk", gaPath, store.getKey() );
 
-        logger.debug( "writeVersionMetadata, firstLevelFiles:{}, store:{}", firstLevelFiles, store.getKey() );
+            final long stamp = versionIndex.stamp( store.getKey(), gaPath );
+            try
+            {
+                known = findPomVersions( fileManager.listRaw( store, gaPath ), store ).keySet();
+            }
+            catch ( final IndyWorkflowException e )
+            {
+                logger.error( String.format( "SKIP: Failed to generate maven-metadata.xml from listing of directory contents for: %s under path: %s",
+                                             store, gaPath ), e );
+                return false;
+            }
 
+            if ( !known.isEmpty() )
+            {
+                versionIndex.putIfUnchanged( store.getKey(), gaPath, stamp, known );
+            }
+        }
+
+        if ( known.isEmpty() )
+        {
+            logger.debug( "writeIndexedVersionMetadata, versions is empty, store:{}", store.getKey() );
+            return false;
+        }
+
+        final List<SingleVersion> versions =
+                known.stream().map( VersionUtils::createSingleVersion ).collect( Collectors.toList() );
+
+        final String[] gaParts = StringUtils.strip( gaPath, "/" ).split( "/" );
+        final String artifactId = gaParts[gaParts.length - 1];
+        final String groupId = StringUtils.join( gaParts, '.', 0, gaParts.length - 1 );
+
+        return writeVersionMetadata( versions, groupId, artifactId, store, path, eventMetadata );
+    }
+
+    /**
+     * List each version directory in the first-level listing, and return the name of each one that contains a valid
+     * .pom file, mapped to that pom's path info.
+     */
+    private Map<String, ArtifactPathInfo> findPomVersions( final List<StoreResource> firstLevelFiles,
+                                                           final ArtifactStore store )
+        throws IndyWorkflowException
+    {
         // first level will contain version directories...for each directory, we need to verify the presence of a .pom file before including
         // as a valid version
-        final List<SingleVersion> versions = new ArrayList<>();
+        final Map<String, ArtifactPathInfo> versions = new LinkedHashMap<>();
         nextTopResource: for ( final StoreResource topResource : firstLevelFiles )
         {
             final String topPath = topResource.getPath();
@@ -994,12 +1081,7 @@ public class MavenMetadataGenerator
                         // check if the pom is valid for the path
                         if ( filePomInfo != null )
                         {
-                            versions.add( VersionUtils.createSingleVersion( new File( topPath ).getName() ) );
-                            if ( samplePomInfo == null )
-                            {
-                                samplePomInfo = filePomInfo;
-                            }
-
+                            versions.put( new File( topPath ).getName(), filePomInfo );
                             continue nextTopResource;
                         }
                     }
@@ -1007,12 +1089,38 @@ public class MavenMetadataGenerator
             }
         }
 
-        if ( versions.isEmpty() )
+        return versions;
+    }
+
+    private boolean writeVersionMetadata( final List<StoreResource> firstLevelFiles, final ArtifactStore store,
+                                          final String path, final EventMetadata eventMetadata )
+        throws IndyWorkflowException
+    {
+        logger.debug( "writeVersionMetadata, firstLevelFiles:{}, store:{}", firstLevelFiles, store.getKey() );
+
+        final Map<String, ArtifactPathInfo> pomVersions = findPomVersions( firstLevelFiles, store );
+        if ( pomVersions.isEmpty() )
         {
             logger.debug( "writeVersionMetadata, versions is empty, store:{}", store.getKey() );
             return false;
         }
 
+        final List<SingleVersion> versions = pomVersions.keySet()
+                                                        .stream()
+                                                        .map( VersionUtils::createSingleVersion )
+                                                        .collect( Collectors.toList() );
+
+        final ArtifactPathInfo samplePomInfo = pomVersions.values().iterator().next();
+
+        return writeVersionMetadata( versions, samplePomInfo.getGroupId(), samplePomInfo.getArtifactId(), store, path,
+                                     eventMetadata );
+    }
+
+    private boolean writeVersionMetadata( final List<SingleVersion> versions, final String groupId,
+                                          final String artifactId, final ArtifactStore store, final String path,
+                                          final EventMetadata eventMetadata )
+        throws IndyWorkflowException
+    {
         logger.debug( "writeVersionMetadata, versions: {}, store:{}", versions, store.getKey() );
 
         Collections.sort( versions );
@@ -1025,8 +1133,8 @@ public class MavenMetadataGenerator
                                     .newDocument();
 
             final Map<String, String> coordMap = new HashMap<>();
-            coordMap.put( ARTIFACT_ID, samplePomInfo == null ? null : samplePomInfo.getArtifactId() );
-            coordMap.put( GROUP_ID, samplePomInfo == null ? null : samplePomInfo.getGroupId() );
+            coordMap.put( ARTIFACT_ID, artifactId );
+            coordMap.put( GROUP_ID, groupId );
 
             final String lastUpdated = SnapshotUtils.generateUpdateTimestamp( SnapshotUtils.getCurrentTimestamp() );
 
@@ -19,15 +19,12 @@ import org.commonjava.indy.content.DirectContentAccess;
 import org.commonjava.indy.content.MergedContentAction;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.Group;
-import org.commonjava.indy.model.core.StoreKey;
-import org.commonjava.indy.pkg.maven.content.cache.MavenVersionMetadataCache;
-import org.commonjava.indy.subsys.infinispan.CacheHandle;
+import org.commonjava.indy.pkg.maven.content.cache.MavenMetadataCacheManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
-import java.util.Map;
 import java.util.Set;
 
 /**
@@ -46,8 +43,7 @@ public class MetadataMergeListener
     private DirectContentAccess fileManager;
 
     @Inject
-    @MavenVersionMetadataCache
-    private CacheHandle<StoreKey, Map> versionMetadataCache;
+    private MavenMetadataCacheManager cacheManager;
 
     /**
      * Will clear the both merge path and merge info file of member and group contains that member(cascaded)
@@ -56,21 +52,9 @@ public class MetadataMergeListener
     @Override
     public void clearMergedPath( ArtifactStore originatingStore, Set<Group> affectedGroups, String path )
     {
-        final Map<String, MetadataInfo> metadataMap = versionMetadataCache.get( originatingStore.getKey() );
-
-        if ( metadataMap != null && !metadataMap.isEmpty() )
+        if ( cacheManager.remove( originatingStore.getKey(), path ) != null )
         {
-            if ( metadataMap.get( path ) != null )
-            {
-                metadataMap.remove( path );
-                affectedGroups.forEach( group -> {
-                    final Map<String, MetadataInfo> grpMetaMap = versionMetadataCache.get( group.getKey() );
-                    if ( grpMetaMap != null && !grpMetaMap.isEmpty() )
-                    {
-                        grpMetaMap.remove( path );
-                    }
-                } );
-            }
+            affectedGroups.forEach( group -> cacheManager.remove( group.getKey(), path ) );
         }
     }
 
@@ -15,6 +15,7 @@
  */
 package org.commonjava.indy.pkg.maven.content;
 
+import org.commonjava.atlas.maven.ident.util.ArtifactPathInfo;
 import org.commonjava.indy.change.event.ArtifactStoreDeletePreEvent;
 import org.commonjava.indy.change.event.ArtifactStorePreUpdateEvent;
 import org.commonjava.indy.change.event.ArtifactStoreUpdateType;
@@ -25,10 +26,11 @@ import org.commonjava.indy.model.core.Group;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
 import org.commonjava.indy.model.galley.KeyedLocation;
-import org.commonjava.indy.pkg.maven.content.cache.MavenVersionMetadataCache;
-import org.commonjava.indy.subsys.infinispan.CacheHandle;
+import org.commonjava.indy.pkg.maven.content.cache.MavenHostedVersionIndex;
+import org.commonjava.indy.pkg.maven.content.cache.MavenMetadataCacheManager;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.event.FileDeletionEvent;
+import org.commonjava.maven.galley.event.FileStorageEvent;
 import org.commonjava.maven.galley.model.Location;
 import org.commonjava.maven.galley.model.Transfer;
 import org.slf4j.Logger;
@@ -37,6 +39,7 @@ import org.slf4j.LoggerFactory;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Observes;
 import javax.inject.Inject;
+import java.io.File;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -46,11 +49,13 @@ import java.util.stream.Stream;
 
 import static org.commonjava.indy.IndyContentConstants.CHECK_CACHE_ONLY;
 import static org.commonjava.indy.pkg.maven.content.group.MavenMetadataMerger.METADATA_NAME;
+import static org.commonjava.maven.galley.util.PathUtils.parentPath;
 
 /**
  * This listener will do these tasks:
  * <ul>
  *     <li>When there are member changes for a group, or some members disabled/enabled in a group, delete group metadata caches to force next regeneration of the metadata files of the group(cascaded)</li>
+ *     <li>When a pom is stored in / deleted from a hosted repo, update the version index used to generate its metadata incrementally</li>
  * </ul>
  */
 @ApplicationScoped
@@ -65,8 +70,10 @@ public class MetadataStoreListener
     private StoreDataManager storeManager;
 
     @Inject
-    @MavenVersionMetadataCache
-    private CacheHandle<StoreKey, Map> versionMetadataCache;
+    private MavenMetadataCacheManager cacheManager;
+
+    @Inject
+    private MavenHostedVersionIndex versionIndex;
 
     /**
      * Listen to an #{@link ArtifactStorePreUpdateEvent} and clear the metadata cache due to changed memeber in that event
@@ -93,9 +100,64 @@ public class MetadataStoreListener
         for ( ArtifactStore store : event )
         {
             removeMetadataCache( store );
+            if ( StoreType.hosted == store.getKey().getType() )
+            {
+                versionIndex.invalidateAll( store.getKey() );
+            }
         }
     }
 
+    /**
+     * Keep the hosted version index in step with pom uploads, so incrementally generated metadata includes the new
+     * version without re-listing the GA.
+     */
+    public void onPomStorage( @Observes final FileStorageEvent event )
+    {
+        Transfer transfer = event.getTransfer();
+        String versionPath = getHostedPomVersionPath( transfer );
+        if ( versionPath != null )
+        {
+            StoreKey key = ( (KeyedLocation) transfer.getLocation() ).getKey();
+            versionIndex.addVersion( key, parentPath( versionPath ), new File( versionPath ).getName() );
+        }
+    }
+
+    /**
+     * A deleted pom may or may not have been the last one for its version, so just drop the GA's version index entry
+     * and let the next generation rebuild it from disk.
+     */
+    public void onPomDeletion( @Observes final FileDeletionEvent event )
+    {
+        Transfer transfer = event.getTransfer();
+        String versionPath = getHostedPomVersionPath( transfer );
+        if ( versionPath != null )
+        {
+            StoreKey key = ( (KeyedLocation) transfer.getLocation() ).getKey();
+            versionIndex.invalidate( key, parentPath( versionPath ) );
+        }
+    }
+
+    private String getHostedPomVersionPath( final Transfer transfer )
+    {
+        if ( transfer == null || !transfer.getPath().endsWith( ".pom" ) )
+        {
+            return null;
+        }
+
+        Location loc = transfer.getLocation();
+        if ( !( loc instanceof KeyedLocation ) || StoreType.hosted != ( (KeyedLocation) loc ).getKey().getType() )
+        {
+            return null;
+        }
+
+        if ( ArtifactPathInfo.parse( transfer.getPath() ) == null )
+        {
+            return null;
+        }
+
+        return parentPath( transfer.getPath() );
+    }
+
     /**
      * Indy normally does not handle FileDeletionEvent when the cached metadata files were deleted due to store
      * enable/disable/delete, etc. Lately we add a force-deletion for group/remote-repo cache files. This requires to
@@ -223,7 +285,7 @@ public class MetadataStoreListener
     {
         logger.trace( "Removing cached metadata for: {}", store.getKey() );
 
-        versionMetadataCache.remove( store.getKey() );
+        cacheManager.removeAll( store.getKey() );
         try
         {
             storeManager.query().getGroupsAffectedBy( store.getKey() ).forEach( g -> clearGroupMetaCache( g, store ) );
@@ -236,19 +298,18 @@ public class MetadataStoreListener
 
     private void clearGroupMetaCache( final Group group, final ArtifactStore store )
     {
-        final Map<String, MetadataInfo> metadataMap = versionMetadataCache.get( group.getKey() );
+        final Set<String> cachedPaths = cacheManager.getCachedPaths( group.getKey() );
 
         Logger logger = LoggerFactory.getLogger( getClass() );
-        logger.trace( "Clearing metadata for group: {} on store update: {}\n{}", group.getKey(), store.getKey(), metadataMap );
+        logger.trace( "Clearing metadata for group: {} on store update: {}\n{}", group.getKey(), store.getKey(), cachedPaths );
 
-        if ( metadataMap == null || metadataMap.isEmpty() )
+        if ( cachedPaths.isEmpty() )
         {
             logger.trace( "No cached metadata for: {}", group.getKey() );
             return;
         }
 
-        String[] paths = new String[metadataMap.size()];
-        paths = metadataMap.keySet().toArray( paths );
+        String[] paths = cachedPaths.toArray( new String[cachedPaths.size()] );
 
         List<String> pathsList = Arrays.asList( paths );
 
@@ -261,7 +322,7 @@ public class MetadataStoreListener
         logger.trace( "Clearing cached, merged paths for: {} as a result of change in: {} (paths: {})", group.getKey(),
                       store.getKey(), pathsList );
 
-        versionMetadataCache.remove( group.getKey() );
+        cacheManager.removeAll( group.getKey() );
     }
 
 }
@@ -16,21 +16,28 @@
 package org.commonjava.indy.pkg.maven.content;
 
 import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.pkg.maven.content.cache.MetadataKey;
 import org.infinispan.persistence.keymappers.TwoWayKey2StringMapper;
 
+/**
+ * Maps keys of the maven metadata caches to strings for JDBC persistence. Current entries are keyed by
+ * {@link MetadataKey}; plain {@link StoreKey}s are still mapped so entries persisted before the cache was keyed per
+ * path can be loaded, and then discarded.
+ */
 public class StoreKey2StringMapper
         implements TwoWayKey2StringMapper
 {
     @Override
     public Object getKeyMapping( String stringKey )
     {
-        return StoreKey.fromString( stringKey );
+        MetadataKey key = MetadataKey.fromString( stringKey );
+        return key != null ? key : StoreKey.fromString( stringKey );
     }
 
     @Override
     public boolean isSupportedType( Class<?> keyType )
     {
-        return keyType == StoreKey.class;
+        return keyType == MetadataKey.class || keyType == StoreKey.class;
     }
 
     @Override
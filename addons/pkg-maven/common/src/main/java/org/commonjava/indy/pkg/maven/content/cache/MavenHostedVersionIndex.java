@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content.cache;
+
+import org.apache.commons.lang.StringUtils;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.subsys.infinispan.CacheHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+
+/**
+ * Persisted set of known versions per groupId:artifactId directory of a hosted repository, so release-level
+ * maven-metadata.xml can be rendered without listing every version directory.
+ * <p>
+ * An entry is either complete or absent. Entries are only created by {@link #putIfUnchanged(StoreKey, String, long, Set)}
+ * after a full listing from disk; storage events add versions to entries that already exist, and deletions drop the
+ * entry so the next generation rebuilds it. To stop a rebuild from storing a listing that missed a concurrent upload,
+ * every update bumps a stamp for the GA, and a rebuild is only stored if the stamp hasn't moved since it started.
+ */
+@ApplicationScoped
+public class MavenHostedVersionIndex
+{
+    private static final int STAMP_STRIPES = 1024;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    @MavenHostedVersionIndexCache
+    private CacheHandle<MetadataKey, HashSet> versionCache;
+
+    // striped rather than per GA; a collision only means a rebuild gets redone on the next request.
+    private final AtomicLongArray stamps = new AtomicLongArray( STAMP_STRIPES );
+
+    protected MavenHostedVersionIndex()
+    {
+    }
+
+    public MavenHostedVersionIndex( final CacheHandle<MetadataKey, HashSet> versionCache )
+    {
+        this.versionCache = versionCache;
+    }
+
+    /**
+     * Return the known versions for the GA directory, or null if they have to be rebuilt from disk.
+     */
+    @SuppressWarnings( "unchecked" )
+    public Set<String> getVersions( final StoreKey store, final String gaPath )
+    {
+        Set<String> versions = versionCache.get( key( store, gaPath ) );
+        return versions == null ? null : Collections.unmodifiableSet( versions );
+    }
+
+    /**
+     * Read the stamp for the GA before listing it from disk; pass it to {@link #putIfUnchanged(StoreKey, String, long, Set)}.
+     */
+    public long stamp( final StoreKey store, final String gaPath )
+    {
+        return stamps.get( stripe( key( store, gaPath ) ) );
+    }
+
+    /**
+     * Store versions rebuilt from disk, unless the GA was updated after <code>stamp</code> was read.
+     */
+    public boolean putIfUnchanged( final StoreKey store, final String gaPath, final long stamp,
+                                   final Set<String> versions )
+    {
+        final MetadataKey key = key( store, gaPath );
+        final HashSet<String> value = new HashSet<>( versions );
+        boolean stored = versionCache.execute( cache -> {
+            // checked inside the compute, so an update can't land between the check and the write.
+            HashSet result = cache.compute( key, ( k, existing ) -> stamps.get( stripe( k ) ) == stamp ? value : existing );
+            return result == value;
+        } );
+
+        logger.trace( "Rebuilt versions of: {} in: {} (stored: {}): {}", gaPath, store, stored, versions );
+        return stored;
+    }
+
+    /**
+     * Record a version added under the GA. This only updates entries that already exist.
+     */
+    @SuppressWarnings( "unchecked" )
+    public void addVersion( final StoreKey store, final String gaPath, final String version )
+    {
+        final MetadataKey key = key( store, gaPath );
+        versionCache.execute( cache -> cache.compute( key, ( k, existing ) -> {
+            stamps.incrementAndGet( stripe( k ) );
+            if ( existing == null || existing.contains( version ) )
+            {
+                return existing;
+            }
+
+            HashSet<String> updated = new HashSet<>( existing );
+            updated.add( version );
+            return updated;
+        } ) );
+    }
+
+    /**
+     * Drop the GA's entry, so the next generation rebuilds it from disk.
+     */
+    public void invalidate( final StoreKey store, final String gaPath )
+    {
+        final MetadataKey key = key( store, gaPath );
+        versionCache.execute( cache -> cache.compute( key, ( k, existing ) -> {
+            stamps.incrementAndGet( stripe( k ) );
+            return null;
+        } ) );
+    }
+
+    /**
+     * Drop every entry for the store (e.g. when it's deleted, so a new store with the same name starts clean).
+     */
+    public void invalidateAll( final StoreKey store )
+    {
+        List<MetadataKey> keys = versionCache.execute( cache -> cache.keySet()
+                                                                     .stream()
+                                                                     .filter( k -> store.equals( k.getStoreKey() ) )
+                                                                     .collect( Collectors.toList() ) );
+
+        keys.forEach( k -> invalidate( k.getStoreKey(), k.getPath() ) );
+        logger.debug( "Dropped {} indexed GA version sets for: {}", keys.size(), store );
+    }
+
+    private static MetadataKey key( final StoreKey store, final String gaPath )
+    {
+        return new MetadataKey( store, StringUtils.strip( gaPath, "/" ) );
+    }
+
+    private static int stripe( final MetadataKey key )
+    {
+        return ( key.hashCode() & Integer.MAX_VALUE ) % STAMP_STRIPES;
+    }
+}
@@ -0,0 +1,301 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content.cache;
+
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.pkg.maven.content.MetadataInfo;
+import org.commonjava.indy.subsys.infinispan.CacheHandle;
+import org.infinispan.Cache;
+import org.infinispan.commons.util.CloseableIterator;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntriesEvicted;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryExpired;
+import org.infinispan.notifications.cachelistener.event.CacheEntriesEvictedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryExpiredEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Front for the maven version-metadata cache. Entries are keyed per (store, path) with {@link MetadataKey}, so a write
+ * only touches the one entry it changes. A secondary index of cached paths per store lets whole-store clears (store
+ * updates / deletes, group membership changes) find that store's entries without scanning the cache.
+ * <p>
+ * Single-entry operations for a store share its read lock, so they run concurrently with each other; whole-store
+ * clears take the write lock, so an entry can't be written between a clear reading the index and removing the entries.
+ * Locks are striped by store key.
+ * <p>
+ * The index has to follow entries the cache drops on its own, too. Expired entries are always pruned from it; evicted
+ * ones only when the cache has no store behind it, since otherwise an evicted entry is still there to be loaded.
+ */
+@ApplicationScoped
+public class MavenMetadataCacheManager
+{
+    private static final int LOCK_STRIPES = 64;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    @MavenVersionMetadataCache
+    private CacheHandle<MetadataKey, MetadataInfo> metadataCache;
+
+    private final Map<StoreKey, Set<String>> pathsByStore = new ConcurrentHashMap<>();
+
+    private final ReadWriteLock[] locks = new ReadWriteLock[LOCK_STRIPES];
+
+    private final IndexPruner pruner = new IndexPruner();
+
+    protected MavenMetadataCacheManager()
+    {
+        for ( int i = 0; i < LOCK_STRIPES; i++ )
+        {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    public MavenMetadataCacheManager( final CacheHandle<MetadataKey, MetadataInfo> metadataCache )
+    {
+        this();
+        this.metadataCache = metadataCache;
+        start();
+    }
+
+    /**
+     * Rebuild the per-store index from whatever the cache already holds (e.g. preloaded from a persistent store), one
+     * key at a time rather than copying the key set. Any entry left over from the old store-keyed layout can't be used
+     * any more, so it's dropped here. Then start following evictions and expirations.
+     */
+    @PostConstruct
+    public void start()
+    {
+        List<Object> legacy = new ArrayList<>();
+        int indexed = metadataCache.executeCache( cache -> {
+            int count = 0;
+            try ( CloseableIterator<?> keys = ( (Cache<?, ?>) cache ).keySet().iterator() )
+            {
+                while ( keys.hasNext() )
+                {
+                    Object key = keys.next();
+                    if ( key instanceof MetadataKey )
+                    {
+                        MetadataKey mk = (MetadataKey) key;
+                        index( mk.getStoreKey() ).add( mk.getPath() );
+                        count++;
+                    }
+                    else
+                    {
+                        legacy.add( key );
+                    }
+                }
+            }
+
+            return count;
+        } );
+
+        legacy.forEach( key -> metadataCache.execute( cache -> cache.remove( key ) ) );
+
+        logger.debug( "Indexed {} cached metadata entries for {} stores; dropped {} legacy entries.", indexed,
+                      pathsByStore.size(), legacy.size() );
+
+        metadataCache.executeCache( cache -> {
+            pruner.evictionLosesEntries = !cache.getCacheConfiguration().persistence().usingStores();
+            cache.addListener( pruner );
+            return null;
+        } );
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        metadataCache.executeCache( cache -> {
+            cache.removeListener( pruner );
+            return null;
+        } );
+    }
+
+    public MetadataInfo get( final StoreKey key, final String path )
+    {
+        return metadataCache.get( new MetadataKey( key, path ) );
+    }
+
+    public void put( final StoreKey key, final String path, final MetadataInfo info )
+    {
+        Lock lock = lockFor( key ).readLock();
+        lock.lock();
+        try
+        {
+            index( key ).add( path );
+            metadataCache.put( new MetadataKey( key, path ), info );
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        logger.trace( "Cached metadata: {} for: {}", path, key );
+    }
+
+    /**
+     * Remove one cached path for the store, returning whatever was cached there.
+     */
+    public MetadataInfo remove( final StoreKey key, final String path )
+    {
+        Lock lock = lockFor( key ).readLock();
+        lock.lock();
+        try
+        {
+            MetadataInfo removed = metadataCache.remove( new MetadataKey( key, path ) );
+
+            // leave an emptied set in place; dropping it here could orphan a path being added by a concurrent put().
+            Set<String> paths = pathsByStore.get( key );
+            if ( paths != null )
+            {
+                paths.remove( path );
+            }
+
+            return removed;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove every cached path for the store, returning the paths that were cached.
+     */
+    public Set<String> removeAll( final StoreKey key )
+    {
+        Lock lock = lockFor( key ).writeLock();
+        lock.lock();
+        try
+        {
+            Set<String> paths = pathsByStore.remove( key );
+            if ( paths == null )
+            {
+                return Collections.emptySet();
+            }
+
+            paths.forEach( path -> metadataCache.remove( new MetadataKey( key, path ) ) );
+            logger.trace( "Removed {} cached metadata paths for: {}", paths.size(), key );
+
+            return paths;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return a snapshot of the paths currently cached for the store.
+     */
+    public Set<String> getCachedPaths( final StoreKey key )
+    {
+        Set<String> paths = pathsByStore.get( key );
+        return paths == null ? Collections.emptySet() : new HashSet<>( paths );
+    }
+
+    /**
+     * Drop paths from the index once the cache no longer holds them. This takes the store's write lock, so it can't
+     * drop a path a concurrent put() has just re-added; the containment check then sees the new entry.
+     */
+    private void unindex( final Collection<?> keys )
+    {
+        for ( Object k : keys )
+        {
+            if ( !( k instanceof MetadataKey ) )
+            {
+                continue;
+            }
+
+            MetadataKey key = (MetadataKey) k;
+            Lock lock = lockFor( key.getStoreKey() ).writeLock();
+            lock.lock();
+            try
+            {
+                Set<String> paths = pathsByStore.get( key.getStoreKey() );
+                if ( paths != null && !metadataCache.execute( cache -> cache.containsKey( key ) ) )
+                {
+                    paths.remove( key.getPath() );
+                    if ( paths.isEmpty() )
+                    {
+                        pathsByStore.remove( key.getStoreKey() );
+                    }
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        logger.trace( "Pruned {} evicted or expired metadata paths from the index", keys.size() );
+    }
+
+    private Set<String> index( final StoreKey key )
+    {
+        return pathsByStore.computeIfAbsent( key, k -> ConcurrentHashMap.newKeySet() );
+    }
+
+    private ReadWriteLock lockFor( final StoreKey key )
+    {
+        return locks[( key.hashCode() & Integer.MAX_VALUE ) % LOCK_STRIPES];
+    }
+
+    /**
+     * Asynchronous, so pruning (which takes store locks and checks the cache) never runs on a thread that is in the
+     * middle of a cache write.
+     */
+    @Listener( sync = false )
+    public final class IndexPruner
+    {
+        private volatile boolean evictionLosesEntries;
+
+        @CacheEntriesEvicted
+        public void evicted( final CacheEntriesEvictedEvent<MetadataKey, MetadataInfo> event )
+        {
+            if ( evictionLosesEntries )
+            {
+                unindex( event.getEntries().keySet() );
+            }
+        }
+
+        @CacheEntryExpired
+        public void expired( final CacheEntryExpiredEvent<MetadataKey, MetadataInfo> event )
+        {
+            if ( !event.isPre() )
+            {
+                unindex( Collections.singleton( event.getKey() ) );
+            }
+        }
+    }
+}
@@ -15,14 +15,14 @@
  */
 package org.commonjava.indy.pkg.maven.content.cache;
 
-import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.pkg.maven.content.MetadataInfo;
 import org.commonjava.indy.subsys.datafile.conf.DataFileConfiguration;
 import org.commonjava.indy.subsys.infinispan.CacheHandle;
 import org.commonjava.indy.subsys.infinispan.CacheProducer;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Produces;
 import javax.inject.Inject;
-import java.util.Map;
+import java.util.HashSet;
 
 @ApplicationScoped
 public class MetadataCacheProducer
@@ -37,8 +37,16 @@ public class MetadataCacheProducer
     @MavenVersionMetadataCache
     @Produces
     @ApplicationScoped
-    public CacheHandle<StoreKey, Map> mavenVersionMetaCacheCfg()
+    public CacheHandle<MetadataKey, MetadataInfo> mavenVersionMetaCacheCfg()
     {
         return cacheProducer.getCache( "maven-version-metadata-cache" );
     }
+
+    @MavenHostedVersionIndexCache
+    @Produces
+    @ApplicationScoped
+    public CacheHandle<MetadataKey, HashSet> mavenHostedVersionIndexCfg()
+    {
+        return cacheProducer.getCache( "maven-hosted-version-index" );
+    }
 }
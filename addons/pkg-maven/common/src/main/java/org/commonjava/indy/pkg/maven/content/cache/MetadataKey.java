@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content.cache;
+
+import org.commonjava.indy.model.core.StoreKey;
+
+import java.io.Serializable;
+
+/**
+ * Key of one cached metadata file: the store it was generated (or read) for, plus its path. Keying the cache per path
+ * rather than per store means updating one file's metadata never has to read and re-write the rest of the store's.
+ */
+public final class MetadataKey
+        implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    static final char SEPARATOR = '#';
+
+    private final StoreKey storeKey;
+
+    private final String path;
+
+    public MetadataKey( final StoreKey storeKey, final String path )
+    {
+        this.storeKey = storeKey;
+        this.path = path;
+    }
+
+    public StoreKey getStoreKey()
+    {
+        return storeKey;
+    }
+
+    public String getPath()
+    {
+        return path;
+    }
+
+    /**
+     * Parse the form produced by {@link #toString()}, or return null if the value isn't in that form.
+     */
+    public static MetadataKey fromString( final String value )
+    {
+        int idx = value.indexOf( SEPARATOR );
+        if ( idx < 0 )
+        {
+            return null;
+        }
+
+        return new MetadataKey( StoreKey.fromString( value.substring( 0, idx ) ), value.substring( idx + 1 ) );
+    }
+
+    @Override
+    public boolean equals( final Object o )
+    {
+        if ( this == o )
+        {
+            return true;
+        }
+        if ( o == null || getClass() != o.getClass() )
+        {
+            return false;
+        }
+
+        final MetadataKey that = (MetadataKey) o;
+        return storeKey.equals( that.storeKey ) && path.equals( that.path );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * storeKey.hashCode() + path.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return storeKey.toString() + SEPARATOR + path;
+    }
+}
@@ -29,8 +29,10 @@ import javax.enterprise.context.ApplicationScoped;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @ApplicationScoped
@@ -97,37 +99,91 @@ public class MavenMetadataMerger
 
             master.merge( src );
 
-            Versioning versioning = master.getVersioning();
-            Versioning mdVersioning = src.getVersioning();
+            mergeSnapshot( master, src, group, path );
 
-            // FIXME: Should we try to merge snapshot lists instead of using the first one we encounter??
-            if ( versioning.getSnapshot() == null && mdVersioning != null )
+            merged = true;
+        }
+
+        if ( merged )
+        {
+            return master;
+        }
+
+        return null;
+    }
+
+    /**
+     * Same result as {@link #mergeFromMetadatas(Metadata, Collection, Group, String)}, including the changes
+     * {@link Metadata#merge(Metadata)} makes to each source's lastUpdated, but versions are de-duplicated with a hash
+     * set instead of {@link List#contains(Object)}. That makes merging N versions from M members O(N * M) cheaper,
+     * which matters for GAs with long version lists in big groups.
+     */
+    public Metadata mergeFromMetadatasIndexed( final Metadata master, final Collection<Metadata> sources,
+                                               final Group group, final String path )
+    {
+        Logger logger = LoggerFactory.getLogger( getClass() );
+        logger.debug( "Generating merged metadata (indexed) in: {}:{}", group.getKey(), path );
+
+        if ( master.getVersioning() == null )
+        {
+            master.setVersioning( new Versioning() );
+        }
+
+        final List<String> versions = master.getVersioning().getVersions();
+        final Set<String> seen = new HashSet<>( versions );
+
+        boolean merged = false;
+        for ( final Metadata src : sources )
+        {
+            logger.trace( "Adding in metadata content from: {}", src );
+
+            if ( src.getGroupId() != null )
+            {
+                master.setGroupId( src.getGroupId() );
+            }
+
+            if ( src.getArtifactId() != null )
+            {
+                master.setArtifactId( src.getArtifactId() );
+            }
+
+            if ( src.getVersion() != null )
             {
-                logger.trace( "INCLUDING snapshot information from: {} in: {}:{}", src, group.getKey(), path );
+                master.setVersion( src.getVersion() );
+            }
 
-                versioning.setSnapshot( mdVersioning.getSnapshot() );
+            // let Metadata.merge() handle everything except the version list, which is the expensive part.
+            final Versioning srcVersioning = src.getVersioning();
+            final Metadata view = new Metadata();
+            view.setPlugins( src.getPlugins() );
+            if ( srcVersioning != null )
+            {
+                final Versioning viewVersioning = new Versioning();
+                viewVersioning.setLastUpdated( srcVersioning.getLastUpdated() );
+                viewVersioning.setLatest( srcVersioning.getLatest() );
+                viewVersioning.setRelease( srcVersioning.getRelease() );
+                viewVersioning.setSnapshot( srcVersioning.getSnapshot() );
+                view.setVersioning( viewVersioning );
+            }
+
+            master.merge( view );
+
+            if ( srcVersioning != null )
+            {
+                // merge() normalizes the source's lastUpdated; keep doing that, since sources may be cached and re-merged.
+                srcVersioning.setLastUpdated( view.getVersioning().getLastUpdated() );
 
-                final List<SnapshotVersion> snapshotVersions = versioning.getSnapshotVersions();
-                boolean added = false;
-                for ( final SnapshotVersion snap : mdVersioning.getSnapshotVersions() )
+                for ( final String version : srcVersioning.getVersions() )
                 {
-                    if ( !snapshotVersions.contains( snap ) )
+                    if ( seen.add( version ) )
                     {
-                        snapshotVersions.add( snap );
-                        added = true;
+                        versions.add( version );
                     }
                 }
-
-                if ( added )
-                {
-                    snapshotVersions.sort( new SnapshotVersionComparator() );
-                }
-            }
-            else
-            {
-                logger.warn( "SKIPPING snapshot information from: {} in: {}:{})", src, group.getKey(), path );
             }
 
+            mergeSnapshot( master, src, group, path );
+
             merged = true;
         }
 
@@ -139,6 +195,42 @@ public class MavenMetadataMerger
         return null;
     }
 
+    private void mergeSnapshot( final Metadata master, final Metadata src, final Group group, final String path )
+    {
+        Logger logger = LoggerFactory.getLogger( getClass() );
+
+        Versioning versioning = master.getVersioning();
+        Versioning mdVersioning = src.getVersioning();
+
+        // FIXME: Should we try to merge snapshot lists instead of using the first one we encounter??
+        if ( versioning.getSnapshot() == null && mdVersioning != null )
+        {
+            logger.trace( "INCLUDING snapshot information from: {} in: {}:{}", src, group.getKey(), path );
+
+            versioning.setSnapshot( mdVersioning.getSnapshot() );
+
+            final List<SnapshotVersion> snapshotVersions = versioning.getSnapshotVersions();
+            boolean added = false;
+            for ( final SnapshotVersion snap : mdVersioning.getSnapshotVersions() )
+            {
+                if ( !snapshotVersions.contains( snap ) )
+                {
+                    snapshotVersions.add( snap );
+                    added = true;
+                }
+            }
+
+            if ( added )
+            {
+                snapshotVersions.sort( new SnapshotVersionComparator() );
+            }
+        }
+        else
+        {
+            logger.warn( "SKIPPING snapshot information from: {} in: {}:{})", src, group.getKey(), path );
+        }
+    }
+
     public void sortVersions( Metadata metadata )
     {
         Versioning versioning = metadata.getVersioning();
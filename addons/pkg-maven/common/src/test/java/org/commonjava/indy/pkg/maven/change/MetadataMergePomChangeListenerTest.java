@@ -0,0 +1,200 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.change;
+
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.commonjava.cdi.util.weft.PoolWeftExecutorService;
+import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.change.event.ContentBatchStoredEvent;
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.content.DownloadManager;
+import org.commonjava.indy.content.IndyLocationExpander;
+import org.commonjava.indy.core.content.DefaultDownloadManager;
+import org.commonjava.indy.core.inject.ExpiringMemoryNotFoundCache;
+import org.commonjava.indy.mem.data.MemoryStoreDataManager;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.pkg.maven.content.MetadataInfo;
+import org.commonjava.indy.pkg.maven.content.cache.MavenMetadataCacheManager;
+import org.commonjava.indy.pkg.maven.content.cache.MetadataKey;
+import org.commonjava.indy.subsys.infinispan.CacheHandle;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.testing.maven.GalleyMavenFixture;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.commonjava.indy.IndyContentConstants.BATCH_STORE_MAINTENANCE;
+import static org.commonjava.indy.pkg.maven.content.group.MavenMetadataMerger.METADATA_NAME;
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class MetadataMergePomChangeListenerTest
+{
+    private static final String FOO_METADATA = "org/foo/foo/" + METADATA_NAME;
+
+    private static final String BAR_METADATA = "org/bar/bar/" + METADATA_NAME;
+
+    @Rule
+    public GalleyMavenFixture fixture = new GalleyMavenFixture();
+
+    private static EmbeddedCacheManager ispnManager;
+
+    private static Cache<Object, Object> cache;
+
+    private DownloadManager downloads;
+
+    private MavenMetadataCacheManager cacheManager;
+
+    private MetadataMergePomChangeListener listener;
+
+    private final HostedRepository target = new HostedRepository( MAVEN_PKG_KEY, "target" );
+
+    private final Group group = new Group( MAVEN_PKG_KEY, "public", target.getKey() );
+
+    private final Group other = new Group( MAVEN_PKG_KEY, "other" );
+
+    @BeforeClass
+    public static void setupClass()
+    {
+        ispnManager = new DefaultCacheManager( new ConfigurationBuilder().simpleCache( true ).build() );
+        cache = ispnManager.getCache( "maven-version-metadata-cache", true );
+    }
+
+    @AfterClass
+    public static void teardownClass()
+    {
+        ispnManager.stop();
+    }
+
+    @Before
+    @SuppressWarnings( "unchecked" )
+    public void setup()
+            throws Exception
+    {
+        MemoryStoreDataManager stores = new MemoryStoreDataManager( true );
+        for ( ArtifactStore store : Arrays.asList( target, group, other ) )
+        {
+            stores.storeArtifactStore( store, new ChangeSummary( "test-user", "test" ), false, true,
+                                       new EventMetadata() );
+        }
+
+        DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+        downloads = new DefaultDownloadManager( stores, fixture.getTransferManager(),
+                                                new IndyLocationExpander( stores ), null,
+                                                new ExpiringMemoryNotFoundCache( config ),
+                                                new PoolWeftExecutorService( "test-rescan-executor", pool, 2, 10f, null,
+                                                                             null ) );
+
+        Cache<MetadataKey, MetadataInfo> typed = (Cache) cache;
+        cacheManager = new MavenMetadataCacheManager( new CacheHandle<>( "maven-version-metadata-cache", typed ) );
+
+        listener = new MetadataMergePomChangeListener( stores, downloads, null, cacheManager );
+    }
+
+    @After
+    public void teardown()
+    {
+        cache.clear();
+    }
+
+    @Test
+    public void onBatchStoredEvent_ClearsMergedMetadataOfStoredPomsInStoreAndAffectedGroups()
+            throws Exception
+    {
+        for ( ArtifactStore store : Arrays.asList( target, group, other ) )
+        {
+            writeMetadata( store, FOO_METADATA );
+            writeMetadata( store, BAR_METADATA );
+        }
+
+        listener.onBatchStoredEvent( event( target, "/org/foo/foo/1/foo-1.pom", "/org/foo/foo/2/foo-2.pom",
+                                            "/org/foo/foo/2/foo-2.jar", "/org/bar/bar/1/bar-1.jar" ) );
+
+        for ( ArtifactStore store : Arrays.asList( target, group ) )
+        {
+            assertThat( store.getKey() + " foo", exists( store, FOO_METADATA ), equalTo( false ) );
+            assertThat( store.getKey() + " foo info", exists( store, FOO_METADATA + ".info" ), equalTo( false ) );
+            assertThat( store.getKey() + " bar", exists( store, BAR_METADATA ), equalTo( true ) );
+            assertThat( cacheManager.get( store.getKey(), BAR_METADATA ), nullValue() );
+        }
+
+        assertThat( exists( other, FOO_METADATA ), equalTo( true ) );
+        assertThat( cacheManager.get( other.getKey(), FOO_METADATA ), notNullValue() );
+    }
+
+    @Test
+    public void onBatchStoredEvent_NotHosted_Ignored()
+            throws Exception
+    {
+        RemoteRepository remote = new RemoteRepository( MAVEN_PKG_KEY, "remote", "http://foo.com/repo" );
+        writeMetadata( group, FOO_METADATA );
+
+        listener.onBatchStoredEvent( event( remote, "/org/foo/foo/1/foo-1.pom" ) );
+
+        assertThat( exists( group, FOO_METADATA ), equalTo( true ) );
+        assertThat( cacheManager.get( group.getKey(), FOO_METADATA ), notNullValue() );
+    }
+
+    private ContentBatchStoredEvent event( final ArtifactStore store, final String... paths )
+    {
+        return new ContentBatchStoredEvent( new EventMetadata().set( BATCH_STORE_MAINTENANCE, Boolean.TRUE ), store,
+                                            Collections.singleton( group ),
+                                            new LinkedHashSet<>( Arrays.asList( paths ) ) );
+    }
+
+    private void writeMetadata( final ArtifactStore store, final String path )
+            throws Exception
+    {
+        for ( String p : Arrays.asList( path, path + ".info" ) )
+        {
+            Transfer transfer = downloads.getStorageReference( store, p );
+            try (OutputStream out = transfer.openOutputStream( TransferOperation.UPLOAD, false ))
+            {
+                out.write( "<metadata/>".getBytes() );
+            }
+        }
+
+        cacheManager.put( store.getKey(), path, new MetadataInfo( new Metadata() ) );
+    }
+
+    private boolean exists( final ArtifactStore store, final String path )
+    {
+        return downloads.getStorageReference( store, path ).exists();
+    }
+}
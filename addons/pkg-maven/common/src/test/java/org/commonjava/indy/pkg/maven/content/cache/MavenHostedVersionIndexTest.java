@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content.cache;
+
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.subsys.infinispan.CacheHandle;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class MavenHostedVersionIndexTest
+{
+    private static final String GA = "org/foo/bar";
+
+    private static EmbeddedCacheManager ispnManager;
+
+    private static Cache<MetadataKey, HashSet> cache;
+
+    private final StoreKey hosted = new StoreKey( MAVEN_PKG_KEY, StoreType.hosted, "local" );
+
+    private MavenHostedVersionIndex index;
+
+    @BeforeClass
+    public static void setupClass()
+    {
+        ispnManager = new DefaultCacheManager( new ConfigurationBuilder().simpleCache( true ).build() );
+        cache = ispnManager.getCache( "maven-hosted-version-index", true );
+    }
+
+    @Before
+    public void setup()
+    {
+        index = new MavenHostedVersionIndex( new CacheHandle<>( "maven-hosted-version-index", cache ) );
+    }
+
+    @After
+    public void teardown()
+    {
+        cache.clear();
+    }
+
+    @Test
+    public void addVersionOnlyUpdatesRebuiltEntries()
+    {
+        index.addVersion( hosted, GA, "1.0" );
+        assertThat( index.getVersions( hosted, GA ), nullValue() );
+
+        long stamp = index.stamp( hosted, GA );
+        index.putIfUnchanged( hosted, GA, stamp, new HashSet<>( Arrays.asList( "1.0" ) ) );
+        index.addVersion( hosted, "/" + GA + "/", "1.1" );
+
+        assertThat( index.getVersions( hosted, GA ), equalTo( new HashSet<>( Arrays.asList( "1.0", "1.1" ) ) ) );
+    }
+
+    @Test
+    public void rebuildRacingAnUploadIsNotStored()
+    {
+        long stamp = index.stamp( hosted, GA );
+
+        // upload lands after the rebuild started listing, so the listing below may have missed it
+        index.addVersion( hosted, GA, "1.1" );
+
+        assertThat( index.putIfUnchanged( hosted, GA, stamp, new HashSet<>( Arrays.asList( "1.0" ) ) ),
+                    equalTo( false ) );
+        assertThat( index.getVersions( hosted, GA ), nullValue() );
+    }
+
+    @Test
+    public void invalidateAllDropsOnlyThatStore()
+    {
+        StoreKey other = new StoreKey( MAVEN_PKG_KEY, StoreType.hosted, "other" );
+        index.putIfUnchanged( hosted, GA, index.stamp( hosted, GA ), new HashSet<>( Arrays.asList( "1.0" ) ) );
+        index.putIfUnchanged( other, GA, index.stamp( other, GA ), new HashSet<>( Arrays.asList( "2.0" ) ) );
+
+        index.invalidateAll( hosted );
+
+        assertThat( index.getVersions( hosted, GA ), nullValue() );
+        assertThat( index.getVersions( other, GA ), equalTo( new HashSet<>( Arrays.asList( "2.0" ) ) ) );
+    }
+}
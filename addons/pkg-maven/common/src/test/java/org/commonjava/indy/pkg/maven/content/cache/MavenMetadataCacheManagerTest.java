@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content.cache;
+
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.pkg.maven.content.MetadataInfo;
+import org.commonjava.indy.subsys.infinispan.CacheHandle;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.eviction.EvictionStrategy;
+import org.infinispan.eviction.EvictionType;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class MavenMetadataCacheManagerTest
+{
+    private static final String PATH_A = "org/foo/a/maven-metadata.xml";
+
+    private static final String PATH_B = "org/foo/b/maven-metadata.xml";
+
+    private static EmbeddedCacheManager ispnManager;
+
+    private static Cache<Object, Object> cache;
+
+    private final StoreKey group = new StoreKey( MAVEN_PKG_KEY, StoreType.group, "public" );
+
+    private final StoreKey hosted = new StoreKey( MAVEN_PKG_KEY, StoreType.hosted, "local" );
+
+    @BeforeClass
+    public static void setupClass()
+    {
+        ispnManager = new DefaultCacheManager( new ConfigurationBuilder().simpleCache( true ).build() );
+        cache = ispnManager.getCache( "maven-version-metadata-cache", true );
+    }
+
+    @After
+    public void teardown()
+    {
+        cache.clear();
+    }
+
+    @Test
+    public void removeAllClearsOnlyThatStore()
+    {
+        MavenMetadataCacheManager manager = newManager();
+        manager.put( group, PATH_A, new MetadataInfo( new Metadata() ) );
+        manager.put( group, PATH_B, new MetadataInfo( new Metadata() ) );
+        manager.put( hosted, PATH_A, new MetadataInfo( new Metadata() ) );
+
+        assertThat( manager.getCachedPaths( group ), equalTo( new HashSet<>( Arrays.asList( PATH_A, PATH_B ) ) ) );
+
+        manager.removeAll( group );
+
+        assertThat( manager.get( group, PATH_A ), nullValue() );
+        assertThat( manager.get( group, PATH_B ), nullValue() );
+        assertThat( manager.getCachedPaths( group ).isEmpty(), equalTo( true ) );
+        assertThat( manager.get( hosted, PATH_A ), notNullValue() );
+    }
+
+    @Test
+    public void removeOnePathLeavesTheRest()
+    {
+        MavenMetadataCacheManager manager = newManager();
+        manager.put( group, PATH_A, new MetadataInfo( new Metadata() ) );
+        manager.put( group, PATH_B, new MetadataInfo( new Metadata() ) );
+
+        assertThat( manager.remove( group, PATH_A ), notNullValue() );
+        assertThat( manager.remove( group, PATH_A ), nullValue() );
+
+        assertThat( manager.get( group, PATH_B ), notNullValue() );
+        assertThat( manager.getCachedPaths( group ), equalTo( new HashSet<>( Arrays.asList( PATH_B ) ) ) );
+    }
+
+    @Test
+    public void startIndexesExistingEntriesAndDropsLegacyOnes()
+    {
+        cache.put( new MetadataKey( group, PATH_A ), new MetadataInfo( new Metadata() ) );
+        cache.put( hosted, new HashSet<>() );
+
+        MavenMetadataCacheManager manager = newManager();
+
+        assertThat( cache.containsKey( hosted ), equalTo( false ) );
+        assertThat( manager.getCachedPaths( group ), equalTo( new HashSet<>( Arrays.asList( PATH_A ) ) ) );
+
+        manager.removeAll( group );
+        assertThat( cache.isEmpty(), equalTo( true ) );
+    }
+
+    @Test
+    public void evictedEntriesArePrunedFromTheIndex()
+            throws Exception
+    {
+        ispnManager.defineConfiguration( "evicting-metadata-cache",
+                                         new ConfigurationBuilder().eviction()
+                                                                   .strategy( EvictionStrategy.LRU )
+                                                                   .type( EvictionType.COUNT )
+                                                                   .size( 2 )
+                                                                   .build() );
+        Cache<MetadataKey, MetadataInfo> evicting = ispnManager.getCache( "evicting-metadata-cache", true );
+        MavenMetadataCacheManager manager =
+                new MavenMetadataCacheManager( new CacheHandle<>( "evicting-metadata-cache", evicting ) );
+        try
+        {
+            for ( int i = 0; i < 10; i++ )
+            {
+                manager.put( group, "org/foo/" + i + "/maven-metadata.xml", new MetadataInfo( new Metadata() ) );
+            }
+
+            // pruning happens on the listener's own thread
+            long deadline = System.currentTimeMillis() + 10000;
+            while ( manager.getCachedPaths( group ).size() > evicting.size() && System.currentTimeMillis() < deadline )
+            {
+                Thread.sleep( 50 );
+            }
+
+            assertThat( manager.getCachedPaths( group ).size(), equalTo( evicting.size() ) );
+            for ( String path : manager.getCachedPaths( group ) )
+            {
+                assertThat( manager.get( group, path ), notNullValue() );
+            }
+        }
+        finally
+        {
+            manager.stop();
+            evicting.clear();
+        }
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private MavenMetadataCacheManager newManager()
+    {
+        Cache<MetadataKey, MetadataInfo> typed = (Cache) cache;
+        return new MavenMetadataCacheManager( new CacheHandle<>( "maven-version-metadata-cache", typed ) );
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content.group;
+
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Reader;
+import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Writer;
+import org.commonjava.indy.model.core.Group;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class MavenMetadataMergerIndexedTest
+{
+    private static final String PATH = "org/foo/bar/maven-metadata.xml";
+
+    private final Group group = new Group( MAVEN_PKG_KEY, "test-group" );
+
+    @Test
+    public void overlappingVersionsMergeTheSame()
+            throws Exception
+    {
+        assertSameMerge( versionMeta( "20180101000000", "1.1", "1.0", "1.1" ),
+                         versionMeta( "20180201000000", "1.2", "1.1", "1.2" ),
+                         versionMeta( "20170101000000", "1.0", "0.9", "1.0" ) );
+    }
+
+    @Test
+    public void missingAndEmptyLastUpdatedMergeTheSame()
+            throws Exception
+    {
+        assertSameMerge( versionMeta( "", "1.0", "1.0" ), versionMeta( null, "2.0", "2.0", "1.0" ),
+                         versionMeta( "20180101000000", "1.5", "1.5" ), versionMeta( "", "3.0", "3.0" ) );
+    }
+
+    @Test
+    public void snapshotsAndPluginsMergeTheSame()
+            throws Exception
+    {
+        String snapshot = "<metadata><groupId>org.foo</groupId><artifactId>bar</artifactId><version>1.0-SNAPSHOT</version>"
+                + "<versioning><snapshot><timestamp>20180101.000000</timestamp><buildNumber>%d</buildNumber></snapshot>"
+                + "<lastUpdated>%s</lastUpdated><snapshotVersions><snapshotVersion><extension>jar</extension>"
+                + "<value>1.0-20180101.000000-%d</value><updated>%s</updated></snapshotVersion></snapshotVersions>"
+                + "</versioning></metadata>";
+
+        String plugins = "<metadata><plugins><plugin><name>Foo</name><prefix>foo</prefix><artifactId>foo-plugin</artifactId>"
+                + "</plugin><plugin><name>Bar</name><prefix>%s</prefix><artifactId>bar-plugin</artifactId></plugin>"
+                + "</plugins></metadata>";
+
+        assertSameMerge( String.format( snapshot, 1, "20180101000000", 1, "20180101000000" ),
+                         String.format( snapshot, 2, "20180102000000", 2, "20180102000000" ),
+                         String.format( plugins, "bar" ), String.format( plugins, "baz" ) );
+    }
+
+    private void assertSameMerge( final String... sourceXml )
+            throws Exception
+    {
+        List<Metadata> plainSources = parse( sourceXml );
+        Metadata plain = new Metadata();
+        new MavenMetadataMerger().mergeFromMetadatas( plain, plainSources, group, PATH );
+
+        List<Metadata> indexedSources = parse( sourceXml );
+        Metadata indexed = new Metadata();
+        new MavenMetadataMerger().mergeFromMetadatasIndexed( indexed, indexedSources, group, PATH );
+
+        assertThat( render( indexed ), equalTo( render( plain ) ) );
+
+        // merge() also updates the sources, which may be cached and merged again later.
+        for ( int i = 0; i < sourceXml.length; i++ )
+        {
+            assertThat( render( indexedSources.get( i ) ), equalTo( render( plainSources.get( i ) ) ) );
+        }
+    }
+
+    private String versionMeta( final String lastUpdated, final String latest, final String... versions )
+    {
+        StringBuilder sb = new StringBuilder(
+                "<metadata><groupId>org.foo</groupId><artifactId>bar</artifactId><versioning><latest>" );
+        sb.append( latest ).append( "</latest><release>" ).append( latest ).append( "</release><versions>" );
+        for ( String version : versions )
+        {
+            sb.append( "<version>" ).append( version ).append( "</version>" );
+        }
+        sb.append( "</versions>" );
+        if ( lastUpdated != null )
+        {
+            sb.append( "<lastUpdated>" ).append( lastUpdated ).append( "</lastUpdated>" );
+        }
+
+        return sb.append( "</versioning></metadata>" ).toString();
+    }
+
+    private List<Metadata> parse( final String... sourceXml )
+            throws Exception
+    {
+        List<Metadata> result = new ArrayList<>();
+        for ( String xml : sourceXml )
+        {
+            result.add( new MetadataXpp3Reader().read( new StringReader( xml ), false ) );
+        }
+
+        return result;
+    }
+
+    private String render( final Metadata metadata )
+            throws Exception
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new MetadataXpp3Writer().write( baos, metadata );
+        return baos.toString( "UTF-8" );
+    }
+}
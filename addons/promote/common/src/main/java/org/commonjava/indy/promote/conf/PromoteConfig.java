@@ -39,8 +39,20 @@ public class PromoteConfig
 
     private static final String AUTOLOCK_HOSTED_REPOS = "autolock.hosted.repos";
 
+    private static final String HARDLINK_ENABLED_PARAM = "hardlink.enabled";
+
+    private static final String HARDLINK_MIN_SIZE_PARAM = "hardlink.min.size";
+
+    private static final String VALIDATION_PREFETCH_POMS_PARAM = "validation.prefetch.poms";
+
     public static final long DEFAULT_LOCK_TIMEOUT_SECONDS = 30;
 
+    public static final boolean DEFAULT_HARDLINK_ENABLED = false;
+
+    public static final long DEFAULT_HARDLINK_MIN_SIZE = 1024 * 1024;
+
+    public static final boolean DEFAULT_VALIDATION_PREFETCH_POMS = true;
+
     public static final boolean DEFAULT_AUTOLOCK = true;
 
     public static final boolean DEFAULT_ENABLED = true;
@@ -53,6 +65,12 @@ public class PromoteConfig
 
     private Long lockTimeoutSeconds;
 
+    private Boolean hardlinkEnabled;
+
+    private Long hardlinkMinSize;
+
+    private Boolean validationPrefetchPoms;
+
     public PromoteConfig()
     {
     }
@@ -117,6 +135,49 @@ public class PromoteConfig
         this.lockTimeoutSeconds = lockTimeoutSeconds;
     }
 
+    public boolean isHardlinkEnabled()
+    {
+        return hardlinkEnabled == null ? DEFAULT_HARDLINK_ENABLED : hardlinkEnabled;
+    }
+
+    public Boolean getHardlinkEnabled()
+    {
+        return hardlinkEnabled;
+    }
+
+    @ConfigName( PromoteConfig.HARDLINK_ENABLED_PARAM )
+    public void setHardlinkEnabled( final Boolean hardlinkEnabled )
+    {
+        this.hardlinkEnabled = hardlinkEnabled;
+    }
+
+    public long getHardlinkMinSize()
+    {
+        return hardlinkMinSize == null ? DEFAULT_HARDLINK_MIN_SIZE : hardlinkMinSize;
+    }
+
+    @ConfigName( PromoteConfig.HARDLINK_MIN_SIZE_PARAM )
+    public void setHardlinkMinSize( final Long hardlinkMinSize )
+    {
+        this.hardlinkMinSize = hardlinkMinSize;
+    }
+
+    public boolean isValidationPrefetchPoms()
+    {
+        return validationPrefetchPoms == null ? DEFAULT_VALIDATION_PREFETCH_POMS : validationPrefetchPoms;
+    }
+
+    public Boolean getValidationPrefetchPoms()
+    {
+        return validationPrefetchPoms;
+    }
+
+    @ConfigName( PromoteConfig.VALIDATION_PREFETCH_POMS_PARAM )
+    public void setValidationPrefetchPoms( final Boolean validationPrefetchPoms )
+    {
+        this.validationPrefetchPoms = validationPrefetchPoms;
+    }
+
     @Override
     public String getDefaultConfigFileName()
     {
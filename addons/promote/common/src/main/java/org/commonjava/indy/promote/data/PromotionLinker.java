@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.promote.data;
+
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.content.ContentDigester;
+import org.commonjava.indy.content.index.ContentIndexManager;
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.data.StoreDataManager;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.promote.conf.PromoteConfig;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.FileStorageEvent;
+import org.commonjava.maven.galley.io.checksum.TransferMetadata;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.spi.event.FileEventManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.commonjava.indy.change.event.ContentBatchStoredEvent.isBatchStore;
+
+/**
+ * Zero-copy path for by-path promotion: when the source and target files live on the same local filesystem, the
+ * target is created as a hard link to the source instead of streaming the content through
+ * {@link org.commonjava.indy.content.ContentManager#store}. The linked target is indexed like a stored one would be, so
+ * it stays visible to the content index. Whenever linking is not possible (disabled, small file,
+ * storage that is not a plain local file, different filesystems...) {@link #link(Transfer, Transfer, EventMetadata)}
+ * returns false and the caller copies the content as usual.
+ */
+@ApplicationScoped
+public class PromotionLinker
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private PromoteConfig config;
+
+    @Inject
+    private ContentDigester contentDigester;
+
+    @Inject
+    private FileEventManager fileEventManager;
+
+    @Inject
+    private ContentIndexManager indexManager;
+
+    @Inject
+    private StoreDataManager storeDataManager;
+
+    protected PromotionLinker()
+    {
+    }
+
+    public PromotionLinker( final PromoteConfig config, final ContentDigester contentDigester,
+                            final FileEventManager fileEventManager, final ContentIndexManager indexManager,
+                            final StoreDataManager storeDataManager )
+    {
+        this.config = config;
+        this.contentDigester = contentDigester;
+        this.fileEventManager = fileEventManager;
+        this.indexManager = indexManager;
+        this.storeDataManager = storeDataManager;
+    }
+
+    /**
+     * Try to create the (not yet existing) target as a hard link to the source, holding the target's write lock as a
+     * regular store does. On success, the target is indexed (and de-indexed from the groups containing its store, unless
+     * this is part of a batch store), the checksum metadata known for the source is reused for the target and the usual
+     * {@link FileStorageEvent} is fired for it.
+     *
+     * @return true if the target was linked, false if the content still has to be copied
+     */
+    public boolean link( final Transfer source, final Transfer target, final EventMetadata eventMetadata )
+            throws IndyWorkflowException
+    {
+        if ( !config.isHardlinkEnabled() )
+        {
+            return false;
+        }
+
+        File sourceFile = source.getDetachedFile();
+        File targetFile = target.getDetachedFile();
+        if ( sourceFile == null || targetFile == null )
+        {
+            return false;
+        }
+
+        target.lockWrite();
+        try
+        {
+            if ( !linkFile( sourceFile, targetFile, config.getHardlinkMinSize() ) )
+            {
+                return false;
+            }
+        }
+        finally
+        {
+            target.unlock();
+        }
+
+        logger.debug( "Promoted: {} by linking it to: {}", target, source );
+
+        index( target, eventMetadata );
+
+        TransferMetadata metadata = contentDigester.getContentMetadata( source );
+        if ( metadata != null )
+        {
+            contentDigester.addMetadata( target, metadata );
+        }
+
+        fileEventManager.fire( new FileStorageEvent( TransferOperation.UPLOAD, target, eventMetadata ) );
+        return true;
+    }
+
+    private void index( final Transfer target, final EventMetadata eventMetadata )
+            throws IndyWorkflowException
+    {
+        StoreKey key = LocationUtils.getKey( target );
+        if ( key == null )
+        {
+            return;
+        }
+
+        indexManager.indexTransferIn( target, key );
+
+        // same as IndexingContentManagerDecorator.store(..): batched stores are de-indexed once for the whole batch
+        if ( key.getType() == StoreType.hosted && !isBatchStore( eventMetadata ) )
+        {
+            try
+            {
+                Set<Group> groups = storeDataManager.query().getGroupsAffectedBy( key );
+                if ( groups != null )
+                {
+                    groups.forEach( g -> indexManager.deIndexStorePath( g.getKey(), target.getPath() ) );
+                }
+            }
+            catch ( IndyDataException e )
+            {
+                throw new IndyWorkflowException(
+                        "Failed to get groups which contains: %s for index handling. Reason: %s", e, key,
+                        e.getMessage() );
+            }
+        }
+    }
+
+    /**
+     * Create targetFile as a hard link to sourceFile if the source is a regular file of at least minSize bytes, the
+     * target doesn't exist yet and both are on the same filesystem.
+     *
+     * @return true if the link was created
+     */
+    static boolean linkFile( final File sourceFile, final File targetFile, final long minSize )
+    {
+        Path source = sourceFile.toPath();
+        Path target = targetFile.toPath();
+        try
+        {
+            if ( !Files.isRegularFile( source ) || Files.size( source ) < minSize || Files.exists( target ) )
+            {
+                return false;
+            }
+
+            Path targetDir = target.toAbsolutePath().getParent();
+            Path existing = targetDir;
+            while ( existing != null && !Files.exists( existing ) )
+            {
+                existing = existing.getParent();
+            }
+
+            if ( existing == null || !Files.getFileStore( source ).equals( Files.getFileStore( existing ) ) )
+            {
+                return false;
+            }
+
+            Files.createDirectories( targetDir );
+            Files.createLink( target, source );
+            return true;
+        }
+        catch ( IOException | UnsupportedOperationException | SecurityException e )
+        {
+            Logger logger = LoggerFactory.getLogger( PromotionLinker.class );
+            logger.debug( String.format( "Cannot link: %s to: %s, falling back to copy. Reason: %s", target, source,
+                                         e.getMessage() ), e );
+            return false;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.promote.data;
+
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftManaged;
+import org.commonjava.indy.change.event.ContentBatchStoredEvent;
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.data.StoreDataManager;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.promote.model.PathsPromoteResult;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.spi.nfc.NotFoundCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Event;
+import javax.inject.Inject;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+import static org.commonjava.indy.IndyContentConstants.BATCH_STORE_MAINTENANCE;
+import static org.commonjava.indy.change.EventUtils.fireEvent;
+import static org.commonjava.indy.change.event.ContentBatchStoredEvent.BULK_INVALIDATION_THRESHOLD;
+
+/**
+ * Post-promotion cache maintenance for the groups containing the promotion target. The by-path transfers store their
+ * content with {@link org.commonjava.indy.IndyContentConstants#BATCH_STORE_MAINTENANCE} set, so the per-file
+ * listeners leave the groups alone; once all transfers are done, this looks up the affected groups once, clears their
+ * NFC entries and fires a single {@link ContentBatchStoredEvent} for the content index and merged metadata, off the
+ * request thread.
+ */
+@ApplicationScoped
+public class PromotionMaintainer
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private StoreDataManager storeManager;
+
+    @Inject
+    private NotFoundCache nfc;
+
+    @Inject
+    private Event<ContentBatchStoredEvent> batchStoredEvent;
+
+    @WeftManaged
+    @Inject
+    @ExecutorConfig( named = "promotion-maintenance", threads = 4, priority = 4 )
+    private WeftExecutorService maintenanceService;
+
+    protected PromotionMaintainer()
+    {
+    }
+
+    public PromotionMaintainer( final StoreDataManager storeManager, final NotFoundCache nfc,
+                                final Event<ContentBatchStoredEvent> batchStoredEvent,
+                                final WeftExecutorService maintenanceService )
+    {
+        this.storeManager = storeManager;
+        this.nfc = nfc;
+        this.batchStoredEvent = batchStoredEvent;
+        this.maintenanceService = maintenanceService;
+    }
+
+    /**
+     * @return event metadata for the stores of a batch maintained by {@link #maintain(PathsPromoteResult,
+     * ArtifactStore, Set)}
+     */
+    public static EventMetadata batchEventMetadata()
+    {
+        return new EventMetadata().set( BATCH_STORE_MAINTENANCE, Boolean.TRUE );
+    }
+
+    /**
+     * Schedule the maintenance of the groups affected by the paths promoted into the target.
+     *
+     * @param result the promotion result, completed paths are the ones stored in the target
+     * @param target the promotion target
+     * @param nfcPaths paths to clear from the NFC of the affected groups
+     * @return completes with the result once the groups are up to date
+     */
+    public CompletableFuture<PathsPromoteResult> maintain( final PathsPromoteResult result, final ArtifactStore target,
+                                                           final Set<String> nfcPaths )
+    {
+        final Set<String> completed = new HashSet<>( result.getCompletedPaths() );
+        if ( completed.isEmpty() && ( nfcPaths == null || nfcPaths.isEmpty() ) )
+        {
+            return CompletableFuture.completedFuture( result );
+        }
+
+        final Runnable task = () -> doMaintain( target, completed, nfcPaths == null ? Collections.emptySet() : nfcPaths );
+        try
+        {
+            return CompletableFuture.runAsync( task, maintenanceService ).handle( ( v, error ) -> {
+                if ( error != null )
+                {
+                    // the promotion itself succeeded, stale group caches expire on their own
+                    logger.error( "Post-promotion maintenance failed for: " + target.getKey(), error );
+                }
+                return result;
+            } );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            logger.warn( "Promotion maintenance pool is full, maintaining groups of: {} in caller thread",
+                         target.getKey() );
+            task.run();
+            return CompletableFuture.completedFuture( result );
+        }
+    }
+
+    private void doMaintain( final ArtifactStore target, final Set<String> completed, final Set<String> nfcPaths )
+    {
+        final Set<Group> groups;
+        try
+        {
+            groups = storeManager.query().getGroupsAffectedBy( target.getKey() );
+        }
+        catch ( IndyDataException e )
+        {
+            logger.error( String.format( "Failed to get groups which contain: %s for post-promotion maintenance. Reason: %s",
+                                         target.getKey(), e.getMessage() ), e );
+            return;
+        }
+
+        final Set<Group> affected = groups == null ? Collections.emptySet() : groups;
+        logger.debug( "Maintaining {} groups for {} paths promoted to: {}", affected.size(), completed.size(),
+                      target.getKey() );
+
+        final Set<String> paths = normalize( nfcPaths );
+        affected.forEach( group -> {
+            if ( paths.size() > BULK_INVALIDATION_THRESHOLD )
+            {
+                logger.debug( "Clearing all NFC entries of: {}", group.getKey() );
+                nfc.clearMissing( LocationUtils.toLocation( group ) );
+            }
+            else
+            {
+                paths.forEach( path -> {
+                    ConcreteResource resource = new ConcreteResource( LocationUtils.toLocation( group ), path );
+                    logger.trace( "Clearing NFC path: {} from: {}\n\tResource: {}", path, group.getKey(), resource );
+                    nfc.clearMissing( resource );
+                } );
+            }
+        } );
+
+        if ( !completed.isEmpty() )
+        {
+            fireEvent( batchStoredEvent,
+                       new ContentBatchStoredEvent( batchEventMetadata(), target, affected, completed ) );
+        }
+    }
+
+    static Set<String> normalize( final Set<String> sourcePaths )
+    {
+        return sourcePaths.stream()
+                          .map( sp -> sp.startsWith( "/" ) && sp.length() > 1 ? sp.substring( 1 ) : sp )
+                          .collect( Collectors.toSet() );
+    }
+}
@@ -78,6 +78,7 @@ import java.util.stream.Collectors;
 import static org.apache.commons.lang3.exception.ExceptionUtils.getStackTrace;
 import static org.commonjava.indy.change.EventUtils.fireEvent;
 import static org.commonjava.indy.model.core.StoreType.hosted;
+import static org.commonjava.indy.promote.data.PromotionMaintainer.normalize;
 
 /**
  * Component responsible for orchestrating the transfer of artifacts from one store to another, according to the given {@link PathsPromoteRequest} or
@@ -135,6 +136,12 @@ public class PromotionManager
     @Inject
     private NotFoundCache nfc;
 
+    @Inject
+    private PromotionLinker linker;
+
+    @Inject
+    private PromotionMaintainer maintainer;
+
     protected PromotionManager()
     {
     }
@@ -530,7 +537,7 @@ public class PromotionManager
             try
             {
                 checkTransferCapacity();
-                ret = doPathsPromotion( request, baseUrl );
+                ret = doPathsPromotion( request, baseUrl ).getCompletion().get();
             }
             catch ( Exception ex )
             {
@@ -582,7 +589,7 @@ public class PromotionManager
             try
             {
                 checkTransferCapacity();
-                ret = doResumePathsPromote( result, baseUrl );
+                ret = doResumePathsPromote( result, baseUrl ).getCompletion().get();
             }
             catch ( Exception ex )
             {
@@ -849,7 +856,15 @@ public class PromotionManager
 
                 try
                 {
-                    clearStoreNFC( validationRequest.getSourcePaths(), tgt );
+                    if ( maintainer == null )
+                    {
+                        clearStoreNFC( validationRequest.getSourcePaths(), tgt );
+                    }
+                    else
+                    {
+                        // the affected groups are maintained in one batch once the result is known, see below
+                        clearNFC( normalize( validationRequest.getSourcePaths() ), tgt );
+                    }
                 }
                 catch ( IndyDataException | PromotionValidationException e )
                 {
@@ -904,6 +919,20 @@ public class PromotionManager
 
         PathsPromoteResult result = new PathsPromoteResult( request, pending, complete, skipped, error, validation );
 
+        if ( maintainer != null && targetStore != null )
+        {
+            Set<String> nfcPaths;
+            try
+            {
+                nfcPaths = validationRequest.getSourcePaths();
+            }
+            catch ( PromotionValidationException e )
+            {
+                nfcPaths = complete;
+            }
+            result.withCompletion( maintainer.maintain( result, targetStore, nfcPaths ) );
+        }
+
         if ( request.isFireEvents() )
         {
             PathsPromoteCompleteEvent evt = new PathsPromoteCompleteEvent( result );
@@ -956,11 +985,23 @@ public class PromotionManager
                         result.traversed = true;
                         result.skipped = true;
                     }
+                    else if ( target != null && linker != null
+                            && linker.link( transfer, target, storeEventMetadata() ) )
+                    {
+                        result.traversed = true;
+                        result.completed = true;
+
+                        if ( request.isPurgeSource() )
+                        {
+                            contentManager.delete( src, path, new EventMetadata() );
+                        }
+                    }
                     else
                     {
                         try (InputStream stream = transfer.openInputStream( true ))
                         {
-                            contentManager.store( tgt, path, stream, TransferOperation.UPLOAD, new EventMetadata() );
+                            contentManager.store( tgt, path, stream, TransferOperation.UPLOAD,
+                                                  storeEventMetadata() );
 
                             result.traversed = true;
                             result.completed = true;
@@ -1025,16 +1066,9 @@ public class PromotionManager
     private void clearStoreNFC( final Set<String> sourcePaths, ArtifactStore store )
             throws IndyDataException
     {
-        Set<String> paths = sourcePaths.stream()
-                                       .map( sp -> sp.startsWith( "/" ) && sp.length() > 1 ? sp.substring( 1 ) : sp )
-                                       .collect( Collectors.toSet() );
+        Set<String> paths = normalize( sourcePaths );
 
-        paths.forEach( path -> {
-            ConcreteResource resource = new ConcreteResource( LocationUtils.toLocation( store ), path );
-
-            logger.debug( "Clearing NFC path: {} from: {}\n\tResource: {}", path, store.getKey(), resource );
-            nfc.clearMissing( resource );
-        } );
+        clearNFC( paths, store );
 
         Set<Group> groups = storeManager.query().getGroupsAffectedBy( store.getKey() );
         if ( groups != null )
@@ -1049,4 +1083,23 @@ public class PromotionManager
         }
     }
 
+    private void clearNFC( final Set<String> paths, ArtifactStore store )
+    {
+        paths.forEach( path -> {
+            ConcreteResource resource = new ConcreteResource( LocationUtils.toLocation( store ), path );
+
+            logger.debug( "Clearing NFC path: {} from: {}\n\tResource: {}", path, store.getKey(), resource );
+            nfc.clearMissing( resource );
+        } );
+    }
+
+    /**
+     * When post-promotion maintenance is available, by-path transfers flag their stores so the per-file listeners skip
+     * the groups containing the target; {@link PromotionMaintainer} handles those once for the whole promotion.
+     */
+    private EventMetadata storeEventMetadata()
+    {
+        return maintainer == null ? new EventMetadata() : PromotionMaintainer.batchEventMetadata();
+    }
+
 }
@@ -27,6 +27,7 @@ import org.commonjava.indy.data.StoreDataManager;
 import org.commonjava.indy.data.ArtifactStoreQuery;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.promote.validate.model.ValidationParseCache;
 import org.commonjava.indy.promote.validate.model.ValidationRequest;
 import org.commonjava.indy.util.LocationUtils;
 import org.commonjava.atlas.maven.graph.rel.ProjectRelationship;
@@ -50,6 +51,7 @@ import org.commonjava.maven.galley.maven.util.ArtifactPathUtils;
 import org.commonjava.maven.galley.model.Location;
 import org.commonjava.maven.galley.model.Transfer;
 import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.model.VirtualResource;
 import org.commonjava.maven.galley.transport.htcli.model.HttpExchangeMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,6 +62,7 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -67,6 +70,7 @@ import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -86,6 +90,16 @@ public class PromotionValidationTools
 
     private static final int DEFAULT_RULE_PARALLEL_WAIT_TIME_MINS = 10;
 
+    private static final String POM_TRANSFER = "pom";
+
+    private static final String POM_VIEW = "pom-view";
+
+    private static final String POM_RELATIONSHIPS = "pom-relationships";
+
+    private static final String METADATA_TRANSFERS = "metadata";
+
+    private static final String METADATA_FILENAME = "maven-metadata.xml";
+
     @Inject
     private ContentManager contentManager;
 
@@ -226,33 +240,39 @@ public class PromotionValidationTools
             return null;
         }
 
-        StoreKey key = request.getSourceRepository().getKey();
-        Transfer transfer = retrieve( request.getSourceRepository(), path );
-        if ( transfer == null )
-        {
-            logger.trace( "Could not retrieve Transfer instance for: {} (path: {}, extra locations: {})", key, path,
-                          Arrays.asList( extraLocations ) );
-            return null;
-        }
-
-        List<Location> locations = new ArrayList<>( extraLocations.length + 1 );
-        locations.add( transfer.getLocation() );
-        addLocations( locations, extraLocations );
+        final List<Object> cacheKey = new ArrayList<>( Arrays.asList( extraLocations ) );
+        cacheKey.add( String.format( "managedDeps=%s,build=%s,managedPlugins=%s", config.isIncludeManagedDependencies(),
+                                     config.isIncludeBuildSection(), config.isIncludeManagedPlugins() ) );
 
-        MavenPomView pomView =
-                pomReader.read( artifactRef.asProjectVersionRef(), transfer, locations, MavenPomView.ALL_PROFILES );
+        // rules iterate the result concurrently, so it's shared read-only
+        return cached( request, POM_RELATIONSHIPS, path, cacheKey, () -> {
+            StoreKey key = request.getSourceRepository().getKey();
+            MavenPomView pomView = sharedPomView( artifactRef, path, request, extraLocations );
+            if ( pomView == null )
+            {
+                logger.trace( "Could not retrieve Transfer instance for: {} (path: {}, extra locations: {})", key,
+                              path, Arrays.asList( extraLocations ) );
+                return null;
+            }
 
-        try
-        {
-            URI source = new URI( "indy:" + key.getType().name() + ":" + key.getName() );
+            URI source;
+            try
+            {
+                source = new URI( "indy:" + key.getType().name() + ":" + key.getName() );
+            }
+            catch ( final URISyntaxException e )
+            {
+                throw new IllegalStateException(
+                        "Failed to construct URI for ArtifactStore: " + key + ". Reason: " + e.getMessage(), e );
+            }
 
-            return modelProcessor.readRelationships( pomView, source, config ).getAllRelationships();
-        }
-        catch ( final URISyntaxException e )
-        {
-            throw new IllegalStateException(
-                    "Failed to construct URI for ArtifactStore: " + key + ". Reason: " + e.getMessage(), e );
-        }
+            synchronized ( pomView )
+            {
+                return Collections.unmodifiableSet(
+                        new HashSet<>( modelProcessor.readRelationships( pomView, source, config )
+                                                     .getAllRelationships() ) );
+            }
+        } );
     }
 
     public void addLocations( final List<Location> locations, final StoreKey... extraLocations )
@@ -265,6 +285,11 @@ public class PromotionValidationTools
         }
     }
 
+    /**
+     * Parse a view of the POM for the caller's own use. Only the retrieved transfer is shared with other rules: views
+     * are not thread-safe, rules only needing relationships should use
+     * {@link #getRelationshipsForPom(String, ModelProcessorConfig, ValidationRequest, StoreKey...)} instead.
+     */
     public MavenPomView readPom( final String path, final ValidationRequest request, final StoreKey... extraLocations )
             throws IndyWorkflowException, GalleyMavenException, IndyDataException
     {
@@ -274,7 +299,81 @@ public class PromotionValidationTools
             return null;
         }
 
-        Transfer transfer = retrieve( request.getSourceRepository(), path );
+        return readPomView( artifactRef, path, request, extraLocations );
+    }
+
+    /**
+     * Retrieve and parse every POM of the request once, in parallel, against the stores the POM rules resolve parents
+     * with ({@link #getValidationStoreKeys(ValidationRequest, boolean)}, source included).
+     * {@link #getRelationshipsForPom(String, ModelProcessorConfig, ValidationRequest, StoreKey...)} then extracts
+     * relationships from the prefetched view, and {@link #readPom(String, ValidationRequest, StoreKey...)} /
+     * {@link #readLocalPom(String, ValidationRequest)} parse their own views from the prefetched transfer. Failures are
+     * cached too and reported by the rules reading the failed POMs.
+     */
+    public void prefetchPoms( final ValidationRequest request )
+            throws PromotionValidationException
+    {
+        final Logger logger = LoggerFactory.getLogger( this.getClass() );
+        final Set<String> poms = request.getSourcePaths()
+                                        .stream()
+                                        .filter( path -> path.endsWith( ".pom" ) )
+                                        .collect( Collectors.toSet() );
+
+        StoreKey[] storeKeys;
+        try
+        {
+            storeKeys = getValidationStoreKeys( request, true );
+        }
+        catch ( PromotionValidationException e )
+        {
+            // the rules will report this themselves; just fetch the POMs
+            logger.debug( "Not parsing POMs ahead of validation: {}", e.getMessage() );
+            storeKeys = null;
+        }
+
+        final StoreKey[] extraLocations = storeKeys;
+        logger.debug( "Prefetching {} POMs of: {}", poms.size(), request.getSource() );
+        runParallelAndWait( poms, path -> {
+            try
+            {
+                ArtifactRef artifactRef = getArtifact( path );
+                if ( extraLocations != null && artifactRef != null )
+                {
+                    sharedPomView( artifactRef, path, request, extraLocations );
+                }
+                else
+                {
+                    retrievePom( path, request );
+                }
+            }
+            catch ( Exception e )
+            {
+                logger.debug( "Failed to prefetch POM: {}. Reason: {}", path, e.getMessage() );
+            }
+        }, logger );
+    }
+
+    /**
+     * One parsed view per POM and set of locations, shared by every rule of the request. Views are DOM / XPath backed
+     * and not thread-safe, so this one never leaves this class, and is only used while holding its monitor.
+     */
+    private MavenPomView sharedPomView( final ArtifactRef artifactRef, final String path,
+                                        final ValidationRequest request, final StoreKey... extraLocations )
+            throws IndyWorkflowException, GalleyMavenException
+    {
+        return cached( request, POM_VIEW, path, Arrays.asList( extraLocations ),
+                       () -> readPomView( artifactRef, path, request, extraLocations ) );
+    }
+
+    private MavenPomView readPomView( final ArtifactRef artifactRef, final String path,
+                                      final ValidationRequest request, final StoreKey... extraLocations )
+            throws IndyWorkflowException, GalleyMavenException, IndyDataException
+    {
+        Transfer transfer = retrievePom( path, request );
+        if ( transfer == null )
+        {
+            return null;
+        }
 
         List<Location> locations = new ArrayList<>( extraLocations.length + 1 );
         locations.add( transfer.getLocation() );
@@ -283,6 +382,31 @@ public class PromotionValidationTools
         return pomReader.read( artifactRef.asProjectVersionRef(), transfer, locations, MavenPomView.ALL_PROFILES );
     }
 
+    private Transfer retrievePom( final String path, final ValidationRequest request )
+            throws IndyWorkflowException, GalleyMavenException
+    {
+        return cached( request, POM_TRANSFER, path, null, () -> retrieve( request.getSourceRepository(), path ) );
+    }
+
+    private <T> T cached( final ValidationRequest request, final String kind, final String path,
+                          final List<?> locations, final ValidationParseCache.Loader<T> loader )
+            throws IndyWorkflowException, GalleyMavenException
+    {
+        try
+        {
+            return request.getParseCache().get( kind, path, locations, loader );
+        }
+        catch ( IndyWorkflowException | GalleyMavenException | RuntimeException e )
+        {
+            throw e;
+        }
+        catch ( Exception e )
+        {
+            throw new IndyWorkflowException( "Failed to read: %s for validation. Reason: %s", e, path,
+                                             e.getMessage() );
+        }
+    }
+
     public MavenPomView readLocalPom( final String path, final ValidationRequest request )
             throws IndyWorkflowException, GalleyMavenException
     {
@@ -293,7 +417,7 @@ public class PromotionValidationTools
                                              path );
         }
 
-        Transfer transfer = retrieve( request.getSourceRepository(), path );
+        Transfer transfer = retrievePom( path, request );
 
         return pomReader.readLocalPom( artifactRef.asProjectVersionRef(), transfer, MavenPomView.ALL_PROFILES );
     }
@@ -310,6 +434,23 @@ public class PromotionValidationTools
         return metadataReader.getMetadata( ref, locations );
     }
 
+    /**
+     * Same as {@link #getMetadata(ProjectRef, List)}, sharing the retrieved metadata files with the other rules
+     * validating the request. The returned view is the caller's own.
+     */
+    public MavenMetadataView getMetadata( final ProjectRef ref, final List<? extends Location> locations,
+                                          final ValidationRequest request )
+            throws GalleyMavenException, IndyWorkflowException
+    {
+        final List<String> locationNames = locations.stream().map( Location::getName ).collect( Collectors.toList() );
+        final List<Transfer> transfers = cached( request, METADATA_TRANSFERS, ref.toString(), locationNames, () -> {
+            String path = toMetadataPath( ref, METADATA_FILENAME );
+            return transferManager.retrieveAll( new VirtualResource( new ArrayList<Location>( locations ), path ) );
+        } );
+
+        return metadataReader.readMetadata( ref, transfers );
+    }
+
     public MavenMetadataView readMetadata( final ProjectRef ref, final List<Transfer> transfers )
             throws GalleyMavenException
     {
@@ -560,6 +701,11 @@ public class PromotionValidationTools
     }
 
     private <T> void runParallelAndWait( Collection<T> runCollection, Closure closure, Logger logger )
+    {
+        runParallelAndWait( runCollection, (Consumer<T>) closure::call, logger );
+    }
+
+    private <T> void runParallelAndWait( Collection<T> runCollection, Consumer<T> action, Logger logger )
     {
         Set<T> todo = new HashSet<>( runCollection);
         final CountDownLatch latch = new CountDownLatch( todo.size() );
@@ -567,7 +713,7 @@ public class PromotionValidationTools
             try
             {
                 logger.trace( "The paralleled exe on element {}", e );
-                closure.call( e );
+                action.accept( e );
             }
             finally
             {
@@ -128,6 +128,11 @@ public class PromotionValidator
             {
                 try
                 {
+                    if ( config == null || config.isValidationPrefetchPoms() )
+                    {
+                        prefetchPoms( req );
+                    }
+
                     final CountDownLatch latch = new CountDownLatch( ruleNames.size() );
                     final AtomicReference<PromotionValidationException> exceptionHolder = new AtomicReference<>();
                     for ( String ruleRef : ruleNames )
@@ -179,6 +184,10 @@ public class PromotionValidator
                 }
                 finally
                 {
+                    logger.debug( "Dropping {} cached entries of validation for: {}", req.getParseCache().size(),
+                                  request.getSource() );
+                    req.getParseCache().clear();
+
                     if ( needTempRepo( request ) )
                     {
                         try
@@ -216,6 +225,18 @@ public class PromotionValidator
         return req;
     }
 
+    /**
+     * Retrieve the promoted POMs once, in parallel, before the rules start. Rules reading POMs through
+     * {@link PromotionValidationTools} then share the retrieved transfers.
+     */
+    private void prefetchPoms( final ValidationRequest req )
+            throws PromotionValidationException
+    {
+        final long start = System.currentTimeMillis();
+        validationTools.prefetchPoms( req );
+        logger.debug( "Prefetched POMs for: {} in {}ms", req.getSource(), System.currentTimeMillis() - start );
+    }
+
     private void checkValidateCapacity()
                     throws IndyWorkflowException
     {
@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.promote.validate.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Content retrieved and parsed for the rules validating one promotion (POM transfers, parsed POM views, relationship
+ * sets, metadata transfers...), shared by all of them. Entries are keyed by kind, path and the locations the content is
+ * resolved against. When several rules ask for the same entry at once, the first one loads it and the others wait for
+ * its result. Failures are cached as well, so a broken POM is only fetched and parsed once and every rule gets the same
+ * error. Values are read by several threads: they must either be immutable (e.g. unmodifiable relationship sets) or,
+ * like galley's DOM-backed views, stay with the code that caches them and only be used under their own monitor.
+ */
+public final class ValidationParseCache
+{
+    @FunctionalInterface
+    public interface Loader<T>
+    {
+        T load()
+                throws Exception;
+    }
+
+    private final ConcurrentMap<Key, CompletableFuture<Object>> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param kind what is parsed (e.g. "pom"), so different parses of one path don't collide
+     * @param path path (or other identifier) of the parsed content
+     * @param locations the locations / stores the content is resolved against, in order
+     * @param loader parses the content when it's not cached yet
+     * @return the cached or loaded value, which may be null
+     * @throws Exception the exception thrown by the loader, for this or an earlier call with the same key
+     */
+    @SuppressWarnings( "unchecked" )
+    public <T> T get( final String kind, final String path, final List<?> locations, final Loader<T> loader )
+            throws Exception
+    {
+        final Key key = new Key( kind, path, locations );
+
+        CompletableFuture<Object> future = entries.get( key );
+        if ( future == null )
+        {
+            final CompletableFuture<Object> created = new CompletableFuture<>();
+            future = entries.putIfAbsent( key, created );
+            if ( future == null )
+            {
+                future = created;
+                try
+                {
+                    created.complete( loader.load() );
+                }
+                catch ( Exception | Error e )
+                {
+                    created.completeExceptionally( e );
+                }
+            }
+        }
+
+        try
+        {
+            return (T) future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+        catch ( ExecutionException e )
+        {
+            final Throwable cause = e.getCause();
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw (Exception) cause;
+        }
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+
+    public void clear()
+    {
+        entries.clear();
+    }
+
+    private static final class Key
+    {
+        private final String kind;
+
+        private final String path;
+
+        private final List<?> locations;
+
+        private final int hash;
+
+        Key( final String kind, final String path, final List<?> locations )
+        {
+            this.kind = kind;
+            this.path = path;
+            this.locations = locations == null ? Collections.emptyList() : new ArrayList<>( locations );
+            this.hash = Objects.hash( kind, path, this.locations );
+        }
+
+        @Override
+        public boolean equals( final Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( !( o instanceof Key ) )
+            {
+                return false;
+            }
+            final Key key = (Key) o;
+            return Objects.equals( kind, key.kind ) && Objects.equals( path, key.path ) && locations.equals(
+                    key.locations );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+}
@@ -48,6 +48,8 @@ public class ValidationRequest
 
     private ArtifactStore sourceRepository;
 
+    private final ValidationParseCache parseCache = new ValidationParseCache();
+
     public ValidationRequest( PromoteRequest promoteRequest, ValidationRuleSet ruleSet, PromotionValidationTools tools, ArtifactStore sourceRepository )
     {
         this.promoteRequest = promoteRequest;
@@ -162,4 +164,12 @@ public class ValidationRequest
     {
         return sourceRepository;
     }
+
+    /**
+     * @return parse results shared by the rules validating this request
+     */
+    public ValidationParseCache getParseCache()
+    {
+        return parseCache;
+    }
 }
@@ -0,0 +1,304 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.promote.data;
+
+import org.apache.commons.io.IOUtils;
+import org.commonjava.cdi.util.weft.PoolWeftExecutorService;
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.content.ContentDigester;
+import org.commonjava.indy.content.ContentGenerator;
+import org.commonjava.indy.content.ContentManager;
+import org.commonjava.indy.content.DownloadManager;
+import org.commonjava.indy.content.IndyLocationExpander;
+import org.commonjava.indy.content.StoreResource;
+import org.commonjava.indy.content.index.ContentIndexManager;
+import org.commonjava.indy.content.index.IndexingContentManagerDecorator;
+import org.commonjava.indy.content.index.MappedContentIndexManager;
+import org.commonjava.indy.content.index.conf.ContentIndexConfig;
+import org.commonjava.indy.content.index.mapped.MappedContentIndex;
+import org.commonjava.indy.core.content.DefaultContentDigester;
+import org.commonjava.indy.core.content.DefaultContentManager;
+import org.commonjava.indy.core.content.DefaultDirectContentAccess;
+import org.commonjava.indy.core.content.DefaultDownloadManager;
+import org.commonjava.indy.core.inject.ExpiringMemoryNotFoundCache;
+import org.commonjava.indy.data.StoreDataManager;
+import org.commonjava.indy.mem.data.MemoryStoreDataManager;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.io.IndyObjectMapper;
+import org.commonjava.indy.promote.conf.PromoteConfig;
+import org.commonjava.indy.subsys.infinispan.CacheHandle;
+import org.commonjava.indy.test.fixture.core.MockContentAdvisor;
+import org.commonjava.indy.test.fixture.core.MockInstance;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.SpecialPathManagerImpl;
+import org.commonjava.maven.galley.io.checksum.TransferMetadata;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.nfc.MemoryNotFoundCache;
+import org.commonjava.maven.galley.spi.nfc.NotFoundCache;
+import org.commonjava.maven.galley.testing.maven.GalleyMavenFixture;
+import org.commonjava.maven.galley.transport.htcli.model.HttpExchangeMetadata;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+public class PromotionLinkerTest
+{
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void linkFile_SameFilesystem_TargetSharesSourceContent()
+            throws Exception
+    {
+        File source = temp.newFile( "source.jar" );
+        Files.write( source.toPath(), "This is a test".getBytes() );
+
+        File target = new File( temp.getRoot(), "target/org/foo/foo.jar" );
+
+        assertThat( PromotionLinker.linkFile( source, target, 1 ), equalTo( true ) );
+        assertThat( Files.isSameFile( source.toPath(), target.toPath() ), equalTo( true ) );
+        assertThat( new String( Files.readAllBytes( target.toPath() ) ), equalTo( "This is a test" ) );
+    }
+
+    @Test
+    public void linkFile_SmallFile_NotLinked()
+            throws Exception
+    {
+        File source = temp.newFile( "source.pom" );
+        Files.write( source.toPath(), "small".getBytes() );
+
+        File target = new File( temp.getRoot(), "target/foo.pom" );
+
+        assertThat( PromotionLinker.linkFile( source, target, 1024 ), equalTo( false ) );
+        assertThat( target.exists(), equalTo( false ) );
+    }
+
+    @Test
+    public void linkFile_ExistingTarget_NotLinked()
+            throws Exception
+    {
+        File source = temp.newFile( "source.jar" );
+        Files.write( source.toPath(), "source".getBytes() );
+
+        File target = temp.newFile( "target.jar" );
+        Files.write( target.toPath(), "target".getBytes() );
+
+        assertThat( PromotionLinker.linkFile( source, target, 0 ), equalTo( false ) );
+        assertThat( new String( Files.readAllBytes( target.toPath() ) ), equalTo( "target" ) );
+    }
+
+    @Test
+    public void linkFile_MissingSource_NotLinked()
+            throws Exception
+    {
+        File source = new File( temp.getRoot(), "missing.jar" );
+        File target = new File( temp.getRoot(), "target.jar" );
+
+        assertThat( PromotionLinker.linkFile( source, target, 0 ), equalTo( false ) );
+        assertThat( target.exists(), equalTo( false ) );
+    }
+
+    /**
+     * A linked promotion never goes through {@link ContentManager#store}, so the linker has to index the target itself.
+     * Otherwise, with the authoritative index on, the promoted path is missing from a readonly target.
+     */
+    @Test
+    public void link_AuthoritativeIndex_TargetRetrievableThroughIndexingDecorator()
+            throws Exception
+    {
+        GalleyMavenFixture galleyParts = new GalleyMavenFixture( true, temp );
+        galleyParts.initMissingComponents();
+
+        StoreDataManager storeManager = new MemoryStoreDataManager( true );
+
+        DefaultIndyConfiguration indyConfig = new DefaultIndyConfiguration();
+        NotFoundCache nfc = new ExpiringMemoryNotFoundCache( indyConfig );
+
+        PoolWeftExecutorService executor =
+                new PoolWeftExecutorService( "test-executor", (ThreadPoolExecutor) Executors.newCachedThreadPool(), 2,
+                                             10f, null, null );
+
+        DownloadManager downloadManager =
+                new DefaultDownloadManager( storeManager, galleyParts.getTransferManager(),
+                                            new IndyLocationExpander( storeManager ),
+                                            new MockInstance<>( new MockContentAdvisor() ), nfc, executor );
+
+        DefaultCacheManager cacheManager =
+                new DefaultCacheManager( new ConfigurationBuilder().simpleCache( true ).build() );
+
+        ContentDigester contentDigester =
+                new DefaultContentDigester( new DefaultDirectContentAccess( downloadManager, executor ),
+                                            new CacheHandle<String, TransferMetadata>( "content-metadata",
+                                                                                       cacheManager.getCache(
+                                                                                               "content-metadata",
+                                                                                               true ) ) );
+
+        ContentManager contentManager =
+                new DefaultContentManager( storeManager, downloadManager, new IndyObjectMapper( true ),
+                                           new SpecialPathManagerImpl(), new MemoryNotFoundCache(), contentDigester,
+                                           Collections.<ContentGenerator>emptySet() );
+
+        ChangeSummary summary = new ChangeSummary( ChangeSummary.SYSTEM_USER, "test setup" );
+        HostedRepository source = new HostedRepository( MAVEN_PKG_KEY, "source" );
+        HostedRepository target = new HostedRepository( MAVEN_PKG_KEY, "target" );
+        storeManager.storeArtifactStore( source, summary, false, true, new EventMetadata() );
+        storeManager.storeArtifactStore( target, summary, false, true, new EventMetadata() );
+
+        String path = "/org/foo/foo/1/foo-1.jar";
+        String content = "This is a test";
+        Transfer sourceTxfr = contentManager.store( source, path, new ByteArrayInputStream( content.getBytes() ),
+                                                    TransferOperation.UPLOAD, new EventMetadata() );
+        Transfer targetTxfr = contentManager.getTransfer( target, path, TransferOperation.UPLOAD );
+
+        target.setReadonly( true );
+        storeManager.storeArtifactStore( target, summary, false, true, new EventMetadata() );
+
+        PromoteConfig config = new PromoteConfig();
+        config.setHardlinkEnabled( true );
+        config.setHardlinkMinSize( 0L );
+
+        try (MappedContentIndex index = new MappedContentIndex( temp.newFolder( "index" ) ))
+        {
+            ContentIndexManager indexManager = new MappedContentIndexManager( index, Collections.emptyMap(), nfc );
+            PromotionLinker linker = new PromotionLinker( config, contentDigester, new NoOpFileEventManager(),
+                                                          indexManager, storeManager );
+
+            assertThat( linker.link( sourceTxfr, targetTxfr, new EventMetadata() ), equalTo( true ) );
+
+            ContentManager indexing =
+                    new IndexingContentManager( contentManager, storeManager, indexManager, nfc,
+                                                new ContentIndexConfig( true ) );
+
+            Transfer retrieved = indexing.retrieve( target, path );
+            assertThat( retrieved, notNullValue() );
+            try (InputStream in = retrieved.openInputStream( false ))
+            {
+                assertThat( IOUtils.toString( in ), equalTo( content ) );
+            }
+        }
+        finally
+        {
+            cacheManager.stop();
+        }
+    }
+
+    private static final class IndexingContentManager
+            extends IndexingContentManagerDecorator
+    {
+        private final ContentManager delegate;
+
+        IndexingContentManager( final ContentManager delegate, final StoreDataManager storeDataManager,
+                                final ContentIndexManager indexManager, final NotFoundCache nfc,
+                                final ContentIndexConfig indexCfg )
+        {
+            super( delegate, storeDataManager, new SpecialPathManagerImpl(), indexManager, nfc, indexCfg );
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void rescan( final ArtifactStore store )
+                throws IndyWorkflowException
+        {
+            delegate.rescan( store );
+        }
+
+        @Override
+        public void rescan( final ArtifactStore store, final EventMetadata eventMetadata )
+                throws IndyWorkflowException
+        {
+            delegate.rescan( store, eventMetadata );
+        }
+
+        @Override
+        public void rescanAll( final List<? extends ArtifactStore> stores )
+                throws IndyWorkflowException
+        {
+            delegate.rescanAll( stores );
+        }
+
+        @Override
+        public void rescanAll( final List<? extends ArtifactStore> stores, final EventMetadata eventMetadata )
+                throws IndyWorkflowException
+        {
+            delegate.rescanAll( stores, eventMetadata );
+        }
+
+        @Override
+        public List<StoreResource> list( final ArtifactStore store, final String path )
+                throws IndyWorkflowException
+        {
+            return delegate.list( store, path );
+        }
+
+        @Override
+        public List<StoreResource> list( final ArtifactStore store, final String path,
+                                         final EventMetadata eventMetadata )
+                throws IndyWorkflowException
+        {
+            return delegate.list( store, path, eventMetadata );
+        }
+
+        @Override
+        public List<StoreResource> list( final List<? extends ArtifactStore> stores, final String path )
+                throws IndyWorkflowException
+        {
+            return delegate.list( stores, path );
+        }
+
+        @Override
+        public HttpExchangeMetadata getHttpMetadata( final Transfer txfr )
+                throws IndyWorkflowException
+        {
+            return delegate.getHttpMetadata( txfr );
+        }
+
+        @Override
+        public HttpExchangeMetadata getHttpMetadata( final StoreKey storeKey, final String path )
+                throws IndyWorkflowException
+        {
+            return delegate.getHttpMetadata( storeKey, path );
+        }
+
+        @Override
+        public boolean exists( final ArtifactStore store, final String path )
+                throws IndyWorkflowException
+        {
+            return delegate.exists( store, path );
+        }
+    }
+}
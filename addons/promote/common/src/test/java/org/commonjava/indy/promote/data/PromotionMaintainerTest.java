@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.promote.data;
+
+import org.commonjava.cdi.util.weft.PoolWeftExecutorService;
+import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.change.event.ContentBatchStoredEvent;
+import org.commonjava.indy.data.StoreDataManager;
+import org.commonjava.indy.mem.data.MemoryStoreDataManager;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.promote.model.PathsPromoteRequest;
+import org.commonjava.indy.promote.model.PathsPromoteResult;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.nfc.MemoryNotFoundCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.enterprise.event.Event;
+import javax.enterprise.util.TypeLiteral;
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.commonjava.indy.change.event.ContentBatchStoredEvent.BULK_INVALIDATION_THRESHOLD;
+import static org.commonjava.indy.change.event.ContentBatchStoredEvent.isBatchStore;
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class PromotionMaintainerTest
+{
+    private static final String PATH = "org/foo/foo/1/foo-1.pom";
+
+    private StoreDataManager storeManager;
+
+    private MemoryNotFoundCache nfc;
+
+    private RecordingEvent events;
+
+    private ThreadPoolExecutor pool;
+
+    private PromotionMaintainer maintainer;
+
+    private HostedRepository target;
+
+    private Group group;
+
+    private Group other;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        storeManager = new MemoryStoreDataManager( true );
+        nfc = new MemoryNotFoundCache();
+        events = new RecordingEvent();
+        pool = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+
+        maintainer = new PromotionMaintainer( storeManager, nfc, events,
+                                              new PoolWeftExecutorService( "test-maintenance-executor", pool, 2, 10f,
+                                                                           null, null ) );
+
+        target = new HostedRepository( MAVEN_PKG_KEY, "target" );
+        HostedRepository unrelated = new HostedRepository( MAVEN_PKG_KEY, "unrelated" );
+        group = new Group( MAVEN_PKG_KEY, "public", target.getKey() );
+        other = new Group( MAVEN_PKG_KEY, "other", unrelated.getKey() );
+
+        for ( ArtifactStore store : Arrays.asList( target, unrelated, group, other ) )
+        {
+            storeManager.storeArtifactStore( store, new ChangeSummary( ChangeSummary.SYSTEM_USER, "test setup" ),
+                                             false, true, new EventMetadata() );
+        }
+    }
+
+    @After
+    public void teardown()
+    {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void maintain_ClearsAffectedGroupsAndFiresOneBatchEvent()
+            throws Exception
+    {
+        nfc.addMissing( resource( group, PATH ) );
+        nfc.addMissing( resource( other, PATH ) );
+
+        PathsPromoteResult result = result( "/" + PATH, "/org/foo/foo/1/foo-1.jar" );
+
+        assertThat( maintainer.maintain( result, target, Collections.singleton( "/" + PATH ) )
+                              .get( 10, TimeUnit.SECONDS ), sameInstance( result ) );
+
+        assertThat( nfc.isMissing( resource( group, PATH ) ), equalTo( false ) );
+        assertThat( nfc.isMissing( resource( other, PATH ) ), equalTo( true ) );
+
+        assertThat( events.fired.size(), equalTo( 1 ) );
+        ContentBatchStoredEvent event = events.fired.get( 0 );
+        assertThat( event.getStore().getKey(), equalTo( target.getKey() ) );
+        assertThat( event.getPaths(), equalTo( result.getCompletedPaths() ) );
+        assertThat( event.getAffectedGroups().size(), equalTo( 1 ) );
+        assertThat( event.getAffectedGroups().iterator().next().getKey(), equalTo( group.getKey() ) );
+        assertThat( isBatchStore( event.getEventMetadata() ), equalTo( true ) );
+    }
+
+    @Test
+    public void maintain_OverThreshold_ClearsWholeGroupNfc()
+            throws Exception
+    {
+        String unpromoted = "org/bar/bar/1/bar-1.pom";
+        nfc.addMissing( resource( group, unpromoted ) );
+
+        Set<String> paths = new HashSet<>();
+        for ( int i = 0; i <= BULK_INVALIDATION_THRESHOLD; i++ )
+        {
+            paths.add( "/org/foo/foo/" + i + "/foo-" + i + ".pom" );
+        }
+
+        maintainer.maintain( result( paths.toArray( new String[paths.size()] ) ), target, paths )
+                  .get( 10, TimeUnit.SECONDS );
+
+        assertThat( nfc.isMissing( resource( group, unpromoted ) ), equalTo( false ) );
+        assertThat( events.fired.size(), equalTo( 1 ) );
+        assertThat( events.fired.get( 0 ).isBulk(), equalTo( true ) );
+    }
+
+    @Test
+    public void maintain_NothingPromoted_CompletesWithoutEvent()
+            throws Exception
+    {
+        nfc.addMissing( resource( group, PATH ) );
+
+        PathsPromoteResult result = result();
+
+        assertThat( maintainer.maintain( result, target, Collections.emptySet() ).isDone(), equalTo( true ) );
+        assertThat( nfc.isMissing( resource( group, PATH ) ), equalTo( true ) );
+        assertThat( events.fired.isEmpty(), equalTo( true ) );
+    }
+
+    private PathsPromoteResult result( final String... completed )
+    {
+        return new PathsPromoteResult( new PathsPromoteRequest( target.getKey(), target.getKey(), completed ),
+                                       Collections.emptySet(), new HashSet<>( Arrays.asList( completed ) ),
+                                       Collections.emptySet(), null );
+    }
+
+    private static ConcreteResource resource( final ArtifactStore store, final String path )
+    {
+        return new ConcreteResource( LocationUtils.toLocation( store ), path );
+    }
+
+    private static final class RecordingEvent
+            implements Event<ContentBatchStoredEvent>
+    {
+        private final List<ContentBatchStoredEvent> fired = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void fire( final ContentBatchStoredEvent event )
+        {
+            fired.add( event );
+        }
+
+        @Override
+        public Event<ContentBatchStoredEvent> select( final Annotation... qualifiers )
+        {
+            return this;
+        }
+
+        @Override
+        public <U extends ContentBatchStoredEvent> Event<U> select( final Class<U> subtype,
+                                                                    final Annotation... qualifiers )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <U extends ContentBatchStoredEvent> Event<U> select( final TypeLiteral<U> subtype,
+                                                                    final Annotation... qualifiers )
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.promote.validate.model;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ValidationParseCacheTest
+{
+    @Test
+    public void concurrentReadersShareOneLoad()
+            throws Exception
+    {
+        final ValidationParseCache cache = new ValidationParseCache();
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+
+        ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        try
+        {
+            Future<Object> first = executor.submit( () -> cache.get( "pom", "org/foo/1/foo-1.pom",
+                                                                     Collections.singletonList( "hosted:a" ), () -> {
+                        loads.incrementAndGet();
+                        started.countDown();
+                        release.await();
+                        return new Object();
+                    } ) );
+
+            started.await();
+            Future<Object> second = executor.submit( () -> cache.get( "pom", "org/foo/1/foo-1.pom",
+                                                                      Collections.singletonList( "hosted:a" ), () -> {
+                        loads.incrementAndGet();
+                        return new Object();
+                    } ) );
+
+            release.countDown();
+            assertThat( second.get( 5, TimeUnit.SECONDS ), sameInstance( first.get( 5, TimeUnit.SECONDS ) ) );
+            assertThat( loads.get(), equalTo( 1 ) );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void locationsAndKindArePartOfTheKey()
+            throws Exception
+    {
+        final ValidationParseCache cache = new ValidationParseCache();
+        final String path = "org/foo/1/foo-1.pom";
+
+        cache.get( "pom", path, Arrays.asList( "hosted:a", "group:b" ), () -> "a,b" );
+        assertThat( cache.get( "pom", path, Arrays.asList( "hosted:a", "group:b" ), () -> "other" ), equalTo( "a,b" ) );
+        assertThat( cache.get( "pom", path, Arrays.asList( "group:b", "hosted:a" ), () -> "b,a" ), equalTo( "b,a" ) );
+        assertThat( cache.get( "local-pom", path, null, () -> "local" ), equalTo( "local" ) );
+        assertThat( cache.size(), equalTo( 3 ) );
+
+        cache.clear();
+        assertThat( cache.get( "pom", path, Arrays.asList( "hosted:a", "group:b" ), () -> "again" ),
+                    equalTo( "again" ) );
+    }
+
+    @Test
+    public void failuresAreCached()
+            throws Exception
+    {
+        final ValidationParseCache cache = new ValidationParseCache();
+        final AtomicInteger loads = new AtomicInteger();
+
+        for ( int i = 0; i < 2; i++ )
+        {
+            try
+            {
+                cache.get( "pom", "broken.pom", null, () -> {
+                    loads.incrementAndGet();
+                    throw new IOException( "broken" );
+                } );
+                fail( "Expected the load failure" );
+            }
+            catch ( IOException e )
+            {
+                assertThat( e.getMessage(), equalTo( "broken" ) );
+            }
+        }
+
+        assertThat( loads.get(), equalTo( 1 ) );
+    }
+}
@@ -15,10 +15,12 @@
  */
 package org.commonjava.indy.promote.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.swagger.annotations.ApiModelProperty;
 
 import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Contains the result of a promotion attempt. If the promotion is a success, the pending paths and error will be <b>null</b>. Otherwise, these are
@@ -48,6 +50,9 @@ public class PathsPromoteResult extends AbstractPromoteResult<PathsPromoteResult
     @ApiModelProperty( "Error message, if promotion failed" )
     private String error;
 
+    @JsonIgnore
+    private transient CompletableFuture<PathsPromoteResult> completion;
+
     public PathsPromoteResult()
     {
     }
@@ -145,6 +150,23 @@ public class PathsPromoteResult extends AbstractPromoteResult<PathsPromoteResult
         this.request = request;
     }
 
+    /**
+     * Cache maintenance after a promotion (NFC, content index, merged metadata in the affected groups) runs in the
+     * background. The returned future completes with this result once that is done, so the promoted content is visible
+     * through the groups. Results not produced by the promotion manager are complete already.
+     */
+    @JsonIgnore
+    public CompletableFuture<PathsPromoteResult> getCompletion()
+    {
+        return completion == null ? CompletableFuture.completedFuture( this ) : completion;
+    }
+
+    public PathsPromoteResult withCompletion( final CompletableFuture<PathsPromoteResult> completion )
+    {
+        this.completion = completion;
+        return this;
+    }
+
     @Override
     public String toString()
     {
@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.change.event;
+
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.maven.galley.event.EventMetadata;
+
+import java.util.Collections;
+import java.util.Set;
+
+import static org.commonjava.indy.IndyContentConstants.BATCH_STORE_MAINTENANCE;
+
+/**
+ * Fired once after a batch of paths was stored in one store (e.g. by a promotion), whose individual storage events were
+ * flagged with {@link org.commonjava.indy.IndyContentConstants#BATCH_STORE_MAINTENANCE} (see {@link #isBatchStore}).
+ * Listeners use it to do their path-related cache maintenance once per batch (and per affected group) instead of once
+ * per stored path.
+ */
+public class ContentBatchStoredEvent
+{
+    /**
+     * Above this many paths, invalidating everything a listener holds for a group is cheaper than invalidating each
+     * path in it.
+     */
+    public static final int BULK_INVALIDATION_THRESHOLD = 1000;
+
+    private final EventMetadata eventMetadata;
+
+    private final ArtifactStore store;
+
+    private final Set<Group> affectedGroups;
+
+    private final Set<String> paths;
+
+    public ContentBatchStoredEvent( final EventMetadata eventMetadata, final ArtifactStore store,
+                                    final Set<Group> affectedGroups, final Set<String> paths )
+    {
+        this.eventMetadata = eventMetadata;
+        this.store = store;
+        this.affectedGroups = affectedGroups == null ? Collections.emptySet() : affectedGroups;
+        this.paths = paths == null ? Collections.emptySet() : paths;
+    }
+
+    /**
+     * @return true if the event metadata is flagged with
+     * {@link org.commonjava.indy.IndyContentConstants#BATCH_STORE_MAINTENANCE}, so the store it describes will be
+     * announced again as part of a {@link ContentBatchStoredEvent}
+     */
+    public static boolean isBatchStore( final EventMetadata eventMetadata )
+    {
+        return eventMetadata != null && Boolean.TRUE.equals( eventMetadata.get( BATCH_STORE_MAINTENANCE ) );
+    }
+
+    public EventMetadata getEventMetadata()
+    {
+        return eventMetadata;
+    }
+
+    /**
+     * @return the store the paths were stored in
+     */
+    public ArtifactStore getStore()
+    {
+        return store;
+    }
+
+    /**
+     * @return the groups containing {@link #getStore()}, directly or not
+     */
+    public Set<Group> getAffectedGroups()
+    {
+        return affectedGroups;
+    }
+
+    /**
+     * @return the stored paths, as they were passed to the store calls
+     */
+    public Set<String> getPaths()
+    {
+        return paths;
+    }
+
+    public boolean isBulk()
+    {
+        return paths.size() > BULK_INVALIDATION_THRESHOLD;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ContentBatchStoredEvent{" + "store=" + store.getKey() + ", paths=" + paths.size()
+                + ", affectedGroups=" + affectedGroups.size() + '}';
+    }
+}
@@ -49,6 +49,10 @@ public class DefaultIndyConfiguration
 
     public static final int DEFAULT_FORKJOINPOOL_COMMON_PARALLELISM = 48;
 
+    public static final boolean DEFAULT_HOSTED_METADATA_INCREMENTAL = false;
+
+    public static final boolean DEFAULT_STREAMING_METADATA_MERGE = false;
+
     private Integer passthroughTimeoutSeconds;
 
     private Integer notFoundCacheTimeoutSeconds;
@@ -69,6 +73,10 @@ public class DefaultIndyConfiguration
 
     private Boolean allowRemoteListDownload;
 
+    private Boolean hostedMetadataIncremental;
+
+    private Boolean streamingMetadataMerge;
+
     public DefaultIndyConfiguration()
     {
     }
@@ -213,6 +221,30 @@ public class DefaultIndyConfiguration
         this.remoteMetadataTimeoutSeconds = remoteMetadataTimeoutSeconds;
     }
 
+    @Override
+    public boolean isHostedMetadataIncremental()
+    {
+        return hostedMetadataIncremental == null ? DEFAULT_HOSTED_METADATA_INCREMENTAL : hostedMetadataIncremental;
+    }
+
+    @ConfigName( "metadata.hosted.incremental" )
+    public void setHostedMetadataIncremental( Boolean hostedMetadataIncremental )
+    {
+        this.hostedMetadataIncremental = hostedMetadataIncremental;
+    }
+
+    @Override
+    public boolean isStreamingMetadataMerge()
+    {
+        return streamingMetadataMerge == null ? DEFAULT_STREAMING_METADATA_MERGE : streamingMetadataMerge;
+    }
+
+    @ConfigName( "metadata.merge.streaming" )
+    public void setStreamingMetadataMerge( Boolean streamingMetadataMerge )
+    {
+        this.streamingMetadataMerge = streamingMetadataMerge;
+    }
+
     @Override
     public String getDefaultConfigFileName()
     {
@@ -71,4 +71,16 @@ public interface IndyConfiguration
     int getRemoteMetadataTimeoutSeconds();
 
     int getForkJoinPoolCommonParallelism();
+
+    /**
+     * Whether release-level maven-metadata.xml for hosted repositories is rendered from an index of known versions that
+     * is updated as poms are stored / deleted, rather than from a listing of every version directory.
+     */
+    boolean isHostedMetadataIncremental();
+
+    /**
+     * Whether group maven-metadata.xml merging parses member metadata and writes the merged result as streams, and
+     * de-duplicates versions with a hash index instead of list scans. The merged output is the same either way.
+     */
+    boolean isStreamingMetadataMerge();
 }
@@ -0,0 +1,243 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.commonjava.indy.core.content.PathMaskChecker.isRegexPattern;
+
+/**
+ * Path mask patterns of one store, compiled for repeated matching: plain patterns go into a prefix trie, so a path is
+ * checked against all of them in one walk, and <code>r|...|</code> patterns are compiled once instead of on every
+ * {@link String#matches(String)} call.
+ * <p>
+ * Instances are immutable. {@link PathMaskChecker} keeps one per store and recompiles when the store's pattern set
+ * changes.
+ */
+public final class CompiledPathMask
+{
+    private static final Logger logger = LoggerFactory.getLogger( CompiledPathMask.class );
+
+    private static final CompiledPathMask UNMASKED = new CompiledPathMask( null, new TrieNode(), Collections.emptyList(), false );
+
+    private final Set<String> source;
+
+    private final TrieNode prefixes;
+
+    private final List<Pattern> regexes;
+
+    // includes regex patterns that failed to compile, which still allow every listing
+    private final boolean anyRegex;
+
+    private final boolean unmasked;
+
+    private CompiledPathMask( final Set<String> source, final TrieNode prefixes, final List<Pattern> regexes,
+                              final boolean anyRegex )
+    {
+        this.source = source;
+        this.prefixes = prefixes;
+        this.regexes = regexes;
+        this.anyRegex = anyRegex;
+        this.unmasked = source == null || source.isEmpty();
+    }
+
+    public static CompiledPathMask compile( final Set<String> patterns )
+    {
+        if ( patterns == null || patterns.isEmpty() )
+        {
+            return patterns == null ?
+                    UNMASKED :
+                    new CompiledPathMask( patterns, new TrieNode(), Collections.emptyList(), false );
+        }
+
+        TrieNode prefixes = new TrieNode();
+        List<Pattern> regexes = new ArrayList<>();
+        boolean anyRegex = false;
+        for ( String pattern : patterns )
+        {
+            if ( isRegexPattern( pattern ) )
+            {
+                anyRegex = true;
+                try
+                {
+                    regexes.add( Pattern.compile( pattern.substring( 2, pattern.length() - 1 ) ) );
+                }
+                catch ( PatternSyntaxException e )
+                {
+                    logger.warn( "Ignoring invalid path mask pattern: '{}'. Reason: {}", pattern, e.getMessage() );
+                }
+            }
+            else if ( pattern != null )
+            {
+                prefixes.add( pattern );
+            }
+        }
+
+        return new CompiledPathMask( patterns, prefixes, Collections.unmodifiableList( regexes ), anyRegex );
+    }
+
+    /**
+     * Whether this was compiled from the given pattern set. The identity check is the fast path for the common case of
+     * checking the same store instance over and over.
+     */
+    public boolean isCompiledFrom( final Set<String> patterns )
+    {
+        if ( source == patterns )
+        {
+            return true;
+        }
+
+        if ( unmasked )
+        {
+            return patterns == null || patterns.isEmpty();
+        }
+
+        return source.equals( patterns );
+    }
+
+    public boolean isUnmasked()
+    {
+        return unmasked;
+    }
+
+    public boolean hasRegexPatterns()
+    {
+        return anyRegex;
+    }
+
+    /**
+     * True if the path starts with one of the plain patterns, or matches one of the regex patterns.
+     */
+    public boolean matches( final String path )
+    {
+        if ( unmasked )
+        {
+            return true;
+        }
+
+        if ( prefixes.hasPrefixOf( path ) )
+        {
+            return true;
+        }
+
+        for ( Pattern regex : regexes )
+        {
+            if ( regex.matcher( path ).matches() )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * True if the path (a directory being listed) may contain content allowed by the mask: it starts with one of the
+     * plain patterns, or is itself a prefix of one. Regex patterns can't be checked that way, so any regex pattern
+     * allows every listing.
+     */
+    public boolean matchesListing( final String path )
+    {
+        if ( unmasked || anyRegex )
+        {
+            return true;
+        }
+
+        return prefixes.hasPrefixOf( path ) || prefixes.isPrefix( path );
+    }
+
+    private static final class TrieNode
+    {
+        private Map<Character, TrieNode> children;
+
+        private boolean terminal;
+
+        void add( final String pattern )
+        {
+            TrieNode node = this;
+            for ( int i = 0; i < pattern.length(); i++ )
+            {
+                if ( node.children == null )
+                {
+                    node.children = new HashMap<>();
+                }
+
+                node = node.children.computeIfAbsent( pattern.charAt( i ), c -> new TrieNode() );
+            }
+
+            node.terminal = true;
+        }
+
+        /**
+         * Whether some pattern in the trie is a prefix of the path.
+         */
+        boolean hasPrefixOf( final String path )
+        {
+            TrieNode node = this;
+            for ( int i = 0; ; i++ )
+            {
+                if ( node.terminal )
+                {
+                    return true;
+                }
+
+                if ( i == path.length() || node.children == null )
+                {
+                    return false;
+                }
+
+                node = node.children.get( path.charAt( i ) );
+                if ( node == null )
+                {
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * Whether the path is a prefix of some pattern in the trie.
+         */
+        boolean isPrefix( final String path )
+        {
+            TrieNode node = this;
+            for ( int i = 0; i < path.length(); i++ )
+            {
+                if ( node.children == null )
+                {
+                    return false;
+                }
+
+                node = node.children.get( path.charAt( i ) );
+                if ( node == null )
+                {
+                    return false;
+                }
+            }
+
+            return node.terminal || node.children != null;
+        }
+    }
+}
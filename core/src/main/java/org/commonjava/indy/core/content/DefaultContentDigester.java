@@ -15,7 +15,6 @@
  */
 package org.commonjava.indy.core.content;
 
-import org.apache.commons.io.IOUtils;
 import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.content.ContentDigester;
 import org.commonjava.indy.content.DirectContentAccess;
@@ -24,7 +23,6 @@ import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.galley.KeyedLocation;
 import org.commonjava.indy.subsys.infinispan.BasicCacheHandle;
 import org.commonjava.maven.galley.event.EventMetadata;
-import org.commonjava.maven.galley.io.ChecksummingTransferDecorator;
 import org.commonjava.maven.galley.io.checksum.ContentDigest;
 import org.commonjava.maven.galley.io.checksum.TransferMetadata;
 import org.commonjava.maven.galley.model.Transfer;
@@ -39,15 +37,22 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 import static org.apache.commons.codec.binary.Hex.encodeHexString;
-import static org.commonjava.maven.galley.io.ChecksummingTransferDecorator.FORCE_CHECKSUM;
 
 /**
  * Created by jdcasey on 1/4/17.
  * Migrated out of DefaultContentManager so it can be used from other places. This isn't really specific to the
  * {@link org.commonjava.indy.content.ContentManager} interface anyway.
+ * <p>
+ * Metadata access relies on the cache's own concurrency, so there is no instance-wide lock. When metadata has to be
+ * recalculated, the content is streamed once through all digests using a fixed-size buffer, and concurrent requests
+ * for the same transfer wait on the one calculation already running.
  */
 @ApplicationScoped
 public class DefaultContentDigester
@@ -55,6 +60,19 @@ public class DefaultContentDigester
 
 {
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Map<ContentDigest, String> DIGEST_ALGORITHMS;
+
+    static
+    {
+        Map<ContentDigest, String> algorithms = new LinkedHashMap<>();
+        algorithms.put( ContentDigest.MD5, "MD5" );
+        algorithms.put( ContentDigest.SHA_1, "SHA-1" );
+        algorithms.put( ContentDigest.SHA_256, "SHA-256" );
+        DIGEST_ALGORITHMS = Collections.unmodifiableMap( algorithms );
+    }
+
     @Inject
     private DirectContentAccess directContentAccess;
 
@@ -62,6 +80,8 @@ public class DefaultContentDigester
     @ContentMetadataCache
     private BasicCacheHandle<String, TransferMetadata> metadataCache;
 
+    private final Map<String, CompletableFuture<TransferMetadata>> inProgress = new ConcurrentHashMap<>();
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     protected DefaultContentDigester()
@@ -76,7 +96,7 @@ public class DefaultContentDigester
     }
 
     @Override
-    public synchronized void addMetadata( final Transfer transfer, final TransferMetadata transferData )
+    public void addMetadata( final Transfer transfer, final TransferMetadata transferData )
     {
         if ( transferData != null )
         {
@@ -86,7 +106,7 @@ public class DefaultContentDigester
         }
     }
 
-    public synchronized boolean needsMetadataFor( final Transfer transfer )
+    public boolean needsMetadataFor( final Transfer transfer )
     {
         return true;
     }
@@ -98,7 +118,7 @@ public class DefaultContentDigester
     }
 
     @Override
-    public synchronized void removeMetadata( final Transfer transfer )
+    public void removeMetadata( final Transfer transfer )
     {
         String cacheKey = generateCacheKey( transfer );
         TransferMetadata meta = metadataCache.remove( cacheKey );
@@ -106,7 +126,7 @@ public class DefaultContentDigester
     }
 
     @Override
-    public synchronized TransferMetadata getContentMetadata( final Transfer transfer )
+    public TransferMetadata getContentMetadata( final Transfer transfer )
     {
         String cacheKey = generateCacheKey( transfer );
         logger.trace( "Getting TransferMetadata for: {}", cacheKey );
@@ -140,16 +160,70 @@ public class DefaultContentDigester
         }
 
         String cacheKey = generateCacheKey( transfer );
-        logger.debug( "TransferMetadata missing for: {}. Re-reading with FORCE_CHECKSUM now to calculate it.",
-                      cacheKey );
+        CompletableFuture<TransferMetadata> calculation = new CompletableFuture<>();
+        CompletableFuture<TransferMetadata> running = inProgress.putIfAbsent( cacheKey, calculation );
+        if ( running != null )
+        {
+            logger.debug( "TransferMetadata for: {} is already being calculated. Waiting for it.", cacheKey );
+            return await( running, transfer );
+        }
+
+        try
+        {
+            // another calculation may have finished between our cache miss and registering this one.
+            meta = getContentMetadata( transfer );
+            if ( meta == null )
+            {
+                logger.debug( "TransferMetadata missing for: {}. Re-reading content to calculate it.", cacheKey );
+                meta = calculate( transfer, eventMetadata );
+                addMetadata( transfer, meta );
+            }
 
-        // FIXME: This IS NOT WORKING! It results in NPE for callers assuming a non-null TransferMetadata response.
-        EventMetadata forcedEventMetadata = new EventMetadata( eventMetadata ).set( FORCE_CHECKSUM, Boolean.TRUE );
-        try(InputStream stream = transfer.openInputStream( false, forcedEventMetadata ) )
+            calculation.complete( meta );
+            return meta;
+        }
+        catch ( IndyWorkflowException | RuntimeException e )
+        {
+            calculation.completeExceptionally( e );
+            throw e;
+        }
+        finally
+        {
+            inProgress.remove( cacheKey, calculation );
+        }
+    }
+
+    private TransferMetadata calculate( final Transfer transfer, final EventMetadata eventMetadata )
+            throws IndyWorkflowException
+    {
+        Map<ContentDigest, MessageDigest> digesters = new LinkedHashMap<>();
+        try
         {
-            // depend on ChecksummingTransferDecorator to calculate / store metadata as this gets read, using
-            // the FORCE_CHECKSUM metadata key to control its generation.
-            IOUtils.toByteArray( stream );
+            for ( Map.Entry<ContentDigest, String> algorithm : DIGEST_ALGORITHMS.entrySet() )
+            {
+                digesters.put( algorithm.getKey(), MessageDigest.getInstance( algorithm.getValue() ) );
+            }
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IndyWorkflowException( "Failed to calculate checksums (MD5, SHA-256, etc.) for: %s. Reason: %s",
+                                             e, transfer, e.getMessage() );
+        }
+
+        long size = 0;
+        try (InputStream stream = transfer.openInputStream( false, new EventMetadata( eventMetadata ) ))
+        {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ( ( read = stream.read( buffer ) ) > -1 )
+            {
+                for ( MessageDigest digester : digesters.values() )
+                {
+                    digester.update( buffer, 0, read );
+                }
+
+                size += read;
+            }
         }
         catch ( IOException e )
         {
@@ -157,8 +231,29 @@ public class DefaultContentDigester
                                              e, transfer, e.getMessage() );
         }
 
-        logger.debug( "Retrying TransferMetadata retrieval from cache for: {} after recalculating", cacheKey );
+        Map<ContentDigest, String> digests = new HashMap<>();
+        digesters.forEach( ( type, digester ) -> digests.put( type, encodeHexString( digester.digest() ) ) );
+
+        return new TransferMetadata( digests, size );
+    }
 
-        return getContentMetadata( transfer );
+    private TransferMetadata await( final CompletableFuture<TransferMetadata> running, final Transfer transfer )
+            throws IndyWorkflowException
+    {
+        try
+        {
+            return running.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IndyWorkflowException( "Interrupted while waiting for checksums of: %s", e, transfer );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            throw new IndyWorkflowException( "Failed to calculate checksums (MD5, SHA-256, etc.) for: %s. Reason: %s",
+                                             cause, transfer, cause.getMessage() );
+        }
     }
 }
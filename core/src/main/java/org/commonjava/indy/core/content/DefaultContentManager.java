@@ -17,6 +17,9 @@ package org.commonjava.indy.core.content;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftManaged;
 import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.content.ContentDigester;
@@ -56,6 +59,8 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import static org.commonjava.indy.IndyContentConstants.CHECK_CACHE_ONLY;
@@ -97,6 +102,11 @@ public class DefaultContentManager
     @Inject
     private IndyConfiguration indyConfig;
 
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( named = "group-member-retrieval", threads = 16, priority = 8 )
+    private WeftExecutorService memberRetrievalService;
+
     protected DefaultContentManager()
     {
     }
@@ -105,6 +115,17 @@ public class DefaultContentManager
                                   final IndyObjectMapper mapper, final SpecialPathManager specialPathManager,
                                   final NotFoundCache nfc, final ContentDigester contentDigester, final Set<ContentGenerator> contentProducers )
     {
+        this( storeManager, downloadManager, mapper, specialPathManager, nfc, contentDigester, contentProducers,
+              null );
+    }
+
+    public DefaultContentManager( final StoreDataManager storeManager, final DownloadManager downloadManager,
+                                  final IndyObjectMapper mapper, final SpecialPathManager specialPathManager,
+                                  final NotFoundCache nfc, final ContentDigester contentDigester,
+                                  final Set<ContentGenerator> contentProducers,
+                                  final WeftExecutorService memberRetrievalService )
+    {
+        this.memberRetrievalService = memberRetrievalService;
         this.storeManager = storeManager;
         this.downloadManager = downloadManager;
         this.mapper = mapper;
@@ -273,21 +294,17 @@ public class DefaultContentManager
                 }
             }
 
-            if ( !generated )
+            if ( !generated && PathMaskChecker.checkMask( store, path ) )
             {
-                if ( PathMaskChecker.checkMask( store, path ) )
+                if ( isRacingMembers( store ) )
+                {
+                    item = raceMembers( store, members, path, eventMetadata );
+                }
+                else
                 {
                     for ( final ArtifactStore member : members )
                     {
-                        try
-                        {
-                            item = doRetrieve( member, path, eventMetadata );
-                        }
-                        catch ( IndyWorkflowException e )
-                        {
-                            logger.error( "Failed to retrieve artifact from for path {} from {} in group {}, error is: {}",
-                                          path, member, store, e.getMessage() );
-                        }
+                        item = retrieveFromMember( store, member, path, eventMetadata );
                         if ( item != null )
                         {
                             // get the item from the first member store
@@ -307,6 +324,88 @@ public class DefaultContentManager
         return item;
     }
 
+    /**
+     * Racing members only makes sense when the group opts in, there's more than one member to race, and the member
+     * retrieval pool has room. Otherwise we fall back to the serial member walk.
+     */
+    private boolean isRacingMembers( final ArtifactStore group )
+    {
+        return memberRetrievalService != null && Boolean.parseBoolean( group.getMetadata( Group.METADATA_RACE_MEMBERS ) )
+                && memberRetrievalService.isHealthy();
+    }
+
+    /**
+     * Start retrieval from all members concurrently, then wait on them in group order. The first member (in group
+     * order) that produces a transfer wins, which preserves the result of the serial member walk. Lower-priority
+     * retrievals that haven't started yet are cancelled; those already in flight are left to finish in the background,
+     * which populates their caches for later requests.
+     */
+    private Transfer raceMembers( final ArtifactStore group, final List<ArtifactStore> members, final String path,
+                                  final EventMetadata eventMetadata )
+            throws IndyWorkflowException
+    {
+        if ( members.size() < 2 )
+        {
+            return members.isEmpty() ? null : retrieveFromMember( group, members.get( 0 ), path, eventMetadata );
+        }
+
+        final List<Future<Transfer>> futures = new ArrayList<>( members.size() );
+        for ( final ArtifactStore member : members )
+        {
+            logger.trace( "Racing retrieval of {} in {} for group {}", path, member.getKey(), group.getKey() );
+            futures.add( memberRetrievalService.submit(
+                    () -> retrieveFromMember( group, member, path, eventMetadata ) ) );
+        }
+
+        Transfer item = null;
+        int i = 0;
+        try
+        {
+            for ( ; i < members.size() && item == null; i++ )
+            {
+                try
+                {
+                    item = futures.get( i ).get();
+                }
+                catch ( ExecutionException e )
+                {
+                    logger.error( String.format( "Failed to retrieve artifact for path %s from %s in group %s",
+                                                 path, members.get( i ), group ), e.getCause() );
+                }
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IndyWorkflowException( "Retrieval of %s in %s was interrupted", e, path, group.getKey() );
+        }
+        finally
+        {
+            for ( int j = i; j < futures.size(); j++ )
+            {
+                futures.get( j ).cancel( false );
+            }
+        }
+
+        return item;
+    }
+
+    private Transfer retrieveFromMember( final ArtifactStore group, final ArtifactStore member, final String path,
+                                         final EventMetadata eventMetadata )
+    {
+        try
+        {
+            return doRetrieve( member, path, eventMetadata );
+        }
+        catch ( IndyWorkflowException e )
+        {
+            logger.error( "Failed to retrieve artifact from for path {} from {} in group {}, error is: {}", path,
+                          member, group, e.getMessage() );
+        }
+
+        return null;
+    }
+
     private Transfer doRetrieve( final ArtifactStore store, final String path, final EventMetadata eventMetadata )
             throws IndyWorkflowException
     {
@@ -16,15 +16,21 @@
 package org.commonjava.indy.core.content;
 
 import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.StoreKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class PathMaskChecker
 {
     private static final Logger logger = LoggerFactory.getLogger( PathMaskChecker.class );
 
+    // compiled masks by store; an entry is used only while the store still carries the patterns it was compiled from.
+    private static final Map<StoreKey, CompiledPathMask> compiledMasks = new ConcurrentHashMap<>();
+
     public static boolean checkMask(final ArtifactStore repo, final String path){
         Set<String> maskPatterns = repo.getPathMaskPatterns();
 
@@ -37,21 +43,10 @@ public class PathMaskChecker
             return true;
         }
 
-        for ( String pattern : maskPatterns )
+        if ( getCompiledMask( repo ).matches( path ) )
         {
-            // adding allPlaintext to the condition to reduce the number of isRegexPattern() calls
-            if ( isRegexPattern( pattern ) )
-            {
-                if ( path.matches( pattern.substring( 2, pattern.length() - 1 ) ) )
-                {
-                    return true;
-                }
-            }
-            else if ( path.startsWith( pattern ) )
-            {
-                logger.trace( "Checking mask in: {}, pattern: {} - MATCH", repo.getName(), pattern );
-                return true;
-            }
+            logger.trace( "Checking mask in: {}, path: {} - MATCH", repo.getName(), path );
+            return true;
         }
 
         logger.debug( "Path {} not available in path mask {} of repo {}", path, maskPatterns, repo );
@@ -73,24 +68,13 @@ public class PathMaskChecker
             return true;
         }
 
-        for ( String pattern : maskPatterns )
-        {
-            if ( isRegexPattern( pattern ) )
-            {
-                // if there is a regexp pattern we cannot check presence of directory listing, because we would have to
-                // check only the beginning of the regexp and that's impossible, so we have to assume that the path is
-                // present
-                return true;
-            }
-        }
-
-        for ( String pattern : maskPatterns )
+        // if there is a regexp pattern we cannot check presence of directory listing, because we would have to
+        // check only the beginning of the regexp and that's impossible, so the compiled mask assumes that the path is
+        // present
+        if ( getCompiledMask( store ).matchesListing( path ) )
         {
-            if ( path.startsWith( pattern ) || pattern.startsWith( path ) )
-            {
-                logger.trace( "Checking mask in: {}, pattern: {} - MATCH", store.getName(), pattern );
-                return true;
-            }
+            logger.trace( "Checking mask in: {}, path: {} - MATCH", store.getName(), path );
+            return true;
         }
 
         logger.debug( "Listing for path {} not enabled by path mask {} of repo {}", path, maskPatterns, store.getKey() );
@@ -102,4 +86,29 @@ public class PathMaskChecker
     {
         return pattern != null && pattern.startsWith( "r|" ) && pattern.endsWith( "|" );
     }
+
+    /**
+     * Return the compiled path mask for the store, compiling (and caching) it if the store's patterns have changed
+     * since it was last compiled.
+     */
+    public static CompiledPathMask getCompiledMask( final ArtifactStore store )
+    {
+        Set<String> maskPatterns = store.getPathMaskPatterns();
+        CompiledPathMask compiled = compiledMasks.get( store.getKey() );
+        if ( compiled == null || !compiled.isCompiledFrom( maskPatterns ) )
+        {
+            compiled = CompiledPathMask.compile( maskPatterns );
+            compiledMasks.put( store.getKey(), compiled );
+        }
+
+        return compiled;
+    }
+
+    /**
+     * Drop the compiled mask for the store. Needed when a store's pattern set may have been changed in place.
+     */
+    public static void invalidate( final StoreKey key )
+    {
+        compiledMasks.remove( key );
+    }
 }
@@ -79,6 +79,14 @@ public class IspnNotFoundCache
         this.config = config;
     }
 
+    public IspnNotFoundCache( final IndyConfiguration config,
+                              final CacheHandle<String, NfcConcreteResourceWrapper> nfcCache )
+    {
+        this.config = config;
+        this.nfcCache = nfcCache;
+        start();
+    }
+
     @PostConstruct
     private void start()
     {
@@ -152,12 +160,50 @@ public class IspnNotFoundCache
         return missing;
     }
 
+    /**
+     * Remove every entry for the given location. Queries are capped at <code>maxResultSetSize</code>, so this removes
+     * entries in batches until a batch comes back short, rather than stopping after the first batch and leaving the
+     * rest of the store's entries to keep serving false 404s.
+     */
     @Override
     public void clearMissing( final Location location )
     {
+        final String locationKey = ( (KeyedLocation) location ).getKey().toString();
         nfcCache.execute( (cache) -> {
-            Set<String> paths = getMissing( location );
-            paths.forEach( path -> cache.remove( getResourceKey( new ConcreteResource( location, path ) ) ) );
+            long total = 0;
+            int batchSize;
+            do
+            {
+                Query query = queryFactory.from( NfcConcreteResourceWrapper.class )
+                                          .maxResults( maxResultSetSize )
+                                          .having( "location" )
+                                          .eq( locationKey )
+                                          .toBuilder()
+                                          .build();
+
+                List<NfcConcreteResourceWrapper> batch = query.list();
+                batchSize = batch.size();
+
+                int removed = 0;
+                for ( NfcConcreteResourceWrapper entry : batch )
+                {
+                    if ( cache.remove( getResourceKey( locationKey, entry.getPath() ) ) != null )
+                    {
+                        removed++;
+                    }
+                }
+
+                total += removed;
+                if ( batchSize > 0 && removed == 0 )
+                {
+                    // the index still returns entries that are already gone; querying again won't make progress.
+                    logger.warn( "[NFC] Index returned {} stale entries while clearing: {}", batchSize, location );
+                    break;
+                }
+            }
+            while ( batchSize >= maxResultSetSize );
+
+            logger.debug( "[NFC] Cleared {} entries for: {}", total, location );
             return null;
         } );
     }
@@ -314,6 +360,11 @@ public class IspnNotFoundCache
     {
         KeyedLocation location = (KeyedLocation) resource.getLocation();
         StoreKey key = location.getKey();
-        return md5Hex( key.toString() + ":" + resource.getPath() );
+        return getResourceKey( key.toString(), resource.getPath() );
+    }
+
+    private String getResourceKey( String storeKey, String path )
+    {
+        return md5Hex( storeKey + ":" + path );
     }
 }
@@ -0,0 +1,928 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+import org.commonjava.indy.conf.IndyConfiguration;
+import org.commonjava.indy.core.util.PathHasher;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.galley.KeyedLocation;
+import org.commonjava.indy.model.galley.RepositoryLocation;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Alternative;
+import javax.inject.Inject;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.commonjava.indy.model.core.StoreType.hosted;
+
+/**
+ * {@link org.commonjava.maven.galley.spi.nfc.NotFoundCache} that keeps its entries off-heap. Each entry is a 128-bit
+ * hash of (store, path) from {@link PathHasher} plus its expiry, packed into 32-byte slots of open-addressed
+ * tables held in direct {@link ByteBuffer}s. The tables are split into segments, each with its own
+ * {@link StampedLock}, so {@link #isMissing(ConcreteResource)} is normally a lock-free optimistic read.
+ * <p>
+ * Since hashes can't be turned back into paths, each store also appends its entries to an off-heap arena of
+ * (hash, UTF-8 path) records, and each slot points back at its record. That arena is what
+ * {@link #getMissing(Location)} and {@link #clearMissing(Location)} walk, so neither needs a query, and clearing a store
+ * always removes every one of its entries. Records whose slot is gone, or points elsewhere, are stale; the expiration
+ * sweep compacts them away. Entries take no heap at all; each store costs one small object.
+ * <p>
+ * To use this instead of {@link IspnNotFoundCache}, select it as an alternative in beans.xml.
+ */
+@ApplicationScoped
+@Alternative
+public class OffHeapNotFoundCache
+        extends AbstractNotFoundCache
+{
+    /**
+     * Same upper bound the ISPN-based NFC is configured with. Once reached, new entries are dropped rather than
+     * evicting old ones; that only costs an extra upstream check.
+     */
+    public static final long DEFAULT_MAX_ENTRIES = 10_000_000L;
+
+    private static final int SEGMENT_COUNT = 64;
+
+    private static final int SEGMENT_SHIFT = 64 - Integer.numberOfTrailingZeros( SEGMENT_COUNT );
+
+    private static final int INITIAL_SEGMENT_SLOTS = 1024;
+
+    private static final int SLOT_BYTES = 32;
+
+    private static final int INITIAL_ARENA_BYTES = 1024;
+
+    private static final int MAX_ARENA_BYTES = 1 << 30;
+
+    // hash-hi, hash-lo and the path's byte length
+    private static final int RECORD_HEADER_BYTES = 20;
+
+    private static final long EMPTY = 0;
+
+    private static final long TOMBSTONE = -1;
+
+    private static final long NEVER = Long.MAX_VALUE;
+
+    private static final int PUT_REJECTED = 0;
+
+    private static final int PUT_ADDED = 1;
+
+    private static final int PUT_UPDATED = 2;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final ThreadLocal<long[]> hashes = ThreadLocal.withInitial( () -> new long[2] );
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    private final Map<String, StorePaths> storePaths = new ConcurrentHashMap<>();
+
+    private final AtomicLong size = new AtomicLong( 0 );
+
+    private ScheduledExecutorService evictionService;
+
+    private long maxEntries = DEFAULT_MAX_ENTRIES;
+
+    @Inject
+    protected IndyConfiguration config;
+
+    protected OffHeapNotFoundCache()
+    {
+    }
+
+    public OffHeapNotFoundCache( final IndyConfiguration config )
+    {
+        this( config, DEFAULT_MAX_ENTRIES );
+    }
+
+    public OffHeapNotFoundCache( final IndyConfiguration config, final long maxEntries )
+    {
+        this.config = config;
+        this.maxEntries = maxEntries;
+        start();
+    }
+
+    /**
+     * Allocates the tables here rather than in the constructor, so the container's client proxy doesn't take any
+     * direct memory.
+     */
+    @PostConstruct
+    public void start()
+    {
+        initSegments();
+
+        evictionService = Executors.newScheduledThreadPool( 1 );
+        final int sweepMins = config.getNfcExpirationSweepMinutes();
+        evictionService.scheduleAtFixedRate( this::clearAllExpiredMissing, sweepMins, sweepMins, TimeUnit.MINUTES );
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        if ( evictionService != null )
+        {
+            evictionService.shutdownNow();
+        }
+
+        storePaths.clear();
+        size.set( 0 );
+        // drop the tables and arenas, their direct buffers go with them
+        Arrays.fill( segments, null );
+    }
+
+    private void initSegments()
+    {
+        for ( int i = 0; i < SEGMENT_COUNT; i++ )
+        {
+            segments[i] = new Segment();
+        }
+    }
+
+    @Override
+    public void addMissing( final ConcreteResource resource )
+    {
+        final Location location = resource.getLocation();
+        long timeout = NEVER;
+        if ( !( location instanceof KeyedLocation ) || ( (KeyedLocation) location ).getKey().getType() != hosted )
+        {
+            int timeoutInSeconds = config.getNotFoundCacheTimeoutSeconds();
+            Integer to = location.getAttribute( RepositoryLocation.ATTR_NFC_TIMEOUT_SECONDS, Integer.class );
+            if ( to != null && to > 0 )
+            {
+                timeoutInSeconds = to;
+            }
+
+            if ( timeoutInSeconds > 0 )
+            {
+                timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis( timeoutInSeconds );
+            }
+        }
+
+        final long[] hash = hash( resource );
+        final long expiry = timeout;
+        final byte[] path = resource.getPath().getBytes( UTF_8 );
+
+        // all arena writes for a store happen inside compute() on its id, so the sweep can't compact or drop an arena
+        // that is being appended to, and clearMissing(Location) can't miss a record.
+        storePaths.compute( locationId( location ), ( id, paths ) -> {
+            StorePaths result = paths == null ? new StorePaths( location ) : paths;
+            int offset = result.append( hash[0], hash[1], path );
+            if ( offset < 0 )
+            {
+                logger.debug( "[NFC] Path arena for {} is full; not caching.", location );
+                return paths;
+            }
+
+            int put = segmentFor( hash[0] ).put( hash[0], hash[1], expiry, offset );
+            if ( put != PUT_ADDED )
+            {
+                // either it's already linked to an earlier record, or there's no room for it
+                result.truncate( offset );
+            }
+
+            if ( put == PUT_REJECTED )
+            {
+                return paths;
+            }
+
+            logger.debug( "[NFC] {} will not be checked again until {}", resource, expiry );
+            return result;
+        } );
+    }
+
+    @Override
+    public boolean isMissing( final ConcreteResource resource )
+    {
+        long[] hash = hash( resource );
+        Segment segment = segmentFor( hash[0] );
+        long timeout = segment.get( hash[0], hash[1] );
+
+        boolean missing = timeout != EMPTY && timeout > System.currentTimeMillis();
+        if ( timeout != EMPTY && !missing )
+        {
+            segment.remove( hash[0], hash[1] );
+        }
+
+        logger.trace( "NFC check: {}, timeout: {}, missing: {}", resource, timeout, missing );
+        return missing;
+    }
+
+    @Override
+    public void clearMissing( final Location location )
+    {
+        storePaths.computeIfPresent( locationId( location ), ( id, paths ) -> {
+            int cleared = paths.forEachRecord( ( offset, hi, lo ) -> {
+                segmentFor( hi ).remove( hi, lo );
+                return true;
+            } );
+
+            logger.debug( "[NFC] Cleared {} records for: {}", cleared, location );
+            return null;
+        } );
+    }
+
+    @Override
+    public void clearMissing( final ConcreteResource resource )
+    {
+        // the store's record goes stale with its slot, and the next sweep compacts it away
+        long[] hash = hash( resource );
+        segmentFor( hash[0] ).remove( hash[0], hash[1] );
+    }
+
+    @Override
+    public void clearAllMissing()
+    {
+        storePaths.clear();
+        for ( Segment segment : segments )
+        {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public Map<Location, Set<String>> getAllMissing()
+    {
+        Map<Location, Set<String>> result = new HashMap<>();
+        int remaining = config.getNfcMaxResultSetSize();
+        for ( StorePaths paths : storePaths.values() )
+        {
+            if ( remaining <= 0 )
+            {
+                break;
+            }
+
+            Set<String> live = livePaths( paths, remaining );
+            if ( !live.isEmpty() )
+            {
+                result.put( paths.location, live );
+                remaining -= live.size();
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public Set<String> getMissing( final Location location )
+    {
+        StorePaths paths = storePaths.get( locationId( location ) );
+        return paths == null ? new HashSet<>() : livePaths( paths, Integer.MAX_VALUE );
+    }
+
+    @Override
+    public Map<Location, Set<String>> getAllMissing( final int pageIndex, final int pageSize )
+    {
+        int size = getProperPageSize( pageSize );
+        long skip = (long) pageIndex * size;
+
+        Map<Location, Set<String>> result = new HashMap<>();
+        List<String> ids = new ArrayList<>( storePaths.keySet() );
+        Collections.sort( ids );
+        for ( String id : ids )
+        {
+            StorePaths paths = storePaths.get( id );
+            if ( paths == null )
+            {
+                continue;
+            }
+
+            Set<String> sorted = new TreeSet<>( livePaths( paths, Integer.MAX_VALUE ) );
+            if ( skip >= sorted.size() )
+            {
+                skip -= sorted.size();
+                continue;
+            }
+
+            Set<String> page = new HashSet<>();
+            for ( String path : sorted )
+            {
+                if ( skip > 0 )
+                {
+                    skip--;
+                }
+                else if ( page.size() < size )
+                {
+                    page.add( path );
+                }
+            }
+
+            result.put( paths.location, page );
+            size -= page.size();
+            if ( size <= 0 )
+            {
+                break;
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public Set<String> getMissing( final Location location, final int pageIndex, final int pageSize )
+    {
+        StorePaths paths = storePaths.get( locationId( location ) );
+        if ( paths == null )
+        {
+            return new HashSet<>();
+        }
+
+        int size = getProperPageSize( pageSize );
+        long skip = (long) pageIndex * size;
+
+        Set<String> result = new HashSet<>();
+        for ( String path : new TreeSet<>( livePaths( paths, Integer.MAX_VALUE ) ) )
+        {
+            if ( skip > 0 )
+            {
+                skip--;
+            }
+            else if ( result.size() < size )
+            {
+                result.add( path );
+            }
+            else
+            {
+                break;
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public long getSize( final StoreKey storeKey )
+    {
+        StorePaths paths = storePaths.get( storeKey.toString() );
+        if ( paths == null )
+        {
+            return 0;
+        }
+
+        long now = System.currentTimeMillis();
+        long[] count = new long[1];
+        paths.forEachRecord( ( offset, hi, lo ) -> {
+            if ( segmentFor( hi ).isLinked( hi, lo, offset, now ) )
+            {
+                count[0]++;
+            }
+            return true;
+        } );
+
+        return count[0];
+    }
+
+    @Override
+    public long getSize()
+    {
+        return size.get();
+    }
+
+    private int getProperPageSize( final int pageSize )
+    {
+        int max = config.getNfcMaxResultSetSize();
+        return pageSize <= 0 || pageSize > max ? max : pageSize;
+    }
+
+    /**
+     * Collect up to <code>limit</code> paths for a store that still have an unexpired entry linked to their record.
+     * This is the only place paths come back on-heap.
+     */
+    private Set<String> livePaths( final StorePaths paths, final int limit )
+    {
+        Set<String> result = new HashSet<>();
+        long now = System.currentTimeMillis();
+        paths.forEachRecord( ( offset, hi, lo ) -> {
+            if ( segmentFor( hi ).isLinked( hi, lo, offset, now ) )
+            {
+                result.add( paths.path( offset ) );
+            }
+            return result.size() < limit;
+        } );
+
+        return result;
+    }
+
+    private void clearAllExpiredMissing()
+    {
+        try
+        {
+            long now = System.currentTimeMillis();
+            for ( String id : storePaths.keySet() )
+            {
+                // atomic against addMissing(), which appends to the arena inside compute() on the same key
+                storePaths.computeIfPresent( id, ( k, paths ) -> compact( paths, now ) ? paths : null );
+            }
+        }
+        catch ( RuntimeException e )
+        {
+            logger.error( "[NFC] Failed to sweep expired entries", e );
+        }
+    }
+
+    /**
+     * Remove expired entries for a store, then rewrite its arena without the records that no longer have a linked
+     * slot. Return false if nothing is left, so the caller can drop the store.
+     */
+    private boolean compact( final StorePaths paths, final long now )
+    {
+        long[] liveBytes = new long[1];
+        paths.forEachRecord( ( offset, hi, lo ) -> {
+            Segment segment = segmentFor( hi );
+            if ( segment.isLinked( hi, lo, offset, Long.MIN_VALUE ) )
+            {
+                if ( segment.isLinked( hi, lo, offset, now ) )
+                {
+                    liveBytes[0] += paths.recordLength( offset );
+                }
+                else
+                {
+                    segment.remove( hi, lo );
+                }
+            }
+            return true;
+        } );
+
+        if ( liveBytes[0] < paths.end )
+        {
+            paths.compact( (int) liveBytes[0],
+                           ( oldOffset, newOffset, hi, lo ) -> segmentFor( hi ).relink( hi, lo, oldOffset,
+                                                                                        newOffset ) );
+        }
+
+        return paths.end > 0;
+    }
+
+    private long[] hash( final ConcreteResource resource )
+    {
+        long[] hash = hashes.get();
+        PathHasher.hash( resource, hash );
+        return hash;
+    }
+
+    private Segment segmentFor( final long hi )
+    {
+        return segments[(int) ( hi >>> SEGMENT_SHIFT )];
+    }
+
+    private static String locationId( final Location location )
+    {
+        return location instanceof KeyedLocation ?
+                ( (KeyedLocation) location ).getKey().toString() :
+                location.getUri();
+    }
+
+    private interface RecordVisitor
+    {
+        /**
+         * Visit one record. Return false to stop.
+         */
+        boolean visit( int offset, long hi, long lo );
+    }
+
+    private interface RecordMover
+    {
+        /**
+         * Move a record's slot link to its new offset. Return false if the record has no linked slot, so it's
+         * dropped instead.
+         */
+        boolean move( int oldOffset, int newOffset, long hi, long lo );
+    }
+
+    /**
+     * Append-only arena of one store's (hash-hi, hash-lo, path length, UTF-8 path) records in a direct buffer. Writes
+     * happen inside <code>compute()</code> on the store's id; reads synchronize with them on this object, since an
+     * append may swap in a larger buffer.
+     */
+    private static final class StorePaths
+    {
+        private final Location location;
+
+        private ByteBuffer arena = ByteBuffer.allocateDirect( INITIAL_ARENA_BYTES );
+
+        private int end;
+
+        private StorePaths( final Location location )
+        {
+            this.location = location;
+        }
+
+        /**
+         * Return the new record's offset, or -1 if the arena can't grow enough to hold it.
+         */
+        synchronized int append( final long hi, final long lo, final byte[] path )
+        {
+            int length = RECORD_HEADER_BYTES + path.length;
+            if ( (long) end + length > MAX_ARENA_BYTES )
+            {
+                return -1;
+            }
+
+            if ( end + length > arena.capacity() )
+            {
+                int capacity = arena.capacity();
+                while ( capacity < end + length )
+                {
+                    capacity *= 2;
+                }
+
+                ByteBuffer grown = ByteBuffer.allocateDirect( capacity );
+                ByteBuffer used = arena.duplicate();
+                used.position( 0 ).limit( end );
+                grown.put( used );
+                arena = grown;
+            }
+
+            int offset = end;
+            arena.putLong( offset, hi );
+            arena.putLong( offset + 8, lo );
+            arena.putInt( offset + 16, path.length );
+            ByteBuffer target = arena.duplicate();
+            target.position( offset + RECORD_HEADER_BYTES );
+            target.put( path );
+            end = offset + length;
+            return offset;
+        }
+
+        synchronized void truncate( final int offset )
+        {
+            end = offset;
+        }
+
+        /**
+         * Visit records in order while the visitor returns true, and return how many were visited.
+         */
+        synchronized int forEachRecord( final RecordVisitor visitor )
+        {
+            int count = 0;
+            for ( int offset = 0; offset < end; offset += recordLength( offset ) )
+            {
+                count++;
+                if ( !visitor.visit( offset, arena.getLong( offset ), arena.getLong( offset + 8 ) ) )
+                {
+                    break;
+                }
+            }
+
+            return count;
+        }
+
+        synchronized String path( final int offset )
+        {
+            byte[] bytes = new byte[arena.getInt( offset + 16 )];
+            ByteBuffer source = arena.duplicate();
+            source.position( offset + RECORD_HEADER_BYTES );
+            source.get( bytes );
+            return new String( bytes, UTF_8 );
+        }
+
+        synchronized int recordLength( final int offset )
+        {
+            return RECORD_HEADER_BYTES + arena.getInt( offset + 16 );
+        }
+
+        /**
+         * Copy the records the mover keeps into a buffer sized for <code>liveBytes</code>, and swap it in.
+         */
+        synchronized void compact( final int liveBytes, final RecordMover mover )
+        {
+            int capacity = INITIAL_ARENA_BYTES;
+            while ( capacity < liveBytes )
+            {
+                capacity *= 2;
+            }
+
+            ByteBuffer compacted = ByteBuffer.allocateDirect( capacity );
+            int written = 0;
+            for ( int offset = 0; offset < end; )
+            {
+                int length = recordLength( offset );
+                if ( written + length <= capacity
+                        && mover.move( offset, written, arena.getLong( offset ), arena.getLong( offset + 8 ) ) )
+                {
+                    ByteBuffer record = arena.duplicate();
+                    record.position( offset ).limit( offset + length );
+                    compacted.position( written );
+                    compacted.put( record );
+                    written += length;
+                }
+
+                offset += length;
+            }
+
+            arena = compacted;
+            end = written;
+        }
+    }
+
+    /**
+     * One open-addressed, linearly probed table of (hash-hi, hash-lo, expiry, record offset) slots. An expiry of
+     * {@link #EMPTY} marks a free slot, and {@link #TOMBSTONE} a removed one. Readers derive the slot count from the
+     * buffer they captured, so an optimistic read racing a resize never indexes past the end of its buffer.
+     */
+    private final class Segment
+    {
+        private final StampedLock lock = new StampedLock();
+
+        private volatile ByteBuffer table = allocate( INITIAL_SEGMENT_SLOTS );
+
+        private int live;
+
+        private int used;
+
+        long get( final long hi, final long lo )
+        {
+            long stamp = lock.tryOptimisticRead();
+            long timeout = timeout( table, find( table, hi, lo ) );
+            if ( !lock.validate( stamp ) )
+            {
+                stamp = lock.readLock();
+                try
+                {
+                    timeout = timeout( table, find( table, hi, lo ) );
+                }
+                finally
+                {
+                    lock.unlockRead( stamp );
+                }
+            }
+
+            return timeout;
+        }
+
+        /**
+         * Whether the entry exists, expires after <code>now</code>, and points at the record at <code>offset</code>.
+         */
+        boolean isLinked( final long hi, final long lo, final int offset, final long now )
+        {
+            long stamp = lock.tryOptimisticRead();
+            boolean linked = isLinked( table, find( table, hi, lo ), offset, now );
+            if ( !lock.validate( stamp ) )
+            {
+                stamp = lock.readLock();
+                try
+                {
+                    linked = isLinked( table, find( table, hi, lo ), offset, now );
+                }
+                finally
+                {
+                    lock.unlockRead( stamp );
+                }
+            }
+
+            return linked;
+        }
+
+        /**
+         * Insert the entry linked to the record at <code>offset</code>, or just refresh the expiry of an existing
+         * one, which stays linked to its earlier record.
+         */
+        int put( final long hi, final long lo, final long timeout, final int offset )
+        {
+            long stamp = lock.writeLock();
+            try
+            {
+                int slot = probe( table, hi, lo );
+                if ( slot >= 0 )
+                {
+                    table.putLong( slot * SLOT_BYTES + 16, timeout );
+                    return PUT_UPDATED;
+                }
+
+                if ( size.get() >= maxEntries )
+                {
+                    logger.debug( "[NFC] Off-heap NFC is full ({} entries); not caching.", maxEntries );
+                    return PUT_REJECTED;
+                }
+
+                int capacity = table.capacity() / SLOT_BYTES;
+                if ( ( used + 1 ) * 4L > capacity * 3L )
+                {
+                    // grow only if live entries justify it; otherwise just rehash away the tombstones.
+                    rehash( live * 2 > capacity ? capacity * 2 : capacity );
+                }
+
+                slot = -( probe( table, hi, lo ) + 1 );
+                long previous = table.getLong( slot * SLOT_BYTES + 16 );
+                write( table, slot, hi, lo, timeout, offset );
+
+                live++;
+                if ( previous == EMPTY )
+                {
+                    used++;
+                }
+
+                size.incrementAndGet();
+                return PUT_ADDED;
+            }
+            finally
+            {
+                lock.unlockWrite( stamp );
+            }
+        }
+
+        /**
+         * Point the entry at its record's new offset after its arena was compacted. Return false if the entry is gone
+         * or belongs to another record.
+         */
+        boolean relink( final long hi, final long lo, final int oldOffset, final int newOffset )
+        {
+            long stamp = lock.writeLock();
+            try
+            {
+                int slot = probe( table, hi, lo );
+                if ( slot < 0 || table.getLong( slot * SLOT_BYTES + 24 ) != oldOffset )
+                {
+                    return false;
+                }
+
+                table.putLong( slot * SLOT_BYTES + 24, newOffset );
+                return true;
+            }
+            finally
+            {
+                lock.unlockWrite( stamp );
+            }
+        }
+
+        void remove( final long hi, final long lo )
+        {
+            long stamp = lock.writeLock();
+            try
+            {
+                int slot = probe( table, hi, lo );
+                if ( slot >= 0 )
+                {
+                    table.putLong( slot * SLOT_BYTES + 16, TOMBSTONE );
+                    live--;
+                    size.decrementAndGet();
+                }
+            }
+            finally
+            {
+                lock.unlockWrite( stamp );
+            }
+        }
+
+        void clear()
+        {
+            long stamp = lock.writeLock();
+            try
+            {
+                size.addAndGet( -live );
+                table = allocate( INITIAL_SEGMENT_SLOTS );
+                live = 0;
+                used = 0;
+            }
+            finally
+            {
+                lock.unlockWrite( stamp );
+            }
+        }
+
+        private long timeout( final ByteBuffer buffer, final int slot )
+        {
+            return slot < 0 ? EMPTY : buffer.getLong( slot * SLOT_BYTES + 16 );
+        }
+
+        private boolean isLinked( final ByteBuffer buffer, final int slot, final int offset, final long now )
+        {
+            return slot >= 0 && buffer.getLong( slot * SLOT_BYTES + 16 ) > now
+                    && buffer.getLong( slot * SLOT_BYTES + 24 ) == offset;
+        }
+
+        /**
+         * Return the slot holding the given hash, or -1.
+         */
+        private int find( final ByteBuffer buffer, final long hi, final long lo )
+        {
+            int capacity = buffer.capacity() / SLOT_BYTES;
+            int mask = capacity - 1;
+            int idx = (int) ( lo ^ ( lo >>> 32 ) ) & mask;
+            for ( int i = 0; i < capacity; i++ )
+            {
+                int offset = idx * SLOT_BYTES;
+                long timeout = buffer.getLong( offset + 16 );
+                if ( timeout == EMPTY )
+                {
+                    return -1;
+                }
+
+                if ( timeout != TOMBSTONE && buffer.getLong( offset ) == hi && buffer.getLong( offset + 8 ) == lo )
+                {
+                    return idx;
+                }
+
+                idx = ( idx + 1 ) & mask;
+            }
+
+            return -1;
+        }
+
+        /**
+         * Return the slot holding the given hash, or <code>-(insertion slot + 1)</code> if it isn't present. Must be
+         * called with the write lock held.
+         */
+        private int probe( final ByteBuffer buffer, final long hi, final long lo )
+        {
+            int capacity = buffer.capacity() / SLOT_BYTES;
+            int mask = capacity - 1;
+            int idx = (int) ( lo ^ ( lo >>> 32 ) ) & mask;
+            int firstFree = -1;
+            for ( int i = 0; i < capacity; i++ )
+            {
+                int offset = idx * SLOT_BYTES;
+                long timeout = buffer.getLong( offset + 16 );
+                if ( timeout == EMPTY )
+                {
+                    return -( ( firstFree < 0 ? idx : firstFree ) + 1 );
+                }
+
+                if ( timeout == TOMBSTONE )
+                {
+                    if ( firstFree < 0 )
+                    {
+                        firstFree = idx;
+                    }
+                }
+                else if ( buffer.getLong( offset ) == hi && buffer.getLong( offset + 8 ) == lo )
+                {
+                    return idx;
+                }
+
+                idx = ( idx + 1 ) & mask;
+            }
+
+            return -( firstFree + 1 );
+        }
+
+        private void rehash( final int capacity )
+        {
+            ByteBuffer old = table;
+            ByteBuffer updated = allocate( capacity );
+            int oldCapacity = old.capacity() / SLOT_BYTES;
+            for ( int i = 0; i < oldCapacity; i++ )
+            {
+                int offset = i * SLOT_BYTES;
+                long timeout = old.getLong( offset + 16 );
+                if ( timeout != EMPTY && timeout != TOMBSTONE )
+                {
+                    long hi = old.getLong( offset );
+                    long lo = old.getLong( offset + 8 );
+                    int slot = -( probe( updated, hi, lo ) + 1 );
+                    write( updated, slot, hi, lo, timeout, old.getLong( offset + 24 ) );
+                }
+            }
+
+            table = updated;
+            used = live;
+        }
+
+        private void write( final ByteBuffer buffer, final int slot, final long hi, final long lo, final long timeout,
+                            final long record )
+        {
+            int offset = slot * SLOT_BYTES;
+            buffer.putLong( offset, hi );
+            buffer.putLong( offset + 8, lo );
+            buffer.putLong( offset + 16, timeout );
+            buffer.putLong( offset + 24, record );
+        }
+
+        private ByteBuffer allocate( final int slots )
+        {
+            return ByteBuffer.allocateDirect( slots * SLOT_BYTES );
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.util;
+
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.galley.KeyedLocation;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+
+/**
+ * Computes a 128-bit hash of a path, or of a (location, path) pair, without building an intermediate key string. For
+ * {@link KeyedLocation}s the hash covers the {@link StoreKey} components, which is the same identity
+ * {@link org.commonjava.indy.core.inject.IspnNotFoundCache} uses; for other locations it covers the location URI.
+ * <p>
+ * The two halves come from two MurmurHash3-style 64-bit lanes with different seeds, fed one char at a time. Off-heap
+ * tables keyed by path (the off-heap NFC, the mapped content index) store these hashes in place of the paths.
+ */
+public final class PathHasher
+{
+    private static final long C1 = 0x87c37b91114253d5L;
+
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private static final long SEED_HI = 0x9e3779b97f4a7c15L;
+
+    private static final long SEED_LO = 0xc2b2ae3d27d4eb4fL;
+
+    private static final char SEPARATOR = ':';
+
+    private PathHasher()
+    {
+    }
+
+    /**
+     * Hash the resource, and return the high 64 bits in <code>result[0]</code> and the low 64 bits in
+     * <code>result[1]</code>. Passing the result array in lets hot callers reuse it, so hashing allocates nothing.
+     */
+    public static void hash( final ConcreteResource resource, final long[] result )
+    {
+        hash( resource.getLocation(), resource.getPath(), result );
+    }
+
+    public static void hash( final Location location, final String path, final long[] result )
+    {
+        result[0] = SEED_HI;
+        result[1] = SEED_LO;
+
+        long length;
+        if ( location instanceof KeyedLocation )
+        {
+            StoreKey key = ( (KeyedLocation) location ).getKey();
+            length = update( key.getPackageType(), result );
+            length += update( SEPARATOR, result );
+            length += update( key.getType().name(), result );
+            length += update( SEPARATOR, result );
+            length += update( key.getName(), result );
+        }
+        else
+        {
+            length = update( location.getUri(), result );
+        }
+
+        length += update( SEPARATOR, result );
+        length += update( path, result );
+        finish( length, result );
+    }
+
+    /**
+     * Hash a single string, e.g. a path, into <code>result</code> the same way as
+     * {@link #hash(ConcreteResource, long[])}.
+     */
+    public static void hash( final String value, final long[] result )
+    {
+        result[0] = SEED_HI;
+        result[1] = SEED_LO;
+        finish( update( value, result ), result );
+    }
+
+    private static long update( final String value, final long[] state )
+    {
+        if ( value == null )
+        {
+            return 0;
+        }
+
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            update( value.charAt( i ), state );
+        }
+
+        return value.length();
+    }
+
+    private static long update( final char c, final long[] state )
+    {
+        long k1 = c * C1;
+        k1 = Long.rotateLeft( k1, 31 ) * C2;
+        long hi = state[0] ^ k1;
+        state[0] = Long.rotateLeft( hi, 27 ) * 5 + 0x52dce729;
+
+        long k2 = c * C2;
+        k2 = Long.rotateLeft( k2, 33 ) * C1;
+        long lo = state[1] ^ k2;
+        state[1] = Long.rotateLeft( lo, 31 ) * 5 + 0x38495ab5;
+
+        return 1;
+    }
+
+    private static void finish( final long length, final long[] state )
+    {
+        long hi = state[0] ^ length;
+        long lo = state[1] ^ length;
+        hi += lo;
+        lo += hi;
+        hi = fmix64( hi );
+        lo = fmix64( lo );
+        hi += lo;
+        lo += hi;
+
+        state[0] = hi;
+        state[1] = lo;
+    }
+
+    private static long fmix64( long k )
+    {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
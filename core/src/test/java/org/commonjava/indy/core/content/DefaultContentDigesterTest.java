@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.commonjava.cdi.util.weft.PoolWeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.content.DirectContentAccess;
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.content.IndyLocationExpander;
+import org.commonjava.indy.core.inject.ExpiringMemoryNotFoundCache;
+import org.commonjava.indy.data.StoreDataManager;
+import org.commonjava.indy.mem.data.MemoryStoreDataManager;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.subsys.infinispan.CacheHandle;
+import org.commonjava.maven.galley.GalleyCore;
+import org.commonjava.maven.galley.GalleyCoreBuilder;
+import org.commonjava.maven.galley.cache.FileCacheProviderFactory;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.io.checksum.ContentDigest;
+import org.commonjava.maven.galley.io.checksum.TransferMetadata;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.infinispan.Cache;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class DefaultContentDigesterTest
+{
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private static DefaultCacheManager cacheManager;
+
+    private static Cache<String, TransferMetadata> contentMetadata;
+
+    private DirectContentAccess dca;
+
+    private DefaultContentDigester digester;
+
+    private HostedRepository hosted;
+
+    @BeforeClass
+    public static void setupClass()
+    {
+        cacheManager = new DefaultCacheManager(
+                        new GlobalConfigurationBuilder().globalJmxStatistics().allowDuplicateDomains( true ).build() );
+        contentMetadata = cacheManager.getCache( "content-metadata-digester", true );
+    }
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        contentMetadata.clear();
+
+        GalleyCore core = new GalleyCoreBuilder( new FileCacheProviderFactory( temp.newFolder( "cache" ) ) ).build();
+        StoreDataManager storeManager = new MemoryStoreDataManager( true );
+
+        DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        WeftExecutorService rescanService =
+                        new PoolWeftExecutorService( "test-rescan-executor", (ThreadPoolExecutor) Executors.newCachedThreadPool(), 2, 10f, null, null );
+
+        DefaultDownloadManager downloadManager =
+                        new DefaultDownloadManager( storeManager, core.getTransferManager(),
+                                                    new IndyLocationExpander( storeManager ), null,
+                                                    new ExpiringMemoryNotFoundCache( config ), rescanService );
+
+        WeftExecutorService contentAccessService =
+                        new PoolWeftExecutorService( "test-content-access-executor", (ThreadPoolExecutor) Executors.newCachedThreadPool(), 2, 10f, null, null );
+        dca = new DefaultDirectContentAccess( downloadManager, contentAccessService );
+
+        digester = new DefaultContentDigester( dca, new CacheHandle<>( "content-metadata-digester", contentMetadata ) );
+
+        hosted = new HostedRepository( MAVEN_PKG_KEY, "digested" );
+        storeManager.storeArtifactStore( hosted, new ChangeSummary( ChangeSummary.SYSTEM_USER, "Test setup" ), false,
+                                         true, new EventMetadata() );
+    }
+
+    @Test
+    public void digestStreamsAllChecksumsAndCachesResult()
+            throws Exception
+    {
+        String path = "/org/foo/bar/1/bar-1.jar";
+        byte[] content = store( path, 3 * 64 * 1024 + 17 );
+
+        TransferMetadata meta = digester.digest( hosted.getKey(), path, new EventMetadata() );
+
+        assertThat( meta.getSize(), equalTo( (long) content.length ) );
+        assertThat( meta.getDigests().get( ContentDigest.MD5 ), equalTo( DigestUtils.md5Hex( content ) ) );
+        assertThat( meta.getDigests().get( ContentDigest.SHA_1 ), equalTo( DigestUtils.sha1Hex( content ) ) );
+        assertThat( meta.getDigests().get( ContentDigest.SHA_256 ), equalTo( DigestUtils.sha256Hex( content ) ) );
+
+        assertThat( digester.getContentMetadata( dca.getTransfer( hosted, path ) ).getDigests(),
+                    equalTo( meta.getDigests() ) );
+    }
+
+    @Test
+    public void concurrentDigestsShareOneResult()
+            throws Exception
+    {
+        String path = "/org/foo/bar/1/bar-1.tar.gz";
+        store( path, 4 * 1024 * 1024 );
+
+        ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try
+        {
+            List<Future<TransferMetadata>> results = new ArrayList<>();
+            for ( int i = 0; i < 8; i++ )
+            {
+                results.add( executor.submit( () -> digester.digest( hosted.getKey(), path, new EventMetadata() ) ) );
+            }
+
+            TransferMetadata first = results.get( 0 ).get();
+            for ( Future<TransferMetadata> result : results )
+            {
+                assertThat( result.get().getDigests(), equalTo( first.getDigests() ) );
+            }
+
+            assertThat( digester.getContentMetadata( dca.getTransfer( hosted, path ) ).getDigests(),
+                        equalTo( first.getDigests() ) );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private byte[] store( final String path, final int size )
+            throws Exception
+    {
+        byte[] content = new byte[size];
+        new Random( size ).nextBytes( content );
+
+        Transfer transfer = dca.getTransfer( hosted, path );
+        try (OutputStream out = transfer.openOutputStream( TransferOperation.UPLOAD ))
+        {
+            out.write( content );
+        }
+
+        return content;
+    }
+}
@@ -15,10 +15,96 @@
  */
 package org.commonjava.indy.core.content;
 
+import org.commonjava.cdi.util.weft.PoolWeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.content.ContentGenerator;
+import org.commonjava.indy.content.ContentManager;
+import org.commonjava.indy.content.IndyLocationExpander;
+import org.commonjava.indy.data.StoreDataManager;
+import org.commonjava.indy.mem.data.MemoryStoreDataManager;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.io.IndyObjectMapper;
+import org.commonjava.indy.model.galley.KeyedLocation;
+import org.commonjava.maven.galley.GalleyCore;
+import org.commonjava.maven.galley.GalleyCoreBuilder;
+import org.commonjava.maven.galley.cache.FileCacheProviderFactory;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.io.SpecialPathManagerImpl;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.nfc.MemoryNotFoundCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
 
 public class DefaultContentManagerTest
 {
+    private static final String PATH = "/path/to/file.txt";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private StoreDataManager storeManager;
+
+    private ScriptedDownloadManager downloadManager;
+
+    private ContentManager contentManager;
+
+    private ExecutorService memberRetrievalPool;
+
+    private final ChangeSummary summary = new ChangeSummary( ChangeSummary.SYSTEM_USER, "Test setup" );
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        GalleyCore core = new GalleyCoreBuilder( new FileCacheProviderFactory( temp.newFolder( "cache" ) ) ).build();
+
+        storeManager = new MemoryStoreDataManager( true );
+
+        WeftExecutorService rescanService =
+                        new PoolWeftExecutorService( "test-rescan-executor", (ThreadPoolExecutor) Executors.newCachedThreadPool(), 2, 10f, null, null );
+
+        downloadManager = new ScriptedDownloadManager( storeManager, core, new MemoryNotFoundCache(), rescanService );
+
+        memberRetrievalPool = Executors.newCachedThreadPool();
+        WeftExecutorService memberRetrievalService =
+                        new PoolWeftExecutorService( "test-member-retrieval-executor", (ThreadPoolExecutor) memberRetrievalPool, 4, 10f, null, null );
+
+        contentManager = new DefaultContentManager( storeManager, downloadManager, new IndyObjectMapper( true ),
+                                                    new SpecialPathManagerImpl(), new MemoryNotFoundCache(), null,
+                                                    Collections.<ContentGenerator>emptySet(), memberRetrievalService );
+    }
+
+    @After
+    public void teardown()
+    {
+        downloadManager.release();
+        memberRetrievalPool.shutdownNow();
+    }
 
     @Test
     public void hexOfZero()
@@ -26,4 +112,235 @@ public class DefaultContentManagerTest
         System.out.println( Integer.toHexString( 0x00 & 0xff ) );
     }
 
+    @Test
+    public void racingGroup_FirstMemberWithPathWins()
+            throws Exception
+    {
+        HostedRepository one = hosted( "one" );
+        HostedRepository two = hosted( "two" );
+        HostedRepository three = hosted( "three" );
+        Group group = group( "racing", true, one, two, three );
+
+        contentManager.store( three, PATH, new ByteArrayInputStream( "three".getBytes() ), TransferOperation.UPLOAD );
+        contentManager.store( two, PATH, new ByteArrayInputStream( "two".getBytes() ), TransferOperation.UPLOAD );
+
+        Transfer transfer = contentManager.retrieve( group, PATH );
+
+        assertThat( ( (KeyedLocation) transfer.getLocation() ).getKey(), equalTo( two.getKey() ) );
+    }
+
+    @Test
+    public void racingGroup_FailingMemberLosesToNextMemberWithPath()
+            throws Exception
+    {
+        HostedRepository one = hosted( "one" );
+        HostedRepository two = hosted( "two" );
+        Group group = group( "racing", true, one, two );
+
+        contentManager.store( one, PATH, new ByteArrayInputStream( "one".getBytes() ), TransferOperation.UPLOAD );
+        contentManager.store( two, PATH, new ByteArrayInputStream( "two".getBytes() ), TransferOperation.UPLOAD );
+        downloadManager.fail( one.getKey() );
+
+        Transfer transfer = contentManager.retrieve( group, PATH );
+
+        assertThat( ( (KeyedLocation) transfer.getLocation() ).getKey(), equalTo( two.getKey() ) );
+    }
+
+    @Test( timeout = 10000 )
+    public void racingGroup_SlowLowerPriorityMemberIsNotAwaited()
+            throws Exception
+    {
+        HostedRepository one = hosted( "one" );
+        HostedRepository two = hosted( "two" );
+        Group group = group( "racing", true, one, two );
+
+        contentManager.store( one, PATH, new ByteArrayInputStream( "one".getBytes() ), TransferOperation.UPLOAD );
+        contentManager.store( two, PATH, new ByteArrayInputStream( "two".getBytes() ), TransferOperation.UPLOAD );
+        downloadManager.stall( two.getKey() );
+
+        Transfer transfer = contentManager.retrieve( group, PATH );
+
+        assertThat( ( (KeyedLocation) transfer.getLocation() ).getKey(), equalTo( one.getKey() ) );
+    }
+
+    @Test( timeout = 10000 )
+    public void racingGroup_SlowHigherPriorityMemberStillWins()
+            throws Exception
+    {
+        HostedRepository one = hosted( "one" );
+        HostedRepository two = hosted( "two" );
+        Group group = group( "racing", true, one, two );
+
+        contentManager.store( one, PATH, new ByteArrayInputStream( "one".getBytes() ), TransferOperation.UPLOAD );
+        contentManager.store( two, PATH, new ByteArrayInputStream( "two".getBytes() ), TransferOperation.UPLOAD );
+        downloadManager.delay( one.getKey(), 500 );
+
+        Transfer transfer = contentManager.retrieve( group, PATH );
+
+        assertThat( ( (KeyedLocation) transfer.getLocation() ).getKey(), equalTo( one.getKey() ) );
+    }
+
+    @Test
+    public void racingGroup_AllMembersMissing()
+            throws Exception
+    {
+        HostedRepository one = hosted( "one" );
+        HostedRepository two = hosted( "two" );
+        HostedRepository three = hosted( "three" );
+        Group group = group( "racing", true, one, two, three );
+
+        Transfer transfer = contentManager.retrieve( group, PATH );
+
+        assertThat( transfer, nullValue() );
+        assertThat( downloadManager.retrievalThreads.size(), equalTo( 3 ) );
+    }
+
+    @Test
+    public void racingGroup_SingleMemberRetrievedSerially()
+            throws Exception
+    {
+        HostedRepository one = hosted( "one" );
+        Group group = group( "racing", true, one );
+
+        contentManager.store( one, PATH, new ByteArrayInputStream( "one".getBytes() ), TransferOperation.UPLOAD );
+
+        Transfer transfer = contentManager.retrieve( group, PATH );
+
+        assertThat( ( (KeyedLocation) transfer.getLocation() ).getKey(), equalTo( one.getKey() ) );
+        assertThat( downloadManager.retrievalThreads.get( one.getKey() ), equalTo( Thread.currentThread() ) );
+    }
+
+    @Test
+    public void nonRacingGroup_MembersRetrievedSerially()
+            throws Exception
+    {
+        HostedRepository one = hosted( "one" );
+        HostedRepository two = hosted( "two" );
+        Group group = group( "serial", false, one, two );
+
+        contentManager.store( two, PATH, new ByteArrayInputStream( "two".getBytes() ), TransferOperation.UPLOAD );
+
+        Transfer transfer = contentManager.retrieve( group, PATH );
+
+        assertThat( ( (KeyedLocation) transfer.getLocation() ).getKey(), equalTo( two.getKey() ) );
+        assertThat( downloadManager.retrievalThreads.get( one.getKey() ), equalTo( Thread.currentThread() ) );
+        assertThat( downloadManager.retrievalThreads.get( two.getKey() ), equalTo( Thread.currentThread() ) );
+    }
+
+    @Test
+    public void racingGroup_MembersRetrievedOffCallingThread()
+            throws Exception
+    {
+        HostedRepository one = hosted( "one" );
+        HostedRepository two = hosted( "two" );
+        Group group = group( "racing", true, one, two );
+
+        contentManager.store( one, PATH, new ByteArrayInputStream( "one".getBytes() ), TransferOperation.UPLOAD );
+
+        Transfer transfer = contentManager.retrieve( group, PATH );
+
+        assertThat( transfer, notNullValue() );
+        assertThat( downloadManager.retrievalThreads.get( one.getKey() ), not( equalTo( Thread.currentThread() ) ) );
+    }
+
+    private HostedRepository hosted( final String name )
+            throws Exception
+    {
+        HostedRepository repo = new HostedRepository( MAVEN_PKG_KEY, name );
+        storeManager.storeArtifactStore( repo, summary, false, true, new EventMetadata() );
+        return repo;
+    }
+
+    private Group group( final String name, final boolean race, final ArtifactStore... members )
+            throws Exception
+    {
+        Group group = new Group( MAVEN_PKG_KEY, name );
+        for ( ArtifactStore member : members )
+        {
+            group.addConstituent( member );
+        }
+
+        if ( race )
+        {
+            group.setMetadata( Group.METADATA_RACE_MEMBERS, Boolean.TRUE.toString() );
+        }
+
+        storeManager.storeArtifactStore( group, summary, false, true, new EventMetadata() );
+        return group;
+    }
+
+    /**
+     * Download manager whose member retrievals can be made to fail, stall until the test ends, or run late. It also
+     * records which thread retrieved from each store, so tests can tell the serial walk from the race.
+     */
+    private static final class ScriptedDownloadManager
+            extends DefaultDownloadManager
+    {
+        private final Map<StoreKey, Thread> retrievalThreads = new ConcurrentHashMap<>();
+
+        private final Map<StoreKey, Long> delays = new ConcurrentHashMap<>();
+
+        private final Map<StoreKey, Boolean> failures = new ConcurrentHashMap<>();
+
+        private final CountDownLatch stalled = new CountDownLatch( 1 );
+
+        ScriptedDownloadManager( final StoreDataManager storeManager, final GalleyCore core,
+                                 final MemoryNotFoundCache nfc, final WeftExecutorService rescanService )
+        {
+            super( storeManager, core.getTransferManager(), new IndyLocationExpander( storeManager ), null, nfc,
+                   rescanService );
+        }
+
+        void fail( final StoreKey key )
+        {
+            failures.put( key, Boolean.TRUE );
+        }
+
+        void stall( final StoreKey key )
+        {
+            delays.put( key, -1L );
+        }
+
+        void delay( final StoreKey key, final long millis )
+        {
+            delays.put( key, millis );
+        }
+
+        void release()
+        {
+            stalled.countDown();
+        }
+
+        @Override
+        public Transfer retrieve( final ArtifactStore store, final String path, final EventMetadata eventMetadata )
+                throws IndyWorkflowException
+        {
+            retrievalThreads.put( store.getKey(), Thread.currentThread() );
+
+            Long delay = delays.get( store.getKey() );
+            try
+            {
+                if ( delay != null && delay < 0 )
+                {
+                    stalled.await();
+                }
+                else if ( delay != null )
+                {
+                    Thread.sleep( delay );
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+
+            if ( failures.containsKey( store.getKey() ) )
+            {
+                throw new IndyWorkflowException( "Retrieval of %s from %s failed", path, store.getKey() );
+            }
+
+            return super.retrieve( store, path, eventMetadata );
+        }
+    }
 }
@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class PathMaskCheckerTest
+{
+    @Test
+    public void unmaskedStoreAllowsEverything()
+    {
+        RemoteRepository repo = remote( "unmasked" );
+
+        assertThat( PathMaskChecker.checkMask( repo, "org/foo/bar/1/bar-1.jar" ), equalTo( true ) );
+        assertThat( PathMaskChecker.checkListingMask( repo, "org/" ), equalTo( true ) );
+    }
+
+    @Test
+    public void plainAndRegexPatterns()
+    {
+        RemoteRepository repo = remote( "masked", "org/foo/", "org/bar/baz/", "r|.+/[^/]+-redhat-\\d+/.*|" );
+
+        assertThat( PathMaskChecker.checkMask( repo, "org/foo/bar/1/bar-1.jar" ), equalTo( true ) );
+        assertThat( PathMaskChecker.checkMask( repo, "org/bar/baz/1/baz-1.pom" ), equalTo( true ) );
+        assertThat( PathMaskChecker.checkMask( repo, "org/bar/qux/1/qux-1.pom" ), equalTo( false ) );
+        assertThat( PathMaskChecker.checkMask( repo, "com/acme/1.0-redhat-1/acme.pom" ), equalTo( true ) );
+        assertThat( PathMaskChecker.checkMask( repo, "org/fo" ), equalTo( false ) );
+    }
+
+    @Test
+    public void listingMatchesPathsOnTheWayToAPattern()
+    {
+        RemoteRepository repo = remote( "listing", "org/foo/", "org/bar/baz/" );
+
+        assertThat( PathMaskChecker.checkListingMask( repo, "org/" ), equalTo( true ) );
+        assertThat( PathMaskChecker.checkListingMask( repo, "org/bar/" ), equalTo( true ) );
+        assertThat( PathMaskChecker.checkListingMask( repo, "org/foo/bar/" ), equalTo( true ) );
+        assertThat( PathMaskChecker.checkListingMask( repo, "com/" ), equalTo( false ) );
+        assertThat( PathMaskChecker.checkListingMask( repo, "org/bar/qux/" ), equalTo( false ) );
+
+        repo.setPathMaskPatterns( new HashSet<>( Arrays.asList( "org/foo/", "r|com/.*|" ) ) );
+        assertThat( PathMaskChecker.checkListingMask( repo, "net/" ), equalTo( true ) );
+    }
+
+    @Test
+    public void recompilesWhenPatternsChange()
+    {
+        RemoteRepository repo = remote( "changing", "org/foo/" );
+        assertThat( PathMaskChecker.checkMask( repo, "org/bar/1/bar-1.jar" ), equalTo( false ) );
+
+        RemoteRepository updated = remote( "changing", "org/bar/" );
+        assertThat( PathMaskChecker.checkMask( updated, "org/bar/1/bar-1.jar" ), equalTo( true ) );
+        assertThat( PathMaskChecker.checkMask( updated, "org/foo/1/foo-1.jar" ), equalTo( false ) );
+
+        // patterns changed in place are picked up once the store's mask is invalidated
+        updated.getPathMaskPatterns().add( "org/foo/" );
+        PathMaskChecker.invalidate( updated.getKey() );
+        assertThat( PathMaskChecker.checkMask( updated, "org/foo/1/foo-1.jar" ), equalTo( true ) );
+    }
+
+    private RemoteRepository remote( final String name, final String... patterns )
+    {
+        RemoteRepository repo = new RemoteRepository( MAVEN_PKG_KEY, name, "http://repo.example.com/" );
+        if ( patterns.length > 0 )
+        {
+            repo.setPathMaskPatterns( new HashSet<>( Arrays.asList( patterns ) ) );
+        }
+
+        return repo;
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.galley.RepositoryLocation;
+import org.commonjava.indy.subsys.infinispan.CacheHandle;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.cache.Index;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class IspnNotFoundCacheTest
+{
+    private static final int MAX_RESULT_SET_SIZE = 10;
+
+    private static DefaultCacheManager cacheManager;
+
+    private static Cache<String, NfcConcreteResourceWrapper> cache;
+
+    private IspnNotFoundCache nfc;
+
+    @BeforeClass
+    public static void setupClass()
+    {
+        cacheManager = new DefaultCacheManager(
+                        new GlobalConfigurationBuilder().globalJmxStatistics().allowDuplicateDomains( true ).build() );
+
+        cacheManager.defineConfiguration( "nfc", new ConfigurationBuilder().indexing()
+                                                                         .index( Index.LOCAL )
+                                                                         .addProperty( "default.directory_provider",
+                                                                                       "ram" )
+                                                                         .addProperty( "lucene_version",
+                                                                                       "LUCENE_CURRENT" )
+                                                                         .build() );
+
+        cache = cacheManager.getCache( "nfc", true );
+    }
+
+    @AfterClass
+    public static void teardownClass()
+    {
+        cacheManager.stop();
+    }
+
+    @Before
+    public void setup()
+    {
+        cache.clear();
+
+        DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        config.setDefaultNfcMaxResultSetSize( MAX_RESULT_SET_SIZE );
+
+        nfc = new IspnNotFoundCache( config, new CacheHandle<>( "nfc", cache ) );
+    }
+
+    @Test
+    public void clearLocationRemovesEntriesBeyondMaxResultSetSize()
+    {
+        Location central = location( "central" );
+        Location other = location( "other" );
+
+        int count = MAX_RESULT_SET_SIZE * 3 + 5;
+        for ( int i = 0; i < count; i++ )
+        {
+            nfc.addMissing( new ConcreteResource( central, "/path/" + i ) );
+        }
+
+        nfc.addMissing( new ConcreteResource( other, "/path/0" ) );
+        nfc.addMissing( new ConcreteResource( other, "/path/1" ) );
+
+        assertThat( nfc.getSize(), equalTo( count + 2L ) );
+
+        nfc.clearMissing( central );
+
+        for ( int i = 0; i < count; i++ )
+        {
+            assertThat( "/path/" + i + " survived", nfc.isMissing( new ConcreteResource( central, "/path/" + i ) ),
+                        equalTo( false ) );
+        }
+
+        assertThat( nfc.getSize(), equalTo( 2L ) );
+        assertThat( nfc.isMissing( new ConcreteResource( other, "/path/0" ) ), equalTo( true ) );
+        assertThat( nfc.isMissing( new ConcreteResource( other, "/path/1" ) ), equalTo( true ) );
+    }
+
+    @Test
+    public void clearLocationWithExactMultipleOfMaxResultSetSize()
+    {
+        Location central = location( "central" );
+
+        for ( int i = 0; i < MAX_RESULT_SET_SIZE * 2; i++ )
+        {
+            nfc.addMissing( new ConcreteResource( central, "/path/" + i ) );
+        }
+
+        nfc.clearMissing( central );
+
+        assertThat( nfc.getSize(), equalTo( 0L ) );
+    }
+
+    private Location location( final String name )
+    {
+        return new RepositoryLocation( new RemoteRepository( MAVEN_PKG_KEY, name, "http://" + name + ".example.com/" ) );
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.galley.CacheOnlyLocation;
+import org.commonjava.indy.model.galley.RepositoryLocation;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class OffHeapNotFoundCacheTest
+{
+
+    @Test
+    public void expireUsingConfiguredValue()
+        throws Exception
+    {
+        final DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        config.setNotFoundCacheTimeoutSeconds( 1 );
+
+        final OffHeapNotFoundCache nfc = new OffHeapNotFoundCache( config );
+
+        final ConcreteResource res = new ConcreteResource( new SimpleLocation( "test:uri" ), "/path/to/expired/object" );
+
+        nfc.addMissing( res );
+        assertThat( nfc.isMissing( res ), equalTo( true ) );
+
+        Thread.sleep( TimeUnit.SECONDS.toMillis( 2 ) );
+
+        assertThat( nfc.isMissing( res ), equalTo( false ) );
+
+        final Set<String> locMissing = nfc.getMissing( res.getLocation() );
+        assertThat( locMissing == null || locMissing.isEmpty(), equalTo( true ) );
+
+        final Map<Location, Set<String>> allMissing = nfc.getAllMissing();
+        assertThat( allMissing == null || allMissing.isEmpty(), equalTo( true ) );
+    }
+
+    @Test
+    public void clearLocationRemovesAllItsEntries()
+        throws Exception
+    {
+        final DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        final OffHeapNotFoundCache nfc = new OffHeapNotFoundCache( config );
+
+        final Location remote =
+                new RepositoryLocation( new RemoteRepository( MAVEN_PKG_KEY, "central", "http://foo.com/repo" ) );
+        final Location other = new SimpleLocation( "test:uri" );
+
+        // enough entries to force every segment to grow at least once
+        final int count = 100_000;
+        for ( int i = 0; i < count; i++ )
+        {
+            nfc.addMissing( new ConcreteResource( remote, "/path/" + i ) );
+        }
+        nfc.addMissing( new ConcreteResource( other, "/path/0" ) );
+
+        assertThat( nfc.getSize(), equalTo( count + 1L ) );
+        assertThat( nfc.isMissing( new ConcreteResource( remote, "/path/" + ( count - 1 ) ) ), equalTo( true ) );
+
+        nfc.clearMissing( remote );
+
+        assertThat( nfc.getSize(), equalTo( 1L ) );
+        assertThat( nfc.isMissing( new ConcreteResource( remote, "/path/0" ) ), equalTo( false ) );
+        assertThat( nfc.getMissing( remote ).isEmpty(), equalTo( true ) );
+        assertThat( nfc.isMissing( new ConcreteResource( other, "/path/0" ) ), equalTo( true ) );
+    }
+
+    @Test
+    public void hostedEntriesNeverExpire()
+        throws Exception
+    {
+        final DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        config.setNotFoundCacheTimeoutSeconds( 1 );
+
+        final OffHeapNotFoundCache nfc = new OffHeapNotFoundCache( config );
+
+        final HostedRepository hosted = new HostedRepository( MAVEN_PKG_KEY, "local" );
+        final ConcreteResource res = new ConcreteResource( new CacheOnlyLocation( hosted ), "/path/to/object" );
+
+        nfc.addMissing( res );
+        Thread.sleep( TimeUnit.SECONDS.toMillis( 2 ) );
+
+        assertThat( nfc.isMissing( res ), equalTo( true ) );
+        assertThat( nfc.getSize( hosted.getKey() ), equalTo( 1L ) );
+    }
+
+    @Test
+    public void readdedPathIsListedAndCountedOnce()
+        throws Exception
+    {
+        final DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        final OffHeapNotFoundCache nfc = new OffHeapNotFoundCache( config );
+
+        final HostedRepository hosted = new HostedRepository( MAVEN_PKG_KEY, "local" );
+        final Location loc = new CacheOnlyLocation( hosted );
+        final ConcreteResource res = new ConcreteResource( loc, "/path/to/\u00fcber" );
+
+        nfc.addMissing( res );
+        nfc.addMissing( res );
+        nfc.clearMissing( res );
+        nfc.addMissing( res );
+        nfc.addMissing( new ConcreteResource( loc, "/other" ) );
+
+        assertThat( nfc.getMissing( loc ), equalTo( new HashSet<>( Arrays.asList( "/path/to/\u00fcber", "/other" ) ) ) );
+        assertThat( nfc.getSize( hosted.getKey() ), equalTo( 2L ) );
+        assertThat( nfc.getSize(), equalTo( 2L ) );
+    }
+
+    @Test
+    public void dropNewEntriesWhenFull()
+        throws Exception
+    {
+        final DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        final OffHeapNotFoundCache nfc = new OffHeapNotFoundCache( config, 2 );
+
+        final Location loc = new SimpleLocation( "test:uri" );
+        nfc.addMissing( new ConcreteResource( loc, "/a" ) );
+        nfc.addMissing( new ConcreteResource( loc, "/b" ) );
+        nfc.addMissing( new ConcreteResource( loc, "/c" ) );
+
+        assertThat( nfc.getSize(), equalTo( 2L ) );
+        assertThat( nfc.isMissing( new ConcreteResource( loc, "/c" ) ), equalTo( false ) );
+        assertThat( nfc.getMissing( loc ).size(), equalTo( 2 ) );
+    }
+
+}
@@ -0,0 +1,218 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.mem.data;
+
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.util.UrlInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Secondary indexes over the {@link ArtifactStore}s held by {@link MemoryStoreDataManager}, so
+ * {@link MemoryArtifactStoreQuery} can start from the narrowest matching set of stores instead of scanning all of them.
+ * <ul>
+ *     <li>buckets by package type, then store type</li>
+ *     <li>keys of disabled stores (normally a very small set)</li>
+ *     <li>store keys by name</li>
+ *     <li>remote repositories by normalized URL (protocol plus URL with no scheme or trailing slash), and by host</li>
+ * </ul>
+ * Updates must be made after the main store map changes, from within the per-store operation lock.
+ */
+final class ArtifactStoreIndexes
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Map<String, Map<StoreType, Map<StoreKey, ArtifactStore>>> buckets = new ConcurrentHashMap<>();
+
+    private final Map<StoreKey, ArtifactStore> disabled = new ConcurrentHashMap<>();
+
+    private final Map<String, Set<StoreKey>> byName = new ConcurrentHashMap<>();
+
+    private final Map<String, Set<StoreKey>> remotesByUrl = new ConcurrentHashMap<>();
+
+    private final Map<String, Set<StoreKey>> remotesByHost = new ConcurrentHashMap<>();
+
+    // remote -> URL info parsed when it was indexed, since RemoteRepository instances may be mutated in place.
+    private final Map<StoreKey, UrlInfo> remoteUrls = new ConcurrentHashMap<>();
+
+    void onStore( final ArtifactStore store )
+    {
+        StoreKey key = store.getKey();
+        bucket( key.getPackageType(), key.getType() ).put( key, store );
+        add( byName, key.getName(), key );
+
+        if ( store.isDisabled() )
+        {
+            disabled.put( key, store );
+        }
+        else
+        {
+            disabled.remove( key );
+        }
+
+        if ( store instanceof RemoteRepository )
+        {
+            UrlInfo urlInfo = parseUrl( ( (RemoteRepository) store ).getUrl() );
+            UrlInfo previous = urlInfo == null ? remoteUrls.remove( key ) : remoteUrls.put( key, urlInfo );
+            if ( previous != null )
+            {
+                remove( remotesByUrl, normalize( previous ), key );
+                remove( remotesByHost, previous.getHost(), key );
+            }
+
+            if ( urlInfo != null )
+            {
+                add( remotesByUrl, normalize( urlInfo ), key );
+                add( remotesByHost, urlInfo.getHost(), key );
+            }
+        }
+    }
+
+    void onDelete( final ArtifactStore store )
+    {
+        StoreKey key = store.getKey();
+        bucket( key.getPackageType(), key.getType() ).remove( key );
+        remove( byName, key.getName(), key );
+        disabled.remove( key );
+
+        UrlInfo previous = remoteUrls.remove( key );
+        if ( previous != null )
+        {
+            remove( remotesByUrl, normalize( previous ), key );
+            remove( remotesByHost, previous.getHost(), key );
+        }
+    }
+
+    void clear()
+    {
+        buckets.clear();
+        disabled.clear();
+        byName.clear();
+        remotesByUrl.clear();
+        remotesByHost.clear();
+        remoteUrls.clear();
+    }
+
+    /**
+     * Select the smallest indexed set of stores that can satisfy the given criteria. Any of the criteria may be null,
+     * meaning "any". Callers must still apply the criteria themselves; this is only a pre-filter.
+     */
+    Stream<ArtifactStore> candidates( final String packageType, final Collection<StoreType> types,
+                                      final Boolean enabled )
+    {
+        if ( Boolean.FALSE.equals( enabled ) )
+        {
+            return disabled.values().stream();
+        }
+
+        Collection<StoreType> selectedTypes = types == null ? Arrays.asList( StoreType.values() ) : types;
+        Stream<Map<StoreType, Map<StoreKey, ArtifactStore>>> byPackage;
+        if ( packageType != null )
+        {
+            Map<StoreType, Map<StoreKey, ArtifactStore>> pkgBuckets = buckets.get( packageType );
+            byPackage = pkgBuckets == null ? Stream.empty() : Stream.of( pkgBuckets );
+        }
+        else
+        {
+            byPackage = buckets.values().stream();
+        }
+
+        return byPackage.flatMap( pkgBuckets -> selectedTypes.stream()
+                                                             .map( pkgBuckets::get )
+                                                             .filter( bucket -> bucket != null )
+                                                             .flatMap( bucket -> bucket.values().stream() ) );
+    }
+
+    Set<StoreKey> getKeysByName( final String name )
+    {
+        return byName.getOrDefault( name, Collections.emptySet() );
+    }
+
+    Set<StoreKey> getRemotesByUrl( final UrlInfo urlInfo )
+    {
+        return remotesByUrl.getOrDefault( normalize( urlInfo ), Collections.emptySet() );
+    }
+
+    /**
+     * Return the remote repositories indexed for each distinct host, so callers can resolve each host once.
+     */
+    Map<String, Set<StoreKey>> getRemotesByHost()
+    {
+        return Collections.unmodifiableMap( remotesByHost );
+    }
+
+    UrlInfo getRemoteUrlInfo( final StoreKey key )
+    {
+        return remoteUrls.get( key );
+    }
+
+    private Map<StoreKey, ArtifactStore> bucket( final String packageType, final StoreType type )
+    {
+        return buckets.computeIfAbsent( packageType, p -> new ConcurrentHashMap<>() )
+                      .computeIfAbsent( type, t -> new ConcurrentHashMap<>() );
+    }
+
+    private UrlInfo parseUrl( final String url )
+    {
+        if ( url == null )
+        {
+            return null;
+        }
+
+        try
+        {
+            return new UrlInfo( url );
+        }
+        catch ( IllegalArgumentException error )
+        {
+            logger.warn( "Cannot index remote repository URL: '{}'. Reason: {}", url, error.getMessage() );
+            return null;
+        }
+    }
+
+    private static String normalize( final UrlInfo urlInfo )
+    {
+        return urlInfo.getProtocol() + "://" + urlInfo.getUrlWithNoSchemeAndLastSlash();
+    }
+
+    private static void add( final Map<String, Set<StoreKey>> index, final String value, final StoreKey key )
+    {
+        index.compute( value, ( v, keys ) -> {
+            Set<StoreKey> updated = keys == null ? ConcurrentHashMap.newKeySet() : keys;
+            updated.add( key );
+            return updated;
+        } );
+    }
+
+    private static void remove( final Map<String, Set<StoreKey>> index, final String value, final StoreKey key )
+    {
+        index.computeIfPresent( value, ( v, keys ) -> {
+            keys.remove( key );
+            return keys.isEmpty() ? null : keys;
+        } );
+    }
+}
@@ -0,0 +1,261 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.mem.data;
+
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.StoreKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds resolved group memberships for {@link MemoryArtifactStoreQuery}, along with a reverse index of which groups
+ * directly contain a given store. Resolutions are stamped with the generation that was current when the computation
+ * started. Each store / delete bumps the generation and stamps the changed store plus every group above it, so a
+ * resolution computed against the old state of any of those groups can never be returned afterward.
+ * <p>
+ * Only groups affected by a change are invalidated; the rest of the cache survives.
+ */
+final class GroupMembershipCache
+{
+    /**
+     * Shape of a cached group resolution. This mirrors the flags used by
+     * {@link MemoryArtifactStoreQuery#getOrderedConcreteStoresInGroup(String)} and
+     * {@link MemoryArtifactStoreQuery#getOrderedStoresInGroup(String)}.
+     */
+    enum ResolutionMode
+    {
+        CONCRETE, CONCRETE_ENABLED, ALL, ALL_ENABLED;
+
+        static ResolutionMode of( final boolean includeGroups, final boolean enabledOnly )
+        {
+            if ( includeGroups )
+            {
+                return enabledOnly ? ALL_ENABLED : ALL;
+            }
+
+            return enabledOnly ? CONCRETE_ENABLED : CONCRETE;
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final AtomicLong generation = new AtomicLong( 0 );
+
+    private volatile long clearedAt = 0;
+
+    private final Map<StoreKey, Map<ResolutionMode, Resolution>> resolutions = new ConcurrentHashMap<>();
+
+    private final Map<StoreKey, Long> invalidations = new ConcurrentHashMap<>();
+
+    // member -> groups that list it directly as a constituent. Values are replaced, never mutated.
+    private final Map<StoreKey, Set<StoreKey>> containingGroups = new ConcurrentHashMap<>();
+
+    // group -> constituents as of the last time we indexed it, since Group instances may be mutated in place.
+    private final Map<StoreKey, List<StoreKey>> indexedConstituents = new ConcurrentHashMap<>();
+
+    long generation()
+    {
+        return generation.get();
+    }
+
+    /**
+     * Return the cached resolution for the given group, or null if there is none or it was invalidated after it was
+     * computed. The returned list is a copy, so callers are free to modify it.
+     */
+    List<ArtifactStore> get( final StoreKey groupKey, final ResolutionMode mode )
+    {
+        Map<ResolutionMode, Resolution> byMode = resolutions.get( groupKey );
+        Resolution resolution = byMode == null ? null : byMode.get( mode );
+        if ( resolution == null )
+        {
+            return null;
+        }
+
+        if ( isStale( groupKey, resolution.generation ) )
+        {
+            return null;
+        }
+
+        return new ArrayList<>( resolution.stores );
+    }
+
+    /**
+     * Cache a resolution computed from store state read after generation <code>startGeneration</code> was observed.
+     */
+    void put( final StoreKey groupKey, final ResolutionMode mode, final long startGeneration,
+              final List<ArtifactStore> stores )
+    {
+        if ( isStale( groupKey, startGeneration ) )
+        {
+            logger.trace( "Skipping stale resolution of: {} (generation: {})", groupKey, startGeneration );
+            return;
+        }
+
+        resolutions.computeIfAbsent( groupKey, k -> new ConcurrentHashMap<>() )
+                   .put( mode, new Resolution( startGeneration, new ArrayList<>( stores ) ) );
+    }
+
+    /**
+     * Update the membership index for a stored (added or updated) {@link ArtifactStore}, and invalidate the resolutions
+     * of that store and every group containing it. This MUST be called after the store map has been updated.
+     */
+    synchronized void onStore( final ArtifactStore store )
+    {
+        StoreKey key = store.getKey();
+        if ( store instanceof Group )
+        {
+            List<StoreKey> constituents = ( (Group) store ).getConstituents();
+            List<StoreKey> updated = constituents == null ? Collections.emptyList() : new ArrayList<>( constituents );
+            List<StoreKey> previous = indexedConstituents.put( key, updated );
+
+            if ( previous != null )
+            {
+                previous.stream().filter( member -> !updated.contains( member ) ).forEach( member -> unlink( member, key ) );
+            }
+
+            updated.forEach( member -> link( member, key ) );
+        }
+
+        invalidate( key );
+    }
+
+    /**
+     * Drop a deleted {@link ArtifactStore} from the membership index, and invalidate the resolutions of every group
+     * containing it. This MUST be called after the store has been removed from the store map.
+     */
+    synchronized void onDelete( final ArtifactStore store )
+    {
+        StoreKey key = store.getKey();
+        List<StoreKey> previous = indexedConstituents.remove( key );
+        if ( previous != null )
+        {
+            previous.forEach( member -> unlink( member, key ) );
+        }
+
+        invalidate( key );
+    }
+
+    synchronized void clear()
+    {
+        clearedAt = generation.incrementAndGet();
+        resolutions.clear();
+        invalidations.clear();
+        containingGroups.clear();
+        indexedConstituents.clear();
+    }
+
+    /**
+     * Return the keys of groups that list the given store directly as a constituent.
+     */
+    Set<StoreKey> getContainingGroups( final StoreKey key )
+    {
+        return containingGroups.getOrDefault( key, Collections.emptySet() );
+    }
+
+    /**
+     * Return the keys of all groups containing any of the given stores, directly or through other groups.
+     */
+    Set<StoreKey> getAffectedGroups( final Collection<StoreKey> keys )
+    {
+        Set<StoreKey> result = new LinkedHashSet<>();
+        List<StoreKey> toProcess = new ArrayList<>( keys );
+        Set<StoreKey> processed = new HashSet<>();
+        while ( !toProcess.isEmpty() )
+        {
+            StoreKey next = toProcess.remove( toProcess.size() - 1 );
+            if ( !processed.add( next ) )
+            {
+                continue;
+            }
+
+            for ( StoreKey groupKey : getContainingGroups( next ) )
+            {
+                result.add( groupKey );
+                toProcess.add( groupKey );
+            }
+        }
+
+        return result;
+    }
+
+    private boolean isStale( final StoreKey groupKey, final long computedAt )
+    {
+        Long invalidated = invalidations.get( groupKey );
+        return computedAt < clearedAt || ( invalidated != null && computedAt < invalidated );
+    }
+
+    private void invalidate( final StoreKey key )
+    {
+        Set<StoreKey> affected = getAffectedGroups( Collections.singleton( key ) );
+        affected.add( key );
+
+        long gen = generation.incrementAndGet();
+        affected.forEach( k -> {
+            invalidations.put( k, gen );
+            resolutions.remove( k );
+        } );
+
+        logger.debug( "Generation {}: invalidated group memberships for: {}", gen, affected );
+    }
+
+    private void link( final StoreKey member, final StoreKey groupKey )
+    {
+        containingGroups.compute( member, ( k, groups ) -> {
+            if ( groups != null && groups.contains( groupKey ) )
+            {
+                return groups;
+            }
+
+            Set<StoreKey> updated = groups == null ? new HashSet<>() : new HashSet<>( groups );
+            updated.add( groupKey );
+            return Collections.unmodifiableSet( updated );
+        } );
+    }
+
+    private void unlink( final StoreKey member, final StoreKey groupKey )
+    {
+        containingGroups.computeIfPresent( member, ( k, groups ) -> {
+            Set<StoreKey> updated = new HashSet<>( groups );
+            updated.remove( groupKey );
+            return updated.isEmpty() ? null : Collections.unmodifiableSet( updated );
+        } );
+    }
+
+    private static final class Resolution
+    {
+        private final long generation;
+
+        private final List<ArtifactStore> stores;
+
+        Resolution( final long generation, final List<ArtifactStore> stores )
+        {
+            this.generation = generation;
+            this.stores = stores;
+        }
+    }
+}
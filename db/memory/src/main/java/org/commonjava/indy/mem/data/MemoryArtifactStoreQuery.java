@@ -30,6 +30,7 @@ import org.commonjava.indy.util.UrlInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -40,6 +41,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -71,6 +73,8 @@ public class MemoryArtifactStoreQuery<T extends ArtifactStore>
 
     private StoreDataManager dataManager;
 
+    private MemoryStoreDataManager memoryManager;
+
     private String packageType = MAVEN_PKG_KEY;
 
     private Set<StoreType> types;
@@ -80,12 +84,17 @@ public class MemoryArtifactStoreQuery<T extends ArtifactStore>
     public MemoryArtifactStoreQuery( StoreDataManager dataManager )
     {
         this.dataManager = dataManager;
+        if ( dataManager instanceof MemoryStoreDataManager )
+        {
+            this.memoryManager = (MemoryStoreDataManager) dataManager;
+        }
     }
 
-    private MemoryArtifactStoreQuery( final StoreDataManager dataManager, final String packageType,
-                                      final Boolean enabled, final Class<T> storeCls )
+    private MemoryArtifactStoreQuery( final StoreDataManager dataManager, final MemoryStoreDataManager memoryManager,
+                                      final String packageType, final Boolean enabled, final Class<T> storeCls )
     {
         this.dataManager = dataManager;
+        this.memoryManager = memoryManager;
         this.packageType = packageType;
         this.enabled = enabled;
         storeType( storeCls );
@@ -169,42 +178,57 @@ public class MemoryArtifactStoreQuery<T extends ArtifactStore>
     public Stream<T> stream( Predicate<ArtifactStore> filter )
             throws IndyDataException
     {
-        /* @formatter:off */
-        return dataManager.streamArtifactStores().filter( ( store ) ->
+        return candidateStores().filter( store -> accepts( store, filter ) ).map( store -> (T) store );
+    }
+
+    /**
+     * Start from the narrowest index the in-memory data manager can offer for this query's package type, store types
+     * and enabled state. Anything else only gives us the full store listing.
+     */
+    private Stream<ArtifactStore> candidateStores()
+            throws IndyDataException
+    {
+        if ( memoryManager != null )
         {
-            logger.debug( "Checking whether {} is included in stream...", store.getKey() );
+            return memoryManager.streamArtifactStores( packageType, types, enabled );
+        }
 
-            // Tricky condition here: The flag in the store we're checking is true when DISABLED, while the
-            // condition we're checking against in this query is true when it's ENABLED. If the two flags equal on another
-            // that actually means they DISAGREE about the state vs. desired state of the store.
-            if ( enabled != null && enabled == store.isDisabled() )
-            {
-                logger.debug( "Rejected. Store is {}, and we're only looking for enabled state of: {}", store.isDisabled(), enabled );
-                return false;
-            }
+        return dataManager.streamArtifactStores();
+    }
 
-            if ( packageType != null && !packageType.equals( store.getPackageType() ) )
-            {
-                logger.debug( "Rejected. Store package type is: {}, and we're only looking for package type of: {}", store.getPackageType(), packageType );
-                return false;
-            }
+    private boolean accepts( final ArtifactStore store, final Predicate<ArtifactStore> filter )
+    {
+        logger.debug( "Checking whether {} is included in stream...", store.getKey() );
 
-            if ( types != null && !types.contains( store.getType() ) )
-            {
-                logger.debug( "Rejected. Store is of type: {}, and we're only looking for: {}", store.getType(), types );
-                return false;
-            }
+        // Tricky condition here: The flag in the store we're checking is true when DISABLED, while the
+        // condition we're checking against in this query is true when it's ENABLED. If the two flags equal on another
+        // that actually means they DISAGREE about the state vs. desired state of the store.
+        if ( enabled != null && enabled == store.isDisabled() )
+        {
+            logger.debug( "Rejected. Store is {}, and we're only looking for enabled state of: {}", store.isDisabled(), enabled );
+            return false;
+        }
 
-            if ( filter != null && !filter.test( store ))
-            {
-                logger.debug( "Rejected. Additional filtering failed for store: {}", store.getKey() );
-                return false;
-            }
+        if ( packageType != null && !packageType.equals( store.getPackageType() ) )
+        {
+            logger.debug( "Rejected. Store package type is: {}, and we're only looking for package type of: {}", store.getPackageType(), packageType );
+            return false;
+        }
 
-            logger.debug( "Store accepted for stream: {}", store.getKey() );
-            return true;
-        } ).map( store -> (T) store );
-        /* @formatter:on */
+        if ( types != null && !types.contains( store.getType() ) )
+        {
+            logger.debug( "Rejected. Store is of type: {}, and we're only looking for: {}", store.getType(), types );
+            return false;
+        }
+
+        if ( filter != null && !filter.test( store ))
+        {
+            logger.debug( "Rejected. Additional filtering failed for store: {}", store.getKey() );
+            return false;
+        }
+
+        logger.debug( "Store accepted for stream: {}", store.getKey() );
+        return true;
     }
 
     @Override
@@ -232,6 +256,18 @@ public class MemoryArtifactStoreQuery<T extends ArtifactStore>
     public T getByName( String name )
             throws IndyDataException
     {
+        if ( memoryManager != null )
+        {
+            return memoryManager.getIndexes()
+                                .getKeysByName( name )
+                                .stream()
+                                .map( memoryManager::getStore )
+                                .filter( store -> store != null && accepts( store, null ) )
+                                .map( store -> (T) store )
+                                .findFirst()
+                                .orElse( null );
+        }
+
         return stream( store -> name.equals( store.getName() ) ).findFirst().orElse( null );
     }
 
@@ -246,7 +282,20 @@ public class MemoryArtifactStoreQuery<T extends ArtifactStore>
     public Set<Group> getGroupsContaining( StoreKey storeKey )
             throws IndyDataException
     {
-        return new MemoryArtifactStoreQuery<>( dataManager, storeKey.getPackageType(), enabled,
+        if ( memoryManager != null )
+        {
+            return memoryManager.getMembershipCache()
+                                .getContainingGroups( storeKey )
+                                .stream()
+                                .map( memoryManager::getStore )
+                                .filter( store -> store instanceof Group && storeKey.getPackageType()
+                                                                                    .equals( store.getPackageType() ) )
+                                .filter( store -> enabled == null || enabled != store.isDisabled() )
+                                .map( store -> (Group) store )
+                                .collect( Collectors.toSet() );
+        }
+
+        return new MemoryArtifactStoreQuery<>( dataManager, memoryManager, storeKey.getPackageType(), enabled,
                                                     Group.class ).stream(
                 store -> ( (Group) store ).getConstituents().contains( storeKey ) ).collect( Collectors.toSet() );
     }
@@ -272,11 +321,16 @@ public class MemoryArtifactStoreQuery<T extends ArtifactStore>
 
         final UrlInfo urlInfo = temp;
 
+        if ( memoryManager != null )
+        {
+            return urlInfo == null ? new ArrayList<>() : getIndexedRemoteRepositoryByUrl( url, urlInfo );
+        }
+
         List<RemoteRepository> result;
 
         // first try to find the remote repo by urlWithNoSchemeAndLastSlash
         /* @formatter:off */
-        result = new MemoryArtifactStoreQuery<>( dataManager, packageType, enabled, RemoteRepository.class ).stream(
+        result = new MemoryArtifactStoreQuery<>( dataManager, memoryManager, packageType, enabled, RemoteRepository.class ).stream(
                 store -> {
                     if ( ( remote == store.getType() ) && urlInfo != null )
                     {
@@ -313,7 +367,7 @@ public class MemoryArtifactStoreQuery<T extends ArtifactStore>
         {
             // ...if not found by hostname try to search by IP
             /* @formatter:off */
-            result = new MemoryArtifactStoreQuery<>( dataManager, packageType, enabled, RemoteRepository.class ).stream(
+            result = new MemoryArtifactStoreQuery<>( dataManager, memoryManager, packageType, enabled, RemoteRepository.class ).stream(
                     store -> {
                         if ( ( remote == store.getType() ) && urlInfo != null )
                         {
@@ -363,24 +417,112 @@ public class MemoryArtifactStoreQuery<T extends ArtifactStore>
         return result;
     }
 
+    /**
+     * Same matching rules as the scanning version in {@link #getRemoteRepositoryByUrl(String)}, but the first pass is a
+     * single lookup in the normalized-URL index, and the IP fallback resolves each distinct remote host only once.
+     */
+    private List<RemoteRepository> getIndexedRemoteRepositoryByUrl( final String url, final UrlInfo urlInfo )
+    {
+        final ArtifactStoreIndexes indexes = memoryManager.getIndexes();
+        final MemoryArtifactStoreQuery<RemoteRepository> remotes =
+                new MemoryArtifactStoreQuery<>( dataManager, memoryManager, packageType, enabled,
+                                                RemoteRepository.class );
+
+        List<RemoteRepository> result = indexes.getRemotesByUrl( urlInfo )
+                                               .stream()
+                                               .map( memoryManager::getStore )
+                                               .filter( store -> store != null && remotes.accepts( store, null ) )
+                                               .map( store -> (RemoteRepository) store )
+                                               .collect( Collectors.toList() );
+
+        if ( !result.isEmpty() )
+        {
+            logger.debug( "Repositories found because of same host, url is {}, store keys are {}", url, result );
+            return result;
+        }
+
+        // ...if not found by hostname try to search by IP
+        final String ipForUrl;
+        try
+        {
+            ipForUrl = urlInfo.getIpForUrl();
+        }
+        catch ( UnknownHostException ue )
+        {
+            logger.warn( "Failed to filter remote: ip fetch error.", ue );
+            return result;
+        }
+
+        if ( ipForUrl == null )
+        {
+            return result;
+        }
+
+        for ( Map.Entry<String, Set<StoreKey>> entry : indexes.getRemotesByHost().entrySet() )
+        {
+            String ipForTargetUrl;
+            try
+            {
+                ipForTargetUrl = InetAddress.getByName( entry.getKey() ).getHostAddress();
+            }
+            catch ( UnknownHostException e )
+            {
+                logger.warn( "Failed to filter remotes for host: {}: ip fetch error.", entry.getKey(), e );
+                continue;
+            }
+
+            if ( !ipForUrl.equals( ipForTargetUrl ) )
+            {
+                logger.debug( "ip not same: ip for url:{}-{}; ip for remotes on host: {}-{}", url, ipForUrl,
+                              entry.getKey(), ipForTargetUrl );
+                continue;
+            }
+
+            for ( StoreKey key : entry.getValue() )
+            {
+                UrlInfo targetUrlInfo = indexes.getRemoteUrlInfo( key );
+                ArtifactStore store = memoryManager.getStore( key );
+                if ( targetUrlInfo != null && store != null && remotes.accepts( store, null )
+                        && urlInfo.getPort() == targetUrlInfo.getPort()
+                        && urlInfo.getFileWithNoLastSlash().equals( targetUrlInfo.getFileWithNoLastSlash() ) )
+                {
+                    logger.debug( "Repository found because of same ip, url is {}, store key is {}", url, key );
+                    result.add( (RemoteRepository) store );
+                }
+            }
+        }
+
+        return result;
+    }
+
     @Override
     public List<ArtifactStore> getOrderedConcreteStoresInGroup( final String groupName )
             throws IndyDataException
     {
+        if ( isMembershipCacheable() )
+        {
+            return getCachedGroupOrdering( groupName, false, true );
+        }
+
         Map<StoreKey, ArtifactStore> stores = new HashMap<>();
         stream().forEach( s -> stores.put( s.getKey(), s ) );
 
-        return getGroupOrdering( groupName, stores, false, true );
+        return getGroupOrdering( groupName, stores::get, false, true );
     }
 
     @Override
     public List<ArtifactStore> getOrderedStoresInGroup( final String groupName )
             throws IndyDataException
     {
+        if ( isMembershipCacheable() )
+        {
+            return getCachedGroupOrdering( groupName, true, false );
+        }
+
         Map<StoreKey, ArtifactStore> stores = new HashMap<>();
         stream().forEach( s -> stores.put( s.getKey(), s ) );
 
-        return getGroupOrdering( groupName, stores, true, false );
+        return getGroupOrdering( groupName, stores::get, true, false );
     }
 
     @Override
@@ -406,9 +548,22 @@ public class MemoryArtifactStoreQuery<T extends ArtifactStore>
             return groups;
         }
 
+        if ( memoryManager != null )
+        {
+            final String affectedPackageType = toProcess.get( 0 ).getPackageType();
+            memoryManager.getMembershipCache()
+                         .getAffectedGroups( toProcess )
+                         .stream()
+                         .map( memoryManager::getStore )
+                         .filter( store -> store instanceof Group && affectedPackageType.equals( store.getPackageType() ) )
+                         .forEach( store -> groups.add( (Group) store ) );
+
+            return groups;
+        }
+
         Set<StoreKey> processed = new HashSet<>();
 
-        Set<Group> all = new MemoryArtifactStoreQuery<>( dataManager, toProcess.get( 0 ).getPackageType(), null,
+        Set<Group> all = new MemoryArtifactStoreQuery<>( dataManager, memoryManager, toProcess.get( 0 ).getPackageType(), null,
                                                               Group.class ).stream().collect( Collectors.toSet() );
 
         while ( !toProcess.isEmpty() )
@@ -447,7 +602,7 @@ public class MemoryArtifactStoreQuery<T extends ArtifactStore>
     public List<RemoteRepository> getAllRemoteRepositories()
             throws IndyDataException
     {
-        return new MemoryArtifactStoreQuery<>( dataManager, packageType, enabled,
+        return new MemoryArtifactStoreQuery<>( dataManager, memoryManager, packageType, enabled,
                                                                RemoteRepository.class ).getAll();
     }
 
@@ -455,7 +610,7 @@ public class MemoryArtifactStoreQuery<T extends ArtifactStore>
     public List<HostedRepository> getAllHostedRepositories()
             throws IndyDataException
     {
-        return new MemoryArtifactStoreQuery<>( dataManager, packageType, enabled,
+        return new MemoryArtifactStoreQuery<>( dataManager, memoryManager, packageType, enabled,
                                                                HostedRepository.class ).getAll();
     }
 
@@ -463,7 +618,7 @@ public class MemoryArtifactStoreQuery<T extends ArtifactStore>
     public List<Group> getAllGroups()
             throws IndyDataException
     {
-        return new MemoryArtifactStoreQuery<>( dataManager, packageType, enabled, Group.class ).getAll();
+        return new MemoryArtifactStoreQuery<>( dataManager, memoryManager, packageType, enabled, Group.class ).getAll();
     }
 
     @Override
@@ -494,7 +649,53 @@ public class MemoryArtifactStoreQuery<T extends ArtifactStore>
         return this;
     }
 
-    private List<ArtifactStore> getGroupOrdering( final String groupName, final Map<StoreKey, ArtifactStore> stores,
+    /**
+     * The membership cache can only stand in for the full scan when the scan would include every store of the query's
+     * package type, possibly minus the disabled ones. Queries restricted to particular store types or to disabled
+     * stores fall back to the scan.
+     */
+    private boolean isMembershipCacheable()
+    {
+        return memoryManager != null && packageType != null && types == null && !Boolean.FALSE.equals( enabled );
+    }
+
+    private List<ArtifactStore> getCachedGroupOrdering( final String groupName, final boolean includeGroups,
+                                                        final boolean recurseGroups )
+            throws IndyDataException
+    {
+        final GroupMembershipCache cache = memoryManager.getMembershipCache();
+        final StoreKey groupKey = new StoreKey( packageType, StoreType.group, groupName );
+        final GroupMembershipCache.ResolutionMode mode =
+                GroupMembershipCache.ResolutionMode.of( includeGroups, Boolean.TRUE.equals( enabled ) );
+
+        List<ArtifactStore> result = cache.get( groupKey, mode );
+        if ( result != null )
+        {
+            logger.trace( "Using cached membership for: {} ({})", groupKey, mode );
+            return result;
+        }
+
+        // read the generation BEFORE looking at any stores, so a concurrent update will mark this result stale.
+        final long generation = cache.generation();
+
+        // equivalent to the map built from stream() in the uncached path, but only touching the stores we visit.
+        result = getGroupOrdering( groupName, key -> {
+            ArtifactStore store = memoryManager.getStore( key );
+            if ( store == null || !packageType.equals( store.getPackageType() ) || ( Boolean.TRUE.equals( enabled )
+                    && store.isDisabled() ) )
+            {
+                return null;
+            }
+
+            return store;
+        }, includeGroups, recurseGroups );
+
+        cache.put( groupKey, mode, generation, result );
+        return result;
+    }
+
+    private List<ArtifactStore> getGroupOrdering( final String groupName,
+                                                  final Function<StoreKey, ArtifactStore> stores,
                                                   final boolean includeGroups, final boolean recurseGroups )
             throws IndyDataException
     {
@@ -503,7 +704,7 @@ public class MemoryArtifactStoreQuery<T extends ArtifactStore>
             throw new IndyDataException( "packageType must be set on the query before calling this method!" );
         }
 
-        final Group master = (Group) stores.get( new StoreKey( packageType, StoreType.group, groupName ) );
+        final Group master = (Group) stores.apply( new StoreKey( packageType, StoreType.group, groupName ) );
         if ( master == null )
         {
             return Collections.emptyList();
@@ -515,7 +716,7 @@ public class MemoryArtifactStoreQuery<T extends ArtifactStore>
         return result;
     }
 
-    private void recurseGroup( final Group master, final Map<StoreKey, ArtifactStore> stores,
+    private void recurseGroup( final Group master, final Function<StoreKey, ArtifactStore> stores,
                                final List<ArtifactStore> result, final Set<StoreKey> seen, final boolean includeGroups,
                                final boolean recurseGroups )
     {
@@ -539,12 +740,12 @@ public class MemoryArtifactStoreQuery<T extends ArtifactStore>
                                  if ( recurseGroups && type == StoreType.group )
                                  {
                                      // if we're here, we're definitely recursing groups...
-                                     recurseGroup( (Group) stores.get( key ), stores, result, seen, includeGroups,
+                                     recurseGroup( (Group) stores.apply( key ), stores, result, seen, includeGroups,
                                                    true );
                                  }
                                  else
                                  {
-                                     final ArtifactStore store = stores.get( key );
+                                     final ArtifactStore store = stores.apply( key );
                                      if ( store != null && !( store.isDisabled() && Boolean.TRUE.equals( enabled ) ) )
                                      {
                                          result.add( store );
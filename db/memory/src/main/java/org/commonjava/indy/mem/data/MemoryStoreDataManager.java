@@ -30,6 +30,7 @@ import org.commonjava.indy.measure.annotation.MetricNamed;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.HostedRepository;
 import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
 import org.commonjava.indy.util.ApplicationStatus;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.slf4j.Logger;
@@ -38,6 +39,7 @@ import org.slf4j.LoggerFactory;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Alternative;
 import javax.inject.Inject;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -67,6 +69,10 @@ public class MemoryStoreDataManager
     // no need to inject since this is only used internally.
     private final Locker<StoreKey> opLocks = new Locker<>();
 
+    private final GroupMembershipCache membershipCache = new GroupMembershipCache();
+
+    private final ArtifactStoreIndexes indexes = new ArtifactStoreIndexes();
+
     @Inject
     private StoreEventDispatcher dispatcher;
 
@@ -208,6 +214,8 @@ public class MemoryStoreDataManager
                 preDelete( store, summary, true, eventMetadata );
 
                 ArtifactStore removed = stores.remove( key );
+                indexes.onDelete( store );
+                membershipCache.onDelete( store );
                 logger.info( "REMOVED store: {}", removed );
 
                 postDelete( store, summary, true, eventMetadata );
@@ -265,6 +273,8 @@ public class MemoryStoreDataManager
             throws IndyDataException
     {
         stores.clear();
+        indexes.clear();
+        membershipCache.clear();
     }
 
     @Override
@@ -281,6 +291,16 @@ public class MemoryStoreDataManager
         return getAllArtifactStores().stream();
     }
 
+    /**
+     * Stream the stores matching the given criteria (null meaning "any"), starting from the narrowest secondary index
+     * rather than from a copy of every store.
+     */
+    Stream<ArtifactStore> streamArtifactStores( final String packageType, final Collection<StoreType> types,
+                                                final Boolean enabled )
+    {
+        return indexes.candidates( packageType, types, enabled );
+    }
+
     @Override
     public Map<StoreKey, ArtifactStore> getArtifactStoresByKey()
     {
@@ -305,6 +325,21 @@ public class MemoryStoreDataManager
         return true;
     }
 
+    GroupMembershipCache getMembershipCache()
+    {
+        return membershipCache;
+    }
+
+    ArtifactStoreIndexes getIndexes()
+    {
+        return indexes;
+    }
+
+    ArtifactStore getStore( final StoreKey key )
+    {
+        return stores.get( key );
+    }
+
     private boolean store( final ArtifactStore store, final ChangeSummary summary, final boolean skipIfExists,
                            final boolean fireEvents, final EventMetadata eventMetadata )
             throws IndyDataException
@@ -347,6 +382,8 @@ public class MemoryStoreDataManager
 
                     logger.debug( "Updating {} in ArtifactStore map", storeKey );
                     final ArtifactStore old = stores.put( store.getKey(), store );
+                    indexes.onStore( store );
+                    membershipCache.onStore( store );
                     logger.debug( "Updated {} in ArtifactStore map", storeKey );
 
                     try
@@ -362,6 +399,8 @@ public class MemoryStoreDataManager
                         {
                             logger.error( "postStore() failed for: {}. Rolling back to old value: {}", store, old );
                             stores.put( old.getKey(), old );
+                            indexes.onStore( old );
+                            membershipCache.onStore( old );
                         }
                     }
                 }
@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.mem.data;
+
+import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.util.Collections.singletonList;
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ArtifactStoreIndexesTest
+{
+    private final ChangeSummary summary = new ChangeSummary( ChangeSummary.SYSTEM_USER, "test" );
+
+    private MemoryStoreDataManager dataManager;
+
+    @Before
+    public void setup()
+    {
+        dataManager = new MemoryStoreDataManager( true );
+    }
+
+    @Test
+    public void remoteByUrlFollowsUrlChanges()
+            throws IndyDataException
+    {
+        RemoteRepository central = new RemoteRepository( MAVEN_PKG_KEY, "central", "http://repo.maven.apache.org/maven2/" );
+        store( central );
+
+        assertThat( remoteNamesByUrl( "http://repo.maven.apache.org/maven2" ), equalTo( singletonList( "central" ) ) );
+
+        central = central.copyOf();
+        central.setUrl( "https://repo1.maven.org/maven2" );
+        store( central );
+
+        assertThat( remoteNamesByUrl( "https://repo1.maven.org/maven2/" ), equalTo( singletonList( "central" ) ) );
+        assertThat( remoteNamesByUrl( "http://repo.maven.apache.org/maven2" ).contains( "central" ), equalTo( false ) );
+    }
+
+    @Test
+    public void byNameRespectsStoreTypeAndDeletion()
+            throws IndyDataException
+    {
+        store( new HostedRepository( MAVEN_PKG_KEY, "builds" ) );
+
+        assertThat( dataManager.query().packageType( MAVEN_PKG_KEY ).storeTypes( StoreType.remote ).getByName( "builds" ),
+                    nullValue() );
+        assertThat( dataManager.query().packageType( MAVEN_PKG_KEY ).getByName( "builds" ).getType(),
+                    equalTo( StoreType.hosted ) );
+
+        dataManager.deleteArtifactStore( new HostedRepository( MAVEN_PKG_KEY, "builds" ).getKey(), summary,
+                                         new EventMetadata() );
+
+        assertThat( dataManager.query().packageType( MAVEN_PKG_KEY ).getByName( "builds" ), nullValue() );
+    }
+
+    @Test
+    public void disabledStateIndexFollowsUpdates()
+            throws IndyDataException
+    {
+        HostedRepository hosted = new HostedRepository( MAVEN_PKG_KEY, "builds" );
+        store( hosted );
+        store( new HostedRepository( MAVEN_PKG_KEY, "other" ) );
+
+        hosted = hosted.copyOf();
+        hosted.setDisabled( true );
+        store( hosted );
+
+        assertThat( namesWithEnabledState( false ), equalTo( singletonList( "builds" ) ) );
+
+        hosted = hosted.copyOf();
+        hosted.setDisabled( false );
+        store( hosted );
+
+        assertThat( namesWithEnabledState( false ).isEmpty(), equalTo( true ) );
+        assertThat( namesWithEnabledState( true ).size(), equalTo( 2 ) );
+    }
+
+    private List<String> remoteNamesByUrl( final String url )
+            throws IndyDataException
+    {
+        return dataManager.query()
+                          .packageType( MAVEN_PKG_KEY )
+                          .getRemoteRepositoryByUrl( url )
+                          .stream()
+                          .map( ArtifactStore::getName )
+                          .collect( Collectors.toList() );
+    }
+
+    private List<String> namesWithEnabledState( final boolean enabled )
+            throws IndyDataException
+    {
+        return dataManager.query()
+                          .packageType( MAVEN_PKG_KEY )
+                          .enabledState( enabled )
+                          .stream()
+                          .map( ArtifactStore::getName )
+                          .collect( Collectors.toList() );
+    }
+
+    private void store( final ArtifactStore store )
+            throws IndyDataException
+    {
+        dataManager.storeArtifactStore( store, summary, false, false, new EventMetadata() );
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.mem.data;
+
+import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class GroupMembershipCacheTest
+{
+    private final ChangeSummary summary = new ChangeSummary( ChangeSummary.SYSTEM_USER, "test" );
+
+    private MemoryStoreDataManager dataManager;
+
+    private RemoteRepository central;
+
+    private HostedRepository hosted;
+
+    @Before
+    public void setup()
+            throws IndyDataException
+    {
+        dataManager = new MemoryStoreDataManager( true );
+
+        central = new RemoteRepository( MAVEN_PKG_KEY, "central", "http://repo.maven.apache.org/maven2" );
+        hosted = new HostedRepository( MAVEN_PKG_KEY, "local" );
+
+        store( central );
+        store( hosted );
+    }
+
+    @Test
+    public void nestedGroupChangeInvalidatesParentResolution()
+            throws IndyDataException
+    {
+        Group inner = new Group( MAVEN_PKG_KEY, "inner", central.getKey() );
+        Group outer = new Group( MAVEN_PKG_KEY, "outer", inner.getKey() );
+        store( inner );
+        store( outer );
+
+        assertThat( concreteMembersOf( "outer" ), equalTo( Arrays.asList( "central" ) ) );
+
+        inner = inner.copyOf();
+        inner.addConstituent( hosted );
+        store( inner );
+
+        assertThat( concreteMembersOf( "outer" ), equalTo( Arrays.asList( "central", "local" ) ) );
+    }
+
+    @Test
+    public void disabledMemberDroppedFromEnabledResolution()
+            throws IndyDataException
+    {
+        store( new Group( MAVEN_PKG_KEY, "public", central.getKey(), hosted.getKey() ) );
+        assertThat( concreteMembersOf( "public" ), equalTo( Arrays.asList( "central", "local" ) ) );
+
+        RemoteRepository disabled = central.copyOf();
+        disabled.setDisabled( true );
+        store( disabled );
+
+        assertThat( concreteMembersOf( "public" ), equalTo( Arrays.asList( "local" ) ) );
+    }
+
+    @Test
+    public void groupsAffectedByFollowsMembershipChanges()
+            throws IndyDataException
+    {
+        Group inner = new Group( MAVEN_PKG_KEY, "inner", central.getKey() );
+        store( inner );
+        store( new Group( MAVEN_PKG_KEY, "outer", inner.getKey() ) );
+
+        assertThat( affectedBy( central ), equalTo( set( "inner", "outer" ) ) );
+
+        inner = inner.copyOf();
+        inner.removeConstituent( central );
+        store( inner );
+
+        assertThat( affectedBy( central ), equalTo( set() ) );
+
+        dataManager.deleteArtifactStore( inner.getKey(), summary, new EventMetadata() );
+        assertThat( concreteMembersOf( "outer" ), equalTo( Collections.<String>emptyList() ) );
+    }
+
+    private List<String> concreteMembersOf( final String groupName )
+            throws IndyDataException
+    {
+        return dataManager.query()
+                          .packageType( MAVEN_PKG_KEY )
+                          .enabledState( true )
+                          .getOrderedConcreteStoresInGroup( groupName )
+                          .stream()
+                          .map( ArtifactStore::getName )
+                          .collect( Collectors.toList() );
+    }
+
+    private Set<String> affectedBy( final ArtifactStore store )
+            throws IndyDataException
+    {
+        return dataManager.query()
+                          .getGroupsAffectedBy( store.getKey() )
+                          .stream()
+                          .map( ArtifactStore::getName )
+                          .collect( Collectors.toSet() );
+    }
+
+    private Set<String> set( final String... names )
+    {
+        return Arrays.stream( names ).collect( Collectors.toSet() );
+    }
+
+    private void store( final ArtifactStore store )
+            throws IndyDataException
+    {
+        dataManager.storeArtifactStore( store, summary, false, false, new EventMetadata() );
+    }
+}
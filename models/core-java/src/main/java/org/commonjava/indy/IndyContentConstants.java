@@ -23,6 +23,12 @@ public final class IndyContentConstants
 
     public static final String CHECK_CACHE_ONLY = "cache-only";
 
+    /**
+     * Event metadata flag set on stores that are part of a batch (e.g. a promotion). Per-path maintenance listeners may
+     * skip such events, since the whole batch is announced afterwards with a ContentBatchStoredEvent.
+     */
+    public static final String BATCH_STORE_MAINTENANCE = "batch-store-maintenance";
+
     private IndyContentConstants(){}
 
 
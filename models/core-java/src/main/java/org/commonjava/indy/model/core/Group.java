@@ -31,6 +31,12 @@ public class Group
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Metadata key which, when set to <code>true</code>, lets content retrieval query this group's members
+     * concurrently. The first member in group order that has the content still wins.
+     */
+    public static final String METADATA_RACE_MEMBERS = "race-members";
+
     private final List<StoreKey> constituents;
 
     @JsonProperty( "prepend_constituent" )
@@ -16,12 +16,14 @@
 package org.commonjava.indy.subsys.prefetch;
 
 import org.apache.commons.lang.StringUtils;
-import org.commonjava.cdi.util.weft.Locker;
 import org.commonjava.indy.audit.ChangeSummary;
 import org.commonjava.indy.content.StoreResource;
 import org.commonjava.indy.data.IndyDataException;
 import org.commonjava.indy.data.StoreDataManager;
+import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.subsys.datafile.DataFileManager;
 import org.commonjava.indy.subsys.infinispan.CacheHandle;
 import org.commonjava.indy.subsys.prefetch.conf.PrefetchConfig;
 import org.commonjava.indy.subsys.prefetch.models.RescanablePath;
@@ -35,17 +37,41 @@ import org.slf4j.LoggerFactory;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.commonjava.indy.subsys.prefetch.RescanTimeUtils.*;
 
+/**
+ * Pending prefetch paths, one FIFO queue per remote repository keyed by its {@link StoreKey}. The queues are indexed
+ * by {@link PrefetchRepoComparator} order on a snapshot of the repository's prefetch attributes, so scheduling and
+ * re-ordering a repository is O(log n) and taking a path is O(1). Every change is appended to a
+ * {@link PrefetchJournal} under the data directory, which is replayed on start.
+ */
 @ApplicationScoped
 public class PrefetchFrontier
 {
+    static final String JOURNAL_DIR = "prefetch/journal";
+
+    private static final Comparator<RepoQueue> QUEUE_ORDER = ( q1, q2 ) -> {
+        int result = PrefetchRepoComparator.compare( q1.priority, q1.rescanTimestamp, q2.priority,
+                                                     q2.rescanTimestamp );
+        return result != 0 ? result : q1.keyString.compareTo( q2.keyString );
+    };
+
     private final Logger logger = LoggerFactory.getLogger( this.getClass() );
 
     @Inject
@@ -58,212 +84,264 @@ public class PrefetchFrontier
     @Inject
     private StoreDataManager storeDataManager;
 
-    private final List<RemoteRepository> repoQueue = new ArrayList<>();
+    @Inject
+    private DataFileManager dataFileManager;
+
+    @Inject
+    private Instance<ContentListBuilder> listBuilders;
+
+    private final Map<StoreKey, RepoQueue> queues = new HashMap<>();
+
+    // every known repo, which is where rescan candidates come from
+    private final NavigableSet<RepoQueue> repoIndex = new TreeSet<>( QUEUE_ORDER );
+
+    // repos with pending paths, in prefetch order
+    private final NavigableSet<RepoQueue> readyIndex = new TreeSet<>( QUEUE_ORDER );
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private PrefetchJournal journal;
 
     private volatile boolean shouldSchedule = true;
 
     // Use this volatile to avoid lock on hasMore calling
     private volatile boolean hasMore = false;
 
-    private final PrefetchRepoComparator repoComparator = new PrefetchRepoComparator();
-
-    private final Locker<String> mutex = new Locker<>();
-
-    private static final String MUTEX_KEY = "mutex";
+    protected PrefetchFrontier()
+    {
+    }
 
-    @Inject
-    private Instance<ContentListBuilder> listBuilders;
+    public PrefetchFrontier( final PrefetchConfig config, final StoreDataManager storeDataManager,
+                             final File journalDir )
+    {
+        this.config = config;
+        this.storeDataManager = storeDataManager;
+        this.journal = new PrefetchJournal( journalDir );
+    }
 
     void initRepoCache()
     {
-        lockAnd( t -> {
-            if ( !resourceCache.isEmpty() )
+        lock.lock();
+        try
+        {
+            if ( journal == null )
             {
-                for ( RemoteRepository repo : resourceCache.execute( c -> c.keySet() ) )
-                {
-                    if ( !repoQueue.contains( repo ) )
-                    {
-                        repoQueue.add( repo );
-                    }
-                }
-                sortRepoQueue();
+                journal = new PrefetchJournal(
+                        new File( dataFileManager.getDetachedDataBasedir(), JOURNAL_DIR ) );
             }
-            hasMore = !repoQueue.isEmpty() && !resourceCache.isEmpty();
-            return null;
-        } );
+
+            queues.clear();
+            repoIndex.clear();
+            readyIndex.clear();
+
+            boolean empty;
+            try
+            {
+                empty = journal.isEmpty();
+            }
+            catch ( IOException e )
+            {
+                logger.error( "Failed to recover prefetch journal, prefetching starts from an empty frontier", e );
+                hasMore = false;
+                return;
+            }
+
+            if ( empty )
+            {
+                migrateResourceCache();
+            }
+            else
+            {
+                replayJournal();
+            }
+
+            hasMore = !readyIndex.isEmpty();
+        }
+        finally
+        {
+            lock.unlock();
+        }
     }
 
     public void scheduleRepo( final RemoteRepository repo, final List<RescanablePath> paths )
     {
         if ( shouldSchedule )
         {
-            lockAnd( t -> {
-                if ( !repoQueue.contains( repo ) )
+            final List<RescanablePath> accepted = journalable( repo, paths );
+            lock.lock();
+            try
+            {
+                enqueue( repo, accepted );
+                try
                 {
-                    repoQueue.add( repo );
-                    sortRepoQueue();
+                    journal.scheduled( repo.getKey(), accepted );
+                    journal.flush();
                 }
-
-                List<RescanablePath> repoPaths = resourceCache.get( repo );
-
-                if ( repoPaths == null )
+                catch ( IOException e )
                 {
-                    repoPaths = new ArrayList<>( paths.size() );
-                    resourceCache.put( repo, repoPaths );
+                    logger.warn( "Failed to journal prefetch paths for repo: " + repo.getKey(), e );
                 }
-                repoPaths.addAll( paths );
-                hasMore = !repoQueue.isEmpty() && !resourceCache.isEmpty();
-                return null;
-            } );
+                hasMore = !readyIndex.isEmpty();
+            }
+            finally
+            {
+                lock.unlock();
+            }
         }
     }
 
     public void rescheduleForRescan()
     {
-        if ( shouldSchedule && !hasMore )
+        if ( !shouldSchedule || hasMore )
         {
-            lockAnd( t -> {
-                for ( RemoteRepository repo : repoQueue )
+            return;
+        }
+
+        RemoteRepository repo = null;
+        String rescanTime = null;
+
+        lock.lock();
+        try
+        {
+            for ( RepoQueue queue : repoIndex )
+            {
+                if ( queue.repo.isPrefetchRescan() )
                 {
-                    if ( repo.isPrefetchRescan() )
+                    rescanTime = queue.repo.getPrefetchRescanTimestamp();
+                    logger.trace( "repo's current rescan time: {}", rescanTime );
+                    if ( StringUtils.isBlank( rescanTime ) || isNowAfter( rescanTime ) )
                     {
-                        String rescanTime = repo.getPrefetchRescanTimestamp();
-                        logger.trace( "repo's current rescan time: {}", rescanTime );
-                        if ( StringUtils.isBlank( rescanTime ) || isNowAfter( rescanTime ) )
-                        {
-                            repo.setPrefetchRescanTimestamp(
-                                    getNextRescanTimeFromNow( config.getRescanIntervalSeconds() ) );
-                            try
-                            {
-                                // Will not send store update event to avoid recursive rescheduling
-                                storeDataManager.storeArtifactStore( repo, new ChangeSummary( ChangeSummary.SYSTEM_USER,
-                                                                                              "Update store for prefetch rescan update" ),
-                                                                     false, false, new EventMetadata() );
-                            }
-                            catch ( IndyDataException e )
-                            {
-                                logger.error( String.format( "Can not update store in prefetching rescan for repo: %s",
-                                                             repo ), e );
-                            }
-                            logger.trace( "Rescan time set. Repo's next rescan time: {}", repo.getPrefetchRescanTimestamp() );
-                            final boolean isScheduledRescan =
-                                    StringUtils.isNotBlank( rescanTime ) && isNowAfter( rescanTime );
-                            if ( isScheduledRescan )
-                            {
-                                List<RescanablePath> rootPaths = buildPaths( repo, true );
-                                logger.trace( "Schedule rescan enabled resources: repo: {}, paths {}", repo,
-                                              rootPaths );
-                                scheduleRepo( repo, rootPaths );
-                            }
-                        }
-                        break;
+                        repo = queue.repo;
+                        repo.setPrefetchRescanTimestamp(
+                                getNextRescanTimeFromNow( config.getRescanIntervalSeconds() ) );
+                        reindex( queue, repo );
                     }
+                    break;
                 }
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        if ( repo == null )
+        {
+            return;
+        }
 
-                return null;
-            } );
+        // store update and path listing do remote IO, so they run without holding the frontier
+        try
+        {
+            // Will not send store update event to avoid recursive rescheduling
+            storeDataManager.storeArtifactStore( repo, new ChangeSummary( ChangeSummary.SYSTEM_USER,
+                                                                          "Update store for prefetch rescan update" ),
+                                                 false, false, new EventMetadata() );
+        }
+        catch ( IndyDataException e )
+        {
+            logger.error( String.format( "Can not update store in prefetching rescan for repo: %s", repo ), e );
+        }
+        logger.trace( "Rescan time set. Repo's next rescan time: {}", repo.getPrefetchRescanTimestamp() );
+
+        final boolean isScheduledRescan = StringUtils.isNotBlank( rescanTime ) && isNowAfter( rescanTime );
+        if ( isScheduledRescan )
+        {
+            List<RescanablePath> rootPaths = buildPaths( repo, true );
+            logger.trace( "Schedule rescan enabled resources: repo: {}, paths {}", repo, rootPaths );
+            scheduleRepo( repo, rootPaths );
         }
     }
 
     public Map<RemoteRepository, List<RescanableResourceWrapper>> remove( final int size )
     {
-        return lockAnd( t -> {
+        lock.lock();
+        try
+        {
             Map<RemoteRepository, List<RescanableResourceWrapper>> resources = new HashMap<>( 2 );
             int removedSize = 0;
-            final List<RemoteRepository> repoQueueCopy = new ArrayList<>( repoQueue );
-            for ( RemoteRepository repo : repoQueueCopy )
+            Iterator<RepoQueue> it = readyIndex.iterator();
+            while ( removedSize < size && it.hasNext() )
             {
-                List<RescanablePath> paths = resourceCache.get( repo );
-                if ( paths != null )
+                RepoQueue queue = it.next();
+                List<RescanableResourceWrapper> res =
+                        new ArrayList<>( Math.min( size - removedSize, queue.paths.size() ) );
+                while ( removedSize < size && !queue.paths.isEmpty() )
                 {
-                    List<RescanableResourceWrapper> res = new ArrayList<>( size );
-                    List<RescanablePath> pathsRemoved = new ArrayList<>( size );
-                    for ( RescanablePath path : paths )
-                    {
-                        res.add( new RescanableResourceWrapper(
-                                new StoreResource( LocationUtils.toLocation( repo ), path.getPath() ),
-                                path.isRescan() ) );
-                        pathsRemoved.add( path );
-                        if ( ++removedSize >= size )
-                        {
-                            break;
-                        }
-                    }
-                    resources.put( repo, res );
-
-                    paths.removeAll( pathsRemoved );
-
-                    if ( paths.isEmpty() )
-                    {
-                        resourceCache.remove( repo );
-                        if ( !repo.isPrefetchRescan() )
-                        {
-                            repoQueue.remove( repo );
-                            sortRepoQueue();
-                        }
-                        hasMore = !repoQueue.isEmpty() && !resourceCache.isEmpty();
-                    }
+                    RescanablePath path = queue.paths.poll();
+                    res.add( new RescanableResourceWrapper(
+                            new StoreResource( LocationUtils.toLocation( queue.repo ), path.getPath() ),
+                            path.isRescan() ) );
+                    removedSize++;
+                }
+                resources.put( queue.repo, res );
 
-                    if ( removedSize >= size )
-                    {
-                        return resources;
-                    }
+                try
+                {
+                    journal.taken( queue.key, res.size() );
                 }
-                else
+                catch ( IOException e )
                 {
-                    if ( !repo.isPrefetchRescan() )
+                    logger.warn( "Failed to journal taken prefetch paths for repo: " + queue.key, e );
+                }
+
+                if ( queue.paths.isEmpty() )
+                {
+                    it.remove();
+                    if ( !queue.repo.isPrefetchRescan() )
                     {
-                        repoQueue.remove( repo );
-                        sortRepoQueue();
+                        repoIndex.remove( queue );
+                        queues.remove( queue.key );
                     }
                 }
             }
+
+            hasMore = !readyIndex.isEmpty();
+            compactJournalIfNeeded();
             return resources;
-        } );
+        }
+        finally
+        {
+            lock.unlock();
+        }
     }
 
     public Map<RemoteRepository, List<ConcreteResource>> get( final int size )
     {
-        return lockAnd( t -> {
+        lock.lock();
+        try
+        {
             Map<RemoteRepository, List<ConcreteResource>> resources = new HashMap<>( 2 );
-            int removedSize = 0;
-            for ( RemoteRepository repo : repoQueue )
+            int gotSize = 0;
+            for ( RepoQueue queue : readyIndex )
             {
-                List<RescanablePath> paths = resourceCache.get( repo );
-                if ( paths != null && !paths.isEmpty() )
+                List<ConcreteResource> res = new ArrayList<>( Math.min( size - gotSize, queue.paths.size() ) );
+                for ( RescanablePath path : queue.paths )
                 {
-                    List<ConcreteResource> res = new ArrayList<>( size );
-                    for ( RescanablePath path : paths )
+                    if ( gotSize >= size )
                     {
-                        res.add( new StoreResource( LocationUtils.toLocation( repo ), path.getPath() ) );
-                    }
-                    resources.put( repo, res );
-                    if ( removedSize >= size )
-                    {
-                        return resources;
+                        break;
                     }
+                    res.add( new StoreResource( LocationUtils.toLocation( queue.repo ), path.getPath() ) );
+                    gotSize++;
+                }
+                resources.put( queue.repo, res );
+                if ( gotSize >= size )
+                {
+                    break;
                 }
             }
             return resources;
-        } );
-    }
-
-    public boolean hasMore()
-    {
-        return hasMore;
-    }
-
-    private void sortRepoQueue()
-    {
-        if ( repoQueue.size() > 1 )
+        }
+        finally
         {
-            repoQueue.sort( repoComparator );
+            lock.unlock();
         }
     }
 
-    private <T> T lockAnd( Function<String, T> function )
+    public boolean hasMore()
     {
-        return mutex.lockAnd( MUTEX_KEY, Integer.MAX_VALUE, function, ( k, lock ) -> true );
+        return hasMore;
     }
 
     List<RescanablePath> buildPaths( final RemoteRepository repository, final boolean isRescan )
@@ -288,7 +366,213 @@ public class PrefetchFrontier
 
     public void stop(){
         stopSchedulingMore();
-        resourceCache.stop();
+        lock.lock();
+        try
+        {
+            if ( journal != null )
+            {
+                journal.close();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        if ( resourceCache != null )
+        {
+            resourceCache.stop();
+        }
     }
 
+    private void enqueue( final RemoteRepository repo, final List<RescanablePath> paths )
+    {
+        RepoQueue queue = queues.get( repo.getKey() );
+        if ( queue == null )
+        {
+            queue = new RepoQueue( repo );
+            queues.put( queue.key, queue );
+            repoIndex.add( queue );
+        }
+        else
+        {
+            reindex( queue, repo );
+        }
+
+        if ( !paths.isEmpty() )
+        {
+            queue.paths.addAll( paths );
+            // no-op if the repo is already waiting
+            readyIndex.add( queue );
+        }
+    }
+
+    /**
+     * Take the latest copy of the repo and, if its prefetch attributes changed, move its queue to the new position.
+     */
+    private void reindex( final RepoQueue queue, final RemoteRepository repo )
+    {
+        int priority = priorityOf( repo );
+        String rescanTimestamp = repo.getPrefetchRescanTimestamp();
+        if ( queue.priority != priority || !Objects.equals( queue.rescanTimestamp, rescanTimestamp ) )
+        {
+            boolean ready = readyIndex.remove( queue );
+            repoIndex.remove( queue );
+            queue.priority = priority;
+            queue.rescanTimestamp = rescanTimestamp;
+            repoIndex.add( queue );
+            if ( ready )
+            {
+                readyIndex.add( queue );
+            }
+        }
+        queue.repo = repo;
+    }
+
+    private void replayJournal()
+    {
+        Map<StoreKey, Deque<RescanablePath>> replayed;
+        try
+        {
+            replayed = journal.replay();
+        }
+        catch ( IOException e )
+        {
+            logger.error( "Failed to replay prefetch journal, prefetching starts from an empty frontier", e );
+            return;
+        }
+
+        for ( Map.Entry<StoreKey, Deque<RescanablePath>> e : replayed.entrySet() )
+        {
+            ArtifactStore store = null;
+            try
+            {
+                store = storeDataManager.getArtifactStore( e.getKey() );
+            }
+            catch ( IndyDataException ex )
+            {
+                logger.warn( "Can not load repo for journaled prefetch paths: " + e.getKey(), ex );
+            }
+
+            if ( store instanceof RemoteRepository )
+            {
+                enqueue( (RemoteRepository) store, new ArrayList<>( e.getValue() ) );
+            }
+            else
+            {
+                logger.info( "Drop {} journaled prefetch paths of missing repo: {}", e.getValue().size(),
+                             e.getKey() );
+            }
+        }
+
+        // drop the taken paths and the repos that are gone
+        compactJournal();
+    }
+
+    /**
+     * Pending paths used to live in the prefetch-cache; move them into the journal once and clear the cache.
+     */
+    private void migrateResourceCache()
+    {
+        if ( resourceCache == null || resourceCache.isEmpty() )
+        {
+            return;
+        }
+
+        for ( RemoteRepository repo : resourceCache.execute( c -> new ArrayList<>( c.keySet() ) ) )
+        {
+            List<RescanablePath> paths = resourceCache.get( repo );
+            enqueue( repo, paths == null ? new ArrayList<>() : journalable( repo, paths ) );
+        }
+
+        compactJournal();
+        resourceCache.execute( c -> {
+            c.clear();
+            return null;
+        } );
+        logger.info( "Moved prefetch paths of {} repos from prefetch-cache into the prefetch journal",
+                     queues.size() );
+    }
+
+    private void compactJournalIfNeeded()
+    {
+        if ( readyIndex.isEmpty() || journal.needsCompaction() )
+        {
+            compactJournal();
+        }
+        else
+        {
+            try
+            {
+                journal.flush();
+            }
+            catch ( IOException e )
+            {
+                logger.warn( "Failed to flush prefetch journal", e );
+            }
+        }
+    }
+
+    private void compactJournal()
+    {
+        Map<StoreKey, Deque<RescanablePath>> live = new LinkedHashMap<>();
+        readyIndex.forEach( q -> live.put( q.key, q.paths ) );
+        try
+        {
+            journal.compact( live );
+        }
+        catch ( IOException e )
+        {
+            logger.warn( "Failed to compact prefetch journal", e );
+        }
+    }
+
+    /**
+     * Only the paths the journal can hold are queued, so what is queued and what is journaled never differ.
+     */
+    private List<RescanablePath> journalable( final RemoteRepository repo, final List<RescanablePath> paths )
+    {
+        List<RescanablePath> accepted = new ArrayList<>( paths.size() );
+        for ( RescanablePath path : paths )
+        {
+            if ( PrefetchJournal.isJournalable( path ) )
+            {
+                accepted.add( path );
+            }
+            else
+            {
+                logger.warn( "Skip invalid prefetch path of repo: {}, path: '{}'", repo.getKey(), path.getPath() );
+            }
+        }
+        return accepted;
+    }
+
+    private static int priorityOf( final RemoteRepository repo )
+    {
+        return repo.getPrefetchPriority() == null ? 0 : repo.getPrefetchPriority();
+    }
+
+    private static final class RepoQueue
+    {
+        private final StoreKey key;
+
+        private final String keyString;
+
+        private final Deque<RescanablePath> paths = new ArrayDeque<>();
+
+        private RemoteRepository repo;
+
+        // snapshot of the ordering attributes, as the repo may be changed in place while indexed
+        private int priority;
+
+        private String rescanTimestamp;
+
+        private RepoQueue( final RemoteRepository repo )
+        {
+            this.key = repo.getKey();
+            this.keyString = key.toString();
+            this.repo = repo;
+            this.priority = priorityOf( repo );
+            this.rescanTimestamp = repo.getPrefetchRescanTimestamp();
+        }
+    }
 }
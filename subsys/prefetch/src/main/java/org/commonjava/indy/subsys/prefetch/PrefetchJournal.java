@@ -0,0 +1,408 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.subsys.prefetch;
+
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.subsys.prefetch.models.RescanablePath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Append-only log of the prefetch frontier: scheduled paths and the number of paths taken from the head of each repo
+ * queue. It is written as numbered segment files. When the frontier drains, or too many segments pile up, the live
+ * state is compacted into a new segment and the older ones are deleted, so no change ever rewrites a whole queue.
+ * <p>
+ * Compaction is crash-safe: the live state is written and synced to a temp file first, which is then renamed to a
+ * compacted marker. Only once that marker exists are the older segments deleted and the marker renamed to a segment.
+ * An interrupted compaction is rolled back (no marker yet) or finished (marker) the next time the journal is used.
+ * <p>
+ * Not thread-safe, callers serialize the access.
+ */
+public class PrefetchJournal
+{
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final String COMPACTING = "compacting.tmp";
+
+    private static final String COMPACTED_PREFIX = "compacted-";
+
+    private static final long DEFAULT_SEGMENT_MAX_BYTES = 8 * 1024 * 1024;
+
+    private static final int MAX_SEGMENTS = 4;
+
+    private static final char SCHEDULED = '+';
+
+    private static final char TAKEN = '-';
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final File dir;
+
+    private final long segmentMaxBytes;
+
+    private Writer writer;
+
+    private long segment;
+
+    private long segmentBytes;
+
+    private int segments;
+
+    private boolean recovered;
+
+    public PrefetchJournal( final File dir )
+    {
+        this( dir, DEFAULT_SEGMENT_MAX_BYTES );
+    }
+
+    PrefetchJournal( final File dir, final long segmentMaxBytes )
+    {
+        this.dir = dir;
+        this.segmentMaxBytes = segmentMaxBytes;
+    }
+
+    /**
+     * Read the segments back into per-repo queues, in the order the repos were first scheduled.
+     */
+    public Map<StoreKey, Deque<RescanablePath>> replay()
+            throws IOException
+    {
+        recover();
+
+        Map<StoreKey, Deque<RescanablePath>> queues = new LinkedHashMap<>();
+        for ( File f : listSegments() )
+        {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader( Files.newInputStream( f.toPath() ), StandardCharsets.UTF_8 ) ))
+            {
+                String line;
+                while ( ( line = reader.readLine() ) != null )
+                {
+                    apply( queues, line );
+                }
+            }
+        }
+
+        queues.values().removeIf( Deque::isEmpty );
+        return queues;
+    }
+
+    public boolean isEmpty()
+            throws IOException
+    {
+        recover();
+        return listSegments().length == 0;
+    }
+
+    /**
+     * Paths are journaled one per line, so a path which is null or holds a line break can not be.
+     */
+    public static boolean isJournalable( final RescanablePath path )
+    {
+        return path.getPath() != null && path.getPath().indexOf( '\n' ) < 0;
+    }
+
+    public void scheduled( final StoreKey key, final Collection<RescanablePath> paths )
+            throws IOException
+    {
+        append( records( key, paths ) );
+    }
+
+    private StringBuilder records( final StoreKey key, final Collection<RescanablePath> paths )
+    {
+        StringBuilder sb = new StringBuilder();
+        for ( RescanablePath path : paths )
+        {
+            if ( !isJournalable( path ) )
+            {
+                continue;
+            }
+            sb.append( SCHEDULED )
+              .append( '\t' )
+              .append( key )
+              .append( '\t' )
+              .append( Boolean.TRUE.equals( path.isRescan() ) ? 'r' : 'n' )
+              .append( '\t' )
+              .append( path.getPath() )
+              .append( '\n' );
+        }
+        return sb;
+    }
+
+    public void taken( final StoreKey key, final int count )
+            throws IOException
+    {
+        append( new StringBuilder().append( TAKEN ).append( '\t' ).append( key ).append( '\t' ).append( count )
+                                   .append( '\n' ) );
+    }
+
+    /**
+     * @return true if the journal has grown past what the live state needs and should be {@link #compact compacted}
+     */
+    public boolean needsCompaction()
+    {
+        return segments > MAX_SEGMENTS;
+    }
+
+    /**
+     * Replace all the segments with one holding only the given live state (nothing at all if it is empty).
+     */
+    public void compact( final Map<StoreKey, ? extends Collection<RescanablePath>> live )
+            throws IOException
+    {
+        recover();
+        closeWriter();
+
+        File[] old = listSegments();
+        long compacted = old.length == 0 ? 0 : segmentNumber( old[old.length - 1] ) + 1;
+
+        File tmp = new File( dir, COMPACTING );
+        Files.createDirectories( dir.toPath() );
+        try (FileOutputStream out = new FileOutputStream( tmp ))
+        {
+            Writer w = new BufferedWriter( new OutputStreamWriter( out, StandardCharsets.UTF_8 ) );
+            for ( Map.Entry<StoreKey, ? extends Collection<RescanablePath>> e : live.entrySet() )
+            {
+                w.append( records( e.getKey(), e.getValue() ) );
+            }
+            w.flush();
+            out.getFD().sync();
+        }
+
+        // from here on the compaction counts, even if we crash before the old segments are gone
+        Files.move( tmp.toPath(), new File( dir, compactedName( compacted ) ).toPath(),
+                    StandardCopyOption.ATOMIC_MOVE );
+        finishCompaction( compacted );
+
+        segment = compacted;
+        segments = listSegments().length;
+        logger.debug( "Compacted prefetch journal, {} segments deleted", old.length );
+    }
+
+    public void flush()
+            throws IOException
+    {
+        if ( writer != null )
+        {
+            writer.flush();
+        }
+    }
+
+    public void close()
+    {
+        try
+        {
+            closeWriter();
+        }
+        catch ( IOException e )
+        {
+            logger.warn( "Failed to close prefetch journal: " + e.getMessage(), e );
+        }
+    }
+
+    private void append( final CharSequence records )
+            throws IOException
+    {
+        if ( records.length() == 0 )
+        {
+            return;
+        }
+
+        if ( writer == null || segmentBytes >= segmentMaxBytes )
+        {
+            roll();
+        }
+
+        writer.append( records );
+        segmentBytes += records.length();
+    }
+
+    /**
+     * Roll back or finish a compaction interrupted by a crash. Done once, before the segments are first used.
+     */
+    private void recover()
+            throws IOException
+    {
+        if ( recovered )
+        {
+            return;
+        }
+        recovered = true;
+
+        Files.deleteIfExists( new File( dir, COMPACTING ).toPath() );
+
+        File[] markers =
+                dir.listFiles( ( d, name ) -> name.startsWith( COMPACTED_PREFIX ) && name.endsWith( SEGMENT_SUFFIX ) );
+        if ( markers != null )
+        {
+            for ( File marker : markers )
+            {
+                String name = marker.getName();
+                long compacted = Long.parseLong(
+                        name.substring( COMPACTED_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length() ) );
+                logger.info( "Finish interrupted prefetch journal compaction: {}", name );
+                finishCompaction( compacted );
+            }
+        }
+    }
+
+    /**
+     * Delete the segments the compacted one replaces, then make it a segment (unless it has nothing in it).
+     */
+    private void finishCompaction( final long compacted )
+            throws IOException
+    {
+        for ( File f : listSegments() )
+        {
+            if ( segmentNumber( f ) < compacted )
+            {
+                Files.deleteIfExists( f.toPath() );
+            }
+        }
+
+        File marker = new File( dir, compactedName( compacted ) );
+        if ( marker.length() == 0 )
+        {
+            Files.deleteIfExists( marker.toPath() );
+        }
+        else
+        {
+            Files.move( marker.toPath(), new File( dir, segmentName( compacted ) ).toPath(),
+                        StandardCopyOption.ATOMIC_MOVE );
+        }
+    }
+
+    private void roll()
+            throws IOException
+    {
+        if ( writer != null )
+        {
+            closeWriter();
+            segment++;
+        }
+        else
+        {
+            recover();
+            File[] existing = listSegments();
+            segments = existing.length;
+            if ( existing.length > 0 )
+            {
+                segment = Math.max( segment, segmentNumber( existing[existing.length - 1] ) + 1 );
+            }
+        }
+
+        Files.createDirectories( dir.toPath() );
+        File f = new File( dir, segmentName( segment ) );
+        writer = new BufferedWriter(
+                new OutputStreamWriter( new FileOutputStream( f, true ), StandardCharsets.UTF_8 ) );
+        segmentBytes = f.length();
+        segments++;
+    }
+
+    private void closeWriter()
+            throws IOException
+    {
+        if ( writer != null )
+        {
+            try
+            {
+                writer.close();
+            }
+            finally
+            {
+                writer = null;
+            }
+        }
+    }
+
+    private File[] listSegments()
+    {
+        File[] files = dir.listFiles(
+                ( d, name ) -> name.startsWith( SEGMENT_PREFIX ) && name.endsWith( SEGMENT_SUFFIX ) );
+        if ( files == null )
+        {
+            return new File[0];
+        }
+        Arrays.sort( files ); // zero-padded numbers, so name order is segment order
+        return files;
+    }
+
+    private static String segmentName( final long number )
+    {
+        return String.format( "%s%012d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX );
+    }
+
+    private static String compactedName( final long number )
+    {
+        return String.format( "%s%012d%s", COMPACTED_PREFIX, number, SEGMENT_SUFFIX );
+    }
+
+    private long segmentNumber( final File f )
+    {
+        String name = f.getName();
+        return Long.parseLong( name.substring( SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length() ) );
+    }
+
+    private void apply( final Map<StoreKey, Deque<RescanablePath>> queues, final String line )
+    {
+        String[] parts = line.split( "\t", 4 );
+        try
+        {
+            if ( parts.length == 4 && parts[0].charAt( 0 ) == SCHEDULED )
+            {
+                queues.computeIfAbsent( StoreKey.fromString( parts[1] ), k -> new ArrayDeque<>() )
+                      .add( new RescanablePath( parts[3], "r".equals( parts[2] ) ) );
+            }
+            else if ( parts.length == 3 && parts[0].charAt( 0 ) == TAKEN )
+            {
+                Deque<RescanablePath> queue = queues.get( StoreKey.fromString( parts[1] ) );
+                for ( int i = Integer.parseInt( parts[2] ); queue != null && i > 0 && !queue.isEmpty(); i-- )
+                {
+                    queue.poll();
+                }
+            }
+            else
+            {
+                logger.debug( "Skip unknown prefetch journal record: {}", line );
+            }
+        }
+        catch ( RuntimeException e )
+        {
+            // e.g., the last record was cut short by a crash
+            logger.warn( "Skip broken prefetch journal record: {}, {}", line, e.toString() );
+        }
+    }
+}
@@ -38,28 +38,33 @@ public class PrefetchRepoComparator<T extends RemoteRepository>
             return -1;
         }
 
-        final int priorityCompareResult = r2.getPrefetchPriority() - r1.getPrefetchPriority();
-        if ( StringUtils.isBlank( r1.getPrefetchRescanTimestamp() ) && StringUtils.isBlank(
-                r2.getPrefetchRescanTimestamp() ) )
+        return compare( r1.getPrefetchPriority(), r1.getPrefetchRescanTimestamp(), r2.getPrefetchPriority(),
+                        r2.getPrefetchRescanTimestamp() );
+    }
+
+    /**
+     * Same ordering as {@link #compare(RemoteRepository, RemoteRepository)}, on the prefetch attributes only, so a
+     * snapshot of them can be ordered without holding the repositories.
+     */
+    public static int compare( int priority1, String rescanTimestamp1, int priority2, String rescanTimestamp2 )
+    {
+        final int priorityCompareResult = priority2 - priority1;
+        if ( StringUtils.isBlank( rescanTimestamp1 ) && StringUtils.isBlank( rescanTimestamp2 ) )
         {
             return priorityCompareResult;
         }
 
-        if ( StringUtils.isBlank( r1.getPrefetchRescanTimestamp() ) && StringUtils.isNotBlank(
-                r2.getPrefetchRescanTimestamp() ) )
+        if ( StringUtils.isBlank( rescanTimestamp1 ) && StringUtils.isNotBlank( rescanTimestamp2 ) )
         {
             return -1;
         }
-        else if ( StringUtils.isBlank( r2.getPrefetchRescanTimestamp() ) && StringUtils.isNotBlank(
-                r1.getPrefetchRescanTimestamp() ) )
+        else if ( StringUtils.isBlank( rescanTimestamp2 ) && StringUtils.isNotBlank( rescanTimestamp1 ) )
         {
             return 1;
         }
 
-        final ZonedDateTime rescanTime1 =
-                ZonedDateTime.parse( r1.getPrefetchRescanTimestamp(), RescanTimeUtils.UTC_TIME_FORMATTER );
-        final ZonedDateTime rescanTime2 =
-                ZonedDateTime.parse( r2.getPrefetchRescanTimestamp(), RescanTimeUtils.UTC_TIME_FORMATTER  );
+        final ZonedDateTime rescanTime1 = ZonedDateTime.parse( rescanTimestamp1, RescanTimeUtils.UTC_TIME_FORMATTER );
+        final ZonedDateTime rescanTime2 = ZonedDateTime.parse( rescanTimestamp2, RescanTimeUtils.UTC_TIME_FORMATTER );
 
         if ( rescanTime1.isBefore( rescanTime2 ) )
         {
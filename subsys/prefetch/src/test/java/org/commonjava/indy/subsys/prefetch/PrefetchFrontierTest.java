@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.subsys.prefetch;
+
+import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.data.StoreDataManager;
+import org.commonjava.indy.mem.data.MemoryStoreDataManager;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.subsys.prefetch.conf.PrefetchConfig;
+import org.commonjava.indy.subsys.prefetch.models.RescanablePath;
+import org.commonjava.indy.subsys.prefetch.models.RescanableResourceWrapper;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class PrefetchFrontierTest
+{
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private StoreDataManager storeDataManager;
+
+    private File journalDir;
+
+    private PrefetchFrontier frontier;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        storeDataManager = new MemoryStoreDataManager( true );
+        journalDir = temp.newFolder( "journal" );
+        frontier = newFrontier();
+    }
+
+    @After
+    public void teardown()
+    {
+        frontier.stop();
+    }
+
+    @Test
+    public void higherPriorityRepoIsTakenFirst()
+            throws Exception
+    {
+        frontier.scheduleRepo( repo( "low", 1 ), paths( "l1/", "l2/" ) );
+        frontier.scheduleRepo( repo( "high", 5 ), paths( "h1/", "h2/" ) );
+
+        Map<RemoteRepository, List<RescanableResourceWrapper>> taken = frontier.remove( 3 );
+        assertThat( pathsOf( taken, "high" ), equalTo( Arrays.asList( "h1/", "h2/" ) ) );
+        assertThat( pathsOf( taken, "low" ), equalTo( Collections.singletonList( "l1/" ) ) );
+        assertThat( frontier.hasMore(), equalTo( true ) );
+    }
+
+    @Test
+    public void priorityChangeMovesQueue()
+            throws Exception
+    {
+        frontier.scheduleRepo( repo( "low", 1 ), paths( "l1/" ) );
+        frontier.scheduleRepo( repo( "mid", 3 ), paths( "m1/" ) );
+
+        // the same repo, scheduled again after its priority was raised
+        frontier.scheduleRepo( repo( "low", 9 ), paths( "l2/" ) );
+
+        Map<RemoteRepository, List<RescanableResourceWrapper>> taken = frontier.remove( 2 );
+        assertThat( taken.size(), equalTo( 1 ) );
+        assertThat( pathsOf( taken, "low" ), equalTo( Arrays.asList( "l1/", "l2/" ) ) );
+        assertThat( pathsOf( frontier.remove( 2 ), "mid" ), equalTo( Collections.singletonList( "m1/" ) ) );
+        assertThat( frontier.hasMore(), equalTo( false ) );
+    }
+
+    @Test
+    public void removeSpansReposInOrder()
+            throws Exception
+    {
+        frontier.scheduleRepo( repo( "a", 5 ), paths( "a1/", "a2/", "a3/" ) );
+        frontier.scheduleRepo( repo( "b", 3 ), paths( "b1/", "b2/" ) );
+        frontier.scheduleRepo( repo( "c", 1 ), paths( "c1/", "c2/" ) );
+
+        Map<RemoteRepository, List<RescanableResourceWrapper>> taken = frontier.remove( 4 );
+        assertThat( taken.size(), equalTo( 2 ) );
+        assertThat( pathsOf( taken, "a" ), equalTo( Arrays.asList( "a1/", "a2/", "a3/" ) ) );
+        assertThat( pathsOf( taken, "b" ), equalTo( Collections.singletonList( "b1/" ) ) );
+
+        taken = frontier.remove( 10 );
+        assertThat( pathsOf( taken, "b" ), equalTo( Collections.singletonList( "b2/" ) ) );
+        assertThat( pathsOf( taken, "c" ), equalTo( Arrays.asList( "c1/", "c2/" ) ) );
+        assertThat( frontier.hasMore(), equalTo( false ) );
+        assertThat( journalDir.list().length, equalTo( 0 ) );
+    }
+
+    @Test
+    public void pendingPathsAreReplayedAfterRestart()
+            throws Exception
+    {
+        frontier.scheduleRepo( repo( "low", 1 ), paths( "l1/", "l2/", "l3/" ) );
+        frontier.scheduleRepo( repo( "high", 5 ), paths( "h1/" ) );
+        frontier.remove( 2 );
+        frontier.stop();
+
+        frontier = newFrontier();
+        assertThat( frontier.hasMore(), equalTo( true ) );
+
+        Map<RemoteRepository, List<RescanableResourceWrapper>> taken = frontier.remove( 10 );
+        assertThat( taken.size(), equalTo( 1 ) );
+        assertThat( pathsOf( taken, "low" ), equalTo( Arrays.asList( "l2/", "l3/" ) ) );
+        assertThat( frontier.hasMore(), equalTo( false ) );
+    }
+
+    @Test
+    public void pathWithLineBreakIsNotScheduled()
+            throws Exception
+    {
+        frontier.scheduleRepo( repo( "repo", 1 ), paths( "a/", "b\nc/", "d/", "e/" ) );
+
+        assertThat( pathsOf( frontier.remove( 2 ), "repo" ), equalTo( Arrays.asList( "a/", "d/" ) ) );
+        frontier.stop();
+
+        // the journal took the same two paths off, so only the last one is left
+        frontier = newFrontier();
+        assertThat( pathsOf( frontier.remove( 10 ), "repo" ), equalTo( Collections.singletonList( "e/" ) ) );
+    }
+
+    private PrefetchFrontier newFrontier()
+    {
+        PrefetchFrontier created = new PrefetchFrontier( new PrefetchConfig(), storeDataManager, journalDir );
+        created.initRepoCache();
+        return created;
+    }
+
+    private RemoteRepository repo( final String name, final int priority )
+            throws Exception
+    {
+        RemoteRepository repo = new RemoteRepository( "maven", name, "http://repo.example.com/" + name );
+        repo.setPrefetchPriority( priority );
+        storeDataManager.storeArtifactStore( repo, new ChangeSummary( ChangeSummary.SYSTEM_USER, "test setup" ),
+                                             false, true, new EventMetadata() );
+        return repo;
+    }
+
+    private List<RescanablePath> paths( final String... paths )
+    {
+        List<RescanablePath> result = new ArrayList<>();
+        for ( String path : paths )
+        {
+            result.add( new RescanablePath( path, false ) );
+        }
+        return result;
+    }
+
+    private List<String> pathsOf( final Map<RemoteRepository, List<RescanableResourceWrapper>> taken,
+                                  final String name )
+    {
+        List<String> result = new ArrayList<>();
+        taken.forEach( ( repo, resources ) -> {
+            if ( repo.getName().equals( name ) )
+            {
+                resources.forEach( r -> result.add( r.getResource().getPath() ) );
+            }
+        } );
+        return result;
+    }
+}
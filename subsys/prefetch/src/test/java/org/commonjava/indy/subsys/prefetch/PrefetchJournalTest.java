@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2011-2018 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.subsys.prefetch;
+
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.subsys.prefetch.models.RescanablePath;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class PrefetchJournalTest
+{
+    private static final StoreKey REPO1 = new StoreKey( "maven", StoreType.remote, "repo1" );
+
+    private static final StoreKey REPO2 = new StoreKey( "maven", StoreType.remote, "repo2" );
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void replayScheduledMinusTaken()
+            throws Exception
+    {
+        File dir = temp.newFolder();
+        PrefetchJournal journal = new PrefetchJournal( dir );
+        journal.scheduled( REPO1, Arrays.asList( path( "a/", true ), path( "b/", false ), path( "c/", false ) ) );
+        journal.scheduled( REPO2, Collections.singletonList( path( "x/", false ) ) );
+        journal.taken( REPO1, 2 );
+        journal.taken( REPO2, 1 );
+        journal.close();
+
+        Map<StoreKey, Deque<RescanablePath>> queues = new PrefetchJournal( dir ).replay();
+        assertThat( queues.size(), equalTo( 1 ) );
+        RescanablePath left = queues.get( REPO1 ).poll();
+        assertThat( left.getPath(), equalTo( "c/" ) );
+        assertThat( left.isRescan(), equalTo( false ) );
+    }
+
+    @Test
+    public void rollAndCompactSegments()
+            throws Exception
+    {
+        File dir = temp.newFolder();
+        PrefetchJournal journal = new PrefetchJournal( dir, 16 );
+        for ( int i = 0; i < 10; i++ )
+        {
+            journal.scheduled( REPO1, Collections.singletonList( path( "p" + i + "/", false ) ) );
+        }
+        journal.taken( REPO1, 9 );
+        journal.flush();
+        assertThat( journal.needsCompaction(), equalTo( true ) );
+
+        Map<StoreKey, Deque<RescanablePath>> live = new LinkedHashMap<>( journal.replay() );
+        journal.compact( live );
+        assertThat( journal.needsCompaction(), equalTo( false ) );
+        assertThat( dir.list().length, equalTo( 1 ) );
+        assertThat( journal.replay().get( REPO1 ).peek().getPath(), equalTo( "p9/" ) );
+
+        journal.compact( Collections.emptyMap() );
+        assertThat( journal.isEmpty(), equalTo( true ) );
+    }
+
+    @Test
+    public void skipTruncatedRecord()
+            throws Exception
+    {
+        File dir = temp.newFolder();
+        PrefetchJournal journal = new PrefetchJournal( dir );
+        journal.scheduled( REPO1, Collections.singletonList( path( "a/", false ) ) );
+        journal.close();
+
+        File segment = dir.listFiles()[0];
+        try (FileWriter writer = new FileWriter( segment, true ))
+        {
+            writer.write( "-\tmaven:remote:re" );
+        }
+
+        assertThat( new PrefetchJournal( dir ).replay().get( REPO1 ).size(), equalTo( 1 ) );
+    }
+
+    @Test
+    public void finishCompactionInterruptedAfterMarker()
+            throws Exception
+    {
+        File dir = temp.newFolder();
+        PrefetchJournal journal = new PrefetchJournal( dir );
+        journal.scheduled( REPO1, Arrays.asList( path( "a/", false ), path( "b/", false ) ) );
+        journal.taken( REPO1, 1 );
+        journal.close();
+
+        // crash after the compacted state was committed, before the old segment was deleted
+        try (FileWriter writer = new FileWriter( new File( dir, "compacted-000000000001.log" ) ))
+        {
+            writer.write( "+\t" + REPO1 + "\tn\tb/\n" );
+        }
+
+        Map<StoreKey, Deque<RescanablePath>> queues = new PrefetchJournal( dir ).replay();
+        assertThat( queues.get( REPO1 ).size(), equalTo( 1 ) );
+        assertThat( queues.get( REPO1 ).peek().getPath(), equalTo( "b/" ) );
+        assertThat( Arrays.asList( dir.list() ), equalTo( Collections.singletonList( "segment-000000000001.log" ) ) );
+    }
+
+    @Test
+    public void dropCompactionInterruptedBeforeMarker()
+            throws Exception
+    {
+        File dir = temp.newFolder();
+        PrefetchJournal journal = new PrefetchJournal( dir );
+        journal.scheduled( REPO1, Collections.singletonList( path( "a/", false ) ) );
+        journal.close();
+
+        // crash while the compacted state was still being written
+        try (FileWriter writer = new FileWriter( new File( dir, "compacting.tmp" ) ))
+        {
+            writer.write( "+\t" + REPO2 + "\tn\tx/\n" );
+        }
+
+        Map<StoreKey, Deque<RescanablePath>> queues = new PrefetchJournal( dir ).replay();
+        assertThat( queues.size(), equalTo( 1 ) );
+        assertThat( queues.get( REPO1 ).peek().getPath(), equalTo( "a/" ) );
+        assertThat( new File( dir, "compacting.tmp" ).exists(), equalTo( false ) );
+    }
+
+    private RescanablePath path( final String path, final boolean rescan )
+    {
+        return new RescanablePath( path, rescan );
+    }
+}